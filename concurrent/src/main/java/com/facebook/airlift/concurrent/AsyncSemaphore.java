@@ -18,11 +18,14 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
+import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
@@ -45,18 +48,35 @@ public class AsyncSemaphore<T>
     private final int maxPermits;
     private final Executor submitExecutor;
     private final Function<T, ListenableFuture<?>> submitter;
+    @Nullable
+    private final ExecutionStats stats;
 
     public AsyncSemaphore(int maxPermits, Executor submitExecutor, Function<T, ListenableFuture<?>> submitter)
+    {
+        this(maxPermits, submitExecutor, submitter, Optional.empty());
+    }
+
+    /**
+     * Creates a semaphore that records how long tasks wait for a permit and
+     * how long they hold it in the specified stats.
+     */
+    public AsyncSemaphore(int maxPermits, Executor submitExecutor, Function<T, ListenableFuture<?>> submitter, ExecutionStats stats)
+    {
+        this(maxPermits, submitExecutor, submitter, Optional.of(requireNonNull(stats, "stats is null")));
+    }
+
+    private AsyncSemaphore(int maxPermits, Executor submitExecutor, Function<T, ListenableFuture<?>> submitter, Optional<ExecutionStats> stats)
     {
         checkArgument(maxPermits > 0, "must have at least one permit");
         this.maxPermits = maxPermits;
         this.submitExecutor = requireNonNull(submitExecutor, "submitExecutor is null");
         this.submitter = requireNonNull(submitter, "submitter is null");
+        this.stats = stats.orElse(null);
     }
 
     public ListenableFuture<?> submit(T task)
     {
-        QueuedTask<T> queuedTask = new QueuedTask<>(task);
+        QueuedTask<T> queuedTask = new QueuedTask<>(task, stats == null ? 0 : System.nanoTime());
         queuedTasks.add(queuedTask);
         acquirePermit();
         return queuedTask.getCompletionFuture();
@@ -66,7 +86,7 @@ public class AsyncSemaphore<T>
     {
         if (counter.incrementAndGet() <= maxPermits) {
             // Kick off a task if not all permits have been handed out
-            submitExecutor.execute(runNextTask);
+            executeNextTask();
         }
     }
 
@@ -74,19 +94,36 @@ public class AsyncSemaphore<T>
     {
         if (counter.getAndDecrement() > maxPermits) {
             // Now that a task has finished, we can kick off another task if there are more tasks than permits
+            executeNextTask();
+        }
+    }
+
+    private void executeNextTask()
+    {
+        try {
             submitExecutor.execute(runNextTask);
         }
+        catch (RejectedExecutionException e) {
+            if (stats != null) {
+                stats.taskRejected();
+            }
+            throw e;
+        }
     }
 
     private void runNext()
     {
         final QueuedTask<T> queuedTask = queuedTasks.poll();
+        final long startNanos = stats == null ? 0 : stats.taskStarted(queuedTask.getQueuedNanos());
         ListenableFuture<?> future = submitTask(queuedTask.getTask());
         FutureCallback<Object> callback = new FutureCallback<Object>()
         {
             @Override
             public void onSuccess(Object result)
             {
+                if (stats != null) {
+                    stats.taskFinished(startNanos);
+                }
                 queuedTask.markCompleted();
                 releasePermit();
             }
@@ -94,6 +131,10 @@ public class AsyncSemaphore<T>
             @Override
             public void onFailure(Throwable t)
             {
+                if (stats != null) {
+                    stats.taskFinished(startNanos);
+                    stats.taskFailed();
+                }
                 queuedTask.markFailure(t);
                 releasePermit();
             }
@@ -118,11 +159,13 @@ public class AsyncSemaphore<T>
     private static class QueuedTask<T>
     {
         private final T task;
+        private final long queuedNanos;
         private final SettableFuture<?> settableFuture = SettableFuture.create();
 
-        private QueuedTask(T task)
+        private QueuedTask(T task, long queuedNanos)
         {
             this.task = requireNonNull(task, "task is null");
+            this.queuedNanos = queuedNanos;
         }
 
         public T getTask()
@@ -130,6 +173,11 @@ public class AsyncSemaphore<T>
             return task;
         }
 
+        public long getQueuedNanos()
+        {
+            return queuedNanos;
+        }
+
         public void markFailure(Throwable throwable)
         {
             settableFuture.setException(throwable);
@@ -3,15 +3,16 @@ package com.facebook.airlift.concurrent;
 import com.facebook.airlift.log.Logger;
 import com.google.common.base.Preconditions;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
+import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -40,21 +41,43 @@ public class BoundedExecutor
 
     private final Executor coreExecutor;
     private final int maxThreads;
+    @Nullable
+    private final ExecutionStats stats;
 
     public BoundedExecutor(Executor coreExecutor, int maxThreads)
+    {
+        this(coreExecutor, maxThreads, Optional.empty());
+    }
+
+    /**
+     * Creates an executor that records the queue and execution times of the
+     * tasks in the specified stats.
+     */
+    public BoundedExecutor(Executor coreExecutor, int maxThreads, ExecutionStats stats)
+    {
+        this(coreExecutor, maxThreads, Optional.of(requireNonNull(stats, "stats is null")));
+    }
+
+    private BoundedExecutor(Executor coreExecutor, int maxThreads, Optional<ExecutionStats> stats)
     {
         requireNonNull(coreExecutor, "coreExecutor is null");
         Preconditions.checkArgument(maxThreads > 0, "maxThreads must be greater than zero");
         this.coreExecutor = coreExecutor;
         this.maxThreads = maxThreads;
+        this.stats = stats.orElse(null);
     }
 
     @Override
     public void execute(Runnable task)
     {
-        checkState(!failed.get(), "BoundedExecutor is in a failed state");
+        if (failed.get()) {
+            if (stats != null) {
+                stats.taskRejected();
+            }
+            throw new IllegalStateException("BoundedExecutor is in a failed state");
+        }
 
-        queue.add(task);
+        queue.add(stats == null ? task : stats.instrument(task));
 
         int size = queueSize.incrementAndGet();
         if (size <= maxThreads) {
@@ -64,6 +87,9 @@ public class BoundedExecutor
             }
             catch (Throwable e) {
                 failed.set(true);
+                if (stats != null) {
+                    stats.taskRejected();
+                }
                 log.error("BoundedExecutor state corrupted due to underlying executor failure");
                 throw e;
             }
@@ -0,0 +1,251 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableSortedMap;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import static com.facebook.airlift.concurrent.ThreadUsage.getCurrentThreadAllocatedBytes;
+import static com.facebook.airlift.concurrent.ThreadUsage.getCurrentThreadCpuNanos;
+import static com.facebook.airlift.concurrent.ThreadUsage.getCurrentThreadUserNanos;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Counts the tasks run by the delegate executor along with the CPU time, user
+ * time and bytes allocated by the thread while running them.  The thread is
+ * measured when a task starts and finishes, which is not free: each
+ * measurement reads the CPU time with a system call, reads the user time
+ * from {@code /proc} on Linux, and reads the allocated bytes by looking the
+ * thread up by id, which allocates and takes a JVM-wide lock.  Together this
+ * costs several microseconds per measured task.
+ * <p>
+ * For executors that run short tasks, set a sample interval of N to measure
+ * one in N tasks, chosen at random.  The usage of a measured task is counted
+ * N times, so the totals are estimates with the same expected value as when
+ * every task is measured.  The task counts are always exact.
+ * <p>
+ * When task classes are tracked, the usage is also broken down by the class of
+ * the submitted task.  Tasks wrapped by the caller, such as the
+ * {@link java.util.concurrent.FutureTask} created by
+ * {@link java.util.concurrent.ExecutorService#submit}, are counted under the
+ * wrapper class.  At most {@value #MAX_TASK_CLASSES} classes are tracked and
+ * the remaining classes are counted under {@value #OTHER_TASK_CLASSES}.
+ */
+@Beta
+@ThreadSafe
+public class CpuAccountingExecutor
+        implements Executor
+{
+    static final int MAX_TASK_CLASSES = 1000;
+    static final String OTHER_TASK_CLASSES = "<other>";
+
+    private final Executor delegate;
+    private final boolean trackTaskClasses;
+    private final int sampleInterval;
+
+    private final TaskUsage usage = new TaskUsage();
+    private final ConcurrentMap<Class<?>, TaskUsage> taskClassUsage = new ConcurrentHashMap<>();
+    private final TaskUsage otherTaskClassUsage = new TaskUsage();
+
+    public CpuAccountingExecutor(Executor delegate)
+    {
+        this(delegate, false);
+    }
+
+    public CpuAccountingExecutor(Executor delegate, boolean trackTaskClasses)
+    {
+        this(delegate, trackTaskClasses, 1);
+    }
+
+    public CpuAccountingExecutor(Executor delegate, boolean trackTaskClasses, int sampleInterval)
+    {
+        checkArgument(sampleInterval > 0, "sampleInterval must be positive");
+        this.delegate = requireNonNull(delegate, "delegate is null");
+        this.trackTaskClasses = trackTaskClasses;
+        this.sampleInterval = sampleInterval;
+    }
+
+    @Override
+    public void execute(Runnable task)
+    {
+        requireNonNull(task, "task is null");
+        delegate.execute(() -> run(task));
+    }
+
+    private void run(Runnable task)
+    {
+        if (sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+            runUnmeasured(task);
+            return;
+        }
+
+        long startCpuNanos = getCurrentThreadCpuNanos();
+        long startUserNanos = getCurrentThreadUserNanos();
+        long startAllocatedBytes = getCurrentThreadAllocatedBytes();
+        boolean failed = true;
+        try {
+            task.run();
+            failed = false;
+        }
+        finally {
+            long cpuNanos = (getCurrentThreadCpuNanos() - startCpuNanos) * sampleInterval;
+            long userNanos = (getCurrentThreadUserNanos() - startUserNanos) * sampleInterval;
+            long allocatedBytes = (getCurrentThreadAllocatedBytes() - startAllocatedBytes) * sampleInterval;
+            usage.record(failed);
+            usage.recordSample(cpuNanos, userNanos, allocatedBytes);
+            if (trackTaskClasses) {
+                TaskUsage taskUsage = getTaskClassUsage(task.getClass());
+                taskUsage.record(failed);
+                taskUsage.recordSample(cpuNanos, userNanos, allocatedBytes);
+            }
+        }
+    }
+
+    private void runUnmeasured(Runnable task)
+    {
+        boolean failed = true;
+        try {
+            task.run();
+            failed = false;
+        }
+        finally {
+            usage.record(failed);
+            if (trackTaskClasses) {
+                getTaskClassUsage(task.getClass()).record(failed);
+            }
+        }
+    }
+
+    private TaskUsage getTaskClassUsage(Class<?> taskClass)
+    {
+        TaskUsage taskUsage = taskClassUsage.get(taskClass);
+        if (taskUsage != null) {
+            return taskUsage;
+        }
+        if (taskClassUsage.size() >= MAX_TASK_CLASSES) {
+            return otherTaskClassUsage;
+        }
+        return taskClassUsage.computeIfAbsent(taskClass, ignored -> new TaskUsage());
+    }
+
+    /**
+     * Returns the number of tasks that finished running, including the failed tasks.
+     */
+    @Managed
+    public long getCompletedTasks()
+    {
+        return usage.completedTasks.sum();
+    }
+
+    @Managed
+    public long getFailedTasks()
+    {
+        return usage.failedTasks.sum();
+    }
+
+    /**
+     * Returns the number of tasks whose usage was measured.
+     */
+    @Managed
+    public long getSampledTasks()
+    {
+        return usage.sampledTasks.sum();
+    }
+
+    @Managed
+    public long getCpuNanos()
+    {
+        return usage.cpuNanos.sum();
+    }
+
+    @Managed
+    public long getUserNanos()
+    {
+        return usage.userNanos.sum();
+    }
+
+    @Managed
+    public long getAllocatedBytes()
+    {
+        return usage.allocatedBytes.sum();
+    }
+
+    @Managed
+    public Map<String, Long> getCompletedTasksByTaskClass()
+    {
+        return byTaskClass(taskUsage -> taskUsage.completedTasks.sum());
+    }
+
+    @Managed
+    public Map<String, Long> getCpuNanosByTaskClass()
+    {
+        return byTaskClass(taskUsage -> taskUsage.cpuNanos.sum());
+    }
+
+    @Managed
+    public Map<String, Long> getAllocatedBytesByTaskClass()
+    {
+        return byTaskClass(taskUsage -> taskUsage.allocatedBytes.sum());
+    }
+
+    private Map<String, Long> byTaskClass(ToLongFunction<TaskUsage> value)
+    {
+        // classes loaded by different class loaders may share a name
+        Map<String, Long> values = new TreeMap<>();
+        taskClassUsage.forEach((taskClass, taskUsage) -> values.merge(taskClass.getName(), value.applyAsLong(taskUsage), Long::sum));
+        if (otherTaskClassUsage.completedTasks.sum() > 0) {
+            values.put(OTHER_TASK_CLASSES, value.applyAsLong(otherTaskClassUsage));
+        }
+        return ImmutableSortedMap.copyOf(values);
+    }
+
+    private static class TaskUsage
+    {
+        private final LongAdder completedTasks = new LongAdder();
+        private final LongAdder failedTasks = new LongAdder();
+        private final LongAdder sampledTasks = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private final LongAdder userNanos = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        public void record(boolean failed)
+        {
+            completedTasks.increment();
+            if (failed) {
+                failedTasks.increment();
+            }
+        }
+
+        public void recordSample(long cpuNanos, long userNanos, long allocatedBytes)
+        {
+            sampledTasks.increment();
+            this.cpuNanos.add(cpuNanos);
+            this.userNanos.add(userNanos);
+            this.allocatedBytes.add(allocatedBytes);
+        }
+    }
+}
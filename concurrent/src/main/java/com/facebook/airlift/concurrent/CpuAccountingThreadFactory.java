@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import com.google.common.annotations.Beta;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.facebook.airlift.concurrent.ThreadUsage.getCurrentThreadAllocatedBytes;
+import static com.facebook.airlift.concurrent.ThreadUsage.getCurrentThreadCpuNanos;
+import static com.facebook.airlift.concurrent.ThreadUsage.getCurrentThreadUserNanos;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Tracks the CPU time, user time and allocated bytes of all threads created
+ * by the delegate factory, for example the threads of one pool.
+ * <p>
+ * Running threads are only measured when the values are read, and a thread
+ * adds its final values to the totals when it exits, so there is no overhead
+ * per task.  Use {@link CpuAccountingExecutor} to also count the tasks, or to
+ * break the usage down by task class.
+ */
+@Beta
+@ThreadSafe
+public class CpuAccountingThreadFactory
+        implements ThreadFactory
+{
+    private final ThreadFactory delegate;
+
+    private final Set<Thread> liveThreads = ConcurrentHashMap.newKeySet();
+    private final LongAdder createdThreads = new LongAdder();
+    private final LongAdder exitedCpuNanos = new LongAdder();
+    private final LongAdder exitedUserNanos = new LongAdder();
+    private final LongAdder exitedAllocatedBytes = new LongAdder();
+
+    public CpuAccountingThreadFactory(ThreadFactory delegate)
+    {
+        this.delegate = requireNonNull(delegate, "delegate is null");
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+        requireNonNull(runnable, "runnable is null");
+        Thread thread = delegate.newThread(() -> run(runnable));
+        if (thread != null) {
+            createdThreads.increment();
+        }
+        return thread;
+    }
+
+    private void run(Runnable runnable)
+    {
+        liveThreads.add(Thread.currentThread());
+        try {
+            runnable.run();
+        }
+        finally {
+            exitedCpuNanos.add(getCurrentThreadCpuNanos());
+            exitedUserNanos.add(getCurrentThreadUserNanos());
+            exitedAllocatedBytes.add(getCurrentThreadAllocatedBytes());
+            liveThreads.remove(Thread.currentThread());
+        }
+    }
+
+    @Managed
+    public int getLiveThreads()
+    {
+        return liveThreads.size();
+    }
+
+    @Managed
+    public long getCreatedThreads()
+    {
+        return createdThreads.sum();
+    }
+
+    @Managed
+    public long getCpuNanos()
+    {
+        long cpuNanos = exitedCpuNanos.sum();
+        for (Thread thread : liveThreads) {
+            cpuNanos += ThreadUsage.getCpuNanos(thread);
+        }
+        return cpuNanos;
+    }
+
+    @Managed
+    public long getUserNanos()
+    {
+        long userNanos = exitedUserNanos.sum();
+        for (Thread thread : liveThreads) {
+            userNanos += ThreadUsage.getUserNanos(thread);
+        }
+        return userNanos;
+    }
+
+    @Managed
+    public long getAllocatedBytes()
+    {
+        long allocatedBytes = exitedAllocatedBytes.sum();
+        for (Thread thread : liveThreads) {
+            allocatedBytes += ThreadUsage.getAllocatedBytes(thread);
+        }
+        return allocatedBytes;
+    }
+}
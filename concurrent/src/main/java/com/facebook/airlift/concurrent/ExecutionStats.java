@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import com.facebook.airlift.stats.CounterStat;
+import com.facebook.airlift.stats.TimeStat;
+import com.google.common.annotations.Beta;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Statistics for the tasks run by a {@link BoundedExecutor},
+ * {@link AsyncSemaphore} or {@link ExecutorServiceAdapter}: how long tasks
+ * wait before they start, how long they run, and how many are rejected or
+ * fail.  Growing queue times show that the executor is saturated before the
+ * latency of the callers is affected.
+ * <p>
+ * The statistics are only recorded by executors created with an instance of
+ * this class.
+ */
+@Beta
+public class ExecutionStats
+{
+    private final TimeStat queueTime = new TimeStat(MILLISECONDS);
+    private final TimeStat executionTime = new TimeStat(MILLISECONDS);
+    private final CounterStat rejectedTasks = new CounterStat();
+    private final CounterStat failedTasks = new CounterStat();
+
+    Runnable instrument(Runnable task)
+    {
+        return new TimedTask(this, task, System.nanoTime());
+    }
+
+    /**
+     * Records the time the task waited since {@code queuedNanos} and returns
+     * the start time of the task.
+     */
+    long taskStarted(long queuedNanos)
+    {
+        long now = System.nanoTime();
+        queueTime.add(now - queuedNanos, NANOSECONDS);
+        return now;
+    }
+
+    void taskFinished(long startNanos)
+    {
+        executionTime.add(System.nanoTime() - startNanos, NANOSECONDS);
+    }
+
+    void taskFailed()
+    {
+        failedTasks.update(1);
+    }
+
+    void taskRejected()
+    {
+        rejectedTasks.update(1);
+    }
+
+    /**
+     * Time from the submission of a task until it starts.
+     */
+    @Managed
+    @Nested
+    public TimeStat getQueueTime()
+    {
+        return queueTime;
+    }
+
+    /**
+     * Time from the start of a task until it finishes.  For an
+     * {@link AsyncSemaphore}, this is the time the permit is held.
+     */
+    @Managed
+    @Nested
+    public TimeStat getExecutionTime()
+    {
+        return executionTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRejectedTasks()
+    {
+        return rejectedTasks;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailedTasks()
+    {
+        return failedTasks;
+    }
+
+    private static class TimedTask
+            implements Runnable
+    {
+        private final ExecutionStats stats;
+        private final Runnable task;
+        private final long queuedNanos;
+
+        public TimedTask(ExecutionStats stats, Runnable task, long queuedNanos)
+        {
+            this.stats = stats;
+            this.task = requireNonNull(task, "task is null");
+            this.queuedNanos = queuedNanos;
+        }
+
+        @Override
+        public void run()
+        {
+            long startNanos = stats.taskStarted(queuedNanos);
+            boolean failed = true;
+            try {
+                task.run();
+                failed = false;
+            }
+            finally {
+                stats.taskFinished(startNanos);
+                if (failed) {
+                    stats.taskFailed();
+                }
+            }
+        }
+    }
+}
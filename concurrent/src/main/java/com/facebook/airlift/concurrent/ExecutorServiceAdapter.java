@@ -1,7 +1,10 @@
 package com.facebook.airlift.concurrent;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -9,6 +12,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -21,10 +25,27 @@ public class ExecutorServiceAdapter
         implements ExecutorService
 {
     private final Executor executor;
+    @Nullable
+    private final ExecutionStats stats;
 
     public ExecutorServiceAdapter(Executor executor)
+    {
+        this(executor, Optional.empty());
+    }
+
+    /**
+     * Creates an adapter that records the queue and execution times of the
+     * tasks in the specified stats.
+     */
+    public ExecutorServiceAdapter(Executor executor, ExecutionStats stats)
+    {
+        this(executor, Optional.of(requireNonNull(stats, "stats is null")));
+    }
+
+    private ExecutorServiceAdapter(Executor executor, Optional<ExecutionStats> stats)
     {
         this.executor = requireNonNull(executor, "executor is null");
+        this.stats = stats.orElse(null);
     }
 
     public static ExecutorService from(Executor executor)
@@ -32,16 +53,32 @@ public class ExecutorServiceAdapter
         return new ExecutorServiceAdapter(executor);
     }
 
+    public static ExecutorService from(Executor executor, ExecutionStats stats)
+    {
+        return new ExecutorServiceAdapter(executor, stats);
+    }
+
     @Override
     public void execute(Runnable command)
     {
-        executor.execute(command);
+        if (stats == null) {
+            executor.execute(command);
+            return;
+        }
+
+        try {
+            executor.execute(stats.instrument(command));
+        }
+        catch (RejectedExecutionException e) {
+            stats.taskRejected();
+            throw e;
+        }
     }
 
     @Override
     public <T> Future<T> submit(Callable<T> task)
     {
-        FutureTask<T> futureTask = new FutureTask<>(task);
+        FutureTask<T> futureTask = stats == null ? new FutureTask<>(task) : new FailureCountingFutureTask<>(task, stats);
         execute(futureTask);
         return futureTask;
     }
@@ -116,4 +153,24 @@ public class ExecutorServiceAdapter
     {
         throw new UnsupportedOperationException();
     }
+
+    // FutureTask captures the exception of the task, so it is not seen by the instrumented runnable
+    private static class FailureCountingFutureTask<T>
+            extends FutureTask<T>
+    {
+        private final ExecutionStats stats;
+
+        public FailureCountingFutureTask(Callable<T> task, ExecutionStats stats)
+        {
+            super(task);
+            this.stats = stats;
+        }
+
+        @Override
+        protected void setException(Throwable throwable)
+        {
+            stats.taskFailed();
+            super.setException(throwable);
+        }
+    }
 }
@@ -47,7 +47,7 @@ public final class ExtendedSettableFuture<V>
                 // Opportunistically avoid calling getDone. This is critical for the performance
                 // of whenAnyCompleteCancelOthers because calling getDone for cancelled Future
                 // constructs CancellationException and populates stack trace.
-                // See BenchmarkWhenAnyCompleteCancelOthers for benchmark numbers.
+                // See BenchmarkMoreFutures for benchmark numbers.
                 return;
             }
 
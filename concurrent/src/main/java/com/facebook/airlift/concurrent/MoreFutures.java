@@ -1,7 +1,7 @@
 package com.facebook.airlift.concurrent;
 
-import com.google.common.util.concurrent.AsyncFunction;
-import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -11,6 +11,7 @@ import io.airlift.units.Duration;
 import javax.annotation.Nullable;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
@@ -25,17 +26,16 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Throwables.propagateIfPossible;
 import static com.google.common.base.Throwables.throwIfInstanceOf;
 import static com.google.common.collect.Iterables.isEmpty;
-import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
-import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -279,11 +279,7 @@ public final class MoreFutures
         requireNonNull(futures, "futures is null");
         checkArgument(!isEmpty(futures), "futures is empty");
 
-        ExtendedSettableFuture<V> firstCompletedFuture = ExtendedSettableFuture.create();
-        for (ListenableFuture<? extends V> future : futures) {
-            firstCompletedFuture.setAsync(future);
-        }
-        return firstCompletedFuture;
+        return AnyCompleteFuture.create(futures, false);
     }
 
     /**
@@ -301,15 +297,7 @@ public final class MoreFutures
         checkArgument(!isEmpty(futures), "futures is empty");
 
         // wait for the first task to unblock and then cancel all futures to free up resources
-        ListenableFuture<V> anyComplete = whenAnyComplete(futures);
-        anyComplete.addListener(
-                () -> {
-                    for (ListenableFuture<?> future : futures) {
-                        future.cancel(true);
-                    }
-                },
-                directExecutor());
-        return anyComplete;
+        return AnyCompleteFuture.create(futures, true);
     }
 
     /**
@@ -371,21 +359,19 @@ public final class MoreFutures
     @Deprecated
     public static <V> CompletableFuture<List<V>> allAsList(List<CompletableFuture<? extends V>> futures)
     {
-        CompletableFuture<Void> allDoneFuture = CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+        requireNonNull(futures, "futures is null");
+        UnmodifiableCompletableFuture<List<V>> result = new UnmodifiableCompletableFuture<>(mayInterrupt -> false);
+        if (futures.isEmpty()) {
+            result.internalComplete(new ArrayList<>());
+            return result;
+        }
 
-        // Eagerly propagate exceptions, rather than waiting for all the futures to complete first (default behavior)
+        // Eagerly propagate exceptions, rather than waiting for all the futures to complete first
+        AllAsListCallback<V> callback = new AllAsListCallback<>(futures, result);
         for (CompletableFuture<? extends V> future : futures) {
-            future.whenComplete((v, throwable) -> {
-                if (throwable != null) {
-                    allDoneFuture.completeExceptionally(throwable);
-                }
-            });
+            future.whenComplete(callback);
         }
-
-        return unmodifiableFuture(allDoneFuture.thenApply(v ->
-                futures.stream()
-                        .map(CompletableFuture::join)
-                        .collect(Collectors.<V>toList())));
+        return result;
     }
 
     /**
@@ -395,17 +381,12 @@ public final class MoreFutures
      */
     public static <T> ListenableFuture<T> addTimeout(ListenableFuture<T> future, Callable<T> onTimeout, Duration timeout, ScheduledExecutorService executorService)
     {
-        AsyncFunction<TimeoutException, T> timeoutHandler = timeoutException -> {
-            try {
-                return immediateFuture(onTimeout.call());
-            }
-            catch (Throwable throwable) {
-                return immediateFailedFuture(throwable);
-            }
-        };
-        return FluentFuture.from(future)
-                .withTimeout(timeout.toMillis(), MILLISECONDS, executorService)
-                .catchingAsync(TimeoutException.class, timeoutHandler, directExecutor());
+        requireNonNull(future, "future is null");
+        requireNonNull(onTimeout, "onTimeout is null");
+        requireNonNull(timeout, "timeout is null");
+        requireNonNull(executorService, "executorService is null");
+
+        return TimeoutFuture.create(future, onTimeout, timeout, executorService);
     }
 
     /**
@@ -447,29 +428,8 @@ public final class MoreFutures
     {
         requireNonNull(listenableFuture, "listenableFuture is null");
 
-        CompletableFuture<V> future = new CompletableFuture<>();
-        future.exceptionally(throwable -> {
-            if (throwable instanceof CancellationException) {
-                listenableFuture.cancel(true);
-            }
-            return null;
-        });
-
-        FutureCallback<V> callback = new FutureCallback<V>()
-        {
-            @Override
-            public void onSuccess(V result)
-            {
-                future.complete(result);
-            }
-
-            @Override
-            public void onFailure(Throwable t)
-            {
-                future.completeExceptionally(t);
-            }
-        };
-        Futures.addCallback(listenableFuture, callback, directExecutor());
+        ListenableCompletableFuture<V> future = new ListenableCompletableFuture<>(listenableFuture);
+        listenableFuture.addListener(future, directExecutor());
         return future;
     }
 
@@ -480,17 +440,9 @@ public final class MoreFutures
     public static <V> ListenableFuture<V> toListenableFuture(CompletableFuture<V> completableFuture)
     {
         requireNonNull(completableFuture, "completableFuture is null");
-        SettableFuture<V> future = SettableFuture.create();
-        propagateCancellation(future, completableFuture, true);
 
-        completableFuture.whenComplete((value, exception) -> {
-            if (exception != null) {
-                future.setException(exception);
-            }
-            else {
-                future.set(value);
-            }
-        });
+        CompletableListenableFuture<V> future = new CompletableListenableFuture<>(completableFuture);
+        completableFuture.whenComplete(future);
         return future;
     }
 
@@ -690,4 +642,284 @@ public final class MoreFutures
             }
         }
     }
+
+    /**
+     * Completes with the first of the futures to complete.  A single instance
+     * is the listener of all of the futures, instead of a listener per future
+     * on both sides.
+     */
+    private static final class AnyCompleteFuture<V>
+            extends AbstractFuture<V>
+            implements Runnable
+    {
+        private final List<ListenableFuture<? extends V>> futures;
+        private final boolean cancelOthers;
+
+        private AnyCompleteFuture(List<ListenableFuture<? extends V>> futures, boolean cancelOthers)
+        {
+            this.futures = futures;
+            this.cancelOthers = cancelOthers;
+        }
+
+        public static <V> ListenableFuture<V> create(Iterable<? extends ListenableFuture<? extends V>> futures, boolean cancelOthers)
+        {
+            AnyCompleteFuture<V> anyComplete = new AnyCompleteFuture<>(ImmutableList.copyOf(futures), cancelOthers);
+            for (ListenableFuture<? extends V> future : anyComplete.futures) {
+                future.addListener(anyComplete, directExecutor());
+            }
+            return anyComplete;
+        }
+
+        @Override
+        public void run()
+        {
+            if (isDone()) {
+                // Opportunistically avoid calling getDone. This is critical for the performance
+                // of whenAnyCompleteCancelOthers because calling getDone for cancelled Future
+                // constructs CancellationException and populates stack trace.
+                // See BenchmarkWhenAnyCompleteCancelOthers.
+                return;
+            }
+
+            // any future that is done completed before this listener ran, so it is as good a first as the one that triggered it
+            for (ListenableFuture<? extends V> future : futures) {
+                if (future.isDone()) {
+                    try {
+                        set(Futures.getDone(future));
+                    }
+                    catch (ExecutionException e) {
+                        setException(e.getCause());
+                    }
+                    catch (RuntimeException | Error e) {
+                        setException(e);
+                    }
+                    return;
+                }
+            }
+        }
+
+        @Override
+        protected void afterDone()
+        {
+            if (cancelOthers) {
+                for (ListenableFuture<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            else if (isCancelled()) {
+                boolean interrupt = wasInterrupted();
+                for (ListenableFuture<?> future : futures) {
+                    future.cancel(interrupt);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shared completion callback of all of the futures passed to {@link #allAsList(List)}.
+     */
+    private static final class AllAsListCallback<V>
+            implements BiConsumer<Object, Throwable>
+    {
+        private final List<CompletableFuture<? extends V>> futures;
+        private final UnmodifiableCompletableFuture<List<V>> result;
+        private final AtomicInteger remaining;
+
+        private AllAsListCallback(List<CompletableFuture<? extends V>> futures, UnmodifiableCompletableFuture<List<V>> result)
+        {
+            this.futures = futures;
+            this.result = result;
+            this.remaining = new AtomicInteger(futures.size());
+        }
+
+        @Override
+        public void accept(Object value, Throwable throwable)
+        {
+            if (throwable != null) {
+                result.internalCompleteExceptionally(throwable instanceof CompletionException ? throwable : new CompletionException(throwable));
+                return;
+            }
+            if (remaining.decrementAndGet() == 0) {
+                // every future completed normally
+                List<V> values = new ArrayList<>(futures.size());
+                for (CompletableFuture<? extends V> future : futures) {
+                    values.add(future.join());
+                }
+                result.internalComplete(values);
+            }
+        }
+    }
+
+    /**
+     * Result of {@link #addTimeout(ListenableFuture, Callable, Duration, ScheduledExecutorService)}.
+     * The same instance is the listener of the supplied future and the timeout
+     * task, and the references to the supplied future and timeout task are
+     * dropped as soon as it completes.
+     */
+    private static final class TimeoutFuture<T>
+            extends AbstractFuture<T>
+            implements Runnable, Callable<Void>
+    {
+        private volatile ListenableFuture<T> delegate;
+        private volatile Callable<T> onTimeout;
+        private volatile ScheduledFuture<?> timeoutTask;
+
+        private TimeoutFuture(ListenableFuture<T> delegate, Callable<T> onTimeout)
+        {
+            this.delegate = delegate;
+            this.onTimeout = onTimeout;
+        }
+
+        public static <T> ListenableFuture<T> create(ListenableFuture<T> future, Callable<T> onTimeout, Duration timeout, ScheduledExecutorService executorService)
+        {
+            TimeoutFuture<T> timeoutFuture = new TimeoutFuture<>(future, onTimeout);
+            ScheduledFuture<?> timeoutTask = executorService.schedule((Callable<Void>) timeoutFuture, timeout.toMillis(), MILLISECONDS);
+            timeoutFuture.timeoutTask = timeoutTask;
+            if (timeoutFuture.isDone()) {
+                // timed out or cancelled before the task was recorded
+                timeoutFuture.timeoutTask = null;
+                timeoutTask.cancel(false);
+            }
+            future.addListener(timeoutFuture, directExecutor());
+            return timeoutFuture;
+        }
+
+        /**
+         * Called when the supplied future completes.
+         */
+        @Override
+        public void run()
+        {
+            ListenableFuture<T> future = delegate;
+            if (future != null) {
+                setFuture(future);
+            }
+        }
+
+        /**
+         * Called when the timeout expires.
+         */
+        @Override
+        public Void call()
+        {
+            ListenableFuture<T> future = delegate;
+            Callable<T> onTimeout = this.onTimeout;
+            if (future == null || onTimeout == null || future.isDone()) {
+                return null;
+            }
+
+            boolean timedOut;
+            try {
+                timedOut = set(onTimeout.call());
+            }
+            catch (Throwable throwable) {
+                timedOut = setException(throwable);
+            }
+            if (timedOut) {
+                future.cancel(true);
+            }
+            return null;
+        }
+
+        @Override
+        protected void afterDone()
+        {
+            ListenableFuture<T> future = delegate;
+            if (future != null && isCancelled()) {
+                future.cancel(wasInterrupted());
+            }
+            ScheduledFuture<?> timeoutTask = this.timeoutTask;
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            this.delegate = null;
+            this.onTimeout = null;
+            this.timeoutTask = null;
+        }
+    }
+
+    /**
+     * A CompletableFuture completed by a ListenableFuture, which it listens to
+     * directly.  Cancellation is propagated to the ListenableFuture.
+     */
+    private static final class ListenableCompletableFuture<V>
+            extends CompletableFuture<V>
+            implements Runnable
+    {
+        private final ListenableFuture<V> listenableFuture;
+
+        private ListenableCompletableFuture(ListenableFuture<V> listenableFuture)
+        {
+            this.listenableFuture = listenableFuture;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                super.complete(Futures.getDone(listenableFuture));
+            }
+            catch (ExecutionException e) {
+                super.completeExceptionally(e.getCause());
+            }
+            catch (RuntimeException | Error e) {
+                super.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                listenableFuture.cancel(true);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable throwable)
+        {
+            boolean completed = super.completeExceptionally(throwable);
+            if (completed && throwable instanceof CancellationException) {
+                listenableFuture.cancel(true);
+            }
+            return completed;
+        }
+    }
+
+    /**
+     * A ListenableFuture completed by a CompletableFuture, which it is the
+     * completion callback of.  Cancellation is propagated to the CompletableFuture.
+     */
+    private static final class CompletableListenableFuture<V>
+            extends AbstractFuture<V>
+            implements BiConsumer<V, Throwable>
+    {
+        private final CompletableFuture<V> completableFuture;
+
+        private CompletableListenableFuture(CompletableFuture<V> completableFuture)
+        {
+            this.completableFuture = completableFuture;
+        }
+
+        @Override
+        public void accept(V value, Throwable exception)
+        {
+            if (exception != null) {
+                setException(exception);
+            }
+            else {
+                set(value);
+            }
+        }
+
+        @Override
+        protected void afterDone()
+        {
+            if (isCancelled()) {
+                completableFuture.cancel(true);
+            }
+        }
+    }
 }
@@ -23,6 +23,10 @@ import static java.util.Objects.requireNonNull;
 /**
  * Provides a ThreadLocal cache with a maximum cache size per thread.
  * Values must not be null.
+ * <p>
+ * Every thread loads and holds its own copy of each value.  When the cache
+ * is used by many threads, consider {@link TieredCache}, which shares the
+ * values between threads.
  *
  * @param <K> cache key type
  * @param <V> cache value type
@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Reads the CPU time, user time and allocated bytes of threads. Each value is
+ * zero when the JVM does not support or has disabled measuring it.
+ */
+final class ThreadUsage
+{
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCATION_MX_BEAN = getAllocationMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = THREAD_MX_BEAN.isThreadCpuTimeSupported();
+
+    private ThreadUsage() {}
+
+    public static long getCurrentThreadCpuNanos()
+    {
+        if (!CPU_TIME_SUPPORTED) {
+            return 0;
+        }
+        return Math.max(0, THREAD_MX_BEAN.getCurrentThreadCpuTime());
+    }
+
+    /**
+     * On Linux the JVM reads the user time from {@code /proc}, which is much
+     * slower than reading the CPU time.
+     */
+    public static long getCurrentThreadUserNanos()
+    {
+        if (!CPU_TIME_SUPPORTED) {
+            return 0;
+        }
+        return Math.max(0, THREAD_MX_BEAN.getCurrentThreadUserTime());
+    }
+
+    /**
+     * Java 8 has no cheap read of the current thread's allocated bytes, so the
+     * thread is looked up by id, which allocates and takes a JVM-wide lock.
+     */
+    public static long getCurrentThreadAllocatedBytes()
+    {
+        return getAllocatedBytes(Thread.currentThread());
+    }
+
+    public static long getCpuNanos(Thread thread)
+    {
+        if (!CPU_TIME_SUPPORTED) {
+            return 0;
+        }
+        return Math.max(0, THREAD_MX_BEAN.getThreadCpuTime(thread.getId()));
+    }
+
+    public static long getUserNanos(Thread thread)
+    {
+        if (!CPU_TIME_SUPPORTED) {
+            return 0;
+        }
+        return Math.max(0, THREAD_MX_BEAN.getThreadUserTime(thread.getId()));
+    }
+
+    public static long getAllocatedBytes(Thread thread)
+    {
+        if (ALLOCATION_MX_BEAN == null) {
+            return 0;
+        }
+        return Math.max(0, ALLOCATION_MX_BEAN.getThreadAllocatedBytes(thread.getId()));
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationMXBean()
+    {
+        if (!(THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+        if (!threadMXBean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        return threadMXBean;
+    }
+}
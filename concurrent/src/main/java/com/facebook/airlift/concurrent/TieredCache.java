@@ -0,0 +1,266 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.math.IntMath.ceilingPowerOfTwo;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A cache shared by all threads with a small per-thread cache in front of it.
+ * Values must not be null.
+ * <p>
+ * Unlike {@link ThreadLocalCache}, which keeps a full copy of the cache per
+ * thread, the values are held once in the shared cache, and a value is
+ * loaded once no matter how many threads request it at the same time.
+ * <ul>
+ * <li>The per-thread cache is a direct-mapped table: each key can only be
+ * stored in one slot, and a key mapped to an occupied slot replaces the
+ * previous entry.  Lookups take no locks and do not allocate.</li>
+ * <li>The shared cache is bounded by the total weight of its entries, so it
+ * can be sized in bytes with a weigher returning the size of each entry.
+ * Values evicted from the shared cache can still be referenced by the
+ * per-thread caches until they are replaced, so keep those small.</li>
+ * </ul>
+ *
+ * @param <K> cache key type
+ * @param <V> cache value type
+ */
+@ThreadSafe
+public final class TieredCache<K, V>
+{
+    // object header plus the array headers and slots of a table, assuming uncompressed references
+    private static final int THREAD_LOCAL_TABLE_OVERHEAD = 16 + 2 * 16 + 8;
+    private static final int REFERENCE_SIZE = 8;
+
+    @SuppressWarnings("ThreadLocalNotStaticFinal")
+    private final ThreadLocal<Table<K, V>> threadLocalTables;
+    private final int threadLocalSize;
+    private final LoadingCache<K, V> sharedCache;
+    private final Weigher<? super K, ? super V> weigher;
+
+    private volatile long generation;
+
+    private final LongAdder threadLocalTableCount = new LongAdder();
+    private final LongAdder threadLocalHits = new LongAdder();
+    private final LongAdder threadLocalMisses = new LongAdder();
+    private final LongAdder sharedWeight = new LongAdder();
+
+    /**
+     * Creates a cache bounded by the number of entries in the shared cache.
+     */
+    public TieredCache(int threadLocalSize, long maxSharedSize, Function<K, V> loader)
+    {
+        this(threadLocalSize, maxSharedSize, (key, value) -> 1, loader);
+    }
+
+    /**
+     * Creates a cache bounded by the total weight of the entries in the shared
+     * cache.
+     *
+     * @param threadLocalSize the number of slots of the per-thread cache,
+     * rounded up to a power of two
+     * @param maxSharedWeight the maximum total weight of the shared cache
+     * @param weigher the weight of an entry, for example its estimated size in bytes
+     */
+    public TieredCache(int threadLocalSize, long maxSharedWeight, Weigher<? super K, ? super V> weigher, Function<K, V> loader)
+    {
+        checkArgument(threadLocalSize > 0, "threadLocalSize must be greater than zero");
+        checkArgument(threadLocalSize <= 1 << 20, "threadLocalSize is too large");
+        checkArgument(maxSharedWeight >= 0, "maxSharedWeight is negative");
+        this.weigher = requireNonNull(weigher, "weigher is null");
+        requireNonNull(loader, "loader is null");
+
+        this.threadLocalSize = ceilingPowerOfTwo(threadLocalSize);
+        this.threadLocalTables = ThreadLocal.withInitial(() -> {
+            threadLocalTableCount.increment();
+            return new Table<>(this.threadLocalSize);
+        });
+
+        RemovalListener<K, V> removalListener = notification -> sharedWeight.add(-weigher.weigh(notification.getKey(), notification.getValue()));
+        this.sharedCache = CacheBuilder.newBuilder()
+                .maximumWeight(maxSharedWeight)
+                .weigher(weigher)
+                .removalListener(removalListener)
+                .recordStats()
+                .build(CacheLoader.from(key -> {
+                    V value = requireNonNull(loader.apply(key), "loader returned null value");
+                    sharedWeight.add(weigher.weigh(key, value));
+                    return value;
+                }));
+    }
+
+    public V get(K key)
+    {
+        requireNonNull(key, "key is null");
+
+        Table<K, V> table = threadLocalTables.get();
+        long generation = this.generation;
+        if (table.generation != generation) {
+            table.clear(generation);
+        }
+
+        int slot = spread(key.hashCode()) & (threadLocalSize - 1);
+        K cachedKey = table.keys[slot];
+        if (cachedKey != null && (cachedKey == key || cachedKey.equals(key))) {
+            threadLocalHits.increment();
+            return table.values[slot];
+        }
+        threadLocalMisses.increment();
+
+        V value;
+        try {
+            value = sharedCache.getUnchecked(key);
+        }
+        catch (UncheckedExecutionException e) {
+            throwIfUnchecked(e.getCause());
+            throw e;
+        }
+        table.keys[slot] = key;
+        table.values[slot] = value;
+        return value;
+    }
+
+    /**
+     * Removes all entries from the shared cache.  The per-thread caches are
+     * cleared by each thread on its next lookup.
+     */
+    @Managed
+    public synchronized void invalidateAll()
+    {
+        // clear the shared cache first, so a thread that sees the new generation
+        // cannot reload an old value from the shared cache into its table
+        sharedCache.invalidateAll();
+        generation++;
+    }
+
+    @Managed
+    public long getThreadLocalHits()
+    {
+        return threadLocalHits.sum();
+    }
+
+    @Managed
+    public long getThreadLocalMisses()
+    {
+        return threadLocalMisses.sum();
+    }
+
+    @Managed
+    public double getThreadLocalHitRate()
+    {
+        long hits = threadLocalHits.sum();
+        long requests = hits + threadLocalMisses.sum();
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    /**
+     * Returns the hit rate of the shared cache, for the lookups that missed
+     * the per-thread cache.
+     */
+    @Managed
+    public double getSharedHitRate()
+    {
+        return sharedCache.stats().hitRate();
+    }
+
+    @Managed
+    public long getSharedLoads()
+    {
+        return sharedCache.stats().loadCount();
+    }
+
+    @Managed
+    public long getSharedEvictions()
+    {
+        return sharedCache.stats().evictionCount();
+    }
+
+    @Managed
+    public long getSharedSize()
+    {
+        return sharedCache.size();
+    }
+
+    /**
+     * Returns the total weight of the entries in the shared cache, an estimate
+     * of its memory usage when the weigher returns sizes in bytes.
+     */
+    @Managed
+    public long getSharedWeight()
+    {
+        return sharedWeight.sum();
+    }
+
+    /**
+     * Returns the number of per-thread caches created, which includes the
+     * caches of threads that have since exited.
+     */
+    @Managed
+    public long getThreadLocalTables()
+    {
+        return threadLocalTableCount.sum();
+    }
+
+    /**
+     * Returns an upper bound of the memory used by the per-thread caches
+     * themselves, excluding the keys and values they reference.
+     */
+    @Managed
+    public long getEstimatedThreadLocalBytes()
+    {
+        return threadLocalTableCount.sum() * (THREAD_LOCAL_TABLE_OVERHEAD + 2L * REFERENCE_SIZE * threadLocalSize);
+    }
+
+    private static int spread(int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static class Table<K, V>
+    {
+        private final K[] keys;
+        private final V[] values;
+        private long generation;
+
+        @SuppressWarnings("unchecked")
+        public Table(int size)
+        {
+            keys = (K[]) new Object[size];
+            values = (V[]) new Object[size];
+        }
+
+        public void clear(long generation)
+        {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,527 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A {@link ScheduledExecutorService} for large numbers of short lived timers,
+ * such as request timeouts, that are usually canceled before they expire.
+ * <p>
+ * Timers are kept in a hashed timing wheel: a ring of buckets, each holding
+ * the timers expiring in one tick, with a round count for timers further
+ * away than one turn of the wheel.  Scheduling and canceling a timer are
+ * constant time and lock free; the timer thread moves new timers into their
+ * bucket and unlinks canceled ones once per tick.  The price is precision:
+ * a timer fires on the first tick at or after its deadline, so up to one
+ * tick late.
+ * <p>
+ * Expired tasks run on a separate pool of threads, so a slow task does not
+ * delay the other timers.  As with {@link java.util.concurrent.ScheduledThreadPoolExecutor},
+ * delayed tasks still run after {@link #shutdown()}, but periodic tasks do not.
+ */
+@ThreadSafe
+public class TimingWheelScheduledExecutor
+        extends AbstractExecutorService
+        implements ScheduledExecutorService
+{
+    private static final Duration DEFAULT_TICK_DURATION = new Duration(10, MILLISECONDS);
+    private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket[] wheel;
+    private final long startNanos = System.nanoTime();
+    private final Queue<TimerTask<?>> newTimers = new ConcurrentLinkedQueue<>();
+    private final Queue<TimerTask<?>> canceledTimers = new ConcurrentLinkedQueue<>();
+    private final LongAdder pendingTimers = new LongAdder();
+    private final ExecutorService taskExecutor;
+    private final Thread timerThread;
+    private final CountDownLatch timerTerminated = new CountDownLatch(1);
+    private final List<Runnable> unexpiredTimers = new ArrayList<>();
+    private volatile boolean shutdown;
+    private volatile boolean stopped;
+
+    public TimingWheelScheduledExecutor(String threadBaseName, int threads)
+    {
+        this(threadBaseName, threads, DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    public TimingWheelScheduledExecutor(String threadBaseName, int threads, Duration tickDuration, int ticksPerWheel)
+    {
+        requireNonNull(threadBaseName, "threadBaseName is null");
+        checkArgument(threads > 0, "threads must be at least one");
+        requireNonNull(tickDuration, "tickDuration is null");
+        checkArgument(tickDuration.roundTo(NANOSECONDS) > 0, "tickDuration must be positive");
+        checkArgument(ticksPerWheel > 0 && Integer.bitCount(ticksPerWheel) == 1, "ticksPerWheel must be a power of two");
+
+        this.tickNanos = tickDuration.roundTo(NANOSECONDS);
+        this.mask = ticksPerWheel - 1;
+        this.wheel = new Bucket[ticksPerWheel];
+        for (int i = 0; i < ticksPerWheel; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        this.taskExecutor = Executors.newFixedThreadPool(threads, daemonThreadsNamed(threadBaseName + "-%s"));
+        this.timerThread = daemonThreadsNamed(threadBaseName + "-timer-%s").newThread(this::runTimer);
+        timerThread.start();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+    {
+        requireNonNull(command, "command is null");
+        return schedule(new TimerTask<Void>(command, null, deadline(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit)
+    {
+        requireNonNull(callable, "callable is null");
+        return schedule(new TimerTask<>(callable, deadline(delay, unit), 0));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit)
+    {
+        requireNonNull(command, "command is null");
+        checkArgument(period > 0, "period must be positive");
+        return schedule(new TimerTask<Void>(command, null, deadline(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit)
+    {
+        requireNonNull(command, "command is null");
+        checkArgument(delay > 0, "delay must be positive");
+        return schedule(new TimerTask<Void>(command, null, deadline(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    @Override
+    public void execute(Runnable command)
+    {
+        requireNonNull(command, "command is null");
+        // the task executor stays open after shutdown, so expired delayed tasks can still run
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        taskExecutor.execute(command);
+    }
+
+    @Override
+    public void shutdown()
+    {
+        shutdown = true;
+        LockSupport.unpark(timerThread);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        shutdown = true;
+        stopped = true;
+        LockSupport.unpark(timerThread);
+        awaitTimerTermination();
+
+        List<Runnable> tasks = new ArrayList<>();
+        synchronized (unexpiredTimers) {
+            tasks.addAll(unexpiredTimers);
+        }
+        tasks.addAll(taskExecutor.shutdownNow());
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return timerTerminated.getCount() == 0 && taskExecutor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!timerTerminated.await(timeout, unit)) {
+            return false;
+        }
+        return taskExecutor.awaitTermination(deadline - System.nanoTime(), NANOSECONDS);
+    }
+
+    /**
+     * Number of scheduled tasks that have not expired or been removed after
+     * cancellation.
+     */
+    @Managed
+    public int getPendingTimers()
+    {
+        return pendingTimers.intValue();
+    }
+
+    private <V> TimerTask<V> schedule(TimerTask<V> task)
+    {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        pendingTimers.increment();
+        newTimers.add(task);
+
+        // the timer thread may have stopped before the task was added
+        if (shutdown && newTimers.remove(task)) {
+            pendingTimers.decrement();
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        return task;
+    }
+
+    private void reschedule(TimerTask<?> task)
+    {
+        if (shutdown) {
+            task.cancel(false);
+            return;
+        }
+        pendingTimers.increment();
+        newTimers.add(task);
+        if (shutdown && newTimers.remove(task)) {
+            pendingTimers.decrement();
+            task.cancel(false);
+        }
+    }
+
+    private static long deadline(long delay, TimeUnit unit)
+    {
+        // avoid overflow for very long delays, which will never expire in practice
+        long delayNanos = Math.min(unit.toNanos(Math.max(delay, 0)), Long.MAX_VALUE >> 2);
+        return System.nanoTime() + delayNanos;
+    }
+
+    private void runTimer()
+    {
+        try {
+            long tick = 0;
+            boolean periodicTimersCanceled = false;
+            while (!isTimerDone()) {
+                if (shutdown && !periodicTimersCanceled) {
+                    cancelPeriodicTimers();
+                    periodicTimersCanceled = true;
+                }
+
+                // wait for the end of the tick, so every timer in the bucket has expired
+                long tickEnd = startNanos + (tick + 1) * tickNanos;
+                long remaining = tickEnd - System.nanoTime();
+                while (remaining > 0 && !stopped) {
+                    LockSupport.parkNanos(this, remaining);
+                    remaining = tickEnd - System.nanoTime();
+                }
+                if (stopped) {
+                    break;
+                }
+
+                removeCanceledTimers();
+                addNewTimers(tick);
+                expireTimers(wheel[(int) (tick & mask)]);
+                tick++;
+            }
+        }
+        finally {
+            cancelUnexpiredTimers();
+            taskExecutor.shutdown();
+            timerTerminated.countDown();
+        }
+    }
+
+    private boolean isTimerDone()
+    {
+        // after shutdown, the timer runs until the delayed tasks have expired
+        return stopped || (shutdown && pendingTimers.sum() == 0);
+    }
+
+    private void cancelPeriodicTimers()
+    {
+        for (Bucket bucket : wheel) {
+            for (TimerTask<?> task = bucket.head; task != null; task = task.next) {
+                if (task.isPeriodic()) {
+                    task.cancel(false);
+                }
+            }
+        }
+        for (TimerTask<?> task : newTimers) {
+            if (task.isPeriodic()) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private void removeCanceledTimers()
+    {
+        for (TimerTask<?> task = canceledTimers.poll(); task != null; task = canceledTimers.poll()) {
+            // tasks not added to the wheel yet are dropped when they are added
+            if (task.bucket != null) {
+                task.bucket.remove(task);
+                pendingTimers.decrement();
+            }
+        }
+    }
+
+    private void addNewTimers(long tick)
+    {
+        for (TimerTask<?> task = newTimers.poll(); task != null; task = newTimers.poll()) {
+            if (task.isCancelled()) {
+                pendingTimers.decrement();
+                continue;
+            }
+
+            // the task expires on the first tick that ends after its deadline
+            long expirationTick = Math.max(tick, ceilDiv(task.deadline - startNanos, tickNanos) - 1);
+            task.remainingRounds = (expirationTick - tick) / wheel.length;
+            wheel[(int) (expirationTick & mask)].add(task);
+        }
+    }
+
+    private void expireTimers(Bucket bucket)
+    {
+        TimerTask<?> task = bucket.head;
+        while (task != null) {
+            TimerTask<?> next = task.next;
+            if (task.isCancelled()) {
+                bucket.remove(task);
+                pendingTimers.decrement();
+            }
+            else if (task.remainingRounds <= 0) {
+                bucket.remove(task);
+                pendingTimers.decrement();
+                if (shutdown && task.isPeriodic()) {
+                    task.cancel(false);
+                }
+                else {
+                    dispatch(task);
+                }
+            }
+            else {
+                task.remainingRounds--;
+            }
+            task = next;
+        }
+    }
+
+    private void dispatch(TimerTask<?> task)
+    {
+        try {
+            taskExecutor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            task.cancel(false);
+        }
+    }
+
+    private void cancelUnexpiredTimers()
+    {
+        List<TimerTask<?>> tasks = new ArrayList<>();
+        for (Bucket bucket : wheel) {
+            while (bucket.head != null) {
+                TimerTask<?> task = bucket.head;
+                bucket.remove(task);
+                tasks.add(task);
+            }
+        }
+        for (TimerTask<?> task = newTimers.poll(); task != null; task = newTimers.poll()) {
+            tasks.add(task);
+        }
+        canceledTimers.clear();
+
+        for (TimerTask<?> task : tasks) {
+            pendingTimers.decrement();
+            if (task.cancel(false)) {
+                synchronized (unexpiredTimers) {
+                    unexpiredTimers.add(task);
+                }
+            }
+        }
+    }
+
+    private void awaitTimerTermination()
+    {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                timerTerminated.await();
+                break;
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long ceilDiv(long dividend, long divisor)
+    {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+
+    /**
+     * Doubly linked list of the timers expiring on one tick of the wheel.
+     * Only accessed by the timer thread.
+     */
+    private static class Bucket
+    {
+        private TimerTask<?> head;
+        private TimerTask<?> tail;
+
+        public void add(TimerTask<?> task)
+        {
+            task.bucket = this;
+            task.previous = tail;
+            task.next = null;
+            if (tail == null) {
+                head = task;
+            }
+            else {
+                tail.next = task;
+            }
+            tail = task;
+        }
+
+        public void remove(TimerTask<?> task)
+        {
+            if (task.previous == null) {
+                head = task.next;
+            }
+            else {
+                task.previous.next = task.next;
+            }
+            if (task.next == null) {
+                tail = task.previous;
+            }
+            else {
+                task.next.previous = task.previous;
+            }
+            task.bucket = null;
+            task.previous = null;
+            task.next = null;
+        }
+    }
+
+    private class TimerTask<V>
+            extends FutureTask<V>
+            implements RunnableScheduledFuture<V>
+    {
+        // positive for a fixed rate, negative for a fixed delay, zero for a one-shot task
+        private final long period;
+        private volatile long deadline;
+
+        // owned by the timer thread
+        private Bucket bucket;
+        private TimerTask<?> previous;
+        private TimerTask<?> next;
+        private long remainingRounds;
+
+        public TimerTask(Callable<V> callable, long deadline, long period)
+        {
+            super(callable);
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        public TimerTask(Runnable runnable, V result, long deadline, long period)
+        {
+            super(runnable, result);
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        @Override
+        public boolean isPeriodic()
+        {
+            return period != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(deadline - System.nanoTime(), NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other)
+        {
+            if (other == this) {
+                return 0;
+            }
+            if (other instanceof TimerTask) {
+                return Long.compare(deadline - ((TimerTask<?>) other).deadline, 0);
+            }
+            return Long.compare(getDelay(NANOSECONDS), other.getDelay(NANOSECONDS));
+        }
+
+        @Override
+        public void run()
+        {
+            if (!isPeriodic()) {
+                super.run();
+            }
+            else if (runAndReset()) {
+                deadline = (period > 0) ? deadline + period : System.nanoTime() - period;
+                reschedule(this);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            boolean canceled = super.cancel(mayInterruptIfRunning);
+            if (canceled && timerTerminated.getCount() > 0) {
+                // unlinked from its bucket on the next tick
+                canceledTimers.add(this);
+            }
+            return canceled;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import com.facebook.airlift.log.Logger;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs tasks submitted for different keys, such as tenants or queries, on at
+ * most maxThreads threads of the coreExecutor, sharing the threads between
+ * the keys in proportion to their weights.
+ * <p>
+ * There are a few interesting properties:
+ * <ul>
+ * <li>Each key has a weight (default 1).  While keys have tasks waiting, the
+ * number of tasks started for each key is proportional to its weight.  A key
+ * that was idle does not accumulate credit, so it cannot starve the other
+ * keys when it becomes active.</li>
+ * <li>Each key can be limited to a maximum number of concurrently running
+ * tasks.  Threads not usable by a key at its limit run tasks of other keys.</li>
+ * <li>Tasks of a key are started in priority order, highest first, and in
+ * submission order for equal priorities.</li>
+ * <li>Idle threads take the next task of any key, so threads are never idle
+ * while a task can be started.</li>
+ * </ul>
+ * <p>
+ * Tasks are added to and taken from the queue of their key under the lock of
+ * that queue.  The executor lock only guards the scheduling state, so
+ * submitting threads hold it for a constant amount of work, regardless of the
+ * number of queued tasks.
+ */
+@ThreadSafe
+public class WeightedFairExecutor<K>
+{
+    private static final Logger log = Logger.get(WeightedFairExecutor.class);
+
+    private final Executor coreExecutor;
+    private final int maxThreads;
+
+    @GuardedBy("this")
+    private final Map<K, KeySettings> settings = new HashMap<>();
+    private final ConcurrentMap<K, KeyQueue<K>> queues = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    // keys with queued tasks and below their concurrency limit, by next start time
+    @GuardedBy("this")
+    private final PriorityQueue<KeyQueue<K>> eligibleKeys = new PriorityQueue<>(Comparator.<KeyQueue<K>>comparingDouble(queue -> queue.pass).thenComparingLong(queue -> queue.id));
+    @GuardedBy("this")
+    private double virtualTime;
+    @GuardedBy("this")
+    private int workers;
+    @GuardedBy("this")
+    private int queuedTasks;
+    @GuardedBy("this")
+    private int runningTasks;
+    private volatile boolean failed;
+
+    public WeightedFairExecutor(Executor coreExecutor, int maxThreads)
+    {
+        this.coreExecutor = requireNonNull(coreExecutor, "coreExecutor is null");
+        checkArgument(maxThreads > 0, "maxThreads must be greater than zero");
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * Sets the share of the threads for the key, relative to the weights of
+     * the other keys.
+     */
+    public synchronized void setWeight(K key, int weight)
+    {
+        requireNonNull(key, "key is null");
+        checkArgument(weight > 0, "weight must be greater than zero");
+        settings.put(key, new KeySettings(weight, getSettings(key).maxConcurrency));
+        settingsChanged(key);
+    }
+
+    /**
+     * Sets the maximum number of tasks of the key running at the same time.
+     */
+    public synchronized void setMaxConcurrency(K key, int maxConcurrency)
+    {
+        requireNonNull(key, "key is null");
+        checkArgument(maxConcurrency > 0, "maxConcurrency must be greater than zero");
+        settings.put(key, new KeySettings(getSettings(key).weight, maxConcurrency));
+        settingsChanged(key);
+    }
+
+    /**
+     * Restores the default weight and concurrency limit of the key.
+     */
+    public synchronized void removeSettings(K key)
+    {
+        requireNonNull(key, "key is null");
+        settings.remove(key);
+        settingsChanged(key);
+    }
+
+    /**
+     * Returns an executor that runs tasks for the key with priority zero.
+     */
+    public Executor forKey(K key)
+    {
+        requireNonNull(key, "key is null");
+        return task -> execute(key, task);
+    }
+
+    public void execute(K key, Runnable task)
+    {
+        execute(key, 0, task);
+    }
+
+    public void execute(K key, int priority, Runnable task)
+    {
+        requireNonNull(key, "key is null");
+        requireNonNull(task, "task is null");
+        checkState(!failed, "WeightedFairExecutor is in a failed state");
+
+        KeyQueue<K> queue = queues.computeIfAbsent(key, this::newQueue);
+        while (!queue.add(task, priority)) {
+            // the queue was removed when the key became idle
+            queue = queues.computeIfAbsent(key, this::newQueue);
+        }
+        taskQueued(queue);
+    }
+
+    @Managed
+    public synchronized int getQueuedTasks()
+    {
+        return queuedTasks;
+    }
+
+    @Managed
+    public synchronized int getRunningTasks()
+    {
+        return runningTasks;
+    }
+
+    @Managed
+    public synchronized int getActiveWorkers()
+    {
+        return workers;
+    }
+
+    @Managed
+    public int getMaxThreads()
+    {
+        return maxThreads;
+    }
+
+    @Managed
+    public synchronized Map<String, Integer> getQueuedTasksByKey()
+    {
+        return queues.values().stream()
+                .collect(toImmutableMap(queue -> String.valueOf(queue.key), queue -> queue.queued));
+    }
+
+    @Managed
+    public synchronized Map<String, Integer> getRunningTasksByKey()
+    {
+        return queues.values().stream()
+                .collect(toImmutableMap(queue -> String.valueOf(queue.key), queue -> queue.running));
+    }
+
+    public synchronized int getQueuedTasks(K key)
+    {
+        KeyQueue<K> queue = queues.get(key);
+        return queue == null ? 0 : queue.queued;
+    }
+
+    public synchronized int getRunningTasks(K key)
+    {
+        KeyQueue<K> queue = queues.get(key);
+        return queue == null ? 0 : queue.running;
+    }
+
+    private KeyQueue<K> newQueue(K key)
+    {
+        return new KeyQueue<>(key, nextId.getAndIncrement());
+    }
+
+    /**
+     * Accounts for a task added to the queue.  Tasks are counted after they
+     * are added, so a key with counted tasks always has a task to take.
+     */
+    private synchronized void taskQueued(KeyQueue<K> queue)
+    {
+        if (queue.settings == null) {
+            queue.settings = getSettings(queue.key);
+        }
+        queue.queued++;
+        queuedTasks++;
+
+        if (!queue.eligible && isEligible(queue)) {
+            makeEligible(queue);
+        }
+        if (queue.eligible) {
+            startWorkers(1);
+        }
+    }
+
+    @GuardedBy("this")
+    private KeySettings getSettings(K key)
+    {
+        KeySettings keySettings = settings.get(key);
+        if (keySettings == null) {
+            return new KeySettings(1, maxThreads);
+        }
+        return keySettings;
+    }
+
+    @GuardedBy("this")
+    private void settingsChanged(K key)
+    {
+        KeyQueue<K> queue = queues.get(key);
+        if (queue == null) {
+            return;
+        }
+        queue.settings = getSettings(key);
+        if (!queue.eligible && isEligible(queue)) {
+            makeEligible(queue);
+        }
+        if (queue.eligible) {
+            // a higher limit can make several tasks of the key runnable
+            startWorkers(Math.min(queue.queued, queue.settings.maxConcurrency - queue.running));
+        }
+    }
+
+    /**
+     * Starts up to count workers.  A worker exits when it finds no task to
+     * run, so a worker started for a task another worker took is harmless.
+     */
+    @GuardedBy("this")
+    private void startWorkers(int count)
+    {
+        for (int i = 0; i < count && workers < maxThreads; i++) {
+            workers++;
+            try {
+                coreExecutor.execute(this::drain);
+            }
+            catch (Throwable e) {
+                workers--;
+                failed = true;
+                log.error("WeightedFairExecutor state corrupted due to underlying executor failure");
+                throw e;
+            }
+        }
+    }
+
+    private void drain()
+    {
+        KeyQueue<K> current = null;
+        while (true) {
+            synchronized (this) {
+                if (current != null) {
+                    taskFinished(current);
+                }
+                current = nextEligibleKey();
+                if (current == null) {
+                    workers--;
+                    return;
+                }
+                startTask(current);
+            }
+
+            // the running task keeps the queue from being removed
+            Runnable task = current.poll();
+            try {
+                task.run();
+            }
+            catch (Throwable e) {
+                log.error(e, "Task failed");
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private KeyQueue<K> nextEligibleKey()
+    {
+        KeyQueue<K> queue = eligibleKeys.poll();
+        while (queue != null) {
+            queue.eligible = false;
+            // the concurrency limit of the key may have been lowered while it was waiting
+            if (isEligible(queue)) {
+                return queue;
+            }
+            queue = eligibleKeys.poll();
+        }
+        return null;
+    }
+
+    @GuardedBy("this")
+    private void startTask(KeyQueue<K> queue)
+    {
+        queue.queued--;
+        queuedTasks--;
+        queue.running++;
+        runningTasks++;
+
+        // stride scheduling: a key is charged the inverse of its weight for each started task
+        virtualTime = queue.pass;
+        queue.pass += 1.0 / queue.settings.weight;
+
+        if (isEligible(queue)) {
+            makeEligible(queue);
+        }
+    }
+
+    @GuardedBy("this")
+    private void taskFinished(KeyQueue<K> queue)
+    {
+        queue.running--;
+        runningTasks--;
+        if (queue.queued == 0 && queue.running == 0) {
+            // a task added but not yet counted keeps the queue
+            queue.removeIfEmpty(queues);
+        }
+        else if (!queue.eligible && isEligible(queue)) {
+            makeEligible(queue);
+        }
+    }
+
+    @GuardedBy("this")
+    private void makeEligible(KeyQueue<K> queue)
+    {
+        queue.pass = Math.max(queue.pass, virtualTime);
+        queue.eligible = true;
+        eligibleKeys.add(queue);
+    }
+
+    private static boolean isEligible(KeyQueue<?> queue)
+    {
+        return queue.queued > 0 && queue.running < queue.settings.maxConcurrency;
+    }
+
+    private static class KeySettings
+    {
+        private final int weight;
+        private final int maxConcurrency;
+
+        private KeySettings(int weight, int maxConcurrency)
+        {
+            this.weight = weight;
+            this.maxConcurrency = maxConcurrency;
+        }
+    }
+
+    private static class KeyQueue<K>
+    {
+        private final K key;
+        private final long id;
+
+        @GuardedBy("this")
+        private final PriorityQueue<QueuedTask> tasks = new PriorityQueue<>();
+        @GuardedBy("this")
+        private long nextSequence;
+        @GuardedBy("this")
+        private boolean removed;
+
+        // scheduling state, guarded by the executor
+        private KeySettings settings;
+        private int queued;
+        private double pass;
+        private int running;
+        private boolean eligible;
+
+        private KeyQueue(K key, long id)
+        {
+            this.key = key;
+            this.id = id;
+        }
+
+        /**
+         * Returns false if the queue has been removed, and a new queue must be
+         * created for the key.
+         */
+        public synchronized boolean add(Runnable task, int priority)
+        {
+            if (removed) {
+                return false;
+            }
+            tasks.add(new QueuedTask(task, priority, nextSequence++));
+            return true;
+        }
+
+        public synchronized Runnable poll()
+        {
+            QueuedTask task = tasks.poll();
+            checkState(task != null, "no task queued for %s", key);
+            return task.task;
+        }
+
+        public synchronized void removeIfEmpty(Map<K, KeyQueue<K>> queues)
+        {
+            if (tasks.isEmpty()) {
+                removed = true;
+                queues.remove(key, this);
+            }
+        }
+    }
+
+    private static class QueuedTask
+            implements Comparable<QueuedTask>
+    {
+        private final Runnable task;
+        private final int priority;
+        private final long sequence;
+
+        private QueuedTask(Runnable task, int priority, long sequence)
+        {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(QueuedTask other)
+        {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
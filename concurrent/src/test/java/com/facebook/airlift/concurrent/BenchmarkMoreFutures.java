@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.airlift.units.Duration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.facebook.airlift.concurrent.MoreFutures.addTimeout;
+import static com.facebook.airlift.concurrent.MoreFutures.allAsList;
+import static com.facebook.airlift.concurrent.MoreFutures.toCompletableFuture;
+import static com.facebook.airlift.concurrent.MoreFutures.toListenableFuture;
+import static com.facebook.airlift.concurrent.MoreFutures.whenAnyComplete;
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkMoreFutures
+{
+    @Benchmark
+    public Object benchmarkWhenAnyComplete(FutureCountData data)
+            throws Exception
+    {
+        List<SettableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < data.futureCount; i++) {
+            futures.add(SettableFuture.create());
+        }
+        ListenableFuture<?> anyComplete = whenAnyComplete(futures);
+        futures.get(data.futureCount / 2).set(null);
+        return anyComplete.get();
+    }
+
+    @Benchmark
+    public Object benchmarkAllAsList(FutureCountData data)
+    {
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < data.futureCount; i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        CompletableFuture<List<Object>> all = allAsList(ImmutableList.copyOf(futures));
+        for (CompletableFuture<Object> future : futures) {
+            future.complete(data);
+        }
+        return all.join();
+    }
+
+    @Benchmark
+    public Object benchmarkAddTimeoutNotReached(SchedulerData data)
+            throws Exception
+    {
+        SettableFuture<Object> future = SettableFuture.create();
+        ListenableFuture<Object> timeoutFuture = addTimeout(future, () -> null, data.timeout, data.scheduler);
+        future.set(data);
+        return timeoutFuture.get();
+    }
+
+    @Benchmark
+    public Object benchmarkToCompletableFuture()
+    {
+        SettableFuture<Object> future = SettableFuture.create();
+        CompletableFuture<Object> completableFuture = toCompletableFuture(future);
+        future.set(this);
+        return completableFuture.join();
+    }
+
+    @Benchmark
+    public Object benchmarkToListenableFuture()
+            throws Exception
+    {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        ListenableFuture<Object> listenableFuture = toListenableFuture(future);
+        future.complete(this);
+        return listenableFuture.get();
+    }
+
+    @State(Scope.Thread)
+    public static class FutureCountData
+    {
+        @Param({"1", "300", "1000"})
+        private int futureCount;
+    }
+
+    @State(Scope.Thread)
+    public static class SchedulerData
+    {
+        private final Duration timeout = new Duration(10, SECONDS);
+        private ScheduledThreadPoolExecutor scheduler;
+
+        @Setup
+        public void setup()
+        {
+            scheduler = new ScheduledThreadPoolExecutor(1, daemonThreadsNamed("benchmark-timeout-%s"));
+            // timers are canceled as soon as the future completes, so drop them from the queue immediately
+            scheduler.setRemoveOnCancelPolicy(true);
+        }
+
+        @TearDown
+        public void tearDown()
+        {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkMoreFutures.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+
+/**
+ * Schedules a timeout and cancels it, the common case for request timeouts,
+ * with many other timeouts pending.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Threads(8)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkScheduleAndCancel
+{
+    private static final Runnable TASK = () -> {};
+
+    @Param({"wheel", "concurrent", "thread-pool"})
+    private String schedulerType;
+
+    @Param({"1000", "100000"})
+    private int pendingTimers;
+
+    private ScheduledExecutorService scheduler;
+
+    @Setup
+    public void setup()
+    {
+        switch (schedulerType) {
+            case "wheel":
+                scheduler = new TimingWheelScheduledExecutor("benchmark", 4);
+                break;
+            case "concurrent":
+                scheduler = new ConcurrentScheduledExecutor(4, 1, "benchmark", true);
+                break;
+            case "thread-pool":
+                ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(4, daemonThreadsNamed("benchmark-%s"));
+                executor.setRemoveOnCancelPolicy(true);
+                scheduler = executor;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scheduler type: " + schedulerType);
+        }
+
+        // background timeouts that stay pending for the whole benchmark
+        for (int i = 0; i < pendingTimers; i++) {
+            scheduler.schedule(TASK, 1 + i % 60, TimeUnit.MINUTES);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel()
+    {
+        ScheduledFuture<?> future = scheduler.schedule(TASK, 30, TimeUnit.SECONDS);
+        return future.cancel(false);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkScheduleAndCancel.class.getSimpleName() + ".*")
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+/**
+ * Runs batches of small tasks submitted from many threads at once, through a
+ * {@link BoundedExecutor} or a {@link WeightedFairExecutor} with tasks spread
+ * over several keys.  The average time is the latency of a whole batch, and
+ * its inverse the throughput.
+ * <p>
+ * The submitting threads and the workers all contend on the executor, and
+ * larger batches build deeper queues, so comparing the fair executor to the
+ * bounded executor baseline shows the cost of the shared scheduling lock.
+ * Contention only shows on a machine with at least as many cores as threads.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Threads(16)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkWeightedFairExecutor
+{
+    @Param({"bounded", "fair"})
+    private String executorType;
+
+    @Param({"1", "16"})
+    private int keys;
+
+    @Param({"4", "16"})
+    private int maxThreads;
+
+    @Param({"100", "1000"})
+    private int batchSize;
+
+    private ExecutorService coreExecutor;
+    private BoundedExecutor boundedExecutor;
+    private WeightedFairExecutor<Integer> fairExecutor;
+
+    @Setup
+    public void setup()
+    {
+        coreExecutor = newCachedThreadPool(daemonThreadsNamed("benchmark-%s"));
+        boundedExecutor = new BoundedExecutor(coreExecutor, maxThreads);
+        fairExecutor = new WeightedFairExecutor<>(coreExecutor, maxThreads);
+        for (int key = 0; key < keys; key++) {
+            fairExecutor.setWeight(key, key + 1);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        coreExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public void benchmark()
+            throws InterruptedException
+    {
+        int key = ThreadLocalRandom.current().nextInt(keys);
+        Executor executor = executorType.equals("bounded") ? boundedExecutor : fairExecutor.forKey(key);
+
+        CountDownLatch latch = new CountDownLatch(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            executor.execute(latch::countDown);
+        }
+        latch.await();
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkWeightedFairExecutor.class.getSimpleName() + ".*")
+                .build();
+
+        new Runner(options).run();
+    }
+}
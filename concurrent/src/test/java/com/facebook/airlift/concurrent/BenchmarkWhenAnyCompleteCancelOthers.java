@@ -46,9 +46,14 @@ import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 @BenchmarkMode(Mode.AverageTime)
 public class BenchmarkWhenAnyCompleteCancelOthers
 {
-    //        with optimization in ExtendedSettableFuture.setAsync    without
-    // 300                    32.7 +/- 1.7 us                     810.6 +/- 31 us
-    // 1000                  106.2 +/- 3.0 us                    2813.5 +/- 121 us
+    // Cancelling the other futures runs the listener of the combined future once for each of
+    // them. The listener returns as soon as the combined future is done, without calling
+    // getDone on the cancelled future, which would create a CancellationException with a
+    // stack trace for every future.
+    //
+    //        with isDone check in AnyCompleteFuture    without
+    // 300             13.7 +/- 3.5 us                530.6 +/- 166 us
+    // 1000            49.2 +/- 6.8 us               2176.8 +/- 1233 us
 
     @Param({"300", "1000"})
     private int futureCount;
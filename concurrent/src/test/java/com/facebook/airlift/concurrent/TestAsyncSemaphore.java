@@ -33,6 +33,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
 import static com.facebook.airlift.testing.Assertions.assertLessThanOrEqual;
 import static com.google.common.util.concurrent.Futures.addCallback;
+import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
 import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
@@ -182,6 +184,31 @@ public class TestAsyncSemaphore
         assertEquals(failureCount.get(), 1000);
     }
 
+    @Test
+    public void testStats()
+    {
+        ExecutionStats stats = new ExecutionStats();
+        AsyncSemaphore<Integer> asyncSemaphore = new AsyncSemaphore<>(1, directExecutor(), task -> {
+            if (task % 5 == 0) {
+                throw new IllegalStateException("failed submission");
+            }
+            if (task % 2 == 0) {
+                return immediateFailedFuture(new IllegalStateException("failed task"));
+            }
+            return immediateFuture(null);
+        }, stats);
+
+        for (int i = 1; i <= 10; i++) {
+            asyncSemaphore.submit(i);
+        }
+
+        assertEquals(stats.getQueueTime().getAllTime().getCount(), 10.0);
+        assertEquals(stats.getExecutionTime().getAllTime().getCount(), 10.0);
+        // 2, 4, 5, 6, 8 and 10
+        assertEquals(stats.getFailedTasks().getTotalCount(), 6);
+        assertEquals(stats.getRejectedTasks().getTotalCount(), 0);
+    }
+
     @Test
     public void testFailedTaskSubmission()
             throws Exception
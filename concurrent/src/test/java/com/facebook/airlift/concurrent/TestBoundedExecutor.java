@@ -14,6 +14,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
@@ -142,6 +143,45 @@ public class TestBoundedExecutor
         }
     }
 
+    @Test
+    public void testStats()
+    {
+        ExecutionStats stats = new ExecutionStats();
+        BoundedExecutor boundedExecutor = new BoundedExecutor(directExecutor(), 1, stats);
+
+        AtomicInteger counter = new AtomicInteger();
+        boundedExecutor.execute(counter::incrementAndGet);
+        boundedExecutor.execute(counter::incrementAndGet);
+        boundedExecutor.execute(() -> {
+            throw new IllegalStateException("failed");
+        });
+
+        assertEquals(counter.get(), 2);
+        assertEquals(stats.getQueueTime().getAllTime().getCount(), 3.0);
+        assertEquals(stats.getExecutionTime().getAllTime().getCount(), 3.0);
+        assertEquals(stats.getFailedTasks().getTotalCount(), 1);
+        assertEquals(stats.getRejectedTasks().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testStatsRejectedTasks()
+    {
+        ExecutionStats stats = new ExecutionStats();
+        BoundedExecutor boundedExecutor = new BoundedExecutor(command -> { throw new RejectedExecutionException(); }, 1, stats);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                boundedExecutor.execute(() -> fail("Should not be run"));
+                fail("Execute should fail");
+            }
+            catch (Exception e) {
+            }
+        }
+
+        assertEquals(stats.getRejectedTasks().getTotalCount(), 2);
+        assertEquals(stats.getExecutionTime().getAllTime().getCount(), 0.0);
+    }
+
     private void testBound(final int maxThreads, int stageTasks)
     {
         BoundedExecutor boundedExecutor = new BoundedExecutor(executorService, maxThreads);
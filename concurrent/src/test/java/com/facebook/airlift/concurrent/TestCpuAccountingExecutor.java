@@ -0,0 +1,137 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestCpuAccountingExecutor
+{
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    static volatile Object sink;
+
+    @Test
+    public void testUsage()
+    {
+        CpuAccountingExecutor executor = new CpuAccountingExecutor(directExecutor());
+
+        executor.execute(() -> {
+            burnCpu(MILLISECONDS.toNanos(20));
+            allocate(10);
+        });
+
+        assertEquals(executor.getCompletedTasks(), 1);
+        assertEquals(executor.getFailedTasks(), 0);
+        assertEquals(executor.getSampledTasks(), 1);
+        assertTrue(executor.getCpuNanos() >= MILLISECONDS.toNanos(20));
+        assertTrue(executor.getUserNanos() <= executor.getCpuNanos());
+        assertTrue(executor.getAllocatedBytes() >= 10 * 1024 * 1024);
+        assertEquals(executor.getCompletedTasksByTaskClass().size(), 0);
+    }
+
+    @Test
+    public void testFailedTask()
+    {
+        CpuAccountingExecutor executor = new CpuAccountingExecutor(directExecutor());
+
+        executor.execute(() -> {});
+        try {
+            executor.execute(() -> {
+                throw new IllegalStateException("failed");
+            });
+            fail("expected exception");
+        }
+        catch (IllegalStateException expected) {
+        }
+
+        assertEquals(executor.getCompletedTasks(), 2);
+        assertEquals(executor.getFailedTasks(), 1);
+    }
+
+    @Test
+    public void testTaskClasses()
+    {
+        CpuAccountingExecutor executor = new CpuAccountingExecutor(directExecutor(), true);
+
+        executor.execute(new AllocatingTask());
+        executor.execute(new AllocatingTask());
+        executor.execute(new IdleTask());
+
+        assertEquals(executor.getCompletedTasks(), 3);
+        assertEquals(executor.getCompletedTasksByTaskClass().get(AllocatingTask.class.getName()), (Long) 2L);
+        assertEquals(executor.getCompletedTasksByTaskClass().get(IdleTask.class.getName()), (Long) 1L);
+        assertEquals(executor.getCpuNanosByTaskClass().keySet(), executor.getCompletedTasksByTaskClass().keySet());
+        assertTrue(executor.getAllocatedBytesByTaskClass().get(AllocatingTask.class.getName()) >= 2 * 1024 * 1024);
+    }
+
+    @Test
+    public void testSampling()
+    {
+        CpuAccountingExecutor executor = new CpuAccountingExecutor(directExecutor(), true, 4);
+
+        for (int i = 0; i < 400; i++) {
+            executor.execute(() -> burnCpu(MILLISECONDS.toNanos(1)));
+        }
+
+        // the counts are exact, and the usage of the sampled tasks is scaled up to estimate the total
+        assertEquals(executor.getCompletedTasks(), 400);
+        assertEquals(executor.getCompletedTasksByTaskClass().values().stream().mapToLong(Long::longValue).sum(), 400);
+        assertTrue(executor.getSampledTasks() > 0 && executor.getSampledTasks() < 400, "sampled tasks: " + executor.getSampledTasks());
+        assertTrue(executor.getCpuNanos() >= executor.getSampledTasks() * 4 * MILLISECONDS.toNanos(1));
+        assertTrue(executor.getCpuNanos() > MILLISECONDS.toNanos(200) && executor.getCpuNanos() < MILLISECONDS.toNanos(1600), "cpu nanos: " + executor.getCpuNanos());
+    }
+
+    static void burnCpu(long nanos)
+    {
+        long end = THREAD_MX_BEAN.getCurrentThreadCpuTime() + nanos;
+        while (THREAD_MX_BEAN.getCurrentThreadCpuTime() < end) {
+            sink = new Object();
+        }
+    }
+
+    static void allocate(int megabytes)
+    {
+        for (int i = 0; i < megabytes; i++) {
+            sink = new byte[1024 * 1024];
+        }
+    }
+
+    private static class AllocatingTask
+            implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            allocate(1);
+        }
+    }
+
+    private static class IdleTask
+            implements Runnable
+    {
+        @Override
+        public void run()
+        {
+        }
+    }
+}
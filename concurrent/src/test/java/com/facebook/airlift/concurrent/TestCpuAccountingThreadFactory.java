@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static com.facebook.airlift.concurrent.TestCpuAccountingExecutor.allocate;
+import static com.facebook.airlift.concurrent.TestCpuAccountingExecutor.burnCpu;
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestCpuAccountingThreadFactory
+{
+    @Test
+    public void testUsage()
+            throws Exception
+    {
+        CpuAccountingThreadFactory threadFactory = new CpuAccountingThreadFactory(daemonThreadsNamed("test-cpu-accounting-%s"));
+
+        CountDownLatch burned = new CountDownLatch(1);
+        CountDownLatch exit = new CountDownLatch(1);
+        Thread thread = threadFactory.newThread(() -> {
+            burnCpu(MILLISECONDS.toNanos(20));
+            allocate(10);
+            burned.countDown();
+            try {
+                exit.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertEquals(threadFactory.getCreatedThreads(), 1);
+        thread.start();
+
+        // running threads are measured directly
+        burned.await();
+        assertEquals(threadFactory.getLiveThreads(), 1);
+        long cpuNanos = threadFactory.getCpuNanos();
+        long allocatedBytes = threadFactory.getAllocatedBytes();
+        assertTrue(cpuNanos >= MILLISECONDS.toNanos(20));
+        assertTrue(threadFactory.getUserNanos() <= cpuNanos);
+        assertTrue(allocatedBytes >= 10 * 1024 * 1024);
+
+        // exited threads are kept in the totals
+        exit.countDown();
+        thread.join();
+        assertEquals(threadFactory.getLiveThreads(), 0);
+        assertTrue(threadFactory.getCpuNanos() >= cpuNanos);
+        assertTrue(threadFactory.getAllocatedBytes() >= allocatedBytes);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestExecutorServiceAdapter
+{
+    @Test
+    public void testStats()
+            throws Exception
+    {
+        ExecutionStats stats = new ExecutionStats();
+        ExecutorService executorService = ExecutorServiceAdapter.from(directExecutor(), stats);
+
+        AtomicInteger counter = new AtomicInteger();
+        executorService.execute(counter::incrementAndGet);
+        assertEquals(executorService.submit(counter::incrementAndGet).get(), (Integer) 2);
+
+        Future<?> future = executorService.submit(() -> {
+            throw new IllegalStateException("failed");
+        });
+        try {
+            future.get();
+            fail("expected exception");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertEquals(stats.getQueueTime().getAllTime().getCount(), 3.0);
+        assertEquals(stats.getExecutionTime().getAllTime().getCount(), 3.0);
+        assertEquals(stats.getFailedTasks().getTotalCount(), 1);
+        assertEquals(stats.getRejectedTasks().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testStatsRejectedTasks()
+    {
+        ExecutionStats stats = new ExecutionStats();
+        ExecutorService executorService = ExecutorServiceAdapter.from(command -> { throw new RejectedExecutionException(); }, stats);
+
+        try {
+            executorService.submit(() -> fail("Should not be run"));
+            fail("expected exception");
+        }
+        catch (RejectedExecutionException expected) {
+        }
+
+        assertEquals(stats.getRejectedTasks().getTotalCount(), 1);
+        assertEquals(stats.getExecutionTime().getAllTime().getCount(), 0.0);
+    }
+}
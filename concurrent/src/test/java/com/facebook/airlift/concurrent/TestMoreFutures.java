@@ -439,6 +439,18 @@ public class TestMoreFutures
                 Optional.empty());
     }
 
+    @Test
+    public void testWhenAnyCompleteCancelPropagation()
+    {
+        SettableFuture<Object> future1 = SettableFuture.create();
+        SettableFuture<Object> future2 = SettableFuture.create();
+        ListenableFuture<Object> anyComplete = whenAnyComplete(ImmutableList.of(future1, future2));
+
+        assertTrue(anyComplete.cancel(true));
+        assertTrue(future1.isCancelled());
+        assertTrue(future2.isCancelled());
+    }
+
     @Test
     public void testAnyOf()
             throws Exception
@@ -601,6 +613,19 @@ public class TestMoreFutures
         assertTrue(rootFuture.isCancelled());
     }
 
+    @Test
+    public void testListenableTimeoutNotReached()
+            throws Exception
+    {
+        SettableFuture<String> rootFuture = SettableFuture.create();
+        ListenableFuture<String> timeoutFuture = addTimeout(rootFuture, () -> "timeout", new Duration(10, SECONDS), executorService);
+
+        assertTrue(rootFuture.set("done"));
+        assertTrue(timeoutFuture.isDone());
+        assertEquals(timeoutFuture.get(), "done");
+        assertFalse(rootFuture.isCancelled());
+    }
+
     @Test
     public void testListenableTimeoutCancel()
             throws Exception
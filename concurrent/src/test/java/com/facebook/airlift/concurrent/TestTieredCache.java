@@ -0,0 +1,185 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestTieredCache
+{
+    @Test
+    public void testSanity()
+    {
+        AtomicInteger count = new AtomicInteger(0);
+        TieredCache<String, String> cache = new TieredCache<>(1, 2, key -> key + count.getAndAdd(1));
+
+        // Load first key
+        assertEquals(cache.get("abc"), "abc0");
+        assertEquals(cache.get("abc"), "abc0");
+        assertEquals(cache.getThreadLocalHits(), 1);
+
+        // Load second key, which replaces the first key in the thread local cache
+        assertEquals(cache.get("def"), "def1");
+
+        // First key is still in the shared cache
+        assertEquals(cache.get("abc"), "abc0");
+        assertEquals(cache.getThreadLocalMisses(), 3);
+        assertEquals(cache.getSharedLoads(), 2);
+        assertEquals(cache.getSharedSize(), 2);
+        assertEquals(cache.getSharedWeight(), 2);
+
+        // Expire first key from the shared cache by exceeding max size
+        assertEquals(cache.get("ghi"), "ghi2");
+        assertEquals(cache.get("jkl"), "jkl3");
+        assertEquals(cache.getSharedSize(), 2);
+        assertEquals(cache.getSharedWeight(), 2);
+        assertTrue(cache.getSharedEvictions() > 0);
+
+        assertEquals(cache.getThreadLocalTables(), 1);
+        assertTrue(cache.getEstimatedThreadLocalBytes() > 0);
+    }
+
+    @Test
+    public void testWeight()
+    {
+        TieredCache<Integer, byte[]> cache = new TieredCache<>(16, 1000, (key, value) -> value.length, key -> new byte[key]);
+
+        for (int i = 0; i < 100; i++) {
+            cache.get(100 + i);
+        }
+        assertTrue(cache.getSharedWeight() <= 1000);
+        assertTrue(cache.getSharedSize() < 10);
+    }
+
+    @Test
+    public void testInvalidateAll()
+    {
+        AtomicInteger count = new AtomicInteger(0);
+        TieredCache<String, String> cache = new TieredCache<>(16, 16, key -> key + count.getAndAdd(1));
+
+        assertEquals(cache.get("abc"), "abc0");
+        cache.invalidateAll();
+        assertEquals(cache.getSharedSize(), 0);
+        assertEquals(cache.getSharedWeight(), 0);
+
+        // the thread local cache is cleared on the next lookup
+        assertEquals(cache.get("abc"), "abc1");
+        assertEquals(cache.get("abc"), "abc1");
+    }
+
+    @Test
+    public void testInvalidateAllConcurrentWithLookups()
+            throws Exception
+    {
+        AtomicInteger loads = new AtomicInteger();
+        TieredCache<String, Integer> cache = new TieredCache<>(16, 16, key -> loads.incrementAndGet());
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean requested = new AtomicBoolean();
+        BlockingQueue<Integer> readerValues = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                // look up continuously, so some lookups run during invalidateAll
+                cache.get("abc");
+                if (requested.compareAndSet(true, false)) {
+                    readerValues.add(cache.get("abc"));
+                }
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            for (int i = 0; i < 1000; i++) {
+                Integer oldValue = cache.get("abc");
+                cache.invalidateAll();
+                assertNotEquals(cache.get("abc"), oldValue);
+
+                // a lookup that starts after invalidateAll returns must not see the old value
+                requested.set(true);
+                Integer readerValue = readerValues.poll(10, SECONDS);
+                assertNotNull(readerValue);
+                assertNotEquals(readerValue, oldValue);
+            }
+        }
+        finally {
+            done.set(true);
+            reader.join();
+        }
+    }
+
+    @Test
+    public void testMultipleThreads()
+            throws Exception
+    {
+        int threads = 8;
+        AtomicInteger loads = new AtomicInteger();
+        TieredCache<String, String> cache = new TieredCache<>(4, 100, key -> {
+            loads.incrementAndGet();
+            sleepUninterruptibly(100, MILLISECONDS);
+            return key.toUpperCase();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, daemonThreadsNamed("test-tiered-cache-%s"));
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> cache.get("abc")));
+            }
+            for (Future<String> future : futures) {
+                assertEquals(future.get(), "ABC");
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // concurrent lookups of a key wait for a single load
+        assertEquals(loads.get(), 1);
+        assertEquals(cache.getSharedLoads(), 1);
+        assertTrue(cache.getThreadLocalTables() > 1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "failed")
+    public void testLoaderException()
+    {
+        new TieredCache<String, String>(10, 10, key -> {
+            throw new IllegalStateException("failed");
+        }).get("foo");
+    }
+
+    @Test(expectedExceptions = NullPointerException.class, expectedExceptionsMessageRegExp = "loader returned null value")
+    public void testDisallowsNulls()
+    {
+        new TieredCache<>(10, 10, key -> null).get("foo");
+    }
+}
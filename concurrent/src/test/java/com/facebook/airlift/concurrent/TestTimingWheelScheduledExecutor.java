@@ -0,0 +1,225 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.airlift.units.Duration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.facebook.airlift.concurrent.MoreFutures.addTimeout;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestTimingWheelScheduledExecutor
+{
+    private TimingWheelScheduledExecutor scheduler;
+
+    @BeforeClass
+    public void setUp()
+    {
+        scheduler = new TimingWheelScheduledExecutor("test", 2, new Duration(1, MILLISECONDS), 16);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+            throws Exception
+    {
+        scheduler.shutdownNow();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+        scheduler = null;
+    }
+
+    @Test
+    public void testSubmit()
+            throws Exception
+    {
+        AtomicInteger counter = new AtomicInteger();
+        assertEquals(scheduler.submit(counter::incrementAndGet).get(), (Integer) 1);
+        assertEquals(counter.get(), 1);
+    }
+
+    @Test
+    public void testSchedule()
+            throws Exception
+    {
+        long start = System.nanoTime();
+        ScheduledFuture<Integer> future = scheduler.schedule(() -> 42, 100, MILLISECONDS);
+        assertEquals(future.get(10, TimeUnit.SECONDS), (Integer) 42);
+        assertTrue(System.nanoTime() - start >= MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void testAddTimeout()
+            throws Exception
+    {
+        SettableFuture<String> future = SettableFuture.create();
+        ListenableFuture<String> withTimeout = addTimeout(future, () -> "timeout", new Duration(50, MILLISECONDS), scheduler);
+        assertEquals(withTimeout.get(10, TimeUnit.SECONDS), "timeout");
+    }
+
+    @Test
+    public void testManyTimers()
+            throws Exception
+    {
+        // delays longer than a turn of the wheel wait for several rounds
+        int timers = 10_000;
+        CountDownLatch latch = new CountDownLatch(timers);
+        AtomicBoolean early = new AtomicBoolean();
+        for (int i = 0; i < timers; i++) {
+            long delayNanos = MILLISECONDS.toNanos(ThreadLocalRandom.current().nextInt(200));
+            long deadline = System.nanoTime() + delayNanos;
+            scheduler.schedule(() -> {
+                if (System.nanoTime() < deadline) {
+                    early.set(true);
+                }
+                latch.countDown();
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertFalse(early.get());
+    }
+
+    @Test
+    public void testCancel()
+            throws Exception
+    {
+        TimingWheelScheduledExecutor scheduler = new TimingWheelScheduledExecutor("test", 1, new Duration(1, MILLISECONDS), 16);
+        try {
+            AtomicBoolean ran = new AtomicBoolean();
+            List<ScheduledFuture<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(scheduler.schedule(() -> ran.set(true), 1, TimeUnit.HOURS));
+            }
+            assertEquals(scheduler.getPendingTimers(), 1000);
+
+            for (ScheduledFuture<?> future : futures) {
+                assertTrue(future.cancel(false));
+            }
+            // canceled timers are removed from the wheel on the next tick
+            assertEventuallyNoPendingTimers(scheduler);
+
+            ScheduledFuture<?> future = scheduler.schedule(() -> ran.set(true), 50, MILLISECONDS);
+            assertTrue(future.cancel(false));
+            Thread.sleep(100);
+            assertFalse(ran.get());
+            try {
+                future.get();
+                fail("expected CancellationException");
+            }
+            catch (CancellationException expected) {
+            }
+        }
+        finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFixedRate()
+            throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(5);
+        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(latch::countDown, 0, 10, MILLISECONDS);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testFixedDelay()
+            throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(5);
+        ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(latch::countDown, 0, 10, MILLISECONDS);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(future.cancel(false));
+    }
+
+    @Test
+    public void testAwaitTerminating()
+            throws Exception
+    {
+        TimingWheelScheduledExecutor scheduler = new TimingWheelScheduledExecutor("test", 2);
+        AtomicInteger counter = new AtomicInteger();
+
+        for (int i = 0; i < 4; ++i) {
+            scheduler.schedule(counter::incrementAndGet, ThreadLocalRandom.current().nextInt(1000), MILLISECONDS);
+        }
+        ScheduledFuture<?> periodic = scheduler.scheduleAtFixedRate(() -> {}, 1, 1, TimeUnit.HOURS);
+        scheduler.shutdown();
+
+        try {
+            scheduler.schedule(counter::incrementAndGet, 0, MILLISECONDS);
+            fail("expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException expected) {
+        }
+        try {
+            scheduler.execute(counter::incrementAndGet);
+            fail("expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException expected) {
+        }
+        try {
+            scheduler.submit(counter::incrementAndGet);
+            fail("expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException expected) {
+        }
+
+        // delayed tasks run after shutdown, periodic tasks are canceled
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(scheduler.isTerminated());
+        assertEquals(counter.get(), 4);
+        assertTrue(periodic.isCancelled());
+    }
+
+    @Test
+    public void testShutdownNow()
+    {
+        TimingWheelScheduledExecutor scheduler = new TimingWheelScheduledExecutor("test", 1);
+        ScheduledFuture<?> future = scheduler.schedule(() -> fail("should not run"), 1, TimeUnit.HOURS);
+
+        assertEquals(scheduler.shutdownNow().size(), 1);
+        assertTrue(future.isCancelled());
+        assertTrue(scheduler.isShutdown());
+    }
+
+    private static void assertEventuallyNoPendingTimers(TimingWheelScheduledExecutor scheduler)
+            throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (scheduler.getPendingTimers() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(scheduler.getPendingTimers(), 0);
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.concurrent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static com.facebook.airlift.testing.Assertions.assertBetweenInclusive;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestWeightedFairExecutor
+{
+    private ExecutorService executorService;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+    {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testBound()
+    {
+        int maxThreads = 3;
+        WeightedFairExecutor<Integer> executor = new WeightedFairExecutor<>(executorService, maxThreads);
+
+        int totalTasks = 100_000;
+        AtomicInteger activeThreadCount = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        CountDownLatch completeLatch = new CountDownLatch(totalTasks);
+        for (int i = 0; i < totalTasks; i++) {
+            executor.execute(i % 10, () -> {
+                try {
+                    int count = activeThreadCount.incrementAndGet();
+                    if (count < 1 || count > maxThreads) {
+                        failed.set(true);
+                    }
+                    activeThreadCount.decrementAndGet();
+                }
+                finally {
+                    completeLatch.countDown();
+                }
+            });
+        }
+
+        assertTrue(Uninterruptibles.awaitUninterruptibly(completeLatch, 1, TimeUnit.MINUTES));
+        assertFalse(failed.get());
+    }
+
+    @Test
+    public void testWeightedSharing()
+    {
+        WeightedFairExecutor<String> executor = new WeightedFairExecutor<>(executorService, 1);
+        executor.setWeight("heavy", 3);
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch startLatch = blockExecutor(executor, "blocker");
+        CountDownLatch completeLatch = new CountDownLatch(80);
+        for (int i = 0; i < 40; i++) {
+            executor.execute("heavy", recordTo(order, "heavy", completeLatch));
+            executor.execute("light", recordTo(order, "light", completeLatch));
+        }
+        assertEquals(executor.getQueuedTasks(), 80);
+        assertEquals(executor.getQueuedTasksByKey(), ImmutableMap.of("blocker", 0, "heavy", 40, "light", 40));
+        assertEquals(executor.getRunningTasksByKey(), ImmutableMap.of("blocker", 1, "heavy", 0, "light", 0));
+
+        startLatch.countDown();
+        assertTrue(Uninterruptibles.awaitUninterruptibly(completeLatch, 1, TimeUnit.MINUTES));
+
+        // while both keys have tasks, the heavy key gets three times the share of the light key
+        long heavy = order.subList(0, 40).stream()
+                .filter("heavy"::equals)
+                .count();
+        assertBetweenInclusive(heavy, 29L, 31L);
+    }
+
+    @Test
+    public void testIdleKeyDoesNotAccumulateCredit()
+    {
+        WeightedFairExecutor<String> executor = new WeightedFairExecutor<>(executorService, 1);
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch busyLatch = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            executor.execute("busy", recordTo(order, "busy", busyLatch));
+        }
+        assertTrue(Uninterruptibles.awaitUninterruptibly(busyLatch, 1, TimeUnit.MINUTES));
+
+        CountDownLatch startLatch = blockExecutor(executor, "blocker");
+        CountDownLatch completeLatch = new CountDownLatch(20);
+        for (int i = 0; i < 10; i++) {
+            executor.execute("busy", recordTo(order, "busy", completeLatch));
+            executor.execute("new", recordTo(order, "new", completeLatch));
+        }
+        startLatch.countDown();
+        assertTrue(Uninterruptibles.awaitUninterruptibly(completeLatch, 1, TimeUnit.MINUTES));
+
+        // the new key alternates with the busy key instead of running all of its tasks first
+        List<String> shared = order.subList(20, 30);
+        long newTasks = shared.stream()
+                .filter("new"::equals)
+                .count();
+        assertBetweenInclusive(newTasks, 4L, 6L);
+    }
+
+    @Test
+    public void testPriority()
+    {
+        WeightedFairExecutor<String> executor = new WeightedFairExecutor<>(executorService, 1);
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch startLatch = blockExecutor(executor, "key");
+        CountDownLatch completeLatch = new CountDownLatch(4);
+        executor.execute("key", 0, recordTo(order, "low-1", completeLatch));
+        executor.execute("key", 5, recordTo(order, "high-1", completeLatch));
+        executor.execute("key", 0, recordTo(order, "low-2", completeLatch));
+        executor.execute("key", 5, recordTo(order, "high-2", completeLatch));
+        startLatch.countDown();
+        assertTrue(Uninterruptibles.awaitUninterruptibly(completeLatch, 1, TimeUnit.MINUTES));
+
+        assertEquals(order, ImmutableList.of("high-1", "high-2", "low-1", "low-2"));
+    }
+
+    @Test
+    public void testMaxConcurrency()
+    {
+        WeightedFairExecutor<String> executor = new WeightedFairExecutor<>(executorService, 4);
+        executor.setMaxConcurrency("limited", 1);
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch completeLatch = new CountDownLatch(4);
+        AtomicInteger running = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            executor.execute("limited", () -> {
+                running.incrementAndGet();
+                Uninterruptibles.awaitUninterruptibly(startLatch);
+                completeLatch.countDown();
+            });
+        }
+
+        // tasks of other keys use the threads the limited key cannot use
+        CountDownLatch otherLatch = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            executor.execute("other", () -> {
+                otherLatch.countDown();
+                completeLatch.countDown();
+            });
+        }
+        assertTrue(Uninterruptibles.awaitUninterruptibly(otherLatch, 1, TimeUnit.MINUTES));
+        assertEquals(running.get(), 1);
+        assertEquals(executor.getRunningTasks("limited"), 1);
+        assertEquals(executor.getQueuedTasks("limited"), 1);
+
+        // raising the limit starts the queued task
+        executor.setMaxConcurrency("limited", 2);
+        assertEventuallyEquals(running::get, 2);
+        assertEquals(executor.getRunningTasks("limited"), 2);
+
+        startLatch.countDown();
+        assertTrue(Uninterruptibles.awaitUninterruptibly(completeLatch, 1, TimeUnit.MINUTES));
+        assertEventuallyEquals(executor::getActiveWorkers, 0);
+        assertEquals(executor.getQueuedTasksByKey(), ImmutableMap.of());
+    }
+
+    @Test
+    public void testConcurrentSubmission()
+            throws Exception
+    {
+        int keys = 4;
+        int submitters = 8;
+        int tasksPerSubmitter = 10_000;
+        WeightedFairExecutor<Integer> executor = new WeightedFairExecutor<>(executorService, 4);
+        for (int key = 0; key < keys; key++) {
+            executor.setMaxConcurrency(key, 1);
+        }
+
+        // keys go idle and become active again all the time, so their queues are removed and recreated
+        AtomicInteger[] running = new AtomicInteger[keys];
+        for (int key = 0; key < keys; key++) {
+            running[key] = new AtomicInteger();
+        }
+        AtomicBoolean failed = new AtomicBoolean();
+        CountDownLatch completeLatch = new CountDownLatch(submitters * tasksPerSubmitter);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int submitter = 0; submitter < submitters; submitter++) {
+            futures.add(executorService.submit(() -> {
+                for (int i = 0; i < tasksPerSubmitter; i++) {
+                    int key = i % keys;
+                    executor.execute(key, () -> {
+                        if (running[key].incrementAndGet() > 1) {
+                            failed.set(true);
+                        }
+                        running[key].decrementAndGet();
+                        completeLatch.countDown();
+                    });
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+
+        assertTrue(Uninterruptibles.awaitUninterruptibly(completeLatch, 1, TimeUnit.MINUTES));
+        assertFalse(failed.get());
+        assertEventuallyEquals(executor::getActiveWorkers, 0);
+        assertEquals(executor.getQueuedTasks(), 0);
+        assertEquals(executor.getQueuedTasksByKey(), ImmutableMap.of());
+    }
+
+    @Test
+    public void testFailedTaskDoesNotStopExecutor()
+    {
+        WeightedFairExecutor<String> executor = new WeightedFairExecutor<>(executorService, 1);
+        CountDownLatch completeLatch = new CountDownLatch(1);
+        executor.execute("key", () -> {
+            throw new RuntimeException("test failure");
+        });
+        executor.forKey("key").execute(completeLatch::countDown);
+        assertTrue(Uninterruptibles.awaitUninterruptibly(completeLatch, 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void testExecutorCorruptionDetection()
+    {
+        AtomicBoolean reject = new AtomicBoolean();
+        Executor coreExecutor = command -> {
+            if (reject.get()) {
+                throw new RejectedExecutionException();
+            }
+            executorService.execute(command);
+        };
+        WeightedFairExecutor<String> executor = new WeightedFairExecutor<>(coreExecutor, 1);
+
+        // Force the underlying executor to fail
+        reject.set(true);
+        try {
+            executor.execute("key", () -> fail("Should not be run"));
+            fail("Execute should fail");
+        }
+        catch (RejectedExecutionException e) {
+        }
+
+        // Recover the underlying executor, but all new tasks should fail
+        reject.set(false);
+        try {
+            executor.execute("key", () -> fail("Should not be run"));
+            fail("Execute should still fail");
+        }
+        catch (IllegalStateException e) {
+        }
+    }
+
+    /**
+     * Occupies the only thread of the executor until the returned latch is released.
+     */
+    private static CountDownLatch blockExecutor(WeightedFairExecutor<String> executor, String key)
+    {
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        executor.execute(key, () -> {
+            startedLatch.countDown();
+            Uninterruptibles.awaitUninterruptibly(startLatch);
+        });
+        assertTrue(Uninterruptibles.awaitUninterruptibly(startedLatch, 1, TimeUnit.MINUTES));
+        return startLatch;
+    }
+
+    private static Runnable recordTo(List<String> order, String name, CountDownLatch completeLatch)
+    {
+        return () -> {
+            order.add(name);
+            completeLatch.countDown();
+        };
+    }
+
+    private static void assertEventuallyEquals(IntSupplier actual, int expected)
+    {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (actual.getAsInt() != expected && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(actual.getAsInt(), expected);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.dbpool;
+
+import com.facebook.airlift.dbpool.StatementCache.StatementKey;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A statement handed out by a {@link PooledConnectionHandle} that is returned
+ * to the {@link StatementCache} of the connection instead of being closed.
+ * <p>
+ * The parameters, batch and warnings of the statement are cleared when it is
+ * returned.  A statement whose settings have been changed is closed instead,
+ * since the settings would leak to the next user of the statement.
+ */
+final class CachedPreparedStatement
+        extends ForwardingPreparedStatement
+{
+    private final PooledConnectionHandle connection;
+    private final StatementCache statementCache;
+    private final StatementKey key;
+    private final PreparedStatement statement;
+
+    private boolean closed;
+    private boolean modified;
+    private boolean batched;
+    private ResultSet resultSet;
+    private ResultSet generatedKeys;
+
+    public CachedPreparedStatement(PooledConnectionHandle connection, StatementCache statementCache, StatementKey key, PreparedStatement statement)
+    {
+        this.connection = requireNonNull(connection, "connection is null");
+        this.statementCache = requireNonNull(statementCache, "statementCache is null");
+        this.key = requireNonNull(key, "key is null");
+        this.statement = requireNonNull(statement, "statement is null");
+    }
+
+    @Override
+    protected PreparedStatement delegate()
+            throws SQLException
+    {
+        if (closed) {
+            throw new SQLException("Statement is closed");
+        }
+        return statement;
+    }
+
+    @Override
+    public void close()
+            throws SQLException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        connection.statementClosed(this);
+
+        if (modified) {
+            statement.close();
+            return;
+        }
+        try {
+            closeResultSet(resultSet);
+            closeResultSet(generatedKeys);
+            statement.clearParameters();
+            if (batched) {
+                statement.clearBatch();
+            }
+            statement.clearWarnings();
+        }
+        catch (SQLException | RuntimeException e) {
+            try {
+                statement.close();
+            }
+            catch (SQLException | RuntimeException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+        finally {
+            resultSet = null;
+            generatedKeys = null;
+        }
+        statementCache.put(key, statement);
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    @Override
+    public Connection getConnection()
+            throws SQLException
+    {
+        delegate();
+        return connection;
+    }
+
+    @Override
+    public ResultSet executeQuery()
+            throws SQLException
+    {
+        resultSet = delegate().executeQuery();
+        return resultSet;
+    }
+
+    @Override
+    public ResultSet getResultSet()
+            throws SQLException
+    {
+        resultSet = delegate().getResultSet();
+        return resultSet;
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys()
+            throws SQLException
+    {
+        generatedKeys = delegate().getGeneratedKeys();
+        return generatedKeys;
+    }
+
+    @Override
+    public void addBatch()
+            throws SQLException
+    {
+        delegate().addBatch();
+        batched = true;
+    }
+
+    @Override
+    public void addBatch(String sql)
+            throws SQLException
+    {
+        delegate().addBatch(sql);
+        batched = true;
+    }
+
+    @Override
+    public void setMaxFieldSize(int max)
+            throws SQLException
+    {
+        modify().setMaxFieldSize(max);
+    }
+
+    @Override
+    public void setMaxRows(int max)
+            throws SQLException
+    {
+        modify().setMaxRows(max);
+    }
+
+    @Override
+    public void setLargeMaxRows(long max)
+            throws SQLException
+    {
+        modify().setLargeMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable)
+            throws SQLException
+    {
+        modify().setEscapeProcessing(enable);
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds)
+            throws SQLException
+    {
+        modify().setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void setCursorName(String name)
+            throws SQLException
+    {
+        modify().setCursorName(name);
+    }
+
+    @Override
+    public void setFetchDirection(int direction)
+            throws SQLException
+    {
+        modify().setFetchDirection(direction);
+    }
+
+    @Override
+    public void setFetchSize(int rows)
+            throws SQLException
+    {
+        modify().setFetchSize(rows);
+    }
+
+    @Override
+    public void setPoolable(boolean poolable)
+            throws SQLException
+    {
+        modify().setPoolable(poolable);
+    }
+
+    @Override
+    public void closeOnCompletion()
+            throws SQLException
+    {
+        modify().closeOnCompletion();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface)
+            throws SQLException
+    {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface)
+            throws SQLException
+    {
+        return iface.isInstance(this) || delegate().isWrapperFor(iface);
+    }
+
+    private PreparedStatement modify()
+            throws SQLException
+    {
+        PreparedStatement delegate = delegate();
+        modified = true;
+        return delegate;
+    }
+
+    private static void closeResultSet(ResultSet resultSet)
+            throws SQLException
+    {
+        if (resultSet != null) {
+            resultSet.close();
+        }
+    }
+}
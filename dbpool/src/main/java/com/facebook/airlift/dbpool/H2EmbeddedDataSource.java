@@ -37,7 +37,7 @@ import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class H2EmbeddedDataSource
-        extends ManagedDataSource
+        extends PooledDataSource
 {
     private final JdbcDataSource dataSource;
 
@@ -45,7 +45,7 @@ public class H2EmbeddedDataSource
     public H2EmbeddedDataSource(H2EmbeddedDataSourceConfig config)
             throws Exception
     {
-        super(config.getMaxConnections(), config.getMaxConnectionWait());
+        super(config);
 
         requireNonNull(config.getFilename());
         if (config.getFilename().isEmpty()) {
@@ -75,9 +75,11 @@ public class H2EmbeddedDataSource
         }
         dataSource.setLoginTimeout(Ints.checkedCast(config.getMaxConnectionWait().roundTo(SECONDS)));
 
-        // connect to database and initialize database
-        Connection connection = getConnection();
+        // connect to database and initialize database, on a connection of its own created on this
+        // thread, so opening the database is bounded by the login timeout rather than the pool wait
+        PooledConnection pooledConnection = createPooledConnection();
         try {
+            Connection connection = pooledConnection.getConnection();
             setConfig(connection, "CACHE_SIZE", config.getCacheSize());
             setConfig(connection, "COMPRESS_LOB", config.getCompressLob());
             setConfig(connection, "MAX_MEMORY_ROWS", config.getMaxMemoryRows());
@@ -114,7 +116,7 @@ public class H2EmbeddedDataSource
             setConfig(connection, "ALLOW_LITERALS", config.getAllowLiterals());
         }
         finally {
-            closeQuietly(connection);
+            closeQuietly(pooledConnection);
         }
     }
 
@@ -162,7 +164,7 @@ public class H2EmbeddedDataSource
         }
     }
 
-    private static void closeQuietly(Connection connection)
+    private static void closeQuietly(PooledConnection connection)
     {
         try {
             connection.close();
@@ -0,0 +1,335 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.dbpool;
+
+import com.facebook.airlift.stats.DistributionStat;
+import com.facebook.airlift.stats.TimeStat;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Buffers parameter sets for insert and update statements and writes them
+ * with {@link PreparedStatement#executeBatch()}.  Parameter sets for the same
+ * SQL are collected into a batch, which is flushed in its own transaction
+ * when it reaches the maximum batch size or when its oldest parameter set has
+ * waited for the maximum linger time.  Every write to a batch returns the
+ * future of that batch, so a failed batch fails all of its writes.
+ * <p>
+ * Batches are flushed one at a time, in the order they become ready.  Writes
+ * for the same SQL are executed in order, but there is no ordering between
+ * different statements.  Enable the rewrite of batched statements on the data
+ * source to have the driver send each batch as multi-row inserts.
+ */
+@ThreadSafe
+public class JdbcBatchWriter
+        implements Closeable
+{
+    private final DataSource dataSource;
+    private final int maxBatchSize;
+    private final int maxBufferedRows;
+    private final long maxLingerMillis;
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, daemonThreadsNamed("dbpool-batch-writer-%s"));
+
+    @GuardedBy("this")
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+    @GuardedBy("this")
+    private int bufferedRows;
+    @GuardedBy("this")
+    private boolean closed;
+
+    private final DistributionStat batchSize = new DistributionStat();
+    private final TimeStat flushTime = new TimeStat(MILLISECONDS);
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+
+    @Inject
+    public JdbcBatchWriter(DataSource dataSource, JdbcBatchWriterConfig config)
+    {
+        this.dataSource = requireNonNull(dataSource, "dataSource is null");
+        requireNonNull(config, "config is null");
+        checkArgument(config.getMaxBatchSize() > 0, "maxBatchSize must be at least 1");
+        checkArgument(config.getMaxBufferedRows() > 0, "maxBufferedRows must be at least 1");
+        this.maxBatchSize = config.getMaxBatchSize();
+        this.maxBufferedRows = config.getMaxBufferedRows();
+        this.maxLingerMillis = config.getMaxLinger().toMillis();
+        // batches are usually flushed when they fill up, long before their linger flush is due
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Adds a parameter set for the specified SQL to the current batch of that
+     * SQL.  Blocks while the buffer is full.
+     * <p>
+     * The returned future completes on the thread that flushes the batches,
+     * so listeners should not block.  In particular, a listener run on that
+     * thread must not call this method, since a full buffer can only drain
+     * once the listener returns.
+     *
+     * @return a future that completes when the batch containing the
+     * parameter set has been committed, or fails with the error of the batch
+     */
+    public ListenableFuture<?> write(String sql, Object... parameters)
+            throws InterruptedException
+    {
+        requireNonNull(sql, "sql is null");
+        requireNonNull(parameters, "parameters is null");
+        Object[] row = parameters.clone();
+
+        synchronized (this) {
+            while (!closed && bufferedRows >= maxBufferedRows) {
+                wait();
+            }
+            checkState(!closed, "JdbcBatchWriter is closed");
+
+            Batch batch = batches.get(sql);
+            if (batch == null) {
+                batch = new Batch(sql);
+                batches.put(sql, batch);
+                Batch lingeringBatch = batch;
+                batch.lingerFlush = executor.schedule(() -> flush(lingeringBatch), maxLingerMillis, MILLISECONDS);
+            }
+            batch.rows.add(row);
+            bufferedRows++;
+
+            if (batch.rows.size() >= maxBatchSize) {
+                batches.remove(sql);
+                Batch readyBatch = batch;
+                executor.execute(() -> flush(readyBatch));
+            }
+            return batch.future;
+        }
+    }
+
+    /**
+     * Flushes the buffered batches and waits for them to be written.  Writes
+     * are rejected once the writer is closed.
+     */
+    @PreDestroy
+    @Override
+    public void close()
+    {
+        List<Batch> remaining;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            remaining = new ArrayList<>(batches.values());
+            batches.clear();
+            // the linger flushes would keep the executor from terminating until they are due
+            remaining.forEach(batch -> batch.lingerFlush.cancel(false));
+            notifyAll();
+        }
+
+        for (Batch batch : remaining) {
+            executor.execute(() -> flush(batch));
+        }
+        executor.shutdown();
+        try {
+            // batches still running after this fail or complete on their own
+            executor.awaitTermination(1, MINUTES);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Number of parameter sets in each executed batch.
+     */
+    @Managed
+    @Nested
+    public DistributionStat getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Time to execute and commit a batch, including the time to get a
+     * connection.
+     */
+    @Managed
+    @Nested
+    public TimeStat getFlushTime()
+    {
+        return flushTime;
+    }
+
+    @Managed
+    public long getFailedBatches()
+    {
+        return failedBatches.get();
+    }
+
+    @Managed
+    public long getFailedRows()
+    {
+        return failedRows.get();
+    }
+
+    @Managed
+    public synchronized int getBufferedRows()
+    {
+        return bufferedRows;
+    }
+
+    private void flush(Batch batch)
+    {
+        synchronized (this) {
+            if (batch.flushed) {
+                return;
+            }
+            batch.flushed = true;
+            batch.lingerFlush.cancel(false);
+            // a batch flushed by the linger timer is still open for writes
+            batches.remove(batch.sql, batch);
+        }
+
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            execute(batch);
+        }
+        catch (SQLException | RuntimeException e) {
+            failedBatches.incrementAndGet();
+            failedRows.addAndGet(batch.rows.size());
+            failure = e;
+        }
+        finally {
+            flushTime.add(new Duration(System.nanoTime() - start, NANOSECONDS));
+            batchSize.add(batch.rows.size());
+            synchronized (this) {
+                bufferedRows -= batch.rows.size();
+                notifyAll();
+            }
+        }
+
+        // complete the batch after its rows leave the buffer, so a listener that writes is not blocked by them
+        if (failure == null) {
+            batch.future.set(null);
+        }
+        else {
+            batch.future.setException(failure);
+        }
+    }
+
+    private void execute(Batch batch)
+            throws SQLException
+    {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                try (PreparedStatement statement = connection.prepareStatement(batch.sql)) {
+                    int[] nullTypes = null;
+                    for (Object[] row : batch.rows) {
+                        for (int i = 0; i < row.length; i++) {
+                            if (row[i] != null) {
+                                statement.setObject(i + 1, row[i]);
+                                continue;
+                            }
+                            // some drivers reject a null without a type, so the types are looked up for the first null
+                            if (nullTypes == null) {
+                                nullTypes = getParameterTypes(statement, row.length);
+                            }
+                            statement.setNull(i + 1, nullTypes[i]);
+                        }
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                connection.commit();
+            }
+            catch (SQLException | RuntimeException e) {
+                try {
+                    connection.rollback();
+                }
+                catch (SQLException rollbackException) {
+                    e.addSuppressed(rollbackException);
+                }
+                try {
+                    connection.setAutoCommit(autoCommit);
+                }
+                catch (SQLException restoreException) {
+                    e.addSuppressed(restoreException);
+                }
+                throw e;
+            }
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static int[] getParameterTypes(PreparedStatement statement, int parameterCount)
+    {
+        int[] types = new int[parameterCount];
+        Arrays.fill(types, Types.NULL);
+        try {
+            ParameterMetaData metadata = statement.getParameterMetaData();
+            for (int i = 0; i < parameterCount; i++) {
+                types[i] = metadata.getParameterType(i + 1);
+            }
+        }
+        catch (SQLException ignored) {
+            // not all drivers describe parameters, and the remaining types stay NULL
+        }
+        return types;
+    }
+
+    private static final class Batch
+    {
+        private final String sql;
+        private final List<Object[]> rows = new ArrayList<>();
+        private final SettableFuture<Void> future = SettableFuture.create();
+        // guarded by the writer
+        private boolean flushed;
+        private ScheduledFuture<?> lingerFlush;
+
+        private Batch(String sql)
+        {
+            this.sql = sql;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.dbpool;
+
+import com.facebook.airlift.configuration.Config;
+import io.airlift.units.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Configuration for {@link JdbcBatchWriter}.
+ */
+public class JdbcBatchWriterConfig
+{
+    private int maxBatchSize = 500;
+    private int maxBufferedRows = 10_000;
+    private Duration maxLinger = new Duration(10, MILLISECONDS);
+
+    /**
+     * Gets the maximum number of parameter sets executed in a single batch.
+     */
+    @Min(1)
+    public int getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of parameter sets executed in a single batch.
+     * A batch is flushed as soon as it reaches this size.
+     */
+    @Config("db.batch.max-size")
+    public JdbcBatchWriterConfig setMaxBatchSize(int maxBatchSize)
+    {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of parameter sets buffered across all
+     * statements, including those being flushed.
+     */
+    @Min(1)
+    public int getMaxBufferedRows()
+    {
+        return maxBufferedRows;
+    }
+
+    /**
+     * Sets the maximum number of parameter sets buffered across all
+     * statements, including those being flushed.  Writers block when the
+     * buffer is full.
+     */
+    @Config("db.batch.max-buffered-rows")
+    public JdbcBatchWriterConfig setMaxBufferedRows(int maxBufferedRows)
+    {
+        this.maxBufferedRows = maxBufferedRows;
+        return this;
+    }
+
+    /**
+     * Gets the maximum time a parameter set waits for its batch to fill up
+     * before the batch is flushed.
+     */
+    @NotNull
+    public Duration getMaxLinger()
+    {
+        return maxLinger;
+    }
+
+    /**
+     * Sets the maximum time a parameter set waits for its batch to fill up
+     * before the batch is flushed.
+     */
+    @Config("db.batch.max-linger")
+    public JdbcBatchWriterConfig setMaxLinger(Duration maxLinger)
+    {
+        this.maxLinger = maxLinger;
+        return this;
+    }
+}
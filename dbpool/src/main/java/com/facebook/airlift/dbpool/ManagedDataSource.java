@@ -16,6 +16,9 @@
 package com.facebook.airlift.dbpool;
 
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.units.Duration;
 import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Managed;
@@ -29,17 +32,30 @@ import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+import static com.facebook.airlift.concurrent.MoreFutures.addSuccessCallback;
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static com.google.common.util.concurrent.Futures.addCallback;
+import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static io.airlift.units.Duration.nanosSince;
 import static java.lang.Math.ceil;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 public abstract class ManagedDataSource
         implements DataSource
 {
+    // shared by all data sources, since it only fails waiters that time out
+    private static final ScheduledExecutorService TIMEOUT_EXECUTOR = newSingleThreadScheduledExecutor(daemonThreadsNamed("dbpool-timeout-%s"));
+
     private final ManagedSemaphore semaphore;
     private final AtomicInteger maxConnectionWaitMillis = new AtomicInteger(100);
     private final ManagedDataSourceStats stats = new ManagedDataSourceStats();
@@ -66,7 +82,7 @@ public abstract class ManagedDataSource
 
             boolean checkedOut = false;
             try {
-                Connection connection = createConnection();
+                Connection connection = createConnection(start);
                 checkedOut = true;
                 return connection;
             }
@@ -81,20 +97,117 @@ public abstract class ManagedDataSource
         }
     }
 
+    /**
+     * Gets a connection without blocking while waiting for it.  The returned
+     * future fails with a {@link SqlTimeoutException} if a connection can not
+     * be obtained within the maximum connection wait.  A connection that is
+     * no longer needed can be given back by cancelling the future.
+     * <p>
+     * Callers waiting for a connection are queued, and the future completes
+     * on the thread that makes a connection available, so listeners should
+     * not block.
+     */
+    public ListenableFuture<Connection> getConnectionAsync()
+    {
+        long start = System.nanoTime();
+        int timeoutMillis = maxConnectionWaitMillis.get();
+
+        SettableFuture<Connection> result = SettableFuture.create();
+        result.addListener(() -> stats.connectionCheckedOut(nanosSince(start)), directExecutor());
+        failAfter(result, timeoutMillis, MILLISECONDS, "Could not acquire a connection within " + timeoutMillis + " msec");
+
+        // the permit and the connection are handed back if the caller stopped waiting before getting them
+        ListenableFuture<?> permit = semaphore.acquireAsync();
+        result.addListener(() -> permit.cancel(false), directExecutor());
+        addSuccessCallback(permit, () -> {
+            stats.permitAcquired(nanosSince(start));
+            if (result.isDone()) {
+                semaphore.release();
+                return;
+            }
+
+            ListenableFuture<Connection> connection;
+            try {
+                connection = createConnectionAsync();
+            }
+            catch (RuntimeException e) {
+                semaphore.release();
+                result.setException(e);
+                return;
+            }
+            result.addListener(() -> connection.cancel(false), directExecutor());
+            addCallback(connection, new FutureCallback<Connection>()
+            {
+                @Override
+                public void onSuccess(Connection connection)
+                {
+                    if (!result.set(connection)) {
+                        // closing the connection releases the permit
+                        closeQuietly(connection);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    semaphore.release();
+                    result.setException(t);
+                }
+            }, directExecutor());
+        });
+        return result;
+    }
+
     protected Connection createConnection()
             throws SQLException
+    {
+        return prepareConnection(createPooledConnection());
+    }
+
+    /**
+     * Creates a connection for {@link #getConnection()}, after the permit for
+     * the connection has been acquired.  An implementation that waits for the
+     * connection must apply the maximum connection wait from {@code start},
+     * the {@link System#nanoTime()} at which the caller started waiting for
+     * the permit.  The default implementation calls {@link #createConnection()}.
+     */
+    protected Connection createConnection(long start)
+            throws SQLException
+    {
+        return createConnection();
+    }
+
+    /**
+     * Creates a connection for {@link #getConnectionAsync()}, after the permit
+     * for the connection has been acquired.  The returned future is cancelled
+     * if the caller stops waiting for the connection.  The default
+     * implementation creates the connection on the calling thread.
+     */
+    protected ListenableFuture<Connection> createConnectionAsync()
+    {
+        try {
+            return immediateFuture(createConnection());
+        }
+        catch (SQLException e) {
+            return immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * Creates a new physical connection and records the creation in the stats.
+     */
+    protected PooledConnection createPooledConnection()
+            throws SQLException
     {
         boolean success = false;
         try {
-            // todo do not create on caller's thread
             long start = System.nanoTime();
             PooledConnection pooledConnection = createConnectionInternal();
-            Connection connection = prepareConnection(pooledConnection);
             stats.connectionCreated(nanosSince(start));
 
             success = true;
 
-            return connection;
+            return pooledConnection;
         }
         finally {
             if (!success) {
@@ -129,6 +242,29 @@ public abstract class ManagedDataSource
     {
     }
 
+    /**
+     * Releases the permit of a connection that was handed out by
+     * {@link #createConnection()} without a {@link NoPoolConnectionEventListener}
+     * and has been closed by the caller.
+     *
+     * @param checkoutTime the {@link System#nanoTime()} when the connection was handed out
+     * @param failed whether the connection failed while it was checked out
+     */
+    protected void connectionCheckedIn(long checkoutTime, boolean failed)
+    {
+        try {
+            if (failed) {
+                stats.connectionErrorOccurred();
+            }
+            else {
+                stats.connectionReturned(nanosSince(checkoutTime));
+            }
+        }
+        finally {
+            semaphore.release();
+        }
+    }
+
     @Managed
     public int getMaxConnectionWaitMillis()
     {
@@ -156,6 +292,15 @@ public abstract class ManagedDataSource
         return semaphore.getActivePermits();
     }
 
+    /**
+     * Number of callers waiting for a connection.
+     */
+    @Managed
+    public int getConnectionsWaiting()
+    {
+        return semaphore.getWaiters();
+    }
+
     @Managed
     public int getMaxConnections()
     {
@@ -252,6 +397,7 @@ public abstract class ManagedDataSource
             throws SQLException
     {
         int timeout = maxConnectionWaitMillis.get();
+        long start = System.nanoTime();
         try {
             if (!semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
                 throw new SqlTimeoutException("Could not acquire a connection within " + timeout + " msec");
@@ -261,6 +407,29 @@ public abstract class ManagedDataSource
             Thread.currentThread().interrupt();
             throw new SqlTimeoutException("Interrupted while waiting for connection", e);
         }
+        finally {
+            stats.permitAcquired(nanosSince(start));
+        }
+    }
+
+    /**
+     * Fails the future with a {@link SqlTimeoutException} if it is not done
+     * within the timeout.
+     */
+    static void failAfter(SettableFuture<?> future, long timeout, TimeUnit unit, String message)
+    {
+        ScheduledFuture<?> timeoutTask = TIMEOUT_EXECUTOR.schedule(() -> future.setException(new SqlTimeoutException(message)), timeout, unit);
+        future.addListener(() -> timeoutTask.cancel(false), directExecutor());
+    }
+
+    private static void closeQuietly(Connection connection)
+    {
+        try {
+            connection.close();
+        }
+        catch (SQLException | RuntimeException ignored) {
+            // hey we tried
+        }
     }
 
     protected class NoPoolConnectionEventListener
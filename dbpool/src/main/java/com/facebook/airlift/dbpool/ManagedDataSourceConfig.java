@@ -45,6 +45,12 @@ public class ManagedDataSourceConfig<T extends ManagedDataSourceConfig<T>>
 {
     private int maxConnections = 10;
     private Duration maxConnectionWait = new Duration(500, TimeUnit.MILLISECONDS);
+    private int minIdleConnections;
+    private int maxIdleConnections = 10;
+    private Duration maxIdleTime = new Duration(10, TimeUnit.MINUTES);
+    private Duration maxConnectionLifetime = new Duration(30, TimeUnit.MINUTES);
+    private Duration validationInterval = new Duration(30, TimeUnit.SECONDS);
+    private int statementCacheSize;
 
     /**
      * Gets the maximum number of concurrent connections allowed by the data
@@ -94,6 +100,132 @@ public class ManagedDataSourceConfig<T extends ManagedDataSourceConfig<T>>
         return self();
     }
 
+    /**
+     * Gets the number of idle connections the pool keeps open, so callers do
+     * not wait for a connection to be created.  Idle connections are created
+     * in the background.
+     */
+    public int getMinIdleConnections()
+    {
+        return minIdleConnections;
+    }
+
+    /**
+     * Sets the number of idle connections the pool keeps open, so callers do
+     * not wait for a connection to be created.  Idle connections are created
+     * in the background.
+     */
+    @Config("db.connections.min-idle")
+    public T setMinIdleConnections(int minIdleConnections)
+    {
+        this.minIdleConnections = minIdleConnections;
+        return self();
+    }
+
+    /**
+     * Gets the maximum number of idle connections kept in the pool.  Returned
+     * connections over this limit are closed.
+     */
+    public int getMaxIdleConnections()
+    {
+        return maxIdleConnections;
+    }
+
+    /**
+     * Sets the maximum number of idle connections kept in the pool.  Returned
+     * connections over this limit are closed.
+     */
+    @Config("db.connections.max-idle")
+    public T setMaxIdleConnections(int maxIdleConnections)
+    {
+        this.maxIdleConnections = maxIdleConnections;
+        return self();
+    }
+
+    /**
+     * Gets the time after which an idle connection is closed, unless it is
+     * needed to keep the minimum number of idle connections.
+     */
+    public Duration getMaxIdleTime()
+    {
+        return maxIdleTime;
+    }
+
+    /**
+     * Sets the time after which an idle connection is closed, unless it is
+     * needed to keep the minimum number of idle connections.
+     */
+    @Config("db.connections.max-idle-time")
+    public T setMaxIdleTime(Duration maxIdleTime)
+    {
+        this.maxIdleTime = maxIdleTime;
+        return self();
+    }
+
+    /**
+     * Gets the maximum time a connection is used.  Older connections are
+     * closed when they are idle or returned to the pool.
+     */
+    public Duration getMaxConnectionLifetime()
+    {
+        return maxConnectionLifetime;
+    }
+
+    /**
+     * Sets the maximum time a connection is used.  Older connections are
+     * closed when they are idle or returned to the pool.
+     */
+    @Config("db.connections.max-lifetime")
+    public T setMaxConnectionLifetime(Duration maxConnectionLifetime)
+    {
+        this.maxConnectionLifetime = maxConnectionLifetime;
+        return self();
+    }
+
+    /**
+     * Gets the interval at which idle connections are validated.  A connection
+     * that has been idle for longer is validated before it is handed out.
+     */
+    public Duration getValidationInterval()
+    {
+        return validationInterval;
+    }
+
+    /**
+     * Sets the interval at which idle connections are validated.  A connection
+     * that has been idle for longer is validated before it is handed out.
+     */
+    @Config("db.connections.validation-interval")
+    public T setValidationInterval(Duration validationInterval)
+    {
+        this.validationInterval = validationInterval;
+        return self();
+    }
+
+    /**
+     * Gets the maximum number of prepared statements cached for each
+     * connection.  A cached statement is reused when the same SQL is prepared
+     * again on the connection, even after the connection has been returned to
+     * the pool.  The cache is disabled when the size is zero.
+     */
+    public int getStatementCacheSize()
+    {
+        return statementCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of prepared statements cached for each
+     * connection.  A cached statement is reused when the same SQL is prepared
+     * again on the connection, even after the connection has been returned to
+     * the pool.  The cache is disabled when the size is zero.
+     */
+    @Config("db.statement-cache-size")
+    public T setStatementCacheSize(int statementCacheSize)
+    {
+        this.statementCacheSize = statementCacheSize;
+        return self();
+    }
+
     @SuppressWarnings("unchecked")
     private T self()
     {
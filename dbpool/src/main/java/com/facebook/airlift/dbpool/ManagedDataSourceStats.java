@@ -20,6 +20,7 @@ import io.airlift.units.Duration;
 import org.weakref.jmx.Managed;
 import org.weakref.jmx.Nested;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public final class ManagedDataSourceStats
@@ -27,8 +28,17 @@ public final class ManagedDataSourceStats
     private final TimeStat checkout = new TimeStat();
     private final TimeStat create = new TimeStat();
     private final TimeStat held = new TimeStat();
+    private final TimeStat permitWait = new TimeStat();
+    private final TimeStat connectionWait = new TimeStat();
     private final AtomicLong connectionErrorCount = new AtomicLong();
     private final AtomicLong creationErrorCount = new AtomicLong();
+    private final AtomicLong validationErrorCount = new AtomicLong();
+    private final AtomicLong evictedConnectionCount = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final AtomicLong statementCacheEvictions = new AtomicLong();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger idleConnections = new AtomicInteger();
 
     @Managed
     @Nested
@@ -51,6 +61,28 @@ public final class ManagedDataSourceStats
         return held;
     }
 
+    /**
+     * Time spent waiting for the number of checked out connections to drop
+     * below the maximum.
+     */
+    @Managed
+    @Nested
+    public TimeStat getPermitWait()
+    {
+        return permitWait;
+    }
+
+    /**
+     * Time spent waiting for a pooled connection to be handed out, after the
+     * permit was acquired.
+     */
+    @Managed
+    @Nested
+    public TimeStat getConnectionWait()
+    {
+        return connectionWait;
+    }
+
     @Managed
     public long getConnectionErrorCount()
     {
@@ -63,6 +95,93 @@ public final class ManagedDataSourceStats
         return creationErrorCount.get();
     }
 
+    @Managed
+    public long getValidationErrorCount()
+    {
+        return validationErrorCount.get();
+    }
+
+    @Managed
+    public long getEvictedConnectionCount()
+    {
+        return evictedConnectionCount.get();
+    }
+
+    @Managed
+    public long getStatementCacheHits()
+    {
+        return statementCacheHits.get();
+    }
+
+    @Managed
+    public long getStatementCacheMisses()
+    {
+        return statementCacheMisses.get();
+    }
+
+    @Managed
+    public long getStatementCacheEvictions()
+    {
+        return statementCacheEvictions.get();
+    }
+
+    @Managed
+    public int getOpenConnections()
+    {
+        return openConnections.get();
+    }
+
+    @Managed
+    public int getIdleConnections()
+    {
+        return idleConnections.get();
+    }
+
+    AtomicInteger openConnectionsCounter()
+    {
+        return openConnections;
+    }
+
+    AtomicInteger idleConnectionsCounter()
+    {
+        return idleConnections;
+    }
+
+    void permitAcquired(Duration elapsedTime)
+    {
+        permitWait.add(elapsedTime);
+    }
+
+    void connectionHandedOut(Duration elapsedTime)
+    {
+        connectionWait.add(elapsedTime);
+    }
+
+    void validationErrorOccurred()
+    {
+        validationErrorCount.incrementAndGet();
+    }
+
+    void connectionEvicted()
+    {
+        evictedConnectionCount.incrementAndGet();
+    }
+
+    void statementCacheHit()
+    {
+        statementCacheHits.incrementAndGet();
+    }
+
+    void statementCacheMissed()
+    {
+        statementCacheMisses.incrementAndGet();
+    }
+
+    void statementEvicted()
+    {
+        statementCacheEvictions.incrementAndGet();
+    }
+
     void connectionCheckedOut(Duration elapsedTime)
     {
         checkout.add(elapsedTime);
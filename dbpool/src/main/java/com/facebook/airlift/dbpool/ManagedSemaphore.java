@@ -15,20 +15,43 @@
  */
 package com.facebook.airlift.dbpool;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.weakref.jmx.Managed;
 
+import javax.annotation.concurrent.GuardedBy;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * A {@link Semaphore} that tracks the number of acquired permits, and that
+ * can be acquired without blocking through {@link #acquireAsync()}.
+ * <p>
+ * Blocking and asynchronous callers wait in a single queue, and are granted
+ * permits in arrival order as permits are released.  No caller takes a permit
+ * while others are waiting, including callers of {@link #tryAcquire()}.
+ */
 class ManagedSemaphore
         extends Semaphore
 {
     private final AtomicLong activePermits = new AtomicLong();
     private int permits;
+    @GuardedBy("this")
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
 
     public ManagedSemaphore(int permits)
     {
+        // callers wait in the queue of this class, never in the semaphore itself
         super(permits);
         this.permits = permits;
     }
@@ -40,7 +63,13 @@ class ManagedSemaphore
     }
 
     @Managed
-    public synchronized void setPermits(int newPermits)
+    public void setPermits(int newPermits)
+    {
+        updatePermits(newPermits);
+        grantWaiters();
+    }
+
+    private synchronized void updatePermits(int newPermits)
     {
         int delta = newPermits - this.permits;
         if (delta > 0) {
@@ -66,83 +95,126 @@ class ManagedSemaphore
         return super.availablePermits();
     }
 
+    /**
+     * Number of blocking and asynchronous callers waiting for permits.
+     */
+    @Managed
+    public synchronized int getWaiters()
+    {
+        return waiters.size();
+    }
+
+    /**
+     * Acquires a permit without blocking.  The returned future completes
+     * when the permit has been acquired.  A waiter that is cancelled or
+     * failed by the caller is removed from the queue.
+     */
+    public ListenableFuture<?> acquireAsync()
+    {
+        return acquireAsync(1);
+    }
+
+    private ListenableFuture<?> acquireAsync(int permits)
+    {
+        Waiter waiter;
+        synchronized (this) {
+            if (tryAcquireInOrder(permits)) {
+                return immediateFuture(null);
+            }
+            waiter = new Waiter(permits);
+            waiters.addLast(waiter);
+        }
+        waiter.getFuture().addListener(() -> removeWaiter(waiter), directExecutor());
+        return waiter.getFuture();
+    }
+
     @Override
     public void acquire()
             throws InterruptedException
     {
-        super.acquire();
-        activePermits.incrementAndGet();
+        acquire(1);
     }
 
     @Override
     public void acquireUninterruptibly()
     {
-        super.acquireUninterruptibly();
-        activePermits.incrementAndGet();
+        acquireUninterruptibly(1);
     }
 
     @Override
     public boolean tryAcquire()
     {
-        if (super.tryAcquire()) {
-            activePermits.incrementAndGet();
-            return true;
-        }
-        return false;
+        return tryAcquire(1);
     }
 
     @Override
     public boolean tryAcquire(long timeout, TimeUnit unit)
             throws InterruptedException
     {
-        if (super.tryAcquire(timeout, unit)) {
-            activePermits.incrementAndGet();
-            return true;
-        }
-        return false;
+        return tryAcquire(1, timeout, unit);
     }
 
     @Override
     public void acquire(int permits)
             throws InterruptedException
     {
-        super.acquire(permits);
-        activePermits.addAndGet(permits);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        ListenableFuture<?> acquired = acquireAsync(permits);
+        try {
+            acquired.get();
+        }
+        catch (InterruptedException e) {
+            cancel(acquired, permits);
+            throw e;
+        }
+        catch (ExecutionException e) {
+            throw new AssertionError("waiters are never failed", e);
+        }
     }
 
     @Override
     public void acquireUninterruptibly(int permits)
     {
-        super.acquireUninterruptibly(permits);
-        activePermits.addAndGet(permits);
+        getUnchecked(acquireAsync(permits));
     }
 
     @Override
-    public boolean tryAcquire(int permits)
+    public synchronized boolean tryAcquire(int permits)
     {
-        if (super.tryAcquire(permits)) {
-            activePermits.addAndGet(permits);
-            return true;
-        }
-        return false;
+        return tryAcquireInOrder(permits);
     }
 
     @Override
     public boolean tryAcquire(int permits, long timeout, TimeUnit unit)
             throws InterruptedException
     {
-        if (super.tryAcquire(permits, timeout, unit)) {
-            activePermits.addAndGet(permits);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        ListenableFuture<?> acquired = acquireAsync(permits);
+        try {
+            acquired.get(timeout, unit);
             return true;
         }
-        return false;
+        catch (TimeoutException e) {
+            // the permits may have been granted after the timeout
+            return !acquired.cancel(false);
+        }
+        catch (InterruptedException e) {
+            cancel(acquired, permits);
+            throw e;
+        }
+        catch (ExecutionException e) {
+            throw new AssertionError("waiters are never failed", e);
+        }
     }
 
     @Override
     public void release()
     {
-        super.release();
-        activePermits.decrementAndGet();
+        release(1);
     }
 
     @Override
@@ -150,6 +222,7 @@ class ManagedSemaphore
     {
         super.release(permits);
         activePermits.addAndGet(-permits);
+        grantWaiters();
     }
 
     @Override
@@ -159,4 +232,76 @@ class ManagedSemaphore
         activePermits.addAndGet(permits);
         return permits;
     }
+
+    @GuardedBy("this")
+    private boolean tryAcquireInOrder(int permits)
+    {
+        if (waiters.isEmpty() && super.tryAcquire(permits)) {
+            activePermits.addAndGet(permits);
+            return true;
+        }
+        return false;
+    }
+
+    private void grantWaiters()
+    {
+        while (true) {
+            Waiter waiter;
+            synchronized (this) {
+                waiter = waiters.peekFirst();
+                if (waiter == null || !super.tryAcquire(waiter.getPermits())) {
+                    return;
+                }
+                waiters.removeFirst();
+                activePermits.addAndGet(waiter.getPermits());
+            }
+            // complete the waiter without holding the lock, since this runs the listeners of the caller
+            if (!waiter.getFuture().set(null)) {
+                // the waiter was cancelled or timed out, so give the permits to the next one
+                super.release(waiter.getPermits());
+                activePermits.addAndGet(-waiter.getPermits());
+            }
+        }
+    }
+
+    private void cancel(ListenableFuture<?> acquired, int permits)
+    {
+        if (!acquired.cancel(false)) {
+            // the permits were granted before the caller stopped waiting
+            release(permits);
+        }
+    }
+
+    private void removeWaiter(Waiter waiter)
+    {
+        boolean removed;
+        synchronized (this) {
+            removed = waiters.remove(waiter);
+        }
+        if (removed) {
+            // a cancelled waiter may have been holding up the ones behind it
+            grantWaiters();
+        }
+    }
+
+    private static class Waiter
+    {
+        private final int permits;
+        private final SettableFuture<Void> future = SettableFuture.create();
+
+        public Waiter(int permits)
+        {
+            this.permits = permits;
+        }
+
+        public int getPermits()
+        {
+            return permits;
+        }
+
+        public SettableFuture<Void> getFuture()
+        {
+            return future;
+        }
+    }
 }
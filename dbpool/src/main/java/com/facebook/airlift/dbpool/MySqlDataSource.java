@@ -25,19 +25,21 @@ import java.sql.SQLException;
 import java.util.UUID;
 
 public class MySqlDataSource
-        extends ManagedDataSource
+        extends PooledDataSource
 {
     private final ServiceSelector serviceSelector;
     private final int defaultFetchSize;
+    private final boolean rewriteBatchedStatements;
     private UUID currentServer;
     private MysqlConnectionPoolDataSource dataSource;
 
     public MySqlDataSource(ServiceSelector serviceSelector, MySqlDataSourceConfig config)
     {
-        super(config.getMaxConnections(), config.getMaxConnectionWait());
+        super(config);
 
         this.serviceSelector = serviceSelector;
         this.defaultFetchSize = config.getDefaultFetchSize();
+        this.rewriteBatchedStatements = config.isRewriteBatchedStatements();
     }
 
     protected PooledConnection createConnectionInternal()
@@ -77,6 +79,7 @@ public class MySqlDataSource
                 dataSource.setConnectTimeout(getMaxConnectionWaitMillis());
                 dataSource.setInitialTimeout(getMaxConnectionWaitMillis());
                 dataSource.setDefaultFetchSize(defaultFetchSize);
+                dataSource.setRewriteBatchedStatements(rewriteBatchedStatements);
 
                 PooledConnection connection = dataSource.getPooledConnection();
 
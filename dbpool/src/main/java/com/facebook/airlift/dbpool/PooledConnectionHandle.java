@@ -0,0 +1,437 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.dbpool;
+
+import com.facebook.airlift.dbpool.StatementCache.StatementKey;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The connection handed out by a {@link PooledDataSource} for one checkout.
+ * <p>
+ * Closing the handle returns the underlying connection to the pool, which
+ * keeps the driver connection open, so the prepared statements cached for
+ * the connection survive.  Statements the caller left open are closed, an
+ * open transaction is rolled back, and the connection settings changed
+ * through the handle are restored.  If a setting can not be restored, the
+ * connection is not reused.
+ */
+final class PooledConnectionHandle
+        extends ForwardingConnection
+{
+    private static final int MIN_PRUNE_THRESHOLD = 16;
+
+    private final Connection connection;
+    private final StatementCache statementCache;
+    private final Consumer<PooledConnectionHandle> onClose;
+
+    private final List<Statement> openStatements = new ArrayList<>();
+    private int pruneThreshold = MIN_PRUNE_THRESHOLD;
+
+    private boolean closed;
+    private boolean reusable = true;
+    // set when a setting that changes how statements are prepared has been changed
+    private boolean bypassStatementCache;
+
+    // original values of the settings changed through this handle
+    private Boolean autoCommit;
+    private Boolean readOnly;
+    private Integer transactionIsolation;
+    private Integer holdability;
+    private boolean catalogChanged;
+    private String catalog;
+    private boolean schemaChanged;
+    private String schema;
+
+    public PooledConnectionHandle(Connection connection, StatementCache statementCache, Consumer<PooledConnectionHandle> onClose)
+    {
+        this.connection = requireNonNull(connection, "connection is null");
+        this.statementCache = requireNonNull(statementCache, "statementCache is null");
+        this.onClose = requireNonNull(onClose, "onClose is null");
+    }
+
+    /**
+     * Returns true if the underlying connection was returned in a state in
+     * which it can be handed out again.
+     */
+    public boolean isReusable()
+    {
+        return reusable;
+    }
+
+    @Override
+    protected Connection delegate()
+            throws SQLException
+    {
+        if (closed) {
+            throw new SQLException("Connection is closed");
+        }
+        return connection;
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            closeStatements();
+            reset();
+        }
+        catch (SQLException | RuntimeException e) {
+            reusable = false;
+        }
+        finally {
+            onClose.accept(this);
+        }
+    }
+
+    @Override
+    public boolean isClosed()
+            throws SQLException
+    {
+        return closed || connection.isClosed();
+    }
+
+    @Override
+    public Statement createStatement()
+            throws SQLException
+    {
+        return register(delegate().createStatement());
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency)
+            throws SQLException
+    {
+        return register(delegate().createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException
+    {
+        return register(delegate().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql)
+            throws SQLException
+    {
+        return prepareCached(StatementKey.of(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException
+    {
+        return prepareCached(StatementKey.of(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException
+    {
+        return prepareCached(StatementKey.of(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
+            throws SQLException
+    {
+        return prepareCached(StatementKey.withAutoGeneratedKeys(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes)
+            throws SQLException
+    {
+        return register(delegate().prepareStatement(sql, columnIndexes));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames)
+            throws SQLException
+    {
+        return register(delegate().prepareStatement(sql, columnNames));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql)
+            throws SQLException
+    {
+        return register(delegate().prepareCall(sql));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException
+    {
+        return register(delegate().prepareCall(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException
+    {
+        return register(delegate().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit)
+            throws SQLException
+    {
+        Connection connection = delegate();
+        if (this.autoCommit == null) {
+            this.autoCommit = connection.getAutoCommit();
+        }
+        connection.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly)
+            throws SQLException
+    {
+        Connection connection = delegate();
+        if (this.readOnly == null) {
+            this.readOnly = connection.isReadOnly();
+        }
+        connection.setReadOnly(readOnly);
+    }
+
+    @Override
+    public void setTransactionIsolation(int level)
+            throws SQLException
+    {
+        Connection connection = delegate();
+        if (transactionIsolation == null) {
+            transactionIsolation = connection.getTransactionIsolation();
+        }
+        connection.setTransactionIsolation(level);
+    }
+
+    @Override
+    public void setHoldability(int holdability)
+            throws SQLException
+    {
+        Connection connection = delegate();
+        if (this.holdability == null) {
+            this.holdability = connection.getHoldability();
+        }
+        bypassStatementCache = true;
+        connection.setHoldability(holdability);
+    }
+
+    @Override
+    public void setCatalog(String catalog)
+            throws SQLException
+    {
+        Connection connection = delegate();
+        if (!catalogChanged) {
+            this.catalog = connection.getCatalog();
+            catalogChanged = true;
+        }
+        bypassStatementCache = true;
+        connection.setCatalog(catalog);
+    }
+
+    @Override
+    public void setSchema(String schema)
+            throws SQLException
+    {
+        Connection connection = delegate();
+        if (!schemaChanged) {
+            this.schema = connection.getSchema();
+            schemaChanged = true;
+        }
+        bypassStatementCache = true;
+        connection.setSchema(schema);
+    }
+
+    @Override
+    public void setTypeMap(Map<String, Class<?>> map)
+            throws SQLException
+    {
+        Connection connection = delegate();
+        reusable = false;
+        connection.setTypeMap(map);
+    }
+
+    @Override
+    public void setClientInfo(String name, String value)
+            throws SQLClientInfoException
+    {
+        reusable = false;
+        super.setClientInfo(name, value);
+    }
+
+    @Override
+    public void setClientInfo(Properties properties)
+            throws SQLClientInfoException
+    {
+        reusable = false;
+        super.setClientInfo(properties);
+    }
+
+    @Override
+    public void setNetworkTimeout(Executor executor, int milliseconds)
+            throws SQLException
+    {
+        Connection connection = delegate();
+        reusable = false;
+        connection.setNetworkTimeout(executor, milliseconds);
+    }
+
+    @Override
+    public void abort(Executor executor)
+            throws SQLException
+    {
+        if (closed) {
+            return;
+        }
+        reusable = false;
+        try {
+            connection.abort(executor);
+        }
+        finally {
+            close();
+        }
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface)
+            throws SQLException
+    {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface)
+            throws SQLException
+    {
+        return iface.isInstance(this) || delegate().isWrapperFor(iface);
+    }
+
+    void statementClosed(CachedPreparedStatement statement)
+    {
+        openStatements.remove(statement);
+    }
+
+    private PreparedStatement prepareCached(StatementKey key)
+            throws SQLException
+    {
+        Connection connection = delegate();
+        if (!statementCache.isEnabled() || bypassStatementCache) {
+            return register(key.prepare(connection));
+        }
+
+        PreparedStatement statement = statementCache.take(key);
+        if (statement == null) {
+            statement = key.prepare(connection);
+        }
+        return register(new CachedPreparedStatement(this, statementCache, key, statement));
+    }
+
+    private <T extends Statement> T register(T statement)
+    {
+        // statements that are not cached do not tell the handle when they are closed
+        if (openStatements.size() >= pruneThreshold) {
+            openStatements.removeIf(PooledConnectionHandle::isClosed);
+            pruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, openStatements.size() * 2);
+        }
+        openStatements.add(statement);
+        return statement;
+    }
+
+    private void closeStatements()
+            throws SQLException
+    {
+        List<Statement> statements = new ArrayList<>(openStatements);
+        openStatements.clear();
+
+        SQLException exception = null;
+        for (Statement statement : statements) {
+            try {
+                statement.close();
+            }
+            catch (SQLException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+                else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void reset()
+            throws SQLException
+    {
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+        }
+        if (autoCommit != null) {
+            connection.setAutoCommit(autoCommit);
+        }
+        if (readOnly != null) {
+            connection.setReadOnly(readOnly);
+        }
+        if (transactionIsolation != null) {
+            connection.setTransactionIsolation(transactionIsolation);
+        }
+        if (holdability != null) {
+            connection.setHoldability(holdability);
+        }
+        if (catalogChanged) {
+            connection.setCatalog(catalog);
+        }
+        if (schemaChanged) {
+            connection.setSchema(schema);
+        }
+        connection.clearWarnings();
+    }
+
+    private static boolean isClosed(Statement statement)
+    {
+        try {
+            return statement.isClosed();
+        }
+        catch (SQLException e) {
+            return false;
+        }
+    }
+}
@@ -15,42 +15,137 @@
  */
 package com.facebook.airlift.dbpool;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.units.Duration;
 
-import javax.sql.ConnectionPoolDataSource;
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.GuardedBy;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
 import javax.sql.PooledConnection;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.util.concurrent.Futures.addCallback;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
+import static io.airlift.units.Duration.nanosSince;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 /**
- * This class is not complete yet.
+ * A {@link ManagedDataSource} that keeps closed connections open for reuse.
+ * <p>
+ * The number of checked out connections is limited by the permits of the data
+ * source, which callers wait for in arrival order.  A caller that holds a
+ * permit takes the most recently used idle connection, or asks for a new
+ * connection to be created on the pool thread and takes the first connection
+ * that becomes available, either the new one or one returned in the meantime.
+ * New connections are only created while there are fewer than the maximum
+ * number of connections open or being created.
+ * The pool thread also closes connections that have been idle or open for
+ * too long, validates idle connections, and keeps the minimum number of idle
+ * connections open.  Callers of {@link #getConnectionAsync()} wait in the same
+ * queues without blocking a thread.
+ * <p>
+ * The driver connection of a pooled connection stays open while it is in the
+ * pool, and callers get a handle to it that returns the connection when it is
+ * closed.  Prepared statements are cached per connection when
+ * {@link ManagedDataSourceConfig#getStatementCacheSize()} is positive.
  */
-abstract class PooledDataSource
+public abstract class PooledDataSource
         extends ManagedDataSource
 {
-    private final AtomicBoolean disposed = new AtomicBoolean();
-    private final Deque<PooledConnection> pool = new LinkedBlockingDeque<>();
+    private static final Duration MAINTENANCE_INTERVAL = new Duration(1, SECONDS);
+
+    private final int minIdleConnections;
+    private final int maxIdleConnections;
+    private final long maxIdleTimeNanos;
+    private final long maxLifetimeNanos;
+    private final long validationIntervalNanos;
+    private final int statementCacheSize;
+
+    private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor(daemonThreadsNamed("dbpool-" + getClass().getSimpleName() + "-%s"));
+    private final AtomicBoolean started = new AtomicBoolean();
 
-    PooledDataSource(ConnectionPoolDataSource dataSource, int maxConnections, Duration maxConnectionWait)
+    // most recently used connections are at the end
+    @GuardedBy("this")
+    private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+    @GuardedBy("this")
+    private final Deque<SettableFuture<PoolEntry>> connectionRequests = new ArrayDeque<>();
+    @GuardedBy("this")
+    private final Set<PoolEntry> openConnections = new HashSet<>();
+    @GuardedBy("this")
+    private int pendingCreations;
+    @GuardedBy("this")
+    private boolean disposed;
+
+    protected PooledDataSource(ManagedDataSourceConfig<?> config)
     {
-        super(maxConnections, maxConnectionWait);
+        super(config.getMaxConnections(), config.getMaxConnectionWait());
+
+        checkArgument(config.getMinIdleConnections() >= 0, "minIdleConnections is negative");
+        checkArgument(config.getMaxIdleConnections() >= config.getMinIdleConnections(), "maxIdleConnections is less than minIdleConnections");
+        checkArgument(config.getStatementCacheSize() >= 0, "statementCacheSize is negative");
+        this.minIdleConnections = config.getMinIdleConnections();
+        this.maxIdleConnections = config.getMaxIdleConnections();
+        this.maxIdleTimeNanos = requireNonNull(config.getMaxIdleTime(), "maxIdleTime is null").roundTo(NANOSECONDS);
+        this.maxLifetimeNanos = requireNonNull(config.getMaxConnectionLifetime(), "maxConnectionLifetime is null").roundTo(NANOSECONDS);
+        this.validationIntervalNanos = requireNonNull(config.getValidationInterval(), "validationInterval is null").roundTo(NANOSECONDS);
+        this.statementCacheSize = config.getStatementCacheSize();
     }
 
+    @PreDestroy
     public void dispose()
     {
-        disposed.set(true);
-
-        // there is really no harm in running this loop every time dispose is called
-        for (PooledConnection pooledConnection = pool.poll(); pooledConnection != null; pooledConnection = pool.poll()) {
-            try {
-                pooledConnection.close();
-            }
-            catch (SQLException ignored) {
+        List<PoolEntry> connections = new ArrayList<>();
+        List<SettableFuture<PoolEntry>> requests;
+        synchronized (this) {
+            disposed = true;
+            for (IdleConnection idleConnection = idleConnections.poll(); idleConnection != null; idleConnection = idleConnections.poll()) {
+                connections.add(idleConnection.getConnection());
             }
+            requests = new ArrayList<>(connectionRequests);
+            connectionRequests.clear();
+            updateIdleConnections();
+        }
+        for (SettableFuture<PoolEntry> request : requests) {
+            request.setException(new SQLException(getClass().getSimpleName() + " has been disposed"));
+        }
+        connections.forEach(this::destroy);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Number of callers waiting for a connection, including the callers
+     * waiting for a connection to be returned or created.
+     */
+    @Override
+    public int getConnectionsWaiting()
+    {
+        synchronized (this) {
+            return super.getConnectionsWaiting() + connectionRequests.size();
         }
     }
 
@@ -58,37 +153,530 @@ abstract class PooledDataSource
     protected Connection createConnection()
             throws SQLException
     {
-        assertNotDisposed();
+        return createConnection(System.nanoTime());
+    }
 
-        // check for a pooled connection
-        PooledConnection pooledConnection = pool.pollLast();
-        if (pooledConnection != null) {
-            return prepareConnection(pooledConnection);
-        }
+    @Override
+    protected Connection createConnection(long start)
+            throws SQLException
+    {
+        startMaintenance();
+
+        // the wait for the permit counts against the same deadline
+        long deadline = start + MILLISECONDS.toNanos(getMaxConnectionWaitMillis());
+        long handOutStart = System.nanoTime();
+        while (true) {
+            IdleConnection idleConnection;
+            SettableFuture<PoolEntry> request = null;
+            synchronized (this) {
+                assertNotDisposed();
+                idleConnection = idleConnections.pollLast();
+                if (idleConnection == null) {
+                    request = requestConnection();
+                }
+                updateIdleConnections();
+            }
 
-        // otherwise create a new one
-        return super.createConnection();
+            PoolEntry entry;
+            boolean validate;
+            if (idleConnection != null) {
+                entry = idleConnection.getConnection();
+                validate = System.nanoTime() - idleConnection.getLastValidated() > validationIntervalNanos;
+            }
+            else {
+                entry = awaitConnection(request, deadline);
+                validate = false;
+            }
+
+            Connection connection = checkOut(entry, validate);
+            if (connection != null) {
+                getStats().connectionHandedOut(nanosSince(handOutStart));
+                return connection;
+            }
+        }
     }
 
     @Override
-    protected void connectionReturned(PooledConnection pooledConnection, long checkoutTime)
+    protected ListenableFuture<Connection> createConnectionAsync()
+    {
+        startMaintenance();
+
+        SettableFuture<Connection> connection = SettableFuture.create();
+        checkOutAsync(connection, System.nanoTime());
+        return connection;
+    }
+
+    /**
+     * Closes idle connections that are no longer needed, validates the
+     * remaining ones, and creates connections up to the minimum idle count.
+     * This runs periodically on the pool thread.
+     */
+    void maintain()
+    {
+        long now = System.nanoTime();
+        List<PoolEntry> expired = new ArrayList<>();
+        List<IdleConnection> unvalidated = new ArrayList<>();
+        synchronized (this) {
+            if (disposed) {
+                return;
+            }
+            // the least recently used connections are at the front
+            Iterator<IdleConnection> iterator = idleConnections.iterator();
+            while (iterator.hasNext()) {
+                IdleConnection idleConnection = iterator.next();
+                if (isExpired(idleConnection.getConnection(), now) ||
+                        (now - idleConnection.getIdleSince() > maxIdleTimeNanos && idleConnections.size() > minIdleConnections)) {
+                    iterator.remove();
+                    expired.add(idleConnection.getConnection());
+                }
+                else if (now - idleConnection.getLastValidated() > validationIntervalNanos) {
+                    iterator.remove();
+                    unvalidated.add(idleConnection);
+                }
+            }
+            updateIdleConnections();
+        }
+
+        for (PoolEntry entry : expired) {
+            getStats().connectionEvicted();
+            destroy(entry);
+        }
+        for (IdleConnection idleConnection : unvalidated) {
+            if (isValid(idleConnection.getConnection())) {
+                release(idleConnection.getConnection(), idleConnection.getIdleSince(), System.nanoTime());
+            }
+            else {
+                getStats().validationErrorOccurred();
+                destroy(idleConnection.getConnection());
+            }
+        }
+
+        synchronized (this) {
+            if (disposed) {
+                return;
+            }
+            int connections = openConnections.size() + pendingCreations;
+            int missing = Math.min(minIdleConnections - idleConnections.size() - pendingCreations, getMaxConnections() - connections);
+            for (int i = 0; i < missing; i++) {
+                pendingCreations++;
+                executor.execute(this::createIdleConnection);
+            }
+        }
+    }
+
+    private void startMaintenance()
     {
-        // if this pool has been disposed, or if we have too many connections already
-        if (disposed.get() || getConnectionsActive() + pool.size() > getMaxConnections()) {
-            // close this connection
-            super.connectionReturned(pooledConnection, checkoutTime);
+        if (started.compareAndSet(false, true)) {
+            // started lazily so subclasses are fully constructed before connections are created
+            executor.scheduleWithFixedDelay(this::maintain, 0, MAINTENANCE_INTERVAL.toMillis(), MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues a request for the next connection that is returned, and starts
+     * creating a connection for it if the pool is not full.
+     */
+    @GuardedBy("this")
+    private SettableFuture<PoolEntry> requestConnection()
+    {
+        SettableFuture<PoolEntry> request = SettableFuture.create();
+        connectionRequests.addLast(request);
+        createRequestedConnections();
+        return request;
+    }
+
+    /**
+     * Starts creating a connection for each waiting request that is not
+     * already covered by a pending creation, up to the maximum number of
+     * connections.  When the pool is full, the requests wait for a
+     * connection to be returned, or for one to be destroyed and make room
+     * for a new one.
+     */
+    @GuardedBy("this")
+    private void createRequestedConnections()
+    {
+        while (!disposed &&
+                pendingCreations < connectionRequests.size() &&
+                openConnections.size() + pendingCreations < getMaxConnections()) {
+            pendingCreations++;
+            executor.execute(this::createIdleConnection);
+        }
+    }
+
+    private void checkOutAsync(SettableFuture<Connection> result, long start)
+    {
+        IdleConnection idleConnection;
+        SettableFuture<PoolEntry> request = null;
+        synchronized (this) {
+            if (disposed) {
+                idleConnection = null;
+            }
+            else {
+                idleConnection = idleConnections.pollLast();
+                if (idleConnection == null) {
+                    request = requestConnection();
+                }
+                updateIdleConnections();
+            }
+        }
+
+        if (idleConnection != null) {
+            PoolEntry entry = idleConnection.getConnection();
+            if (System.nanoTime() - idleConnection.getLastValidated() <= validationIntervalNanos) {
+                handOut(result, entry, false, start);
+                return;
+            }
+            // validate on the pool thread, since it requires a round trip to the database
+            try {
+                executor.execute(() -> handOut(result, entry, true, start));
+            }
+            catch (RejectedExecutionException e) {
+                destroy(entry);
+                result.setException(new SQLException(getClass().getSimpleName() + " has been disposed"));
+            }
+            return;
+        }
+        if (request == null) {
+            result.setException(new SQLException(getClass().getSimpleName() + " has been disposed"));
+            return;
+        }
+
+        SettableFuture<PoolEntry> connectionRequest = request;
+        connectionRequest.addListener(() -> removeRequest(connectionRequest), directExecutor());
+        result.addListener(() -> connectionRequest.cancel(false), directExecutor());
+        addCallback(connectionRequest, new FutureCallback<PoolEntry>()
+        {
+            @Override
+            public void onSuccess(PoolEntry entry)
+            {
+                handOut(result, entry, false, start);
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                result.setException(t);
+            }
+        }, directExecutor());
+    }
+
+    private void handOut(SettableFuture<Connection> result, PoolEntry entry, boolean validate, long start)
+    {
+        if (result.isDone()) {
+            // the caller stopped waiting
+            long now = System.nanoTime();
+            release(entry, now, now);
+            return;
+        }
+
+        Connection connection = checkOut(entry, validate);
+        if (connection == null) {
+            checkOutAsync(result, start);
+            return;
+        }
+        if (result.set(connection)) {
+            getStats().connectionHandedOut(nanosSince(start));
         }
         else {
-            // otherwise add it to the pool
-            pool.addLast(pooledConnection);
+            // the handle was never used, so the connection can be returned without closing the handle
+            long now = System.nanoTime();
+            release(entry, now, now);
         }
     }
 
+    private synchronized void removeRequest(SettableFuture<PoolEntry> request)
+    {
+        connectionRequests.remove(request);
+    }
+
+    private PoolEntry awaitConnection(SettableFuture<PoolEntry> request, long deadline)
+            throws SQLException
+    {
+        InterruptedException interrupted = null;
+        try {
+            request.get(Math.max(deadline - System.nanoTime(), 0), NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            interrupted = e;
+        }
+        catch (TimeoutException | ExecutionException ignored) {
+        }
+
+        // a request that is no longer queued has been taken by a thread that completes it
+        synchronized (this) {
+            if (connectionRequests.remove(request)) {
+                if (interrupted != null) {
+                    Thread.currentThread().interrupt();
+                    throw new SqlTimeoutException("Interrupted while waiting for connection", interrupted);
+                }
+                throw new SqlTimeoutException("Could not acquire a connection within " + getMaxConnectionWaitMillis() + " msec");
+            }
+        }
+        if (interrupted != null) {
+            // the connection was handed over anyway, so it must not be lost
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            return getUninterruptibly(request);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throwIfUnchecked(cause);
+            throw new SQLException(cause);
+        }
+    }
+
+    private Connection checkOut(PoolEntry entry, boolean validate)
+    {
+        if (entry.isBroken() || (validate && !isValid(entry))) {
+            getStats().validationErrorOccurred();
+            destroy(entry);
+            return null;
+        }
+        long checkoutTime = System.nanoTime();
+        return new PooledConnectionHandle(entry.getConnection(), entry.getStatementCache(), handle -> checkIn(entry, handle, checkoutTime));
+    }
+
+    private void checkIn(PoolEntry entry, PooledConnectionHandle handle, long checkoutTime)
+    {
+        boolean broken = entry.isBroken();
+        try {
+            if (broken || !handle.isReusable()) {
+                destroy(entry);
+            }
+            else {
+                long now = System.nanoTime();
+                release(entry, now, now);
+            }
+        }
+        finally {
+            // release the permit last, so the next caller finds the connection
+            connectionCheckedIn(checkoutTime, broken);
+        }
+    }
+
+    private void createIdleConnection()
+    {
+        PoolEntry entry;
+        try {
+            entry = createEntry();
+        }
+        catch (SQLException | RuntimeException e) {
+            // fail the oldest waiting caller, instead of letting it wait until it times out
+            SettableFuture<PoolEntry> request;
+            synchronized (this) {
+                pendingCreations--;
+                request = connectionRequests.pollFirst();
+                createRequestedConnections();
+            }
+            if (request != null) {
+                request.setException(e);
+            }
+            return;
+        }
+
+        synchronized (this) {
+            pendingCreations--;
+            openConnections.add(entry);
+            getStats().openConnectionsCounter().set(openConnections.size());
+        }
+        release(entry, entry.getCreated(), entry.getCreated());
+    }
+
+    private PoolEntry createEntry()
+            throws SQLException
+    {
+        PooledConnection pooledConnection = createPooledConnection();
+        try {
+            return new PoolEntry(pooledConnection, new StatementCache(statementCacheSize, getStats()));
+        }
+        catch (SQLException | RuntimeException e) {
+            closeQuietly(pooledConnection);
+            throw e;
+        }
+    }
+
+    /**
+     * Hands the connection to the oldest waiting caller, or keeps it idle.
+     */
+    private void release(PoolEntry entry, long idleSince, long lastValidated)
+    {
+        while (true) {
+            SettableFuture<PoolEntry> request;
+            synchronized (this) {
+                if (disposed || isExpired(entry, System.nanoTime())) {
+                    break;
+                }
+                request = connectionRequests.pollFirst();
+                if (request == null) {
+                    if (idleConnections.size() >= maxIdleConnections) {
+                        break;
+                    }
+                    IdleConnection idleConnection = new IdleConnection(entry, idleSince, lastValidated);
+                    // keep the connections ordered by the time they became idle
+                    if (idleConnections.isEmpty() || idleConnections.peekLast().getIdleSince() <= idleSince) {
+                        idleConnections.addLast(idleConnection);
+                    }
+                    else {
+                        idleConnections.addFirst(idleConnection);
+                    }
+                    updateIdleConnections();
+                    return;
+                }
+            }
+
+            // complete the request without holding the lock, since this runs the listeners of the caller
+            if (request.set(entry)) {
+                return;
+            }
+            // the caller stopped waiting, so try the next one
+        }
+        destroy(entry);
+    }
+
+    private void destroy(PoolEntry entry)
+    {
+        synchronized (this) {
+            openConnections.remove(entry);
+            getStats().openConnectionsCounter().set(openConnections.size());
+            createRequestedConnections();
+        }
+        entry.getStatementCache().close();
+        closeQuietly(entry.getPooledConnection());
+    }
+
+    @GuardedBy("this")
+    private boolean isExpired(PoolEntry entry, long now)
+    {
+        return !openConnections.contains(entry) || now - entry.getCreated() > maxLifetimeNanos;
+    }
+
+    private boolean isValid(PoolEntry entry)
+    {
+        try {
+            return !entry.isBroken() && entry.getConnection().isValid(getLoginTimeout());
+        }
+        catch (SQLException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    @GuardedBy("this")
+    private void updateIdleConnections()
+    {
+        getStats().idleConnectionsCounter().set(idleConnections.size());
+    }
+
+    @GuardedBy("this")
     private void assertNotDisposed()
             throws SQLException
     {
-        if (disposed.get()) {
+        if (disposed) {
             throw new SQLException(getClass().getSimpleName() + " has been disposed");
         }
     }
+
+    private static void closeQuietly(PooledConnection pooledConnection)
+    {
+        try {
+            pooledConnection.close();
+        }
+        catch (SQLException ignored) {
+            // hey we tried
+        }
+    }
+
+    /**
+     * A pooled connection and the driver connection handed out through it,
+     * which stays open for the lifetime of the pooled connection.
+     */
+    private static class PoolEntry
+            implements ConnectionEventListener
+    {
+        private final PooledConnection pooledConnection;
+        private final Connection connection;
+        private final StatementCache statementCache;
+        private final long created = System.nanoTime();
+        private volatile boolean broken;
+
+        public PoolEntry(PooledConnection pooledConnection, StatementCache statementCache)
+                throws SQLException
+        {
+            this.pooledConnection = requireNonNull(pooledConnection, "pooledConnection is null");
+            this.statementCache = requireNonNull(statementCache, "statementCache is null");
+            pooledConnection.addConnectionEventListener(this);
+            this.connection = pooledConnection.getConnection();
+        }
+
+        public PooledConnection getPooledConnection()
+        {
+            return pooledConnection;
+        }
+
+        public Connection getConnection()
+        {
+            return connection;
+        }
+
+        public StatementCache getStatementCache()
+        {
+            return statementCache;
+        }
+
+        public long getCreated()
+        {
+            return created;
+        }
+
+        public boolean isBroken()
+        {
+            return broken;
+        }
+
+        @Override
+        public void connectionClosed(ConnectionEvent event)
+        {
+            // the driver connection is only closed by the pool when the pooled connection is destroyed
+            broken = true;
+        }
+
+        @Override
+        public void connectionErrorOccurred(ConnectionEvent event)
+        {
+            broken = true;
+        }
+    }
+
+    private static class IdleConnection
+    {
+        private final PoolEntry connection;
+        private final long idleSince;
+        private final long lastValidated;
+
+        public IdleConnection(PoolEntry connection, long idleSince, long lastValidated)
+        {
+            this.connection = connection;
+            this.idleSince = idleSince;
+            this.lastValidated = lastValidated;
+        }
+
+        public PoolEntry getConnection()
+        {
+            return connection;
+        }
+
+        public long getIdleSince()
+        {
+            return idleSince;
+        }
+
+        public long getLastValidated()
+        {
+            return lastValidated;
+        }
+    }
 }
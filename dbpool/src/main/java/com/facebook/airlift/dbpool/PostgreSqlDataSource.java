@@ -30,20 +30,22 @@ import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 public class PostgreSqlDataSource
-        extends ManagedDataSource
+        extends PooledDataSource
 {
     private final ServiceSelector serviceSelector;
     private final int defaultFetchSize;
+    private final boolean rewriteBatchedStatements;
 
     private UUID currentServer;
     private PGConnectionPoolDataSource dataSource;
 
     public PostgreSqlDataSource(ServiceSelector serviceSelector, PostgreSqlDataSourceConfig config)
     {
-        super(config.getMaxConnections(), config.getMaxConnectionWait());
+        super(config);
 
         this.serviceSelector = requireNonNull(serviceSelector, "serviceSelector is null");
         this.defaultFetchSize = config.getDefaultFetchSize();
+        this.rewriteBatchedStatements = config.isRewriteBatchedStatements();
     }
 
     @Override
@@ -81,6 +83,7 @@ public class PostgreSqlDataSource
                 PGConnectionPoolDataSource dataSource = new PGConnectionPoolDataSource();
                 dataSource.setUrl(jdbcUrl);
                 dataSource.setDefaultRowFetchSize(defaultFetchSize);
+                dataSource.setReWriteBatchedInserts(rewriteBatchedStatements);
 
                 int timeout = Ints.saturatedCast(MILLISECONDS.toSeconds(getMaxConnectionWaitMillis()));
                 dataSource.setConnectTimeout(timeout);
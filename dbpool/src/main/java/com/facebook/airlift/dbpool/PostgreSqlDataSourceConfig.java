@@ -24,6 +24,7 @@ public class PostgreSqlDataSourceConfig
         extends ManagedDataSourceConfig<PostgreSqlDataSourceConfig>
 {
     private int defaultFetchSize = 100;
+    private boolean rewriteBatchedStatements;
 
     /**
      * Gets the default fetch size for all connection.
@@ -42,4 +43,25 @@ public class PostgreSqlDataSourceConfig
         this.defaultFetchSize = defaultFetchSize;
         return this;
     }
+
+    /**
+     * Gets whether the driver rewrites batched inserts into multi-row inserts.
+     */
+    public boolean isRewriteBatchedStatements()
+    {
+        return rewriteBatchedStatements;
+    }
+
+    /**
+     * Sets whether the driver rewrites batched inserts into multi-row inserts.
+     * This reduces the number of round trips for {@link JdbcBatchWriter} and
+     * other code using {@code executeBatch}, but the update counts returned
+     * for a rewritten batch are not reliable.
+     */
+    @Config("db.rewrite-batched-statements")
+    public PostgreSqlDataSourceConfig setRewriteBatchedStatements(boolean rewriteBatchedStatements)
+    {
+        this.rewriteBatchedStatements = rewriteBatchedStatements;
+        return this;
+    }
 }
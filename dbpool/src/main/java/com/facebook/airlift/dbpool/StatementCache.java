@@ -0,0 +1,232 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.dbpool;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Prepared statements of a pooled connection that are not in use, kept open
+ * so preparing the same SQL again does not need a round trip to the server.
+ * A statement is taken out of the cache while it is in use, and the least
+ * recently returned statement is closed when the cache is full.
+ */
+@ThreadSafe
+final class StatementCache
+{
+    private final int maxSize;
+    private final ManagedDataSourceStats stats;
+
+    // least recently returned statements are first
+    @GuardedBy("this")
+    private final Map<StatementKey, PreparedStatement> statements = new LinkedHashMap<>();
+    @GuardedBy("this")
+    private boolean closed;
+
+    public StatementCache(int maxSize, ManagedDataSourceStats stats)
+    {
+        checkArgument(maxSize >= 0, "maxSize is negative");
+        this.maxSize = maxSize;
+        this.stats = requireNonNull(stats, "stats is null");
+    }
+
+    public boolean isEnabled()
+    {
+        return maxSize > 0;
+    }
+
+    /**
+     * Removes the cached statement for the key, if any.
+     */
+    public synchronized PreparedStatement take(StatementKey key)
+    {
+        PreparedStatement statement = statements.remove(key);
+        if (statement == null) {
+            stats.statementCacheMissed();
+        }
+        else {
+            stats.statementCacheHit();
+        }
+        return statement;
+    }
+
+    /**
+     * Returns a statement that is no longer in use to the cache, or closes it
+     * when the cache already holds a statement for the key.
+     */
+    public void put(StatementKey key, PreparedStatement statement)
+    {
+        requireNonNull(key, "key is null");
+        requireNonNull(statement, "statement is null");
+
+        PreparedStatement evicted = null;
+        synchronized (this) {
+            if (closed || statements.containsKey(key)) {
+                evicted = statement;
+            }
+            else {
+                statements.put(key, statement);
+                if (statements.size() > maxSize) {
+                    Iterator<PreparedStatement> iterator = statements.values().iterator();
+                    evicted = iterator.next();
+                    iterator.remove();
+                    stats.statementEvicted();
+                }
+            }
+        }
+        if (evicted != null) {
+            closeQuietly(evicted);
+        }
+    }
+
+    public synchronized int size()
+    {
+        return statements.size();
+    }
+
+    /**
+     * Closes all cached statements.  Statements returned later are closed
+     * immediately.
+     */
+    public void close()
+    {
+        List<PreparedStatement> evicted;
+        synchronized (this) {
+            closed = true;
+            evicted = new ArrayList<>(statements.values());
+            statements.clear();
+        }
+        evicted.forEach(StatementCache::closeQuietly);
+    }
+
+    private static void closeQuietly(PreparedStatement statement)
+    {
+        try {
+            statement.close();
+        }
+        catch (SQLException | RuntimeException ignored) {
+            // hey we tried
+        }
+    }
+
+    /**
+     * The arguments a statement was prepared with.
+     */
+    static final class StatementKey
+    {
+        private static final int UNSPECIFIED = -1;
+
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int resultSetHoldability;
+        private final int autoGeneratedKeys;
+
+        public static StatementKey of(String sql)
+        {
+            return new StatementKey(sql, UNSPECIFIED, UNSPECIFIED, UNSPECIFIED, UNSPECIFIED);
+        }
+
+        public static StatementKey of(String sql, int resultSetType, int resultSetConcurrency)
+        {
+            return new StatementKey(sql, resultSetType, resultSetConcurrency, UNSPECIFIED, UNSPECIFIED);
+        }
+
+        public static StatementKey of(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+        {
+            return new StatementKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability, UNSPECIFIED);
+        }
+
+        public static StatementKey withAutoGeneratedKeys(String sql, int autoGeneratedKeys)
+        {
+            return new StatementKey(sql, UNSPECIFIED, UNSPECIFIED, UNSPECIFIED, autoGeneratedKeys);
+        }
+
+        private StatementKey(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, int autoGeneratedKeys)
+        {
+            this.sql = requireNonNull(sql, "sql is null");
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.resultSetHoldability = resultSetHoldability;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        /**
+         * Prepares a new statement with these arguments.
+         */
+        public PreparedStatement prepare(Connection connection)
+                throws SQLException
+        {
+            if (autoGeneratedKeys != UNSPECIFIED) {
+                return connection.prepareStatement(sql, autoGeneratedKeys);
+            }
+            if (resultSetHoldability != UNSPECIFIED) {
+                return connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            }
+            if (resultSetType != UNSPECIFIED) {
+                return connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            }
+            return connection.prepareStatement(sql);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            StatementKey that = (StatementKey) o;
+            return resultSetType == that.resultSetType &&
+                    resultSetConcurrency == that.resultSetConcurrency &&
+                    resultSetHoldability == that.resultSetHoldability &&
+                    autoGeneratedKeys == that.autoGeneratedKeys &&
+                    sql.equals(that.sql);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(sql, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys);
+        }
+
+        @Override
+        public String toString()
+        {
+            return toStringHelper(this)
+                    .add("sql", sql)
+                    .add("resultSetType", resultSetType)
+                    .add("resultSetConcurrency", resultSetConcurrency)
+                    .add("resultSetHoldability", resultSetHoldability)
+                    .add("autoGeneratedKeys", autoGeneratedKeys)
+                    .toString();
+        }
+    }
+}
@@ -18,21 +18,34 @@ package com.facebook.airlift.dbpool;
 import com.facebook.airlift.dbpool.H2EmbeddedDataSourceConfig.Cipher;
 import com.google.common.io.Files;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.Duration;
 import org.h2.jdbc.JdbcSQLException;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import javax.sql.DataSource;
+
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.io.Files.asCharSink;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 @Test(singleThreaded = true)
 public class H2EmbeddedDataSourceTest
@@ -170,6 +183,137 @@ public class H2EmbeddedDataSourceTest
         new H2EmbeddedDataSource(config);
     }
 
+    @Test
+    public void testStatementCache()
+            throws Exception
+    {
+        H2EmbeddedDataSourceConfig config = new H2EmbeddedDataSourceConfig()
+                .setFilename(file.getAbsolutePath())
+                .setInitScript("com/facebook/airlift/dbpool/h2.ddl")
+                .setStatementCacheSize(2);
+
+        H2EmbeddedDataSource dataSource = new H2EmbeddedDataSource(config);
+        ManagedDataSourceStats stats = dataSource.getStats();
+        try {
+            String insert = "INSERT INTO message (message_id, sender, recipients, ip, correlation_id, cluster_id, text) VALUES (?, ?, ?, ?, ?, ?, ?)";
+            try (Connection connection = dataSource.getConnection();
+                    PreparedStatement statement = connection.prepareStatement(insert)) {
+                for (int parameter = 1; parameter <= 7; parameter++) {
+                    statement.setString(parameter, "value");
+                }
+                assertEquals(statement.executeUpdate(), 1);
+            }
+            assertEquals(stats.getStatementCacheMisses(), 1);
+
+            // the next checkout reuses the statement, without the parameters of the previous use
+            try (Connection connection = dataSource.getConnection();
+                    PreparedStatement statement = connection.prepareStatement(insert)) {
+                assertEquals(stats.getStatementCacheHits(), 1);
+                try {
+                    statement.executeUpdate();
+                    fail("expected SQLException");
+                }
+                catch (SQLException expected) {
+                }
+            }
+
+            // the least recently used statement is evicted
+            String count = "SELECT count(*) FROM message";
+            try (Connection connection = dataSource.getConnection()) {
+                connection.prepareStatement(count).close();
+                connection.prepareStatement("SELECT count(*) FROM message WHERE sender = ?").close();
+            }
+            assertEquals(stats.getStatementCacheMisses(), 3);
+            assertEquals(stats.getStatementCacheEvictions(), 1);
+
+            try (Connection connection = dataSource.getConnection();
+                    PreparedStatement statement = connection.prepareStatement(count);
+                    ResultSet resultSet = statement.executeQuery()) {
+                assertEquals(stats.getStatementCacheHits(), 2);
+                assertTrue(resultSet.next());
+                assertEquals(resultSet.getLong(1), 1);
+            }
+        }
+        finally {
+            dataSource.dispose();
+        }
+    }
+
+    @Test
+    public void testBatchWriter()
+            throws Exception
+    {
+        H2EmbeddedDataSourceConfig config = new H2EmbeddedDataSourceConfig()
+                .setFilename(file.getAbsolutePath())
+                .setInitScript("com/facebook/airlift/dbpool/h2.ddl");
+
+        H2EmbeddedDataSource dataSource = new H2EmbeddedDataSource(config);
+        try {
+            JdbcBatchWriter writer = new JdbcBatchWriter(dataSource, new JdbcBatchWriterConfig()
+                    .setMaxBatchSize(3)
+                    .setMaxLinger(new Duration(1, TimeUnit.HOURS)));
+            String insert = "INSERT INTO message (message_id, sender, recipients, ip, correlation_id, cluster_id, text) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+            // a full batch is flushed right away
+            ListenableFuture<?> first = writer.write(insert, "1", "sender", "recipients", "ip", "correlation", "cluster", "text");
+            writer.write(insert, "2", "sender", "recipients", "ip", "correlation", "cluster", "text");
+            ListenableFuture<?> third = writer.write(insert, "3", "sender", "recipients", "ip", "correlation", "cluster", "text");
+            assertSame(first, third);
+            first.get(10, TimeUnit.SECONDS);
+            assertEquals(countMessages(dataSource), 3);
+
+            // a batch with a duplicate key fails as a whole
+            ListenableFuture<?> failed = writer.write(insert, "4", "sender", "recipients", "ip", "correlation", "cluster", "text");
+            writer.write(insert, "1", "sender", "recipients", "ip", "correlation", "cluster", "text");
+            writer.write(insert, "5", "sender", "recipients", "ip", "correlation", "cluster", "text");
+            try {
+                failed.get(10, TimeUnit.SECONDS);
+                fail("expected ExecutionException");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SQLException);
+            }
+            assertEquals(countMessages(dataSource), 3);
+            assertEquals(writer.getFailedBatches(), 1);
+            assertEquals(writer.getFailedRows(), 3);
+
+            // closing flushes the partial batch
+            ListenableFuture<?> partial = writer.write(insert, "6", "sender", "recipients", "ip", "correlation", "cluster", "text");
+            assertFalse(partial.isDone());
+            long closeStart = System.nanoTime();
+            writer.close();
+            assertTrue(partial.isDone());
+            // close does not wait for the linger flushes that are not due yet
+            assertTrue(System.nanoTime() - closeStart < TimeUnit.SECONDS.toNanos(30));
+            partial.get();
+            assertEquals(countMessages(dataSource), 4);
+            assertEquals(writer.getBufferedRows(), 0);
+            assertEquals(writer.getBatchSize().getAllTime().getCount(), 3.0);
+
+            // null values are bound with the type of their parameter
+            JdbcBatchWriter nullWriter = new JdbcBatchWriter(dataSource, new JdbcBatchWriterConfig().setMaxBatchSize(2));
+            String insertWithDescription = "INSERT INTO message (message_id, sender, description, recipients, ip, correlation_id, cluster_id, text) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+            nullWriter.write(insertWithDescription, "7", "sender", null, "recipients", "ip", "correlation", "cluster", "text");
+            nullWriter.write(insertWithDescription, "8", "sender", "description", "recipients", "ip", "correlation", "cluster", "text").get(10, TimeUnit.SECONDS);
+            nullWriter.close();
+            assertEquals(countMessages(dataSource), 6);
+        }
+        finally {
+            dataSource.dispose();
+        }
+    }
+
+    private static long countMessages(DataSource dataSource)
+            throws SQLException
+    {
+        try (Connection connection = dataSource.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM message")) {
+            assertTrue(resultSet.next());
+            return resultSet.getLong(1);
+        }
+    }
+
     private static void closeQuietly(ResultSet resultSet)
     {
         try {
@@ -16,6 +16,7 @@
 package com.facebook.airlift.dbpool;
 
 import com.facebook.airlift.dbpool.MockConnectionPoolDataSource.MockConnection;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.units.Duration;
 import org.testng.annotations.Test;
 
@@ -78,6 +79,34 @@ public class ManagedDataSourceTest
         assertEquals(dataSource.getStats().getConnectionErrorCount(), 0);
     }
 
+    @Test
+    public void testGetConnectionAsync()
+            throws Exception
+    {
+        ManagedDataSource dataSource = new MockManagedDataSource(1, new Duration(10, SECONDS));
+
+        ListenableFuture<Connection> future = dataSource.getConnectionAsync();
+        assertTrue(future.isDone());
+        Connection connection = future.get();
+        assertTrue(connection instanceof MockConnection);
+        assertEquals(dataSource.getConnectionsActive(), 1);
+
+        // the next caller waits for the connection to be closed
+        ListenableFuture<Connection> waiter = dataSource.getConnectionAsync();
+        assertFalse(waiter.isDone());
+        assertEquals(dataSource.getConnectionsWaiting(), 1);
+
+        connection.close();
+        assertTrue(waiter.isDone());
+        assertEquals(dataSource.getConnectionsWaiting(), 0);
+        assertEquals(dataSource.getConnectionsActive(), 1);
+
+        waiter.get().close();
+        assertEquals(dataSource.getConnectionsActive(), 0);
+        assertEquals(dataSource.getStats().getCheckout().getAllTime().getCount(), 2.0);
+        assertEquals(dataSource.getStats().getHeld().getAllTime().getCount(), 2.0);
+    }
+
     @Test
     public void testMaxConnectionWaitMillis()
             throws Exception
@@ -118,7 +118,8 @@ public class MockConnectionPoolDataSource
             implements PooledConnection
     {
         private final MockConnectionPoolDataSource dataSource;
-        private boolean closed;
+        private volatile boolean closed;
+        private volatile boolean valid = true;
         private List<ConnectionEventListener> connectionEventListeners = new CopyOnWriteArrayList<>();
 
         public MockPooledConnection(MockConnectionPoolDataSource dataSource)
@@ -146,6 +147,16 @@ public class MockConnectionPoolDataSource
             }
         }
 
+        public boolean isClosed()
+        {
+            return closed;
+        }
+
+        public void setValid(boolean valid)
+        {
+            this.valid = valid;
+        }
+
         public void closeOccurred()
         {
             for (ConnectionEventListener connectionEventListener : connectionEventListeners) {
@@ -197,6 +208,11 @@ public class MockConnectionPoolDataSource
             this.mockPooledConnection = mockPooledConnection;
         }
 
+        public MockPooledConnection getMockPooledConnection()
+        {
+            return mockPooledConnection;
+        }
+
         @Override
         public void close()
                 throws SQLException
@@ -292,7 +308,7 @@ public class MockConnectionPoolDataSource
         public boolean getAutoCommit()
                 throws SQLException
         {
-            throw new UnsupportedOperationException();
+            return true;
         }
 
         @Override
@@ -376,7 +392,6 @@ public class MockConnectionPoolDataSource
         public void clearWarnings()
                 throws SQLException
         {
-            throw new UnsupportedOperationException();
         }
 
         @Override
@@ -530,7 +545,7 @@ public class MockConnectionPoolDataSource
         public boolean isValid(int timeout)
                 throws SQLException
         {
-            throw new UnsupportedOperationException();
+            return !mockPooledConnection.closed && mockPooledConnection.valid;
         }
 
         @Override
@@ -579,14 +594,17 @@ public class MockConnectionPoolDataSource
         public <T> T unwrap(Class<T> iface)
                 throws SQLException
         {
-            throw new UnsupportedOperationException();
+            if (iface.isInstance(this)) {
+                return iface.cast(this);
+            }
+            throw new SQLException("not a wrapper for " + iface.getName());
         }
 
         @Override
         public boolean isWrapperFor(Class<?> iface)
                 throws SQLException
         {
-            throw new UnsupportedOperationException();
+            return iface.isInstance(this);
         }
     }
 }
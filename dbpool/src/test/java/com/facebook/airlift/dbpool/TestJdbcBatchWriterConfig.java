@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.dbpool;
+
+import com.facebook.airlift.configuration.testing.ConfigAssertions;
+import com.google.common.collect.ImmutableMap;
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TestJdbcBatchWriterConfig
+{
+    @Test
+    public void testDefaults()
+    {
+        ConfigAssertions.assertRecordedDefaults(ConfigAssertions.recordDefaults(JdbcBatchWriterConfig.class)
+                .setMaxBatchSize(500)
+                .setMaxBufferedRows(10_000)
+                .setMaxLinger(new Duration(10, TimeUnit.MILLISECONDS)));
+    }
+
+    @Test
+    public void testExplicitPropertyMappings()
+    {
+        Map<String, String> properties = new ImmutableMap.Builder<String, String>()
+                .put("db.batch.max-size", "100")
+                .put("db.batch.max-buffered-rows", "1000")
+                .put("db.batch.max-linger", "1s")
+                .build();
+
+        JdbcBatchWriterConfig expected = new JdbcBatchWriterConfig()
+                .setMaxBatchSize(100)
+                .setMaxBufferedRows(1000)
+                .setMaxLinger(new Duration(1, TimeUnit.SECONDS));
+
+        ConfigAssertions.assertFullMapping(properties, expected);
+    }
+}
@@ -15,9 +15,15 @@
  */
 package com.facebook.airlift.dbpool;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.testng.annotations.Test;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
@@ -235,6 +241,82 @@ public class TestManagedSemaphore
         assertPermits(semaphore, 2, 0);
     }
 
+    @Test
+    public void testAcquireAsync()
+    {
+        ManagedSemaphore semaphore = new ManagedSemaphore(1);
+
+        // the permit is available
+        ListenableFuture<?> first = semaphore.acquireAsync();
+        assertTrue(first.isDone());
+        assertPermits(semaphore, 1, 1);
+
+        // waiters are queued
+        ListenableFuture<?> second = semaphore.acquireAsync();
+        ListenableFuture<?> third = semaphore.acquireAsync();
+        assertFalse(second.isDone());
+        assertEquals(semaphore.getWaiters(), 2);
+
+        // a released permit goes to the oldest waiter
+        semaphore.release();
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertEquals(semaphore.getWaiters(), 1);
+        assertPermits(semaphore, 1, 1);
+
+        // a cancelled waiter is removed from the queue
+        third.cancel(false);
+        assertEquals(semaphore.getWaiters(), 0);
+        semaphore.release();
+        assertPermits(semaphore, 1, 0);
+
+        // adding permits grants them to waiters
+        assertTrue(semaphore.tryAcquire());
+        ListenableFuture<?> fourth = semaphore.acquireAsync();
+        assertFalse(fourth.isDone());
+        semaphore.setPermits(2);
+        assertTrue(fourth.isDone());
+        assertPermits(semaphore, 2, 2);
+    }
+
+    @Test(timeOut = 10000)
+    public void testBlockingAndAsyncWaitersShareQueue()
+            throws Exception
+    {
+        ManagedSemaphore semaphore = new ManagedSemaphore(1);
+        assertTrue(semaphore.tryAcquire());
+
+        ExecutorService executor = newSingleThreadExecutor();
+        try {
+            // a blocked caller is queued ahead of a later async caller
+            Future<Boolean> blocked = executor.submit(() -> semaphore.tryAcquire(10, SECONDS));
+            while (semaphore.getWaiters() == 0) {
+                Thread.sleep(1);
+            }
+            ListenableFuture<?> async = semaphore.acquireAsync();
+            assertEquals(semaphore.getWaiters(), 2);
+
+            semaphore.release();
+            assertTrue(blocked.get());
+            assertFalse(async.isDone());
+            assertEquals(semaphore.getWaiters(), 1);
+
+            // and an async caller is queued ahead of a later blocked caller
+            Future<Boolean> timedOut = executor.submit(() -> semaphore.tryAcquire(1, SECONDS));
+            while (semaphore.getWaiters() == 1) {
+                Thread.sleep(1);
+            }
+            semaphore.release();
+            assertTrue(async.isDone());
+            assertFalse(timedOut.get());
+            assertEquals(semaphore.getWaiters(), 0);
+            assertPermits(semaphore, 1, 1);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
     private void assertPermits(ManagedSemaphore semaphore, int totalPermits, int checkedOutPermits)
     {
         assertEquals(semaphore.getPermits(), totalPermits);
@@ -15,8 +15,15 @@ public class TestMySqlDataSourceConfig
     {
         ConfigAssertions.assertRecordedDefaults(ConfigAssertions.recordDefaults(MySqlDataSourceConfig.class)
                 .setDefaultFetchSize(100)
+                .setRewriteBatchedStatements(false)
                 .setMaxConnections(10)
-                .setMaxConnectionWait(new Duration(500, TimeUnit.MILLISECONDS)));
+                .setMaxConnectionWait(new Duration(500, TimeUnit.MILLISECONDS))
+                .setMinIdleConnections(0)
+                .setMaxIdleConnections(10)
+                .setMaxIdleTime(new Duration(10, TimeUnit.MINUTES))
+                .setMaxConnectionLifetime(new Duration(30, TimeUnit.MINUTES))
+                .setValidationInterval(new Duration(30, TimeUnit.SECONDS))
+                .setStatementCacheSize(0));
     }
 
     @Test
@@ -24,14 +31,28 @@ public class TestMySqlDataSourceConfig
     {
         Map<String, String> properties = new ImmutableMap.Builder<String, String>()
                 .put("db.fetch-size", "500")
+                .put("db.rewrite-batched-statements", "true")
                 .put("db.connections.max", "12")
                 .put("db.connections.wait", "42s")
+                .put("db.connections.min-idle", "2")
+                .put("db.connections.max-idle", "5")
+                .put("db.connections.max-idle-time", "1m")
+                .put("db.connections.max-lifetime", "1h")
+                .put("db.connections.validation-interval", "10s")
+                .put("db.statement-cache-size", "50")
                 .build();
 
         MySqlDataSourceConfig expected = new MySqlDataSourceConfig()
                 .setDefaultFetchSize(500)
+                .setRewriteBatchedStatements(true)
                 .setMaxConnections(12)
-                .setMaxConnectionWait(new Duration(42, TimeUnit.SECONDS));
+                .setMaxConnectionWait(new Duration(42, TimeUnit.SECONDS))
+                .setMinIdleConnections(2)
+                .setMaxIdleConnections(5)
+                .setMaxIdleTime(new Duration(1, TimeUnit.MINUTES))
+                .setMaxConnectionLifetime(new Duration(1, TimeUnit.HOURS))
+                .setValidationInterval(new Duration(10, TimeUnit.SECONDS))
+                .setStatementCacheSize(50);
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
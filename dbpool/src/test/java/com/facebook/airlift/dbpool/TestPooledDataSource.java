@@ -0,0 +1,513 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.dbpool;
+
+import com.facebook.airlift.dbpool.MockConnectionPoolDataSource.MockConnection;
+import com.facebook.airlift.dbpool.MockConnectionPoolDataSource.MockPooledConnection;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.units.Duration.nanosSince;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test(singleThreaded = true)
+public class TestPooledDataSource
+{
+    private MockConnectionPoolDataSource poolDataSource;
+    private PooledDataSource dataSource;
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setup()
+    {
+        poolDataSource = new MockConnectionPoolDataSource();
+        executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown()
+    {
+        if (dataSource != null) {
+            dataSource.dispose();
+            dataSource = null;
+        }
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConnectionIsReused()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig());
+
+        Connection connection = dataSource.getConnection();
+        MockPooledConnection pooledConnection = getPooledConnection(connection);
+        connection.close();
+        assertEquals(dataSource.getConnectionsActive(), 0);
+        assertEquals(dataSource.getStats().getIdleConnections(), 1);
+        assertEquals(dataSource.getStats().getOpenConnections(), 1);
+        assertFalse(pooledConnection.isClosed());
+
+        connection = dataSource.getConnection();
+        assertSame(getPooledConnection(connection), pooledConnection);
+        assertEquals(dataSource.getStats().getIdleConnections(), 0);
+        assertEquals(dataSource.getStats().getCreate().getAllTime().getCount(), 1.0);
+        assertEquals(dataSource.getStats().getCheckout().getAllTime().getCount(), 2.0);
+        connection.close();
+    }
+
+    @Test
+    public void testClosedConnection()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig());
+
+        Connection connection = dataSource.getConnection();
+        connection.close();
+        assertTrue(connection.isClosed());
+        try {
+            connection.getAutoCommit();
+            fail("expected SQLException");
+        }
+        catch (SQLException expected) {
+        }
+
+        // closing again does not return the connection twice
+        connection.close();
+        assertEquals(dataSource.getConnectionsActive(), 0);
+        assertEquals(dataSource.getStats().getIdleConnections(), 1);
+        assertEquals(dataSource.getStats().getHeld().getAllTime().getCount(), 1.0);
+    }
+
+    @Test
+    public void testMaxIdleConnections()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setMaxConnections(3)
+                .setMaxIdleConnections(1));
+
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        Connection third = dataSource.getConnection();
+        MockPooledConnection firstPooledConnection = getPooledConnection(first);
+        MockPooledConnection secondPooledConnection = getPooledConnection(second);
+        MockPooledConnection thirdPooledConnection = getPooledConnection(third);
+        first.close();
+        second.close();
+        third.close();
+
+        assertFalse(firstPooledConnection.isClosed());
+        assertTrue(secondPooledConnection.isClosed());
+        assertTrue(thirdPooledConnection.isClosed());
+        assertEquals(dataSource.getStats().getIdleConnections(), 1);
+        assertEquals(dataSource.getStats().getOpenConnections(), 1);
+    }
+
+    @Test
+    public void testBrokenConnectionIsNotReused()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig());
+
+        Connection connection = dataSource.getConnection();
+        MockPooledConnection pooledConnection = getPooledConnection(connection);
+        connection.unwrap(MockConnection.class).errorOccurred();
+        connection.close();
+        assertTrue(pooledConnection.isClosed());
+        assertEquals(dataSource.getConnectionsActive(), 0);
+        assertEquals(dataSource.getStats().getConnectionErrorCount(), 1);
+        assertEquals(dataSource.getStats().getIdleConnections(), 0);
+        assertEquals(dataSource.getStats().getOpenConnections(), 0);
+
+        Connection next = dataSource.getConnection();
+        assertNotSame(getPooledConnection(next), pooledConnection);
+        next.close();
+    }
+
+    @Test
+    public void testIdleConnectionIsEvicted()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setMaxIdleTime(new Duration(1, MILLISECONDS)));
+
+        Connection connection = dataSource.getConnection();
+        MockPooledConnection pooledConnection = getPooledConnection(connection);
+        connection.close();
+        MILLISECONDS.sleep(10);
+        dataSource.maintain();
+
+        assertTrue(pooledConnection.isClosed());
+        assertEquals(dataSource.getStats().getIdleConnections(), 0);
+        assertEquals(dataSource.getStats().getEvictedConnectionCount(), 1);
+    }
+
+    @Test
+    public void testConnectionLifetime()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setMaxConnectionLifetime(new Duration(1, MILLISECONDS)));
+
+        Connection connection = dataSource.getConnection();
+        MockPooledConnection pooledConnection = getPooledConnection(connection);
+        MILLISECONDS.sleep(10);
+        connection.close();
+
+        // the connection was too old to be pooled
+        assertTrue(pooledConnection.isClosed());
+        assertEquals(dataSource.getStats().getIdleConnections(), 0);
+    }
+
+    @Test
+    public void testInvalidConnectionIsReplaced()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setValidationInterval(new Duration(1, MILLISECONDS)));
+
+        Connection connection = dataSource.getConnection();
+        MockPooledConnection pooledConnection = getPooledConnection(connection);
+        connection.close();
+        pooledConnection.setValid(false);
+        MILLISECONDS.sleep(10);
+
+        Connection next = dataSource.getConnection();
+        assertNotSame(getPooledConnection(next), pooledConnection);
+        assertTrue(pooledConnection.isClosed());
+        assertEquals(dataSource.getStats().getValidationErrorCount(), 1);
+        next.close();
+    }
+
+    @Test
+    public void testInvalidIdleConnectionIsClosed()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setValidationInterval(new Duration(1, MILLISECONDS)));
+
+        Connection connection = dataSource.getConnection();
+        Connection other = dataSource.getConnection();
+        MockPooledConnection pooledConnection = getPooledConnection(connection);
+        MockPooledConnection otherPooledConnection = getPooledConnection(other);
+        connection.close();
+        other.close();
+        pooledConnection.setValid(false);
+        MILLISECONDS.sleep(10);
+        dataSource.maintain();
+
+        assertTrue(pooledConnection.isClosed());
+        assertFalse(otherPooledConnection.isClosed());
+        assertEquals(dataSource.getStats().getIdleConnections(), 1);
+        assertEquals(dataSource.getStats().getValidationErrorCount(), 1);
+    }
+
+    @Test
+    public void testMinIdleConnections()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setMinIdleConnections(3));
+
+        dataSource.getConnection().close();
+
+        assertEventually(() -> dataSource.getStats().getIdleConnections() == 3);
+        assertEquals(dataSource.getStats().getOpenConnections(), 3);
+    }
+
+    @Test
+    public void testReturnedConnectionIsHandedToWaiter()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setMaxConnections(2)
+                .setMaxConnectionWait(new Duration(10, SECONDS)));
+
+        Connection connection = dataSource.getConnection();
+        MockPooledConnection pooledConnection = getPooledConnection(connection);
+        poolDataSource.creationSleep = 5_000;
+
+        long start = System.nanoTime();
+        Future<Connection> waiter = executor.submit(() -> dataSource.getConnection());
+        assertEventually(() -> dataSource.getConnectionsActive() == 2);
+        connection.close();
+
+        // the waiter does not wait for the new connection to be created
+        Connection handedOver = waiter.get(1, SECONDS);
+        assertSame(getPooledConnection(handedOver), pooledConnection);
+        assertTrue(nanosSince(start).compareTo(new Duration(5, SECONDS)) < 0);
+        handedOver.close();
+    }
+
+    @Test
+    public void testConnectionsAreNotCreatedBeyondMax()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setMaxConnections(2)
+                .setMaxConnectionWait(new Duration(10, SECONDS)));
+
+        Connection first = dataSource.getConnection();
+        poolDataSource.creationSleep = 500;
+
+        // the second caller starts creating a connection, but gets the first one when it is returned
+        Future<Connection> second = executor.submit(() -> dataSource.getConnection());
+        assertEventually(() -> dataSource.getConnectionsWaiting() == 1);
+        first.close();
+        second.get(1, SECONDS).close();
+
+        // the pool is full with one open and one pending connection, so the third caller waits for either
+        Connection third = dataSource.getConnection();
+        Connection fourth = dataSource.getConnection();
+        third.close();
+        fourth.close();
+
+        MILLISECONDS.sleep(1_000);
+        assertEquals(dataSource.getStats().getOpenConnections(), 2);
+        assertEquals(dataSource.getStats().getCreate().getAllTime().getCount(), 2.0);
+    }
+
+    @Test
+    public void testCreateException()
+    {
+        dataSource = createDataSource(new TestingConfig());
+        poolDataSource.createException = new SQLException();
+
+        try {
+            dataSource.getConnection();
+            fail("expected SQLException");
+        }
+        catch (SQLException e) {
+            assertSame(e, poolDataSource.createException);
+        }
+        assertEquals(dataSource.getConnectionsActive(), 0);
+        assertEquals(dataSource.getStats().getCreationErrorCount(), 1);
+    }
+
+    @Test
+    public void testTimeoutWaitingForCreation()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setMaxConnectionWait(new Duration(10, MILLISECONDS)));
+        poolDataSource.creationSleep = 1_000;
+
+        try {
+            dataSource.getConnection();
+            fail("expected SqlTimeoutException");
+        }
+        catch (SQLException e) {
+            assertTrue(e instanceof SqlTimeoutException);
+        }
+        assertEquals(dataSource.getConnectionsActive(), 0);
+
+        // the late connection is kept for the next caller
+        assertEventually(() -> dataSource.getStats().getIdleConnections() == 1);
+    }
+
+    @Test
+    public void testTimeoutIncludesPermitWait()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setMaxConnections(1)
+                .setMaxConnectionWait(new Duration(1, SECONDS)));
+
+        Connection connection = dataSource.getConnection();
+        poolDataSource.creationSleep = 5_000;
+
+        long start = System.nanoTime();
+        Future<Connection> waiter = executor.submit(() -> dataSource.getConnection());
+        assertEventually(() -> dataSource.getConnectionsWaiting() == 1);
+        MILLISECONDS.sleep(800);
+
+        // a broken connection is not reused, so the waiter gets the permit and then waits for a new connection
+        connection.unwrap(MockConnection.class).errorOccurred();
+        connection.close();
+
+        try {
+            waiter.get();
+            fail("expected SqlTimeoutException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SqlTimeoutException);
+        }
+        assertTrue(nanosSince(start).compareTo(new Duration(1500, MILLISECONDS)) < 0);
+    }
+
+    @Test
+    public void testDispose()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig());
+
+        Connection idle = dataSource.getConnection();
+        Connection checkedOut = dataSource.getConnection();
+        MockPooledConnection idlePooledConnection = getPooledConnection(idle);
+        MockPooledConnection checkedOutPooledConnection = getPooledConnection(checkedOut);
+        idle.close();
+        dataSource.dispose();
+        assertTrue(idlePooledConnection.isClosed());
+
+        try {
+            dataSource.getConnection();
+            fail("expected SQLException");
+        }
+        catch (SQLException expected) {
+        }
+
+        checkedOut.close();
+        assertTrue(checkedOutPooledConnection.isClosed());
+        assertEquals(dataSource.getConnectionsActive(), 0);
+    }
+
+    @Test
+    public void testGetConnectionAsync()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig());
+
+        Connection connection = dataSource.getConnectionAsync().get(1, SECONDS);
+        MockPooledConnection pooledConnection = getPooledConnection(connection);
+        connection.close();
+        assertEquals(dataSource.getConnectionsActive(), 0);
+
+        // an idle connection is handed out immediately
+        ListenableFuture<Connection> future = dataSource.getConnectionAsync();
+        assertTrue(future.isDone());
+        connection = future.get();
+        assertSame(getPooledConnection(connection), pooledConnection);
+        // the checkout of the first connection is recorded by a listener, which may still be running
+        assertEventually(() -> dataSource.getStats().getCheckout().getAllTime().getCount() == 2.0);
+        connection.close();
+        assertEquals(dataSource.getConnectionsActive(), 0);
+    }
+
+    @Test
+    public void testReturnedConnectionIsHandedToAsyncWaiter()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setMaxConnections(1));
+
+        Connection connection = dataSource.getConnection();
+        MockPooledConnection pooledConnection = getPooledConnection(connection);
+
+        ListenableFuture<Connection> future = dataSource.getConnectionAsync();
+        assertFalse(future.isDone());
+        assertEquals(dataSource.getConnectionsWaiting(), 1);
+
+        connection.close();
+        assertTrue(future.isDone());
+        assertEquals(dataSource.getConnectionsWaiting(), 0);
+        Connection handedOver = future.get();
+        assertSame(getPooledConnection(handedOver), pooledConnection);
+        assertEquals(dataSource.getConnectionsActive(), 1);
+        handedOver.close();
+        assertEquals(dataSource.getConnectionsActive(), 0);
+    }
+
+    @Test
+    public void testAsyncTimeout()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig()
+                .setMaxConnections(1)
+                .setMaxConnectionWait(new Duration(10, MILLISECONDS)));
+
+        Connection connection = dataSource.getConnection();
+        try {
+            dataSource.getConnectionAsync().get(1, SECONDS);
+            fail("expected SqlTimeoutException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SqlTimeoutException);
+        }
+        assertEventually(() -> dataSource.getConnectionsWaiting() == 0);
+        assertEquals(dataSource.getConnectionsActive(), 1);
+
+        // the connection is not handed to the waiter that timed out
+        connection.close();
+        assertEquals(dataSource.getConnectionsActive(), 0);
+        assertEquals(dataSource.getStats().getIdleConnections(), 1);
+    }
+
+    @Test
+    public void testCancelAsyncWaiter()
+            throws Exception
+    {
+        dataSource = createDataSource(new TestingConfig());
+        poolDataSource.creationSleep = 100;
+
+        ListenableFuture<Connection> future = dataSource.getConnectionAsync();
+        assertEventually(() -> dataSource.getConnectionsActive() == 1);
+        future.cancel(false);
+
+        // the permit is released, and the connection is kept for the next caller
+        assertEquals(dataSource.getConnectionsActive(), 0);
+        assertEventually(() -> dataSource.getStats().getIdleConnections() == 1);
+        assertEquals(dataSource.getConnectionsWaiting(), 0);
+    }
+
+    private PooledDataSource createDataSource(TestingConfig config)
+    {
+        return new MockPooledDataSource(poolDataSource, config);
+    }
+
+    private static MockPooledConnection getPooledConnection(Connection connection)
+            throws SQLException
+    {
+        return connection.unwrap(MockConnection.class).getMockPooledConnection();
+    }
+
+    private static void assertEventually(BooleanSupplier condition)
+            throws InterruptedException
+    {
+        long start = System.nanoTime();
+        while (!condition.getAsBoolean()) {
+            assertTrue(nanosSince(start).compareTo(new Duration(1, MINUTES)) < 0, "condition not met");
+            MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static class TestingConfig
+            extends ManagedDataSourceConfig<TestingConfig>
+    {
+        public TestingConfig()
+        {
+            setMaxConnectionWait(new Duration(1, SECONDS));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.discovery.client;
+
+import com.facebook.airlift.http.client.HttpClient;
+import com.facebook.airlift.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.Duration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Opens connections to the HTTP services returned by a selector as soon as they
+ * are announced, so the first requests to a new service instance do not pay the
+ * TCP and TLS handshake latency. Services are warmed up once; a service that
+ * disappears and is announced again is warmed up again.
+ */
+public class HttpServiceSelectorPrewarmer
+{
+    private static final Logger log = Logger.get(HttpServiceSelectorPrewarmer.class);
+
+    private final HttpServiceSelector serviceSelector;
+    private final HttpClient httpClient;
+    private final int connectionsPerService;
+    private final Duration refreshInterval;
+    private final ScheduledExecutorService executor;
+
+    private final Set<URI> prewarmed = ConcurrentHashMap.newKeySet();
+    private ScheduledFuture<?> refreshTask;
+
+    public HttpServiceSelectorPrewarmer(
+            HttpServiceSelector serviceSelector,
+            HttpClient httpClient,
+            int connectionsPerService,
+            Duration refreshInterval,
+            ScheduledExecutorService executor)
+    {
+        checkArgument(connectionsPerService > 0, "connectionsPerService must be positive");
+        this.serviceSelector = requireNonNull(serviceSelector, "serviceSelector is null");
+        this.httpClient = requireNonNull(httpClient, "httpClient is null");
+        this.connectionsPerService = connectionsPerService;
+        this.refreshInterval = requireNonNull(refreshInterval, "refreshInterval is null");
+        this.executor = requireNonNull(executor, "executor is null");
+    }
+
+    @PostConstruct
+    public synchronized void start()
+    {
+        if (refreshTask == null) {
+            refreshTask = executor.scheduleWithFixedDelay(() -> {
+                try {
+                    prewarmNewServices();
+                }
+                catch (Throwable e) {
+                    log.error(e, "Error pre-warming connections for %s services", serviceSelector.getType());
+                }
+            }, 0, refreshInterval.toMillis(), MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop()
+    {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+    }
+
+    @VisibleForTesting
+    void prewarmNewServices()
+    {
+        Set<URI> destinations = serviceSelector.selectHttpService().stream()
+                .map(HttpServiceSelectorPrewarmer::toDestination)
+                .collect(toImmutableSet());
+
+        prewarmed.retainAll(destinations);
+        for (URI destination : destinations) {
+            if (prewarmed.add(destination)) {
+                prewarm(destination);
+            }
+        }
+    }
+
+    private void prewarm(URI destination)
+    {
+        ListenableFuture<Integer> future;
+        try {
+            future = httpClient.prewarm(destination, connectionsPerService);
+        }
+        catch (RuntimeException e) {
+            // try again on the next refresh
+            prewarmed.remove(destination);
+            log.warn(e, "Error pre-warming connections to %s", destination);
+            return;
+        }
+
+        Futures.addCallback(future, new FutureCallback<Integer>()
+        {
+            @Override
+            public void onSuccess(Integer connections)
+            {
+                log.debug("Opened %s connections to %s", connections, destination);
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                // try again on the next refresh
+                prewarmed.remove(destination);
+                log.warn(t, "Error pre-warming connections to %s", destination);
+            }
+        }, directExecutor());
+    }
+
+    private static URI toDestination(URI uri)
+    {
+        return URI.create(uri.getScheme() + "://" + uri.getRawAuthority());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.discovery.client;
+
+import com.facebook.airlift.http.client.jetty.JettyHttpClient;
+import com.facebook.airlift.http.client.testing.TestingHttpClient;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.Duration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestHttpServiceSelectorPrewarmer
+{
+    private ScheduledExecutorService executor;
+
+    @BeforeClass
+    protected void setUp()
+    {
+        executor = new ScheduledThreadPoolExecutor(1, daemonThreadsNamed("prewarmer-%s"));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPrewarmNewServices()
+    {
+        MutableHttpServiceSelector selector = new MutableHttpServiceSelector();
+        RecordingHttpClient httpClient = new RecordingHttpClient();
+        HttpServiceSelectorPrewarmer prewarmer = new HttpServiceSelectorPrewarmer(selector, httpClient, 4, new Duration(1, MINUTES), executor);
+
+        selector.uris = ImmutableList.of(URI.create("http://a:8080/v1/service"), URI.create("https://b/"));
+        prewarmer.prewarmNewServices();
+        assertEquals(httpClient.prewarmed, ImmutableList.of(URI.create("http://a:8080"), URI.create("https://b")));
+
+        // already warm
+        prewarmer.prewarmNewServices();
+        assertEquals(httpClient.prewarmed.size(), 2);
+
+        // new service
+        selector.uris = ImmutableList.of(URI.create("http://a:8080/v1/service"), URI.create("https://b/"), URI.create("http://c:8080"));
+        prewarmer.prewarmNewServices();
+        assertEquals(httpClient.prewarmed.size(), 3);
+        assertEquals(httpClient.prewarmed.get(2), URI.create("http://c:8080"));
+
+        // service goes away and comes back
+        selector.uris = ImmutableList.of(URI.create("https://b/"), URI.create("http://c:8080"));
+        prewarmer.prewarmNewServices();
+        selector.uris = ImmutableList.of(URI.create("http://a:8080/v1/service"), URI.create("https://b/"), URI.create("http://c:8080"));
+        prewarmer.prewarmNewServices();
+        assertEquals(httpClient.prewarmed.size(), 4);
+        assertEquals(httpClient.prewarmed.get(3), URI.create("http://a:8080"));
+    }
+
+    @Test
+    public void testRetryFailedPrewarm()
+    {
+        MutableHttpServiceSelector selector = new MutableHttpServiceSelector();
+        RecordingHttpClient httpClient = new RecordingHttpClient();
+        HttpServiceSelectorPrewarmer prewarmer = new HttpServiceSelectorPrewarmer(selector, httpClient, 4, new Duration(1, MINUTES), executor);
+        selector.uris = ImmutableList.of(URI.create("http://a:8080"));
+
+        httpClient.fail = true;
+        prewarmer.prewarmNewServices();
+        prewarmer.prewarmNewServices();
+        assertEquals(httpClient.prewarmed.size(), 2);
+
+        httpClient.fail = false;
+        prewarmer.prewarmNewServices();
+        prewarmer.prewarmNewServices();
+        assertEquals(httpClient.prewarmed.size(), 3);
+    }
+
+    @Test
+    public void testRetryUnreachableService()
+            throws Exception
+    {
+        MutableHttpServiceSelector selector = new MutableHttpServiceSelector();
+        try (CountingJettyHttpClient httpClient = new CountingJettyHttpClient()) {
+            HttpServiceSelectorPrewarmer prewarmer = new HttpServiceSelectorPrewarmer(selector, httpClient, 4, new Duration(1, MINUTES), executor);
+            selector.uris = ImmutableList.of(URI.create("http://127.0.0.1:" + findUnusedPort()));
+
+            // the connect is refused, so the service is not considered warm
+            prewarmer.prewarmNewServices();
+            long deadline = System.nanoTime() + SECONDS.toNanos(10);
+            while (httpClient.attempts.get() < 2) {
+                assertTrue(System.nanoTime() < deadline, "prewarm was not retried");
+                MILLISECONDS.sleep(10);
+                prewarmer.prewarmNewServices();
+            }
+        }
+    }
+
+    @Test
+    public void testRetryPrewarmThatThrows()
+    {
+        MutableHttpServiceSelector selector = new MutableHttpServiceSelector();
+        CountingJettyHttpClient httpClient = new CountingJettyHttpClient();
+        httpClient.close();
+        HttpServiceSelectorPrewarmer prewarmer = new HttpServiceSelectorPrewarmer(selector, httpClient, 4, new Duration(1, MINUTES), executor);
+        selector.uris = ImmutableList.of(URI.create("http://127.0.0.1:8080"), URI.create("http://127.0.0.1:8081"));
+
+        // prewarming a closed client throws
+        prewarmer.prewarmNewServices();
+        assertEquals(httpClient.attempts.get(), 2);
+        prewarmer.prewarmNewServices();
+        assertEquals(httpClient.attempts.get(), 4);
+    }
+
+    private static int findUnusedPort()
+            throws IOException
+    {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static class MutableHttpServiceSelector
+            implements HttpServiceSelector
+    {
+        private volatile List<URI> uris = ImmutableList.of();
+
+        @Override
+        public String getType()
+        {
+            return "type";
+        }
+
+        @Override
+        public String getPool()
+        {
+            return "pool";
+        }
+
+        @Override
+        public List<URI> selectHttpService()
+        {
+            return uris;
+        }
+    }
+
+    private static class RecordingHttpClient
+            extends TestingHttpClient
+    {
+        private final List<URI> prewarmed = new CopyOnWriteArrayList<>();
+        private volatile boolean fail;
+
+        public RecordingHttpClient()
+        {
+            super(request -> {
+                throw new UnsupportedOperationException();
+            });
+        }
+
+        @Override
+        public ListenableFuture<Integer> prewarm(URI destination, int connections)
+        {
+            assertEquals(connections, 4);
+            prewarmed.add(destination);
+            if (fail) {
+                return immediateFailedFuture(new RuntimeException("connect failed"));
+            }
+            return immediateFuture(connections);
+        }
+    }
+
+    private static class CountingJettyHttpClient
+            extends JettyHttpClient
+    {
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        @Override
+        public ListenableFuture<Integer> prewarm(URI destination, int connections)
+        {
+            attempts.incrementAndGet();
+            return super.prewarm(destination, connections);
+        }
+    }
+}
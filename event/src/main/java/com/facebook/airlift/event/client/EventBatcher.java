@@ -0,0 +1,682 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.facebook.airlift.discovery.client.HttpServiceSelector;
+import com.facebook.airlift.event.client.EventSpool.SpooledEvents;
+import com.facebook.airlift.event.client.HttpEventClientConfig.QueueFullPolicy;
+import com.facebook.airlift.http.client.BodyGenerator;
+import com.facebook.airlift.http.client.HttpClient;
+import com.facebook.airlift.http.client.Request;
+import com.facebook.airlift.http.client.StatusResponseHandler.StatusResponse;
+import com.facebook.airlift.log.Logger;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.Duration;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static com.facebook.airlift.concurrent.Threads.daemonThreadsNamed;
+import static com.facebook.airlift.http.client.Request.Builder.preparePost;
+import static com.facebook.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static com.google.common.net.HttpHeaders.USER_AGENT;
+import static com.google.common.util.concurrent.Futures.addCallback;
+import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Sends events to the collectors in batches. Events are encoded when they are
+ * posted and queued in a bounded queue. A batch is sent when the queue holds
+ * enough events or bytes for a full batch, or when the oldest queued event has
+ * waited for the maximum linger time. Failed batches are retried with
+ * exponential backoff, on the next collector each time, and their events are
+ * dropped when the retries are exhausted.
+ * <p>
+ * If a spool is configured, batches that exhaust their retries are written to
+ * the spool instead of being dropped. While the spool holds events, new batches
+ * are also spooled to keep the events in order, and the spool is replayed one
+ * batch at a time, at most once per linger period until a replay succeeds.
+ * <p>
+ * Each batch holds events of a single format. If a collector responds with
+ * 415 Unsupported Media Type to a batch that is not JSON, the batch and all
+ * later events are sent as JSON instead.
+ */
+@ThreadSafe
+class EventBatcher
+{
+    private static final Logger log = Logger.get(EventBatcher.class);
+
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final byte SPOOL_RECORD_JSON = 'J';
+    private static final byte SPOOL_RECORD_SMILE = 'S';
+
+    private final HttpServiceSelector serviceSelector;
+    private final HttpClient httpClient;
+    private final JsonEventWriter eventWriter;
+    private final String userAgent;
+    private final EventBatcherStats stats;
+    private final Optional<EventSpool> spool;
+
+    private final int maxQueuedEvents;
+    private final QueueFullPolicy queueFullPolicy;
+    private final int maxBatchEvents;
+    private final long maxBatchBytes;
+    private final boolean compressionEnabled;
+    private final int maxRetries;
+    private final long minRetryBackoffMillis;
+    private final long maxRetryBackoffMillis;
+
+    private final Queue<EncodedEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedEvents;
+    private final AtomicLong queuedBytes;
+    private final Semaphore inFlightBatches;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean replayInFlight = new AtomicBoolean();
+    private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor(daemonThreadsNamed("event-batcher-%s"));
+
+    // only changed on the executor thread, so that spooling stops exactly when the spool is found to be empty
+    private volatile boolean spooling;
+    private volatile boolean nonJsonFormatsRejected;
+
+    public EventBatcher(
+            HttpServiceSelector serviceSelector,
+            HttpClient httpClient,
+            JsonEventWriter eventWriter,
+            String userAgent,
+            HttpEventClientConfig config,
+            EventBatcherStats stats,
+            Optional<EventSpool> spool)
+    {
+        this.serviceSelector = requireNonNull(serviceSelector, "serviceSelector is null");
+        this.httpClient = requireNonNull(httpClient, "httpClient is null");
+        this.eventWriter = requireNonNull(eventWriter, "eventWriter is null");
+        this.userAgent = requireNonNull(userAgent, "userAgent is null");
+        this.stats = requireNonNull(stats, "stats is null");
+        this.spool = requireNonNull(spool, "spool is null");
+        requireNonNull(config, "config is null");
+
+        this.maxQueuedEvents = config.getMaxQueuedEvents();
+        this.queueFullPolicy = config.getQueueFullPolicy();
+        this.maxBatchEvents = config.getMaxBatchEvents();
+        this.maxBatchBytes = config.getMaxBatchSize().toBytes();
+        this.compressionEnabled = config.isCompressionEnabled();
+        this.maxRetries = config.getMaxRetries();
+        this.minRetryBackoffMillis = config.getMinRetryBackoff().toMillis();
+        this.maxRetryBackoffMillis = config.getMaxRetryBackoff().toMillis();
+        checkArgument(minRetryBackoffMillis <= maxRetryBackoffMillis, "minRetryBackoff is greater than maxRetryBackoff");
+
+        this.queuedEvents = stats.queuedEventsCounter();
+        this.queuedBytes = stats.queuedBytesCounter();
+        this.inFlightBatches = new Semaphore(config.getMaxInFlightBatches());
+        this.spooling = spool.isPresent() && !spool.get().isEmpty();
+
+        long lingerMillis = config.getMaxLinger().toMillis();
+        executor.scheduleWithFixedDelay(() -> flush(true), lingerMillis, lingerMillis, MILLISECONDS);
+    }
+
+    /**
+     * Encodes the event on the calling thread and adds it to the queue. If the
+     * queue is full, either this event or the oldest queued event is dropped.
+     */
+    public <T> void enqueue(T event)
+            throws IOException
+    {
+        EventFormat format = nonJsonFormatsRejected ? EventFormat.JSON : eventWriter.getFormat(event.getClass());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        eventWriter.writeEvent(format, event, out);
+        EncodedEvent encoded = new EncodedEvent(format, out.toByteArray());
+
+        if (!reserveQueueSlot()) {
+            stats.getDroppedEvents().update(1);
+            return;
+        }
+        queue.add(encoded);
+        long bytes = queuedBytes.addAndGet(encoded.getBytes().length);
+
+        if (queuedEvents.get() >= maxBatchEvents || bytes >= maxBatchBytes) {
+            scheduleFlush();
+        }
+    }
+
+    public void close()
+    {
+        // send what is left, or spool it for the next start, but do not wait for retries
+        executor.execute(() -> {
+            if (spool.isPresent()) {
+                spooling = true;
+            }
+            flush(true);
+        });
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // events left when all batches were in flight are not sent once the executor is shut down
+        long dropped = 0;
+        for (EncodedEvent event = queue.poll(); event != null; event = queue.poll()) {
+            queuedEvents.decrementAndGet();
+            queuedBytes.addAndGet(-event.getBytes().length);
+            dropped++;
+        }
+        if (dropped > 0) {
+            log.warn("Dropping %s events that were not sent before the event client was closed", dropped);
+            stats.getDroppedEvents().update(dropped);
+        }
+        spool.ifPresent(EventSpool::close);
+    }
+
+    private boolean reserveQueueSlot()
+    {
+        while (true) {
+            int count = queuedEvents.get();
+            if (count < maxQueuedEvents) {
+                if (queuedEvents.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+                continue;
+            }
+
+            if (queueFullPolicy == QueueFullPolicy.DROP_NEWEST) {
+                return false;
+            }
+            EncodedEvent oldest = queue.poll();
+            if (oldest == null) {
+                // every slot is reserved by a producer that has not added its event yet,
+                // and those events are no older than this one, so drop this one instead
+                return false;
+            }
+            queuedEvents.decrementAndGet();
+            queuedBytes.addAndGet(-oldest.getBytes().length);
+            stats.getDroppedEvents().update(1);
+        }
+    }
+
+    private void scheduleFlush()
+    {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushScheduled.set(false);
+                    flush(false);
+                });
+            }
+            catch (RejectedExecutionException e) {
+                // closed, so the remaining events are flushed or dropped by close
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Sends queued events while batches are allowed in flight. Unless all events
+     * are flushed, only full batches are sent.
+     */
+    private void flush(boolean all)
+    {
+        try {
+            while (!queue.isEmpty() && (all || queuedEvents.get() >= maxBatchEvents || queuedBytes.get() >= maxBatchBytes)) {
+                if (spooling) {
+                    spool(takeBatch());
+                    continue;
+                }
+                if (!inFlightBatches.tryAcquire()) {
+                    // flushed again when a batch completes
+                    return;
+                }
+                Batch batch = takeBatch();
+                if (batch.getEvents().isEmpty()) {
+                    inFlightBatches.release();
+                    return;
+                }
+                stats.getBatchEvents().add(batch.getEvents().size());
+                stats.getBatchBytes().add(batch.getBytes());
+                send(batch, 0);
+            }
+            if (all && spooling && !executor.isShutdown()) {
+                replay();
+            }
+        }
+        catch (Throwable t) {
+            log.error(t, "Error sending events");
+        }
+    }
+
+    private Batch takeBatch()
+    {
+        List<byte[]> events = new ArrayList<>(min(queuedEvents.get(), maxBatchEvents));
+        EventFormat format = null;
+        long bytes = 0;
+        while (events.size() < maxBatchEvents) {
+            EncodedEvent next = queue.peek();
+            if (next == null || (format != null && (next.getFormat() != format || bytes + next.getBytes().length > maxBatchBytes))) {
+                break;
+            }
+            // a producer may have dropped the peeked event in the meantime, in which case this takes the one after it
+            EncodedEvent event = queue.poll();
+            if (event == null) {
+                break;
+            }
+            queuedEvents.decrementAndGet();
+            queuedBytes.addAndGet(-event.getBytes().length);
+            if (format == null) {
+                format = event.getFormat();
+            }
+            byte[] encoded;
+            try {
+                // only differs from the batch format if the peeked event was dropped
+                encoded = eventWriter.transcodeEvent(event.getBytes(), event.getFormat(), format);
+            }
+            catch (IOException e) {
+                log.error(e, "Error converting event to %s", format);
+                stats.getDroppedEvents().update(1);
+                continue;
+            }
+            events.add(encoded);
+            bytes += encoded.length;
+        }
+        return new Batch(format == null ? EventFormat.JSON : format, events, bytes);
+    }
+
+    private void send(Batch batch, int attempt)
+    {
+        if (batch.getFormat() != EventFormat.JSON && nonJsonFormatsRejected) {
+            Batch jsonBatch;
+            try {
+                jsonBatch = batch.toJson(eventWriter);
+            }
+            catch (IOException | RuntimeException e) {
+                log.error(e, "Error converting events to JSON");
+                fail(batch, false);
+                return;
+            }
+            send(jsonBatch, attempt);
+            return;
+        }
+
+        long start = System.nanoTime();
+        addCallback(post(batch.getFormat(), batch.getEvents(), attempt), new FutureCallback<StatusResponse>()
+        {
+            @Override
+            public void onSuccess(StatusResponse response)
+            {
+                stats.getSendTime().add(System.nanoTime() - start, NANOSECONDS);
+                int statusCode = response.getStatusCode();
+                if (isSuccess(statusCode)) {
+                    stats.getSentBatches().update(1);
+                    stats.getSentEvents().update(batch.getEvents().size());
+                    complete();
+                }
+                else if (isUnsupportedFormat(statusCode, batch.getFormat())) {
+                    rejectNonJsonFormats();
+                    send(batch, attempt);
+                }
+                else if (isRejected(statusCode)) {
+                    // the collector rejected the events, so sending them again will not help
+                    log.debug("Posting events failed: status_code=%d status_line=%s", statusCode, response.getStatusMessage());
+                    fail(batch, false);
+                }
+                else {
+                    retry(batch, attempt, new IOException("Unexpected response status " + statusCode));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                stats.getSendTime().add(System.nanoTime() - start, NANOSECONDS);
+                retry(batch, attempt, t);
+            }
+        }, directExecutor());
+    }
+
+    private void retry(Batch batch, int attempt, Throwable cause)
+    {
+        if (attempt >= maxRetries || executor.isShutdown()) {
+            log.debug(cause, "Posting events failed after %s attempts", attempt + 1);
+            fail(batch, true);
+            return;
+        }
+        stats.getRetriedBatches().update(1);
+        long backoff = min(minRetryBackoffMillis << min(attempt, 30), maxRetryBackoffMillis);
+        log.debug("Posting events failed, retrying in %s: %s", new Duration(backoff, MILLISECONDS), cause.getMessage());
+        try {
+            executor.schedule(() -> send(batch, attempt + 1), backoff, MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            // closed while the batch was in flight
+            fail(batch, true);
+        }
+    }
+
+    private void fail(Batch batch, boolean retryable)
+    {
+        stats.getFailedBatches().update(1);
+        if (retryable && spool.isPresent()) {
+            try {
+                executor.execute(() -> {
+                    spooling = true;
+                    spool(batch);
+                });
+            }
+            catch (RejectedExecutionException e) {
+                // closed, so spool directly before the spool is closed
+                spool(batch);
+            }
+        }
+        else {
+            stats.getDroppedEvents().update(batch.getEvents().size());
+        }
+        complete();
+    }
+
+    private void spool(Batch batch)
+    {
+        List<byte[]> records = batch.getEvents().stream()
+                .map(event -> toSpoolRecord(batch.getFormat(), event))
+                .collect(toImmutableList());
+        try {
+            spool.get().append(records);
+        }
+        catch (IOException | RuntimeException e) {
+            log.error(e, "Error spooling events");
+            stats.getDroppedEvents().update(records.size());
+        }
+    }
+
+    /**
+     * Sends the oldest spooled events, and continues with the next ones once
+     * they are delivered. Spooling stops when the spool is empty.
+     */
+    private void replay()
+    {
+        if (!replayInFlight.compareAndSet(false, true)) {
+            return;
+        }
+        Optional<SpooledEvents> read = spool.get().read(maxBatchEvents, maxBatchBytes);
+        if (!read.isPresent()) {
+            replayInFlight.set(false);
+            spooling = false;
+            log.info("Finished replaying spooled events");
+            scheduleFlush();
+            return;
+        }
+
+        // a batch holds events of a single format
+        List<byte[]> records = read.get().getEvents();
+        EventFormat format = getSpoolRecordFormat(records.get(0));
+        int count = 1;
+        while (count < records.size() && getSpoolRecordFormat(records.get(count)) == format) {
+            count++;
+        }
+        SpooledEvents spooled = read.get().limit(count);
+
+        Batch batch = new Batch(format, records.subList(0, count).stream()
+                .map(EventBatcher::getSpoolRecordEvent)
+                .collect(toImmutableList()), 0);
+        if (format != EventFormat.JSON && nonJsonFormatsRejected) {
+            try {
+                batch = batch.toJson(eventWriter);
+            }
+            catch (IOException | RuntimeException e) {
+                log.error(e, "Error converting spooled events to JSON, dropping them");
+                spool.get().commit(spooled);
+                stats.getDroppedEvents().update(count);
+                continueReplay();
+                return;
+            }
+        }
+
+        Batch replayed = batch;
+        List<byte[]> events = replayed.getEvents();
+        addCallback(post(replayed.getFormat(), events, 0), new FutureCallback<StatusResponse>()
+        {
+            @Override
+            public void onSuccess(StatusResponse response)
+            {
+                int statusCode = response.getStatusCode();
+                if (isUnsupportedFormat(statusCode, replayed.getFormat())) {
+                    rejectNonJsonFormats();
+                    continueReplay();
+                }
+                else if (isSuccess(statusCode) || isRejected(statusCode)) {
+                    spool.get().commit(spooled);
+                    if (isSuccess(statusCode)) {
+                        stats.getReplayedEvents().update(events.size());
+                        stats.getSentEvents().update(events.size());
+                    }
+                    else {
+                        log.debug("Replaying spooled events failed: status_code=%d status_line=%s", statusCode, response.getStatusMessage());
+                        stats.getDroppedEvents().update(events.size());
+                    }
+                    continueReplay();
+                }
+                else {
+                    // try again on the next linger period
+                    replayInFlight.set(false);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                replayInFlight.set(false);
+            }
+        }, directExecutor());
+    }
+
+    private void continueReplay()
+    {
+        replayInFlight.set(false);
+        try {
+            executor.execute(this::replay);
+        }
+        catch (RejectedExecutionException ignored) {
+            // closed, the remaining events are replayed on the next start
+        }
+    }
+
+    private void rejectNonJsonFormats()
+    {
+        if (!nonJsonFormatsRejected) {
+            log.warn("Collector does not accept events in formats other than JSON, sending all events as JSON");
+            nonJsonFormatsRejected = true;
+        }
+    }
+
+    private ListenableFuture<StatusResponse> post(EventFormat format, List<byte[]> events, int attempt)
+    {
+        List<URI> uris = serviceSelector.selectHttpService();
+        if (uris.isEmpty()) {
+            return immediateFailedFuture(new ServiceUnavailableException(serviceSelector.getType(), serviceSelector.getPool()));
+        }
+        URI uri = uris.get(attempt % uris.size()).resolve("/v2/event");
+
+        Request.Builder request = preparePost()
+                .setUri(uri)
+                .setHeader(USER_AGENT, userAgent)
+                .setHeader(CONTENT_TYPE, format.getMediaType().toString())
+                .setBodyGenerator(new BatchBodyGenerator(eventWriter, format, events, compressionEnabled));
+        if (compressionEnabled) {
+            request.setHeader(CONTENT_ENCODING, "gzip");
+        }
+        return httpClient.executeAsync(request.build(), createStatusResponseHandler());
+    }
+
+    private static boolean isSuccess(int statusCode)
+    {
+        return statusCode >= 200 && statusCode <= 299;
+    }
+
+    private static boolean isRejected(int statusCode)
+    {
+        return statusCode >= 400 && statusCode <= 499 && statusCode != 408 && statusCode != 429;
+    }
+
+    private static boolean isUnsupportedFormat(int statusCode, EventFormat format)
+    {
+        return statusCode == UNSUPPORTED_MEDIA_TYPE && format != EventFormat.JSON;
+    }
+
+    private static byte[] toSpoolRecord(EventFormat format, byte[] event)
+    {
+        // spooled events are prefixed with their format, so they can be replayed after a restart
+        byte[] record = new byte[event.length + 1];
+        record[0] = format == EventFormat.SMILE ? SPOOL_RECORD_SMILE : SPOOL_RECORD_JSON;
+        System.arraycopy(event, 0, record, 1, event.length);
+        return record;
+    }
+
+    private static EventFormat getSpoolRecordFormat(byte[] record)
+    {
+        return record[0] == SPOOL_RECORD_SMILE ? EventFormat.SMILE : EventFormat.JSON;
+    }
+
+    private static byte[] getSpoolRecordEvent(byte[] record)
+    {
+        return Arrays.copyOfRange(record, 1, record.length);
+    }
+
+    private static class EncodedEvent
+    {
+        private final EventFormat format;
+        private final byte[] bytes;
+
+        public EncodedEvent(EventFormat format, byte[] bytes)
+        {
+            this.format = format;
+            this.bytes = bytes;
+        }
+
+        public EventFormat getFormat()
+        {
+            return format;
+        }
+
+        public byte[] getBytes()
+        {
+            return bytes;
+        }
+    }
+
+    private void complete()
+    {
+        inFlightBatches.release();
+        scheduleFlush();
+    }
+
+    private static class Batch
+    {
+        private final EventFormat format;
+        private final List<byte[]> events;
+        private final long bytes;
+
+        public Batch(EventFormat format, List<byte[]> events, long bytes)
+        {
+            this.format = format;
+            this.events = events;
+            this.bytes = bytes;
+        }
+
+        public EventFormat getFormat()
+        {
+            return format;
+        }
+
+        public List<byte[]> getEvents()
+        {
+            return events;
+        }
+
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        public Batch toJson(JsonEventWriter eventWriter)
+                throws IOException
+        {
+            List<byte[]> jsonEvents = new ArrayList<>(events.size());
+            long jsonBytes = 0;
+            for (byte[] event : events) {
+                byte[] jsonEvent = eventWriter.transcodeEvent(event, format, EventFormat.JSON);
+                jsonEvents.add(jsonEvent);
+                jsonBytes += jsonEvent.length;
+            }
+            return new Batch(EventFormat.JSON, jsonEvents, jsonBytes);
+        }
+    }
+
+    private static class BatchBodyGenerator
+            implements BodyGenerator
+    {
+        private final JsonEventWriter eventWriter;
+        private final EventFormat format;
+        private final List<byte[]> events;
+        private final boolean compressed;
+
+        public BatchBodyGenerator(JsonEventWriter eventWriter, EventFormat format, List<byte[]> events, boolean compressed)
+        {
+            this.eventWriter = eventWriter;
+            this.format = format;
+            this.events = events;
+            this.compressed = compressed;
+        }
+
+        @Override
+        public void write(OutputStream out)
+                throws Exception
+        {
+            if (compressed) {
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                eventWriter.writeEncodedEvents(format, events, gzip);
+                gzip.finish();
+            }
+            else {
+                eventWriter.writeEncodedEvents(format, events, out);
+            }
+        }
+    }
+}
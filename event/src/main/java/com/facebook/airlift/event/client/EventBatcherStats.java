@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.facebook.airlift.stats.CounterStat;
+import com.facebook.airlift.stats.DistributionStat;
+import com.facebook.airlift.stats.TimeStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Statistics for the events sent in batches by {@link HttpEventClient}. The
+ * statistics stay at zero when batching is disabled.
+ */
+public class EventBatcherStats
+{
+    private final AtomicInteger queuedEvents = new AtomicInteger();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final CounterStat sentEvents = new CounterStat();
+    private final CounterStat sentBatches = new CounterStat();
+    private final CounterStat droppedEvents = new CounterStat();
+    private final CounterStat retriedBatches = new CounterStat();
+    private final CounterStat failedBatches = new CounterStat();
+    private final DistributionStat batchEvents = new DistributionStat();
+    private final DistributionStat batchBytes = new DistributionStat();
+    private final TimeStat sendTime = new TimeStat(MILLISECONDS);
+    private final AtomicLong spooledEventsPending = new AtomicLong();
+    private final CounterStat spooledEvents = new CounterStat();
+    private final CounterStat replayedEvents = new CounterStat();
+
+    AtomicInteger queuedEventsCounter()
+    {
+        return queuedEvents;
+    }
+
+    AtomicLong queuedBytesCounter()
+    {
+        return queuedBytes;
+    }
+
+    AtomicLong spooledEventsPendingCounter()
+    {
+        return spooledEventsPending;
+    }
+
+    @Managed
+    public int getQueuedEvents()
+    {
+        return queuedEvents.get();
+    }
+
+    @Managed
+    public long getQueuedBytes()
+    {
+        return queuedBytes.get();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getSentEvents()
+    {
+        return sentEvents;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getSentBatches()
+    {
+        return sentBatches;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getDroppedEvents()
+    {
+        return droppedEvents;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRetriedBatches()
+    {
+        return retriedBatches;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailedBatches()
+    {
+        return failedBatches;
+    }
+
+    @Managed
+    @Nested
+    public DistributionStat getBatchEvents()
+    {
+        return batchEvents;
+    }
+
+    @Managed
+    @Nested
+    public DistributionStat getBatchBytes()
+    {
+        return batchBytes;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getSendTime()
+    {
+        return sendTime;
+    }
+
+    @Managed
+    public long getSpooledEventsPending()
+    {
+        return spooledEventsPending.get();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getSpooledEvents()
+    {
+        return spooledEvents;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getReplayedEvents()
+    {
+        return replayedEvents;
+    }
+}
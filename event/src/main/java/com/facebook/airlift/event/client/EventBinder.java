@@ -20,11 +20,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Binder;
 import com.google.inject.TypeLiteral;
+import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.Multibinder;
 
 import java.util.List;
 
 import static com.facebook.airlift.event.client.EventTypeMetadata.getEventTypeMetadata;
+import static com.google.inject.multibindings.MapBinder.newMapBinder;
 import static com.google.inject.multibindings.Multibinder.newSetBinder;
 import static java.util.Objects.requireNonNull;
 
@@ -37,10 +39,51 @@ public class EventBinder
     }
 
     private final Binder binder;
+    private final EventFormat format;
+    private final EventThrottlePolicy throttlePolicy;
 
     private EventBinder(Binder binder)
+    {
+        this(binder, EventFormat.JSON, EventThrottlePolicy.UNLIMITED);
+    }
+
+    private EventBinder(Binder binder, EventFormat format, EventThrottlePolicy throttlePolicy)
     {
         this.binder = requireNonNull(binder, "binder is null").skipSources(getClass());
+        this.format = requireNonNull(format, "format is null");
+        this.throttlePolicy = requireNonNull(throttlePolicy, "throttlePolicy is null");
+    }
+
+    /**
+     * Returns a binder that registers event types to be sent in the specified
+     * format. An event type is sent as JSON unless at least one registration
+     * chooses another format, so a type that is already registered elsewhere,
+     * such as {@code HttpRequestEvent}, can be switched by registering it again.
+     */
+    public EventBinder withFormat(EventFormat format)
+    {
+        return new EventBinder(binder, format, throttlePolicy);
+    }
+
+    /**
+     * Returns a binder that registers event types of which only the specified
+     * fraction of events is sent to the collectors, chosen at random.
+     * If a type is registered with several sample rates, the lowest one applies.
+     */
+    public EventBinder withSampleRate(double sampleRate)
+    {
+        return new EventBinder(binder, format, throttlePolicy.withSampleRate(sampleRate));
+    }
+
+    /**
+     * Returns a binder that registers event types of which at most the specified
+     * number of events per second is sent to the collectors. Events over the
+     * limit are dropped. If a type is registered with several limits, the
+     * lowest one applies.
+     */
+    public EventBinder withRateLimit(double maxEventsPerSecond)
+    {
+        return new EventBinder(binder, format, throttlePolicy.withMaxEventsPerSecond(maxEventsPerSecond));
     }
 
     public void bindEventClient(Class<?>... types)
@@ -61,6 +104,8 @@ public class EventBinder
 
         Binder sourcedBinder = binder.withSource(getCaller());
         Multibinder<EventTypeMetadata<?>> metadataBinder = newSetBinder(binder, new TypeLiteral<EventTypeMetadata<?>>() {});
+        MapBinder<Class<?>, EventFormat> formatBinder = newEventFormatBinder(binder);
+        MapBinder<Class<?>, EventThrottlePolicy> throttlePolicyBinder = newEventThrottlePolicyBinder(binder);
 
         // Bind event type metadata and bind any errors into Guice
         for (Class<?> eventType : eventTypes) {
@@ -69,9 +114,25 @@ public class EventBinder
             for (String error : eventTypeMetadata.getErrors()) {
                 sourcedBinder.addError(error);
             }
+            if (format != EventFormat.JSON) {
+                formatBinder.addBinding(eventType).toInstance(format);
+            }
+            if (!throttlePolicy.isUnlimited()) {
+                throttlePolicyBinder.addBinding(eventType).toInstance(throttlePolicy);
+            }
         }
     }
 
+    static MapBinder<Class<?>, EventFormat> newEventFormatBinder(Binder binder)
+    {
+        return newMapBinder(binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<EventFormat>() {}).permitDuplicates();
+    }
+
+    static MapBinder<Class<?>, EventThrottlePolicy> newEventThrottlePolicyBinder(Binder binder)
+    {
+        return newMapBinder(binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<EventThrottlePolicy>() {}).permitDuplicates();
+    }
+
     private static StackTraceElement getCaller()
     {
         // find the caller of this class to report source
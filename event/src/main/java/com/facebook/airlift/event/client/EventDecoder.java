@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.annotations.Beta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decodes the body of an event request, in any {@link EventFormat}, into the
+ * generic representation of the events. Events captured by an
+ * {@link InMemoryEventClient} can be converted to the same representation with
+ * {@link #decode(List)}, so tests can check what a collector would receive
+ * without depending on the wire format.
+ */
+@Beta
+public class EventDecoder
+{
+    private static final TypeReference<List<Map<String, Object>>> EVENTS_TYPE = new TypeReference<List<Map<String, Object>>>() {};
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    public List<Map<String, Object>> decode(String contentType, byte[] body)
+            throws IOException
+    {
+        return decode(EventFormat.fromContentType(contentType), body);
+    }
+
+    public List<Map<String, Object>> decode(EventFormat format, byte[] body)
+            throws IOException
+    {
+        requireNonNull(format, "format is null");
+        requireNonNull(body, "body is null");
+        return (format == EventFormat.SMILE ? smileMapper : jsonMapper).readValue(body, EVENTS_TYPE);
+    }
+
+    /**
+     * Converts event objects, such as those returned by {@link InMemoryEventClient#getEvents()},
+     * to the representation a collector receives.
+     */
+    public List<Map<String, Object>> decode(List<?> events)
+            throws IOException
+    {
+        requireNonNull(events, "events is null");
+        Set<EventTypeMetadata<?>> eventTypes = events.stream()
+                .map(Object::getClass)
+                .distinct()
+                .<EventTypeMetadata<?>>map(EventTypeMetadata::getEventTypeMetadata)
+                .collect(toImmutableSet());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonEventWriter(eventTypes).writeEvents(eventPoster -> {
+            for (Object event : events) {
+                eventPoster.post(event);
+            }
+        }, out);
+        return decode(EventFormat.JSON, out.toByteArray());
+    }
+}
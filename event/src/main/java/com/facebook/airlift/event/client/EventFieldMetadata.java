@@ -16,12 +16,16 @@
 package com.facebook.airlift.event.client;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.google.common.annotations.Beta;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -32,7 +36,7 @@ import java.util.Map;
 import java.util.Optional;
 
 import static com.facebook.airlift.event.client.EventDataType.validateFieldValueType;
-import static com.google.common.base.MoreObjects.firstNonNull;
+import static java.lang.invoke.MethodType.methodType;
 
 @Beta
 public class EventFieldMetadata
@@ -49,7 +53,9 @@ public class EventFieldMetadata
     }
 
     private final String name;
+    private final SerializableString serializedName;
     private final Method method;
+    private final MethodHandle getter;
     private final Optional<EventDataType> eventDataType;
     private final Optional<EventTypeMetadata<?>> nestedType;
     private final Optional<ContainerType> containerType;
@@ -60,7 +66,9 @@ public class EventFieldMetadata
         Preconditions.checkArgument(!eventDataType.isPresent() || !nestedType.isPresent(), "both eventDataType and nestedType are set");
 
         this.name = name;
+        this.serializedName = new SerializedString(name);
         this.method = method;
+        this.getter = createGetter(method);
         this.eventDataType = eventDataType;
         this.nestedType = nestedType;
         this.containerType = containerType;
@@ -87,30 +95,126 @@ public class EventFieldMetadata
         return containerType;
     }
 
+    /**
+     * Creates a handle for the getter that takes the event as an Object. Getters of
+     * primitive types are adapted to boolean, int, long, float or double, so their
+     * values can be written without boxing.
+     */
+    private static MethodHandle createGetter(Method method)
+    {
+        MethodHandle handle;
+        try {
+            // the method has already been made accessible
+            handle = MethodHandles.lookup().unreflect(method);
+        }
+        catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to access event field method " + method.toGenericString(), e);
+        }
+
+        Class<?> returnType = method.getReturnType();
+        if (!returnType.isPrimitive()) {
+            returnType = Object.class;
+        }
+        else if (returnType == byte.class || returnType == short.class) {
+            returnType = int.class;
+        }
+        return handle.asType(methodType(returnType, Object.class));
+    }
+
     private Object getValue(Object event)
             throws InvalidEventException
     {
         try {
-            return method.invoke(event);
+            return (Object) getter.invokeExact(event);
+        }
+        catch (Throwable e) {
+            throw invalidValue(e);
+        }
+    }
+
+    private boolean getBoolean(Object event)
+            throws InvalidEventException
+    {
+        try {
+            return (boolean) getter.invokeExact(event);
+        }
+        catch (Throwable e) {
+            throw invalidValue(e);
+        }
+    }
+
+    private int getInt(Object event)
+            throws InvalidEventException
+    {
+        try {
+            return (int) getter.invokeExact(event);
+        }
+        catch (Throwable e) {
+            throw invalidValue(e);
+        }
+    }
+
+    private long getLong(Object event)
+            throws InvalidEventException
+    {
+        try {
+            return (long) getter.invokeExact(event);
         }
-        catch (Exception e) {
-            throw new InvalidEventException(firstNonNull(e.getCause(), e),
-                    "Unable to get value of event field %s: Exception occurred while invoking [%s]", name, method.toGenericString());
+        catch (Throwable e) {
+            throw invalidValue(e);
         }
     }
 
+    private float getFloat(Object event)
+            throws InvalidEventException
+    {
+        try {
+            return (float) getter.invokeExact(event);
+        }
+        catch (Throwable e) {
+            throw invalidValue(e);
+        }
+    }
+
+    private double getDouble(Object event)
+            throws InvalidEventException
+    {
+        try {
+            return (double) getter.invokeExact(event);
+        }
+        catch (Throwable e) {
+            throw invalidValue(e);
+        }
+    }
+
+    private InvalidEventException invalidValue(Throwable e)
+    {
+        // unlike Method.invoke, method handles do not wrap the exception thrown by the getter
+        return new InvalidEventException(e,
+                "Unable to get value of event field %s: Exception occurred while invoking [%s]", name, method.toGenericString());
+    }
+
     public void writeField(JsonGenerator jsonGenerator, Object event)
             throws IOException
     {
-        writeField(jsonGenerator, event, new ArrayDeque<>());
+        writeField(jsonGenerator, event, null);
     }
 
     private void writeField(JsonGenerator jsonGenerator, Object event, Deque<Object> objectStack)
             throws IOException
     {
+        Class<?> type = getter.type().returnType();
+        if (type.isPrimitive()) {
+            writePrimitiveField(jsonGenerator, event, type);
+            return;
+        }
+
         Object value = getValue(event);
         if (value != null) {
-            jsonGenerator.writeFieldName(name);
+            jsonGenerator.writeFieldName(serializedName);
+            if (nestedType.isPresent() && objectStack == null) {
+                objectStack = new ArrayDeque<>();
+            }
             if (containerType.isPresent()) {
                 if (containerType.get() == ContainerType.ITERABLE) {
                     validateFieldValueType(value, Iterable.class);
@@ -130,6 +234,39 @@ public class EventFieldMetadata
         }
     }
 
+    private void writePrimitiveField(JsonGenerator jsonGenerator, Object event, Class<?> type)
+            throws IOException
+    {
+        if (type == boolean.class) {
+            boolean value = getBoolean(event);
+            jsonGenerator.writeFieldName(serializedName);
+            jsonGenerator.writeBoolean(value);
+        }
+        else if (type == int.class) {
+            int value = getInt(event);
+            jsonGenerator.writeFieldName(serializedName);
+            jsonGenerator.writeNumber(value);
+        }
+        else if (type == long.class) {
+            long value = getLong(event);
+            jsonGenerator.writeFieldName(serializedName);
+            jsonGenerator.writeNumber(value);
+        }
+        else if (type == float.class) {
+            float value = getFloat(event);
+            jsonGenerator.writeFieldName(serializedName);
+            jsonGenerator.writeNumber(value);
+        }
+        else if (type == double.class) {
+            double value = getDouble(event);
+            jsonGenerator.writeFieldName(serializedName);
+            jsonGenerator.writeNumber(value);
+        }
+        else {
+            throw new InvalidEventException("Unsupported primitive type %s for event field %s", type, name);
+        }
+    }
+
     private void writeFieldValue(JsonGenerator jsonGenerator, Object value, Deque<Object> objectStack)
             throws IOException
     {
@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.net.MediaType;
+
+/**
+ * Encoding of events sent to the collectors. The format of an event type is
+ * chosen when it is bound with {@link EventBinder#withFormat(EventFormat)}.
+ */
+@Beta
+public enum EventFormat
+{
+    JSON(MediaType.create("application", "json")),
+    SMILE(MediaType.create("application", "x-jackson-smile"));
+
+    private final MediaType mediaType;
+
+    EventFormat(MediaType mediaType)
+    {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType()
+    {
+        return mediaType;
+    }
+
+    public static EventFormat fromContentType(String contentType)
+    {
+        MediaType mediaType = MediaType.parse(contentType).withoutParameters();
+        for (EventFormat format : values()) {
+            if (format.mediaType.equals(mediaType)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported event content type: " + contentType);
+    }
+}
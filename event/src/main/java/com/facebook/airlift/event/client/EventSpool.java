@@ -0,0 +1,557 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.facebook.airlift.log.Logger;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+import io.airlift.units.DataSize;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.Math.toIntExact;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Append-only queue of encoded events, stored in memory-mapped segment files
+ * of a fixed size. Each segment starts with a header holding a magic number and
+ * the offset up to which its events have been delivered, followed by frames of
+ * {@code length, crc32, payload}. A zero length marks the end of a segment.
+ * <p>
+ * Events are read in the order they were appended, and are only removed from
+ * the spool when the read is committed, so events that were being replayed when
+ * the process stopped are replayed again on the next start. On start, frames
+ * are validated up to the first one that is incomplete or fails its checksum,
+ * and recovered segments are never appended to again.
+ * <p>
+ * The number of segments is bounded by the maximum spool size. When a new
+ * segment is needed and the spool is full, the oldest segment is deleted along
+ * with its undelivered events.
+ */
+@ThreadSafe
+class EventSpool
+        implements Closeable
+{
+    private static final Logger log = Logger.get(EventSpool.class);
+
+    private static final int MAGIC = 0x45565350;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int READ_OFFSET_POSITION = 4;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(\\d{20})\\.spool");
+    private static final Optional<Unmapper> UNMAPPER = createUnmapper();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final EventBatcherStats stats;
+    private final AtomicLong pendingEvents;
+
+    @GuardedBy("this")
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    @GuardedBy("this")
+    private long nextSegmentId;
+    @GuardedBy("this")
+    private boolean closed;
+
+    public EventSpool(Path directory, DataSize segmentSize, DataSize maxSize, EventBatcherStats stats)
+            throws IOException
+    {
+        this.directory = requireNonNull(directory, "directory is null");
+        this.stats = requireNonNull(stats, "stats is null");
+        this.pendingEvents = stats.spooledEventsPendingCounter();
+        checkArgument(segmentSize.toBytes() > SEGMENT_HEADER_SIZE + FRAME_HEADER_SIZE, "segmentSize is too small");
+        checkArgument(segmentSize.toBytes() <= Integer.MAX_VALUE, "segmentSize is too large");
+        this.segmentSize = toIntExact(segmentSize.toBytes());
+        this.maxSegments = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxSize.toBytes() / this.segmentSize));
+
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    public boolean isEmpty()
+    {
+        return pendingEvents.get() == 0;
+    }
+
+    /**
+     * Appends the events and forces them to disk. Events that do not fit in a
+     * segment are dropped.
+     */
+    public synchronized void append(List<byte[]> events)
+            throws IOException
+    {
+        checkState(!closed, "spool is closed");
+        Segment segment = null;
+        for (byte[] event : events) {
+            int frameSize = FRAME_HEADER_SIZE + event.length;
+            if (frameSize > segmentSize - SEGMENT_HEADER_SIZE) {
+                log.warn("Dropping event of %s bytes that is larger than a spool segment", event.length);
+                stats.getDroppedEvents().update(1);
+                continue;
+            }
+
+            Segment tail = segments.peekLast();
+            if (tail == null || tail.isSealed() || !tail.hasCapacity(frameSize)) {
+                if (segment != null) {
+                    segment.force();
+                }
+                tail = createSegment();
+            }
+            segment = tail;
+            segment.append(event);
+            pendingEvents.incrementAndGet();
+            stats.getSpooledEvents().update(1);
+        }
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Reads the oldest undelivered events without removing them from the spool.
+     * The events returned are always from a single segment.
+     */
+    public synchronized Optional<SpooledEvents> read(int maxEvents, long maxBytes)
+    {
+        checkState(!closed, "spool is closed");
+        while (!segments.isEmpty()) {
+            Segment head = segments.peekFirst();
+            if (head.hasUnreadEvents()) {
+                return Optional.of(head.read(maxEvents, maxBytes));
+            }
+            if (head == segments.peekLast() && !head.isSealed()) {
+                return Optional.empty();
+            }
+            deleteSegment(segments.removeFirst());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Marks the events as delivered. This is ignored if the segment they were
+     * read from has been evicted in the meantime.
+     */
+    public synchronized void commit(SpooledEvents events)
+    {
+        if (closed) {
+            return;
+        }
+        Segment head = segments.peekFirst();
+        if (head == null || head.getId() != events.getSegmentId() || events.getEndOffset() <= head.getReadOffset()) {
+            return;
+        }
+        head.commit(events.getEndOffset(), events.getEvents().size());
+        pendingEvents.addAndGet(-events.getEvents().size());
+
+        if (!head.hasUnreadEvents() && (head.isSealed() || head != segments.peekLast())) {
+            deleteSegment(segments.removeFirst());
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments) {
+            try {
+                segment.force();
+                segment.close();
+            }
+            catch (IOException e) {
+                log.warn(e, "Error closing spool segment %s", segment.getPath());
+            }
+        }
+        segments.clear();
+    }
+
+    @GuardedBy("this")
+    private Segment createSegment()
+            throws IOException
+    {
+        while (segments.size() >= maxSegments) {
+            Segment oldest = segments.removeFirst();
+            long dropped = oldest.getUnreadEvents();
+            if (dropped > 0) {
+                log.warn("Event spool is full, dropping %s events", dropped);
+                stats.getDroppedEvents().update(dropped);
+                pendingEvents.addAndGet(-dropped);
+            }
+            deleteSegment(oldest);
+        }
+
+        Segment segment = Segment.create(directory.resolve(String.format("%020d.spool", nextSegmentId)), nextSegmentId, segmentSize);
+        nextSegmentId++;
+        segments.addLast(segment);
+        return segment;
+    }
+
+    @GuardedBy("this")
+    private void recover()
+            throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.spool")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+
+        for (Path file : files) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+            if (!matcher.matches()) {
+                continue;
+            }
+            long id = Long.parseLong(matcher.group(1));
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+
+            Optional<Segment> segment = Segment.recover(file, id);
+            if (!segment.isPresent()) {
+                log.warn("Deleting invalid spool segment %s", file);
+                Files.deleteIfExists(file);
+                continue;
+            }
+            if (!segment.get().hasUnreadEvents()) {
+                deleteSegment(segment.get());
+                continue;
+            }
+            segments.addLast(segment.get());
+            pendingEvents.addAndGet(segment.get().getUnreadEvents());
+        }
+        if (!segments.isEmpty()) {
+            log.info("Recovered %s spooled events from %s", pendingEvents.get(), directory);
+        }
+    }
+
+    private static void deleteSegment(Segment segment)
+    {
+        try {
+            segment.close();
+            Files.deleteIfExists(segment.getPath());
+        }
+        catch (IOException e) {
+            log.warn(e, "Error deleting spool segment %s", segment.getPath());
+        }
+    }
+
+    public static class SpooledEvents
+    {
+        private final long segmentId;
+        private final int[] endOffsets;
+        private final List<byte[]> events;
+
+        private SpooledEvents(long segmentId, int[] endOffsets, List<byte[]> events)
+        {
+            checkArgument(!events.isEmpty() && endOffsets.length == events.size(), "each event must have an end offset");
+            this.segmentId = segmentId;
+            this.endOffsets = endOffsets;
+            this.events = ImmutableList.copyOf(events);
+        }
+
+        public long getSegmentId()
+        {
+            return segmentId;
+        }
+
+        public int getEndOffset()
+        {
+            return endOffsets[endOffsets.length - 1];
+        }
+
+        public List<byte[]> getEvents()
+        {
+            return events;
+        }
+
+        /**
+         * Returns the first events, so that committing the result only removes those events from the spool.
+         */
+        public SpooledEvents limit(int count)
+        {
+            checkArgument(count > 0 && count <= events.size(), "invalid count: %s", count);
+            if (count == events.size()) {
+                return this;
+            }
+            return new SpooledEvents(segmentId, Arrays.copyOf(endOffsets, count), events.subList(0, count));
+        }
+    }
+
+    private static class Segment
+    {
+        private final Path path;
+        private final long id;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final boolean sealed;
+        private int readOffset;
+        private int writeOffset;
+        private long unreadEvents;
+
+        private Segment(Path path, long id, FileChannel channel, MappedByteBuffer buffer, boolean sealed, int readOffset, int writeOffset, long unreadEvents)
+        {
+            this.path = path;
+            this.id = id;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.sealed = sealed;
+            this.readOffset = readOffset;
+            this.writeOffset = writeOffset;
+            this.unreadEvents = unreadEvents;
+        }
+
+        public static Segment create(Path path, long id, int size)
+                throws IOException
+        {
+            FileChannel channel = FileChannel.open(path, CREATE_NEW, READ, WRITE);
+            try {
+                // mapping past the end of the file extends it, and the new region is zero filled
+                MappedByteBuffer buffer = channel.map(READ_WRITE, 0, size);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(READ_OFFSET_POSITION, SEGMENT_HEADER_SIZE);
+                return new Segment(path, id, channel, buffer, false, SEGMENT_HEADER_SIZE, SEGMENT_HEADER_SIZE, 0);
+            }
+            catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public static Optional<Segment> recover(Path path, long id)
+                throws IOException
+        {
+            FileChannel channel = FileChannel.open(path, READ, WRITE);
+            try {
+                long size = channel.size();
+                if (size < SEGMENT_HEADER_SIZE || size > Integer.MAX_VALUE) {
+                    channel.close();
+                    return Optional.empty();
+                }
+                MappedByteBuffer buffer = channel.map(READ_WRITE, 0, size);
+                if (buffer.getInt(0) != MAGIC) {
+                    unmap(buffer);
+                    channel.close();
+                    return Optional.empty();
+                }
+                int committedOffset = buffer.getInt(READ_OFFSET_POSITION);
+
+                // find the end of the valid frames, counting those that were not delivered
+                CRC32 crc = new CRC32();
+                int offset = SEGMENT_HEADER_SIZE;
+                long unreadEvents = 0;
+                while (offset + FRAME_HEADER_SIZE <= size) {
+                    int length = buffer.getInt(offset);
+                    if (length <= 0 || length > size - offset - FRAME_HEADER_SIZE) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(slice(buffer, offset + FRAME_HEADER_SIZE, length));
+                    if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                        log.warn("Spool segment %s is corrupt at offset %s, ignoring the rest of the segment", path, offset);
+                        break;
+                    }
+                    if (offset >= committedOffset) {
+                        unreadEvents++;
+                    }
+                    offset += FRAME_HEADER_SIZE + length;
+                }
+
+                int readOffset = Math.max(SEGMENT_HEADER_SIZE, Math.min(committedOffset, offset));
+                return Optional.of(new Segment(path, id, channel, buffer, true, readOffset, offset, unreadEvents));
+            }
+            catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public Path getPath()
+        {
+            return path;
+        }
+
+        public long getId()
+        {
+            return id;
+        }
+
+        public boolean isSealed()
+        {
+            return sealed;
+        }
+
+        public int getReadOffset()
+        {
+            return readOffset;
+        }
+
+        public long getUnreadEvents()
+        {
+            return unreadEvents;
+        }
+
+        public boolean hasUnreadEvents()
+        {
+            return readOffset < writeOffset;
+        }
+
+        public boolean hasCapacity(int frameSize)
+        {
+            return writeOffset + frameSize <= buffer.capacity();
+        }
+
+        public void append(byte[] event)
+        {
+            CRC32 crc = new CRC32();
+            crc.update(event);
+
+            // write the length last, so a frame is not visible until it is complete
+            ByteBuffer frame = slice(buffer, writeOffset + 4, FRAME_HEADER_SIZE - 4 + event.length);
+            frame.putInt((int) crc.getValue());
+            frame.put(event);
+            buffer.putInt(writeOffset, event.length);
+
+            writeOffset += FRAME_HEADER_SIZE + event.length;
+            unreadEvents++;
+        }
+
+        public SpooledEvents read(int maxEvents, long maxBytes)
+        {
+            List<byte[]> events = new ArrayList<>();
+            List<Integer> endOffsets = new ArrayList<>();
+            long bytes = 0;
+            int offset = readOffset;
+            while (offset < writeOffset && events.size() < maxEvents) {
+                int length = buffer.getInt(offset);
+                if (!events.isEmpty() && bytes + length > maxBytes) {
+                    break;
+                }
+                byte[] event = new byte[length];
+                slice(buffer, offset + FRAME_HEADER_SIZE, length).get(event);
+                events.add(event);
+                bytes += length;
+                offset += FRAME_HEADER_SIZE + length;
+                endOffsets.add(offset);
+            }
+            return new SpooledEvents(id, Ints.toArray(endOffsets), events);
+        }
+
+        public void commit(int endOffset, int events)
+        {
+            readOffset = endOffset;
+            unreadEvents -= events;
+            // not forced, so after a crash the events may be delivered again
+            buffer.putInt(READ_OFFSET_POSITION, readOffset);
+        }
+
+        public void force()
+        {
+            buffer.force();
+        }
+
+        /**
+         * Closes the segment and releases its mapping, so the disk space of a
+         * deleted segment is freed right away. The segment must not be used
+         * after it is closed.
+         */
+        public void close()
+                throws IOException
+        {
+            unmap(buffer);
+            channel.close();
+        }
+
+        private static ByteBuffer slice(ByteBuffer buffer, int offset, int length)
+        {
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset);
+            slice.limit(offset + length);
+            return slice.slice();
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer)
+    {
+        if (!UNMAPPER.isPresent()) {
+            // the mapping is released when the buffer is garbage collected
+            return;
+        }
+        try {
+            UNMAPPER.get().unmap(buffer);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug(e, "Error unmapping spool segment");
+        }
+    }
+
+    private static Optional<Unmapper> createUnmapper()
+    {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                // Java 9 and later
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                Object unsafe = field.get(null);
+                return Optional.of(buffer -> invokeCleaner.invoke(unsafe, buffer));
+            }
+            catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                return Optional.of(buffer -> cleanMethod.invoke(cleanerMethod.invoke(buffer)));
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Unable to unmap spool segments explicitly, disk space of deleted segments is freed when they are garbage collected");
+            return Optional.empty();
+        }
+    }
+
+    private interface Unmapper
+    {
+        void unmap(MappedByteBuffer buffer)
+                throws ReflectiveOperationException;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.facebook.airlift.stats.CounterStat;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.RateLimiter;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.google.common.collect.ImmutableSortedMap.toImmutableSortedMap;
+import static java.util.Comparator.naturalOrder;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decides which events are sent to the collectors, based on the
+ * {@link EventThrottlePolicy} of their type. The decision only needs the class
+ * of the event, so dropped events are never serialized.
+ */
+@ThreadSafe
+public class EventThrottle
+{
+    private final Map<Class<?>, TypeThrottle> throttles;
+    private final CounterStat sampledOutEvents = new CounterStat();
+    private final CounterStat rateLimitedEvents = new CounterStat();
+
+    public EventThrottle()
+    {
+        this(ImmutableMap.of());
+    }
+
+    @Inject
+    EventThrottle(Map<Class<?>, Set<EventThrottlePolicy>> policies)
+    {
+        requireNonNull(policies, "policies is null");
+        ImmutableMap.Builder<Class<?>, TypeThrottle> throttles = ImmutableMap.builder();
+        policies.forEach((eventClass, eventPolicies) -> {
+            // when a type is registered with several policies, the strictest limits apply
+            EventThrottlePolicy policy = eventPolicies.stream().reduce(EventThrottlePolicy.UNLIMITED, EventThrottlePolicy::intersect);
+            if (!policy.isUnlimited()) {
+                throttles.put(eventClass, new TypeThrottle(policy));
+            }
+        });
+        this.throttles = throttles.build();
+    }
+
+    /**
+     * Returns true if an event of the specified class should be sent.
+     */
+    public boolean tryAcquire(Class<?> eventClass)
+    {
+        if (throttles.isEmpty()) {
+            return true;
+        }
+        TypeThrottle throttle = throttles.get(eventClass);
+        if (throttle == null) {
+            return true;
+        }
+        if (!throttle.sample()) {
+            sampledOutEvents.update(1);
+            throttle.sampledOut.increment();
+            return false;
+        }
+        if (!throttle.tryAcquire()) {
+            rateLimitedEvents.update(1);
+            throttle.rateLimited.increment();
+            return false;
+        }
+        return true;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getSampledOutEvents()
+    {
+        return sampledOutEvents;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRateLimitedEvents()
+    {
+        return rateLimitedEvents;
+    }
+
+    /**
+     * Returns the total number of sampled out events, by event class.
+     */
+    @Managed
+    public Map<String, Long> getSampledOutEventsByType()
+    {
+        return byType(throttle -> throttle.sampledOut.sum());
+    }
+
+    /**
+     * Returns the total number of rate limited events, by event class.
+     */
+    @Managed
+    public Map<String, Long> getRateLimitedEventsByType()
+    {
+        return byType(throttle -> throttle.rateLimited.sum());
+    }
+
+    private Map<String, Long> byType(Function<TypeThrottle, Long> counter)
+    {
+        return throttles.entrySet().stream()
+                .collect(toImmutableSortedMap(naturalOrder(), entry -> entry.getKey().getName(), entry -> counter.apply(entry.getValue())));
+    }
+
+    private static class TypeThrottle
+    {
+        private final double sampleRate;
+        private final RateLimiter rateLimiter;
+        private final LongAdder sampledOut = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+
+        public TypeThrottle(EventThrottlePolicy policy)
+        {
+            this.sampleRate = policy.getSampleRate();
+            this.rateLimiter = policy.getMaxEventsPerSecond().isPresent() ? RateLimiter.create(policy.getMaxEventsPerSecond().getAsDouble()) : null;
+        }
+
+        public boolean sample()
+        {
+            return sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        }
+
+        public boolean tryAcquire()
+        {
+            return rateLimiter == null || rateLimiter.tryAcquire();
+        }
+    }
+}
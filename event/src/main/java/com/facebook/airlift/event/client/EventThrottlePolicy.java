@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import java.util.Objects;
+import java.util.OptionalDouble;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits on how many events of a type are sent to the collectors: the fraction
+ * of events that are kept, and the maximum rate of the kept events.
+ */
+final class EventThrottlePolicy
+{
+    public static final EventThrottlePolicy UNLIMITED = new EventThrottlePolicy(1.0, OptionalDouble.empty());
+
+    private final double sampleRate;
+    private final OptionalDouble maxEventsPerSecond;
+
+    public EventThrottlePolicy(double sampleRate, OptionalDouble maxEventsPerSecond)
+    {
+        checkArgument(sampleRate > 0 && sampleRate <= 1, "sampleRate must be greater than 0 and at most 1: %s", sampleRate);
+        checkArgument(!maxEventsPerSecond.isPresent() || maxEventsPerSecond.getAsDouble() > 0, "maxEventsPerSecond must be greater than 0: %s", maxEventsPerSecond);
+        this.sampleRate = sampleRate;
+        this.maxEventsPerSecond = maxEventsPerSecond;
+    }
+
+    public double getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    public OptionalDouble getMaxEventsPerSecond()
+    {
+        return maxEventsPerSecond;
+    }
+
+    public boolean isUnlimited()
+    {
+        return sampleRate == 1.0 && !maxEventsPerSecond.isPresent();
+    }
+
+    public EventThrottlePolicy withSampleRate(double sampleRate)
+    {
+        return new EventThrottlePolicy(sampleRate, maxEventsPerSecond);
+    }
+
+    public EventThrottlePolicy withMaxEventsPerSecond(double maxEventsPerSecond)
+    {
+        return new EventThrottlePolicy(sampleRate, OptionalDouble.of(maxEventsPerSecond));
+    }
+
+    /**
+     * Returns a policy that is at least as strict as both policies.
+     */
+    public EventThrottlePolicy intersect(EventThrottlePolicy other)
+    {
+        OptionalDouble maxEventsPerSecond = this.maxEventsPerSecond;
+        if (!maxEventsPerSecond.isPresent() || (other.maxEventsPerSecond.isPresent() && other.maxEventsPerSecond.getAsDouble() < maxEventsPerSecond.getAsDouble())) {
+            maxEventsPerSecond = other.maxEventsPerSecond;
+        }
+        return new EventThrottlePolicy(Math.min(sampleRate, other.sampleRate), maxEventsPerSecond);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        EventThrottlePolicy that = (EventThrottlePolicy) o;
+        return Double.compare(that.sampleRate, sampleRate) == 0 &&
+                Objects.equals(maxEventsPerSecond, that.maxEventsPerSecond);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(sampleRate, maxEventsPerSecond);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("sampleRate", sampleRate)
+                .add("maxEventsPerSecond", maxEventsPerSecond)
+                .toString();
+    }
+}
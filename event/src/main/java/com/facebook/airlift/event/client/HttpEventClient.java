@@ -27,47 +27,110 @@ import com.facebook.airlift.log.Logger;
 import com.facebook.airlift.node.NodeInfo;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.CharStreams;
-import com.google.common.net.MediaType;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import static com.facebook.airlift.http.client.Request.Builder.preparePost;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.Futures.allAsList;
+import static com.google.common.util.concurrent.Futures.catchingAsync;
 import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.Futures.transform;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.util.Objects.requireNonNull;
 
 public class HttpEventClient
         implements EventClient
 {
     private static final Logger log = Logger.get(HttpEventClient.class);
-    private static final MediaType MEDIA_TYPE_JSON = MediaType.create("application", "json");
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
 
     private final HttpServiceSelector serviceSelector;
     private final JsonEventWriter eventWriter;
     private final HttpClient httpClient;
     private final NodeInfo nodeInfo;
+    private final EventThrottle throttle;
+    private final EventBatcherStats batcherStats = new EventBatcherStats();
+    private final Optional<EventBatcher> batcher;
+    private volatile boolean nonJsonFormatsRejected;
+
+    public HttpEventClient(
+            HttpServiceSelector serviceSelector,
+            JsonEventWriter eventWriter,
+            NodeInfo nodeInfo,
+            HttpClient httpClient)
+    {
+        this(serviceSelector, eventWriter, nodeInfo, httpClient, new HttpEventClientConfig());
+    }
+
+    public HttpEventClient(
+            HttpServiceSelector serviceSelector,
+            JsonEventWriter eventWriter,
+            NodeInfo nodeInfo,
+            HttpClient httpClient,
+            HttpEventClientConfig config)
+    {
+        this(serviceSelector, eventWriter, nodeInfo, httpClient, config, new EventThrottle());
+    }
 
     @Inject
     public HttpEventClient(
             @ServiceType("collector") HttpServiceSelector serviceSelector,
             JsonEventWriter eventWriter,
             NodeInfo nodeInfo,
-            @ForEventClient HttpClient httpClient)
+            @ForEventClient HttpClient httpClient,
+            HttpEventClientConfig config,
+            EventThrottle throttle)
     {
         this.serviceSelector = requireNonNull(serviceSelector, "serviceSelector is null");
         this.eventWriter = requireNonNull(eventWriter, "eventWriter is null");
         this.nodeInfo = requireNonNull(nodeInfo, "nodeInfo is null");
         this.httpClient = requireNonNull(httpClient, "httpClient is null");
+        this.throttle = requireNonNull(throttle, "throttle is null");
+        requireNonNull(config, "config is null");
+
+        checkArgument(config.getSpoolDirectory() == null || config.isBatchingEnabled(), "Event spool requires batching to be enabled");
+        if (config.isBatchingEnabled()) {
+            Optional<EventSpool> spool = Optional.empty();
+            if (config.getSpoolDirectory() != null) {
+                try {
+                    spool = Optional.of(new EventSpool(Paths.get(config.getSpoolDirectory()), config.getSpoolSegmentSize(), config.getSpoolMaxSize(), batcherStats));
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException("Unable to open event spool " + config.getSpoolDirectory(), e);
+                }
+            }
+            batcher = Optional.of(new EventBatcher(serviceSelector, httpClient, eventWriter, nodeInfo.getNodeId(), config, batcherStats, spool));
+        }
+        else {
+            batcher = Optional.empty();
+        }
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        batcher.ifPresent(EventBatcher::close);
     }
 
     @Flatten
@@ -77,6 +140,20 @@ public class HttpEventClient
         return httpClient.getStats();
     }
 
+    @Managed
+    @Nested
+    public EventBatcherStats getBatching()
+    {
+        return batcherStats;
+    }
+
+    @Managed
+    @Nested
+    public EventThrottle getThrottling()
+    {
+        return throttle;
+    }
+
     @SafeVarargs
     @Override
     public final <T> ListenableFuture<Void> post(T... event)
@@ -99,10 +176,68 @@ public class HttpEventClient
     }
 
     @Override
-    public <T> ListenableFuture<Void> post(EventGenerator<T> eventGenerator)
+    public <T> ListenableFuture<Void> post(EventGenerator<T> unthrottledEventGenerator)
     {
-        requireNonNull(eventGenerator, "eventGenerator is null");
+        requireNonNull(unthrottledEventGenerator, "eventGenerator is null");
 
+        // sampled out and rate limited events are dropped before they are serialized
+        EventGenerator<T> eventGenerator = eventPoster -> unthrottledEventGenerator.generate(event -> {
+            requireNonNull(event, "event is null");
+            if (throttle.tryAcquire(event.getClass())) {
+                eventPoster.post(event);
+            }
+        });
+
+        if (batcher.isPresent()) {
+            // the events are sent in the background, so the future only reports events that could not be encoded
+            try {
+                eventGenerator.generate(batcher.get()::enqueue);
+            }
+            catch (IOException | RuntimeException e) {
+                return immediateFailedFuture(e);
+            }
+            return immediateFuture(null);
+        }
+
+        // the events are collected first, so no request is sent when all of them are dropped,
+        // and events are sent in a separate request for each format
+        boolean jsonOnly = nonJsonFormatsRejected || !eventWriter.hasNonJsonFormats();
+        Map<EventFormat, List<Object>> eventsByFormat = new EnumMap<>(EventFormat.class);
+        try {
+            eventGenerator.generate(event -> {
+                EventFormat format = jsonOnly ? EventFormat.JSON : eventWriter.getFormat(event.getClass());
+                eventsByFormat.computeIfAbsent(format, ignored -> new ArrayList<>()).add(event);
+            });
+        }
+        catch (IOException | RuntimeException e) {
+            return immediateFailedFuture(e);
+        }
+        if (eventsByFormat.isEmpty()) {
+            return immediateFuture(null);
+        }
+
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        eventsByFormat.forEach((format, events) -> {
+            EventGenerator<Object> generator = eventPoster -> {
+                for (Object event : events) {
+                    eventPoster.post(event);
+                }
+            };
+            ListenableFuture<Void> future = post(format, generator);
+            if (format != EventFormat.JSON) {
+                future = catchingAsync(future, UnsupportedEventFormatException.class, e -> {
+                    log.warn("Collector does not accept %s events, sending all events as JSON", format);
+                    nonJsonFormatsRejected = true;
+                    return post(EventFormat.JSON, generator);
+                }, directExecutor());
+            }
+            futures.add(future);
+        });
+        return transform(allAsList(futures), ignored -> null, directExecutor());
+    }
+
+    private <T> ListenableFuture<Void> post(EventFormat format, EventGenerator<T> eventGenerator)
+    {
         List<URI> uris = serviceSelector.selectHttpService();
 
         if (uris.isEmpty()) {
@@ -113,21 +248,23 @@ public class HttpEventClient
         Request request = preparePost()
                 .setUri(uris.get(0).resolve("/v2/event"))
                 .setHeader("User-Agent", nodeInfo.getNodeId())
-                .setHeader("Content-Type", MEDIA_TYPE_JSON.toString())
-                .setBodyGenerator(new JsonEntityWriter<>(eventWriter, eventGenerator))
+                .setHeader("Content-Type", format.getMediaType().toString())
+                .setBodyGenerator(new EventEntityWriter<>(eventWriter, format, eventGenerator))
                 .build();
-        return httpClient.executeAsync(request, new EventResponseHandler(serviceSelector.getType(), serviceSelector.getPool()));
+        return httpClient.executeAsync(request, new EventResponseHandler(serviceSelector.getType(), serviceSelector.getPool(), format));
     }
 
-    private static class JsonEntityWriter<T>
+    private static class EventEntityWriter<T>
             implements BodyGenerator
     {
         private final JsonEventWriter eventWriter;
+        private final EventFormat format;
         private final EventGenerator<T> events;
 
-        public JsonEntityWriter(JsonEventWriter eventWriter, EventGenerator<T> events)
+        public EventEntityWriter(JsonEventWriter eventWriter, EventFormat format, EventGenerator<T> events)
         {
             this.eventWriter = requireNonNull(eventWriter, "eventWriter is null");
+            this.format = requireNonNull(format, "format is null");
             this.events = requireNonNull(events, "events is null");
         }
 
@@ -135,7 +272,16 @@ public class HttpEventClient
         public void write(OutputStream out)
                 throws Exception
         {
-            eventWriter.writeEvents(events, out);
+            eventWriter.writeEvents(format, events, out);
+        }
+    }
+
+    private static class UnsupportedEventFormatException
+            extends RuntimeException
+    {
+        public UnsupportedEventFormatException(EventFormat format)
+        {
+            super("Collector does not accept " + format + " events");
         }
     }
 
@@ -144,11 +290,13 @@ public class HttpEventClient
     {
         private final String type;
         private final String pool;
+        private final EventFormat format;
 
-        public EventResponseHandler(String type, String pool)
+        public EventResponseHandler(String type, String pool, EventFormat format)
         {
             this.type = requireNonNull(type, "type is null");
             this.pool = requireNonNull(pool, "pool is null");
+            this.format = requireNonNull(format, "format is null");
         }
 
         @Override
@@ -165,6 +313,9 @@ public class HttpEventClient
             if (statusCode >= 200 && statusCode <= 299) {
                 return null;
             }
+            if (statusCode == UNSUPPORTED_MEDIA_TYPE && format != EventFormat.JSON) {
+                throw new UnsupportedEventFormatException(format);
+            }
 
             try {
                 InputStream inputStream = response.getInputStream();
@@ -0,0 +1,254 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.facebook.airlift.configuration.Config;
+import com.facebook.airlift.configuration.ConfigDescription;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+import io.airlift.units.MaxDataSize;
+import io.airlift.units.MinDataSize;
+import io.airlift.units.MinDuration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import static io.airlift.units.DataSize.Unit.GIGABYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class HttpEventClientConfig
+{
+    public enum QueueFullPolicy
+    {
+        DROP_NEWEST,
+        DROP_OLDEST,
+    }
+
+    private boolean batchingEnabled;
+    private int maxQueuedEvents = 10_000;
+    private QueueFullPolicy queueFullPolicy = QueueFullPolicy.DROP_NEWEST;
+    private int maxBatchEvents = 1000;
+    private DataSize maxBatchSize = new DataSize(4, MEGABYTE);
+    private Duration maxLinger = new Duration(500, MILLISECONDS);
+    private int maxInFlightBatches = 4;
+    private boolean compressionEnabled = true;
+    private int maxRetries = 3;
+    private Duration minRetryBackoff = new Duration(100, MILLISECONDS);
+    private Duration maxRetryBackoff = new Duration(10, SECONDS);
+    private String spoolDirectory;
+    private DataSize spoolMaxSize = new DataSize(1, GIGABYTE);
+    private DataSize spoolSegmentSize = new DataSize(16, MEGABYTE);
+
+    public boolean isBatchingEnabled()
+    {
+        return batchingEnabled;
+    }
+
+    @Config("event-client.batching-enabled")
+    @ConfigDescription("Queue events and send them to the collectors in batches, instead of one request per post")
+    public HttpEventClientConfig setBatchingEnabled(boolean batchingEnabled)
+    {
+        this.batchingEnabled = batchingEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getMaxQueuedEvents()
+    {
+        return maxQueuedEvents;
+    }
+
+    @Config("event-client.max-queued-events")
+    @ConfigDescription("Maximum number of events waiting to be sent")
+    public HttpEventClientConfig setMaxQueuedEvents(int maxQueuedEvents)
+    {
+        this.maxQueuedEvents = maxQueuedEvents;
+        return this;
+    }
+
+    @NotNull
+    public QueueFullPolicy getQueueFullPolicy()
+    {
+        return queueFullPolicy;
+    }
+
+    @Config("event-client.queue-full-policy")
+    @ConfigDescription("Events to drop when the queue is full: DROP_NEWEST or DROP_OLDEST")
+    public HttpEventClientConfig setQueueFullPolicy(QueueFullPolicy queueFullPolicy)
+    {
+        this.queueFullPolicy = queueFullPolicy;
+        return this;
+    }
+
+    @Min(1)
+    public int getMaxBatchEvents()
+    {
+        return maxBatchEvents;
+    }
+
+    @Config("event-client.max-batch-events")
+    @ConfigDescription("Maximum number of events in a batch")
+    public HttpEventClientConfig setMaxBatchEvents(int maxBatchEvents)
+    {
+        this.maxBatchEvents = maxBatchEvents;
+        return this;
+    }
+
+    @NotNull
+    @MinDataSize("1kB")
+    public DataSize getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    @Config("event-client.max-batch-size")
+    @ConfigDescription("Maximum size of the encoded events in a batch, before compression")
+    public HttpEventClientConfig setMaxBatchSize(DataSize maxBatchSize)
+    {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1ms")
+    public Duration getMaxLinger()
+    {
+        return maxLinger;
+    }
+
+    @Config("event-client.max-linger")
+    @ConfigDescription("Maximum time an event waits for a batch to fill up before it is sent")
+    public HttpEventClientConfig setMaxLinger(Duration maxLinger)
+    {
+        this.maxLinger = maxLinger;
+        return this;
+    }
+
+    @Min(1)
+    public int getMaxInFlightBatches()
+    {
+        return maxInFlightBatches;
+    }
+
+    @Config("event-client.max-in-flight-batches")
+    @ConfigDescription("Maximum number of batches being sent or waiting to be retried")
+    public HttpEventClientConfig setMaxInFlightBatches(int maxInFlightBatches)
+    {
+        this.maxInFlightBatches = maxInFlightBatches;
+        return this;
+    }
+
+    public boolean isCompressionEnabled()
+    {
+        return compressionEnabled;
+    }
+
+    @Config("event-client.compression-enabled")
+    @ConfigDescription("Compress batches with gzip")
+    public HttpEventClientConfig setCompressionEnabled(boolean compressionEnabled)
+    {
+        this.compressionEnabled = compressionEnabled;
+        return this;
+    }
+
+    @Min(0)
+    public int getMaxRetries()
+    {
+        return maxRetries;
+    }
+
+    @Config("event-client.max-retries")
+    @ConfigDescription("Maximum number of times a batch is retried before its events are dropped")
+    public HttpEventClientConfig setMaxRetries(int maxRetries)
+    {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("0ms")
+    public Duration getMinRetryBackoff()
+    {
+        return minRetryBackoff;
+    }
+
+    @Config("event-client.min-retry-backoff")
+    @ConfigDescription("Time to wait before the first retry of a failed batch; doubled on each further attempt")
+    public HttpEventClientConfig setMinRetryBackoff(Duration minRetryBackoff)
+    {
+        this.minRetryBackoff = minRetryBackoff;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("0ms")
+    public Duration getMaxRetryBackoff()
+    {
+        return maxRetryBackoff;
+    }
+
+    @Config("event-client.max-retry-backoff")
+    @ConfigDescription("Maximum time to wait between retries of a failed batch")
+    public HttpEventClientConfig setMaxRetryBackoff(Duration maxRetryBackoff)
+    {
+        this.maxRetryBackoff = maxRetryBackoff;
+        return this;
+    }
+
+    public String getSpoolDirectory()
+    {
+        return spoolDirectory;
+    }
+
+    @Config("event-client.spool-directory")
+    @ConfigDescription("Directory where batches are spooled while the collectors are unavailable (requires batching)")
+    public HttpEventClientConfig setSpoolDirectory(String spoolDirectory)
+    {
+        this.spoolDirectory = spoolDirectory;
+        return this;
+    }
+
+    @NotNull
+    @MinDataSize("1MB")
+    public DataSize getSpoolMaxSize()
+    {
+        return spoolMaxSize;
+    }
+
+    @Config("event-client.spool-max-size")
+    @ConfigDescription("Maximum disk space used by the spool; the oldest events are dropped when it is full")
+    public HttpEventClientConfig setSpoolMaxSize(DataSize spoolMaxSize)
+    {
+        this.spoolMaxSize = spoolMaxSize;
+        return this;
+    }
+
+    @NotNull
+    @MinDataSize("64kB")
+    @MaxDataSize("1GB")
+    public DataSize getSpoolSegmentSize()
+    {
+        return spoolSegmentSize;
+    }
+
+    @Config("event-client.spool-segment-size")
+    @ConfigDescription("Size of each spool file; the spool grows and shrinks one segment at a time")
+    public HttpEventClientConfig setSpoolSegmentSize(DataSize spoolSegmentSize)
+    {
+        this.spoolSegmentSize = spoolSegmentSize;
+        return this;
+    }
+}
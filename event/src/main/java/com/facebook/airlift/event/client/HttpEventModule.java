@@ -21,6 +21,7 @@ import com.google.inject.Module;
 import com.google.inject.Scopes;
 import com.google.inject.TypeLiteral;
 
+import static com.facebook.airlift.configuration.ConfigBinder.configBinder;
 import static com.facebook.airlift.discovery.client.DiscoveryBinder.discoveryBinder;
 import static com.facebook.airlift.http.client.HttpClientBinder.httpClientBinder;
 import static com.google.inject.multibindings.Multibinder.newSetBinder;
@@ -37,6 +38,8 @@ public class HttpEventModule
 
         binder.bind(JsonEventWriter.class).in(Scopes.SINGLETON);
 
+        configBinder(binder).bindConfig(HttpEventClientConfig.class);
+        binder.bind(EventThrottle.class).in(Scopes.SINGLETON);
         binder.bind(HttpEventClient.class).in(Scopes.SINGLETON);
         newSetBinder(binder, EventClient.class).addBinding().to(Key.get(HttpEventClient.class)).in(Scopes.SINGLETON);
         newExporter(binder).export(EventClient.class).withGeneratedName();
@@ -45,7 +48,9 @@ public class HttpEventModule
         // bind the http client
         httpClientBinder(binder).bindHttpClient("event", ForEventClient.class);
 
-        // Kick off the binding of Set<EventTypeMetadata> in case no events are bound
+        // Kick off the binding of Set<EventTypeMetadata>, of the event formats, and of the throttle policies in case no events are bound
         newSetBinder(binder, new TypeLiteral<EventTypeMetadata<?>>() {});
+        EventBinder.newEventFormatBinder(binder);
+        EventBinder.newEventThrottlePolicyBinder(binder);
     }
 }
@@ -18,29 +18,54 @@ package com.facebook.airlift.event.client;
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
 import com.google.common.collect.ImmutableMap;
 
 import javax.inject.Inject;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static com.fasterxml.jackson.dataformat.smile.SmileConstants.TOKEN_LITERAL_END_ARRAY;
 import static java.util.Objects.requireNonNull;
 
 public class JsonEventWriter
 {
     private final JsonFactory jsonFactory;
+    private final SmileFactory smileFactory;
+    // single Smile events have no header and no back references to names, so that they can be concatenated into an array
+    private final SmileFactory smileEventFactory;
+    private final byte[] smileArrayStart;
     private final Map<Class<?>, JsonSerializer<?>> serializers;
+    private final Map<Class<?>, EventFormat> formats;
 
-    @Inject
     public JsonEventWriter(Set<EventTypeMetadata<?>> eventTypes)
+    {
+        this(eventTypes, ImmutableMap.of());
+    }
+
+    @Inject
+    public JsonEventWriter(Set<EventTypeMetadata<?>> eventTypes, Map<Class<?>, EventFormat> formats)
     {
         requireNonNull(eventTypes, "eventTypes is null");
+        this.formats = ImmutableMap.copyOf(requireNonNull(formats, "formats is null"));
 
         this.jsonFactory = new JsonFactory();
+        this.smileFactory = new SmileFactory();
+        this.smileEventFactory = new SmileFactory()
+                .disable(SmileGenerator.Feature.WRITE_HEADER)
+                .disable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                .disable(SmileParser.Feature.REQUIRE_HEADER);
+        this.smileArrayStart = createSmileArrayStart();
 
         ImmutableMap.Builder<Class<?>, JsonSerializer<?>> serializerBuilder = ImmutableMap.builder();
 
@@ -50,13 +75,37 @@ public class JsonEventWriter
         this.serializers = serializerBuilder.build();
     }
 
+    /**
+     * Returns the format the event type is sent in, which is JSON unless another
+     * format was chosen when the type was bound.
+     */
+    public EventFormat getFormat(Class<?> eventClass)
+    {
+        return formats.getOrDefault(eventClass, EventFormat.JSON);
+    }
+
+    /**
+     * Returns true if any event type is sent in a format other than JSON.
+     */
+    public boolean hasNonJsonFormats()
+    {
+        return !formats.isEmpty();
+    }
+
     public <T> void writeEvents(EventClient.EventGenerator<T> events, OutputStream out)
             throws IOException
     {
+        writeEvents(EventFormat.JSON, events, out);
+    }
+
+    public <T> void writeEvents(EventFormat format, EventClient.EventGenerator<T> events, OutputStream out)
+            throws IOException
+    {
+        requireNonNull(format, "format is null");
         requireNonNull(events, "events is null");
         requireNonNull(out, "out is null");
 
-        final JsonGenerator jsonGenerator = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+        final JsonGenerator jsonGenerator = createGenerator(format == EventFormat.SMILE ? smileFactory : jsonFactory, out);
 
         jsonGenerator.writeStartArray();
 
@@ -73,6 +122,110 @@ public class JsonEventWriter
         jsonGenerator.flush();
     }
 
+    /**
+     * Writes a single event as a JSON object, rather than as an array of events.
+     */
+    public <T> void writeEvent(T event, OutputStream out)
+            throws IOException
+    {
+        writeEvent(EventFormat.JSON, event, out);
+    }
+
+    /**
+     * Writes a single event, rather than an array of events. Events written
+     * by this method can be combined into an array with {@link #writeEncodedEvents}.
+     */
+    public <T> void writeEvent(EventFormat format, T event, OutputStream out)
+            throws IOException
+    {
+        requireNonNull(format, "format is null");
+        requireNonNull(event, "event is null");
+        requireNonNull(out, "out is null");
+
+        JsonSerializer<T> serializer = getSerializer(event);
+        if (serializer == null) {
+            throw new InvalidEventException("Event class [%s] has not been registered as an event", event.getClass().getName());
+        }
+
+        JsonGenerator jsonGenerator = createGenerator(format == EventFormat.SMILE ? smileEventFactory : jsonFactory, out);
+        serializer.serialize(event, jsonGenerator, null);
+        jsonGenerator.flush();
+    }
+
+    /**
+     * Writes an array of events that were encoded with {@link #writeEvent(EventFormat, Object, OutputStream)}.
+     */
+    public void writeEncodedEvents(EventFormat format, List<byte[]> events, OutputStream out)
+            throws IOException
+    {
+        requireNonNull(format, "format is null");
+        requireNonNull(events, "events is null");
+        requireNonNull(out, "out is null");
+
+        if (format == EventFormat.SMILE) {
+            out.write(smileArrayStart);
+            for (byte[] event : events) {
+                out.write(event);
+            }
+            out.write(TOKEN_LITERAL_END_ARRAY);
+            return;
+        }
+
+        out.write('[');
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(events.get(i));
+        }
+        out.write(']');
+    }
+
+    /**
+     * Converts a single event encoded with {@link #writeEvent(EventFormat, Object, OutputStream)}
+     * to another format.
+     */
+    public byte[] transcodeEvent(byte[] event, EventFormat from, EventFormat to)
+            throws IOException
+    {
+        requireNonNull(event, "event is null");
+        if (from == to) {
+            return event;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(event.length * 2);
+        try (JsonParser parser = (from == EventFormat.SMILE ? smileEventFactory : jsonFactory).createParser(event)) {
+            JsonGenerator generator = createGenerator(to == EventFormat.SMILE ? smileEventFactory : jsonFactory, out);
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+            generator.flush();
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] createSmileArrayStart()
+    {
+        // the header must not announce shared names, since the events do not use them
+        SmileFactory factory = new SmileFactory().disable(SmileGenerator.Feature.CHECK_SHARED_NAMES);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            // the generator is not closed, since that would end the array
+            JsonGenerator generator = factory.createGenerator(out);
+            generator.writeStartArray();
+            generator.flush();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static JsonGenerator createGenerator(JsonFactory factory, OutputStream out)
+            throws IOException
+    {
+        return factory.createGenerator(out, JsonEncoding.UTF8);
+    }
+
     @SuppressWarnings("unchecked")
     private <T> JsonSerializer<T> getSerializer(T event)
     {
@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.facebook.airlift.event.client.EventTypeMetadata.getValidEventTypeMetaDataSet;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.stream.IntStream.range;
+
+/**
+ * Measures events written per second by {@link JsonEventWriter#writeEvents}.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkJsonEventWriter
+{
+    private static final int EVENTS = 1000;
+
+    private JsonEventWriter fixedEventWriter;
+    private JsonEventWriter nestedEventWriter;
+    private List<FixedDummyEventClass> fixedEvents;
+    private List<NestedDummyEventClass> nestedEvents;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup()
+    {
+        fixedEventWriter = new JsonEventWriter(getValidEventTypeMetaDataSet(FixedDummyEventClass.class));
+        nestedEventWriter = new JsonEventWriter(getValidEventTypeMetaDataSet(NestedDummyEventClass.class));
+
+        DateTime timestamp = new DateTime("2011-09-09T01:59:59.999Z");
+        fixedEvents = range(0, EVENTS)
+                .mapToObj(i -> new FixedDummyEventClass("localhost", timestamp, UUID.randomUUID(), i, "value-" + i))
+                .collect(toImmutableList());
+        nestedEvents = range(0, EVENTS)
+                .mapToObj(i -> new NestedDummyEventClass(
+                        "localhost",
+                        timestamp,
+                        UUID.randomUUID(),
+                        i,
+                        "value-" + i,
+                        ImmutableList.of("abc", "xyz"),
+                        new NestedDummyEventClass.NestedPart("first", new NestedDummyEventClass.NestedPart("second", null)),
+                        ImmutableList.of(new NestedDummyEventClass.NestedPart("listFirst", null))))
+                .collect(toImmutableList());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public int writeFixedEvents()
+            throws IOException
+    {
+        return writeEvents(fixedEventWriter, fixedEvents);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public int writeNestedEvents()
+            throws IOException
+    {
+        return writeEvents(nestedEventWriter, nestedEvents);
+    }
+
+    private <T> int writeEvents(JsonEventWriter writer, List<T> events)
+            throws IOException
+    {
+        buffer.reset();
+        writer.writeEvents(eventPoster -> {
+            for (T event : events) {
+                eventPoster.post(event);
+            }
+        }, buffer);
+        return buffer.size();
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkJsonEventWriter.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.facebook.airlift.event.client.EventSpool.SpooledEvents;
+import com.google.common.collect.ImmutableList;
+import io.airlift.units.DataSize;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.io.MoreFiles.deleteRecursively;
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
+import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.airlift.units.DataSize.Unit.KILOBYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test(singleThreaded = true)
+public class TestEventSpool
+{
+    private Path directory;
+    private EventBatcherStats stats;
+
+    @BeforeMethod
+    public void setup()
+            throws IOException
+    {
+        directory = Files.createTempDirectory("event-spool");
+        stats = new EventBatcherStats();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown()
+            throws IOException
+    {
+        deleteRecursively(directory, ALLOW_INSECURE);
+    }
+
+    @Test
+    public void testAppendAndRead()
+            throws IOException
+    {
+        try (EventSpool spool = createSpool(new DataSize(64, KILOBYTE), new DataSize(1, MEGABYTE))) {
+            assertTrue(spool.isEmpty());
+            spool.append(events(0, 5));
+            assertFalse(spool.isEmpty());
+            assertEquals(stats.getSpooledEventsPending(), 5);
+
+            SpooledEvents first = spool.read(3, Long.MAX_VALUE).get();
+            assertEvents(first, events(0, 3));
+
+            // events are not removed until the read is committed
+            assertEvents(spool.read(3, Long.MAX_VALUE).get(), events(0, 3));
+            spool.commit(first);
+            assertEquals(stats.getSpooledEventsPending(), 2);
+
+            SpooledEvents second = spool.read(3, Long.MAX_VALUE).get();
+            assertEvents(second, events(3, 5));
+            spool.commit(second);
+
+            assertTrue(spool.isEmpty());
+            assertFalse(spool.read(3, Long.MAX_VALUE).isPresent());
+            assertEquals(stats.getSpooledEvents().getTotalCount(), 5);
+        }
+    }
+
+    @Test
+    public void testReadLimitedByBytes()
+            throws IOException
+    {
+        try (EventSpool spool = createSpool(new DataSize(64, KILOBYTE), new DataSize(1, MEGABYTE))) {
+            spool.append(events(0, 5));
+
+            // each event is 20 bytes, and the first event is returned even if it is over the limit
+            assertEvents(spool.read(100, 45).get(), events(0, 2));
+            assertEvents(spool.read(100, 1).get(), events(0, 1));
+        }
+    }
+
+    @Test
+    public void testCommitLimitedRead()
+            throws IOException
+    {
+        try (EventSpool spool = createSpool(new DataSize(64, KILOBYTE), new DataSize(1, MEGABYTE))) {
+            spool.append(events(0, 5));
+
+            // committing a prefix of a read leaves the rest of the events in the spool
+            SpooledEvents prefix = spool.read(5, Long.MAX_VALUE).get().limit(2);
+            assertEvents(prefix, events(0, 2));
+            spool.commit(prefix);
+            assertEquals(stats.getSpooledEventsPending(), 3);
+
+            assertEquals(readAll(spool), toStrings(events(2, 5)));
+        }
+    }
+
+    @Test
+    public void testRecovery()
+            throws IOException
+    {
+        try (EventSpool spool = createSpool(new DataSize(64, KILOBYTE), new DataSize(1, MEGABYTE))) {
+            spool.append(events(0, 5));
+            spool.commit(spool.read(2, Long.MAX_VALUE).get());
+        }
+
+        stats = new EventBatcherStats();
+        try (EventSpool spool = createSpool(new DataSize(64, KILOBYTE), new DataSize(1, MEGABYTE))) {
+            assertEquals(stats.getSpooledEventsPending(), 3);
+
+            // new events are appended after the recovered ones
+            spool.append(events(5, 7));
+            assertEquals(readAll(spool), toStrings(events(2, 7)));
+        }
+    }
+
+    @Test
+    public void testCorruptFrameIsDiscarded()
+            throws IOException
+    {
+        try (EventSpool spool = createSpool(new DataSize(64, KILOBYTE), new DataSize(1, MEGABYTE))) {
+            spool.append(events(0, 3));
+        }
+
+        // flip a byte in the payload of the last event
+        Path segment = getOnlyElement(listSegments());
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long position = 8 + (2 * 28) + 8;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+
+        stats = new EventBatcherStats();
+        try (EventSpool spool = createSpool(new DataSize(64, KILOBYTE), new DataSize(1, MEGABYTE))) {
+            assertEquals(stats.getSpooledEventsPending(), 2);
+            assertEquals(readAll(spool), toStrings(events(0, 2)));
+        }
+    }
+
+    @Test
+    public void testOldestSegmentIsEvicted()
+            throws IOException
+    {
+        // two 28 byte frames fit in a segment, and the spool holds two segments
+        try (EventSpool spool = createSpool(new DataSize(64, BYTE), new DataSize(128, BYTE))) {
+            spool.append(events(0, 6));
+
+            assertEquals(listSegments().size(), 2);
+            assertEquals(stats.getDroppedEvents().getTotalCount(), 2);
+            assertEquals(stats.getSpooledEventsPending(), 4);
+            assertEquals(readAll(spool), toStrings(events(2, 6)));
+        }
+    }
+
+    @Test
+    public void testDeliveredSegmentsAreDeleted()
+            throws IOException
+    {
+        try (EventSpool spool = createSpool(new DataSize(64, BYTE), new DataSize(1, MEGABYTE))) {
+            spool.append(events(0, 6));
+            assertEquals(listSegments().size(), 3);
+
+            assertEquals(readAll(spool), toStrings(events(0, 6)));
+            // the last segment is kept for appends
+            assertEquals(listSegments().size(), 1);
+        }
+    }
+
+    @Test
+    public void testOversizedEventIsDropped()
+            throws IOException
+    {
+        try (EventSpool spool = createSpool(new DataSize(64, BYTE), new DataSize(1, MEGABYTE))) {
+            spool.append(ImmutableList.of(new byte[100], event(0)));
+
+            assertEquals(stats.getDroppedEvents().getTotalCount(), 1);
+            assertEquals(readAll(spool), toStrings(events(0, 1)));
+        }
+    }
+
+    private EventSpool createSpool(DataSize segmentSize, DataSize maxSize)
+            throws IOException
+    {
+        return new EventSpool(directory, segmentSize, maxSize, stats);
+    }
+
+    private List<Path> listSegments()
+            throws IOException
+    {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.spool")) {
+            stream.forEach(segments::add);
+        }
+        return segments;
+    }
+
+    private static List<String> readAll(EventSpool spool)
+    {
+        List<String> events = new ArrayList<>();
+        while (true) {
+            SpooledEvents spooled = spool.read(Integer.MAX_VALUE, Long.MAX_VALUE).orElse(null);
+            if (spooled == null) {
+                return events;
+            }
+            spooled.getEvents().forEach(event -> events.add(new String(event, UTF_8)));
+            spool.commit(spooled);
+        }
+    }
+
+    private static void assertEvents(SpooledEvents actual, List<byte[]> expected)
+    {
+        assertEquals(actual.getEvents().stream().map(event -> new String(event, UTF_8)).collect(toImmutableList()), toStrings(expected));
+    }
+
+    private static List<String> toStrings(List<byte[]> events)
+    {
+        return events.stream().map(event -> new String(event, UTF_8)).collect(toImmutableList());
+    }
+
+    private static List<byte[]> events(int start, int end)
+    {
+        return IntStream.range(start, end).mapToObj(TestEventSpool::event).collect(toImmutableList());
+    }
+
+    private static byte[] event(int id)
+    {
+        return String.format("{\"event\":%010d}", id).getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.testng.annotations.Test;
+
+import java.util.OptionalDouble;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestEventThrottle
+{
+    @Test
+    public void testUnthrottledTypes()
+    {
+        EventThrottle throttle = new EventThrottle(ImmutableMap.of(
+                DummyEventClass.class, ImmutableSet.of(EventThrottlePolicy.UNLIMITED.withMaxEventsPerSecond(1))));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(throttle.tryAcquire(FixedDummyEventClass.class));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(new EventThrottle().tryAcquire(DummyEventClass.class));
+        }
+        assertEquals(throttle.getSampledOutEvents().getTotalCount(), 0);
+        assertEquals(throttle.getRateLimitedEvents().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testSampling()
+    {
+        EventThrottle throttle = new EventThrottle(ImmutableMap.of(
+                DummyEventClass.class, ImmutableSet.of(EventThrottlePolicy.UNLIMITED.withSampleRate(0.1))));
+        int sent = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (throttle.tryAcquire(DummyEventClass.class)) {
+                sent++;
+            }
+        }
+        assertTrue(sent > 700 && sent < 1300, "sent " + sent + " events");
+        assertEquals(throttle.getSampledOutEvents().getTotalCount(), 10_000 - sent);
+        assertEquals(throttle.getRateLimitedEvents().getTotalCount(), 0);
+        assertEquals(throttle.getSampledOutEventsByType(), ImmutableMap.of(DummyEventClass.class.getName(), 10_000L - sent));
+    }
+
+    @Test
+    public void testRateLimit()
+    {
+        EventThrottle throttle = new EventThrottle(ImmutableMap.of(
+                DummyEventClass.class, ImmutableSet.of(EventThrottlePolicy.UNLIMITED.withMaxEventsPerSecond(0.01))));
+        assertTrue(throttle.tryAcquire(DummyEventClass.class));
+        for (int i = 0; i < 100; i++) {
+            assertFalse(throttle.tryAcquire(DummyEventClass.class));
+        }
+        assertEquals(throttle.getSampledOutEvents().getTotalCount(), 0);
+        assertEquals(throttle.getRateLimitedEvents().getTotalCount(), 100);
+    }
+
+    @Test
+    public void testDropsByType()
+    {
+        EventThrottle throttle = new EventThrottle(ImmutableMap.of(
+                DummyEventClass.class, ImmutableSet.of(EventThrottlePolicy.UNLIMITED.withMaxEventsPerSecond(0.01)),
+                FixedDummyEventClass.class, ImmutableSet.of(EventThrottlePolicy.UNLIMITED.withMaxEventsPerSecond(0.01))));
+        for (int i = 0; i < 10; i++) {
+            throttle.tryAcquire(DummyEventClass.class);
+        }
+        for (int i = 0; i < 5; i++) {
+            throttle.tryAcquire(FixedDummyEventClass.class);
+        }
+        // the first event of each type is sent
+        assertEquals(throttle.getRateLimitedEventsByType(), ImmutableMap.of(
+                DummyEventClass.class.getName(), 9L,
+                FixedDummyEventClass.class.getName(), 4L));
+        assertEquals(throttle.getSampledOutEventsByType(), ImmutableMap.of(
+                DummyEventClass.class.getName(), 0L,
+                FixedDummyEventClass.class.getName(), 0L));
+        assertEquals(new EventThrottle().getRateLimitedEventsByType(), ImmutableMap.of());
+    }
+
+    @Test
+    public void testStrictestPolicyApplies()
+    {
+        EventThrottlePolicy sampled = EventThrottlePolicy.UNLIMITED.withSampleRate(0.5).withMaxEventsPerSecond(100);
+        EventThrottlePolicy limited = EventThrottlePolicy.UNLIMITED.withMaxEventsPerSecond(10);
+        EventThrottlePolicy expected = new EventThrottlePolicy(0.5, OptionalDouble.of(10));
+        assertEquals(sampled.intersect(limited), expected);
+        assertEquals(limited.intersect(sampled), expected);
+        assertEquals(EventThrottlePolicy.UNLIMITED.intersect(EventThrottlePolicy.UNLIMITED), EventThrottlePolicy.UNLIMITED);
+        assertTrue(EventThrottlePolicy.UNLIMITED.isUnlimited());
+        assertFalse(expected.isUnlimited());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidSampleRate()
+    {
+        EventThrottlePolicy.UNLIMITED.withSampleRate(0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRateLimit()
+    {
+        EventThrottlePolicy.UNLIMITED.withMaxEventsPerSecond(-1);
+    }
+}
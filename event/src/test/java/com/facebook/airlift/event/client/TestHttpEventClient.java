@@ -21,6 +21,9 @@ import com.facebook.airlift.http.client.HttpClient;
 import com.facebook.airlift.http.client.HttpClientConfig;
 import com.facebook.airlift.http.client.jetty.JettyHttpClient;
 import com.facebook.airlift.node.NodeInfo;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.CharStreams;
 import io.airlift.units.Duration;
 import org.eclipse.jetty.server.HttpConfiguration;
@@ -41,30 +44,45 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
 
 import static com.facebook.airlift.event.client.EventTypeMetadata.getValidEventTypeMetaDataSet;
 import static com.facebook.airlift.event.client.TestingUtils.getNormalizedJson;
 import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.io.MoreFiles.deleteRecursively;
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 @Test(singleThreaded = true)
 public class TestHttpEventClient
 {
+    private static final Map<Class<?>, EventFormat> SMILE_FORMATS = ImmutableMap.of(FixedDummyEventClass.class, EventFormat.SMILE);
+
     private DummyServlet servlet;
     private HttpEventClient client;
     private Server server;
@@ -129,6 +147,276 @@ public class TestHttpEventClient
         assertEquals(servlet.lastBody, getNormalizedJson("events.json"));
     }
 
+    @Test
+    public void testBatching()
+            throws Exception
+    {
+        client = newEventClient(asList(baseUri), new HttpEventClientConfig()
+                .setBatchingEnabled(true)
+                .setMaxBatchEvents(3)
+                .setMaxLinger(new Duration(1, MINUTES)));
+
+        // a full batch is sent without waiting for the linger time
+        for (FixedDummyEventClass event : TestingUtils.getEvents()) {
+            client.post(event).get();
+        }
+
+        // stats are updated after the response, so wait for them rather than the body
+        assertEventually(() -> client.getBatching().getSentEvents().getTotalCount() == 3);
+        assertEquals(servlet.requests.get(), 1);
+        assertEquals(servlet.lastPath, "/v2/event");
+        assertEquals(servlet.lastContentEncoding, "gzip");
+        assertEquals(servlet.lastBody, getNormalizedJson("events.json"));
+        assertEquals(client.getBatching().getQueuedEvents(), 0);
+    }
+
+    @Test
+    public void testBatchingLinger()
+            throws Exception
+    {
+        client = newEventClient(asList(baseUri), new HttpEventClientConfig()
+                .setBatchingEnabled(true)
+                .setCompressionEnabled(false)
+                .setMaxLinger(new Duration(10, MILLISECONDS)));
+
+        client.post(TestingUtils.getEvents()).get();
+
+        assertEventually(() -> servlet.lastBody != null);
+        assertEquals(servlet.lastContentEncoding, null);
+        assertEquals(servlet.lastBody, getNormalizedJson("events.json"));
+    }
+
+    @Test
+    public void testBatchingRetry()
+            throws Exception
+    {
+        servlet.failuresRemaining.set(2);
+        client = newEventClient(asList(baseUri), new HttpEventClientConfig()
+                .setBatchingEnabled(true)
+                .setMaxLinger(new Duration(10, MILLISECONDS))
+                .setMinRetryBackoff(new Duration(1, MILLISECONDS))
+                .setMaxRetryBackoff(new Duration(10, MILLISECONDS)));
+
+        client.post(TestingUtils.getEvents()).get();
+
+        assertEventually(() -> client.getBatching().getSentBatches().getTotalCount() == 1);
+        assertEquals(servlet.requests.get(), 3);
+        assertEquals(servlet.lastBody, getNormalizedJson("events.json"));
+        assertEquals(client.getBatching().getRetriedBatches().getTotalCount(), 2);
+        assertEquals(client.getBatching().getDroppedEvents().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testBatchingQueueFull()
+            throws Exception
+    {
+        client = newEventClient(Collections.<URI>emptyList(), new HttpEventClientConfig()
+                .setBatchingEnabled(true)
+                .setMaxQueuedEvents(2)
+                .setMaxLinger(new Duration(1, MINUTES)));
+
+        client.post(TestingUtils.getEvents()).get();
+
+        assertEquals(client.getBatching().getQueuedEvents(), 2);
+        assertEquals(client.getBatching().getDroppedEvents().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testBatchingCloseCountsUnsentEventsAsDropped()
+            throws Exception
+    {
+        try (TestingEventCollector collector = new TestingEventCollector()) {
+            collector.setAvailable(false);
+            client = newEventClient(asList(collector.getUri()), new HttpEventClientConfig()
+                    .setBatchingEnabled(true)
+                    .setMaxBatchEvents(1)
+                    .setMaxInFlightBatches(1)
+                    .setMaxLinger(new Duration(1, MINUTES))
+                    .setMaxRetries(1000)
+                    .setMinRetryBackoff(new Duration(10, MILLISECONDS))
+                    .setMaxRetryBackoff(new Duration(10, MILLISECONDS)));
+
+            // the first batch is retried while the other events wait for it
+            client.post(TestingUtils.getEvents()).get();
+            assertEventually(() -> client.getBatching().getRetriedBatches().getTotalCount() > 0);
+            assertEquals(client.getBatching().getQueuedEvents(), 2);
+
+            HttpEventClient closed = client;
+            client = null;
+            closed.close();
+            assertEquals(closed.getBatching().getQueuedEvents(), 0);
+            // the batch in flight is dropped when its next attempt fails
+            assertEventually(() -> closed.getBatching().getDroppedEvents().getTotalCount() == 3);
+        }
+    }
+
+    @Test
+    public void testSpoolWhileCollectorUnavailable()
+            throws Exception
+    {
+        Path spoolDirectory = Files.createTempDirectory("event-spool");
+        try (TestingEventCollector collector = new TestingEventCollector()) {
+            collector.setAvailable(false);
+            client = newEventClient(asList(collector.getUri()), newSpoolingConfig(spoolDirectory));
+
+            client.post(TestingUtils.getEvents()).get();
+            assertEventually(() -> client.getBatching().getSpooledEventsPending() == 3);
+            assertEquals(collector.getEvents().size(), 0);
+
+            collector.setAvailable(true);
+            assertEventually(() -> client.getBatching().getSpooledEventsPending() == 0);
+            assertEquals(getUuids(collector), getExpectedUuids());
+            assertEquals(client.getBatching().getReplayedEvents().getTotalCount(), 3);
+            assertEquals(client.getBatching().getDroppedEvents().getTotalCount(), 0);
+        }
+        finally {
+            deleteRecursively(spoolDirectory, ALLOW_INSECURE);
+        }
+    }
+
+    @Test
+    public void testSpoolReplayedAfterRestart()
+            throws Exception
+    {
+        Path spoolDirectory = Files.createTempDirectory("event-spool");
+        try (TestingEventCollector collector = new TestingEventCollector()) {
+            collector.setAvailable(false);
+            client = newEventClient(asList(collector.getUri()), newSpoolingConfig(spoolDirectory));
+
+            client.post(TestingUtils.getEvents()).get();
+            assertEventually(() -> client.getBatching().getSpooledEventsPending() == 3);
+            client.close();
+
+            collector.setAvailable(true);
+            client = newEventClient(asList(collector.getUri()), newSpoolingConfig(spoolDirectory));
+            assertEventually(() -> collector.getEvents().size() == 3);
+            assertEquals(getUuids(collector), getExpectedUuids());
+        }
+        finally {
+            deleteRecursively(spoolDirectory, ALLOW_INSECURE);
+        }
+    }
+
+    @Test
+    public void testSmile()
+            throws Exception
+    {
+        try (TestingEventCollector collector = new TestingEventCollector()) {
+            client = newEventClient(asList(collector.getUri()), new HttpEventClientConfig(), SMILE_FORMATS);
+
+            client.post(TestingUtils.getEvents()).get();
+
+            assertEquals(collector.getReceivedFormats(), ImmutableList.of(EventFormat.SMILE));
+            assertEquals(collector.getEvents(), getExpectedEvents());
+        }
+    }
+
+    @Test
+    public void testSmileFallsBackToJson()
+            throws Exception
+    {
+        try (TestingEventCollector collector = new TestingEventCollector()) {
+            collector.setAcceptedFormats(EventFormat.JSON);
+            client = newEventClient(asList(collector.getUri()), new HttpEventClientConfig(), SMILE_FORMATS);
+
+            client.post(TestingUtils.getEvents()).get();
+            client.post(TestingUtils.getEvents()).get();
+
+            assertEquals(collector.getReceivedFormats(), ImmutableList.of(EventFormat.JSON, EventFormat.JSON));
+            assertEquals(collector.getEvents().subList(0, 3), getExpectedEvents());
+        }
+    }
+
+    @Test
+    public void testSmileBatching()
+            throws Exception
+    {
+        try (TestingEventCollector collector = new TestingEventCollector()) {
+            client = newEventClient(asList(collector.getUri()), new HttpEventClientConfig()
+                    .setBatchingEnabled(true)
+                    .setMaxLinger(new Duration(10, MILLISECONDS)), SMILE_FORMATS);
+
+            client.post(TestingUtils.getEvents()).get();
+
+            assertEventually(() -> collector.getEvents().size() == 3);
+            assertEquals(collector.getReceivedFormats(), ImmutableList.of(EventFormat.SMILE));
+            assertEquals(collector.getEvents(), getExpectedEvents());
+        }
+    }
+
+    @Test
+    public void testSmileBatchingFallsBackToJson()
+            throws Exception
+    {
+        try (TestingEventCollector collector = new TestingEventCollector()) {
+            collector.setAcceptedFormats(EventFormat.JSON);
+            client = newEventClient(asList(collector.getUri()), new HttpEventClientConfig()
+                    .setBatchingEnabled(true)
+                    .setMaxLinger(new Duration(10, MILLISECONDS)), SMILE_FORMATS);
+
+            client.post(TestingUtils.getEvents()).get();
+
+            assertEventually(() -> collector.getEvents().size() == 3);
+            assertEquals(collector.getReceivedFormats(), ImmutableList.of(EventFormat.JSON));
+            assertEquals(collector.getEvents(), getExpectedEvents());
+            assertEquals(client.getBatching().getDroppedEvents().getTotalCount(), 0);
+        }
+    }
+
+    @Test
+    public void testThrottling()
+            throws Exception
+    {
+        EventThrottle throttle = new EventThrottle(ImmutableMap.of(
+                FixedDummyEventClass.class, ImmutableSet.of(EventThrottlePolicy.UNLIMITED.withMaxEventsPerSecond(0.01))));
+        try (TestingEventCollector collector = new TestingEventCollector()) {
+            client = newEventClient(asList(collector.getUri()), new HttpEventClientConfig(), ImmutableMap.of(), throttle);
+
+            client.post(TestingUtils.getEvents()).get();
+
+            assertEquals(collector.getEvents(), getExpectedEvents().subList(0, 1));
+            assertEquals(client.getThrottling().getRateLimitedEvents().getTotalCount(), 2);
+        }
+    }
+
+    @Test
+    public void testNothingSentWhenAllEventsDropped()
+            throws Exception
+    {
+        EventThrottle throttle = new EventThrottle(ImmutableMap.of(
+                FixedDummyEventClass.class, ImmutableSet.of(EventThrottlePolicy.UNLIMITED.withMaxEventsPerSecond(0.01))));
+        try (TestingEventCollector collector = new TestingEventCollector()) {
+            client = newEventClient(asList(collector.getUri()), new HttpEventClientConfig(), ImmutableMap.of(), throttle);
+
+            client.post(TestingUtils.getEvents()).get();
+            client.post(TestingUtils.getEvents()).get();
+
+            // the second post drops all of its events, so it does not send a request
+            assertEquals(collector.getReceivedFormats(), ImmutableList.of(EventFormat.JSON));
+            assertEquals(collector.getEvents(), getExpectedEvents().subList(0, 1));
+            assertEquals(client.getThrottling().getRateLimitedEventsByType(), ImmutableMap.of(FixedDummyEventClass.class.getName(), 5L));
+        }
+    }
+
+    @Test
+    public void testThrottlingWithBatching()
+            throws Exception
+    {
+        EventThrottle throttle = new EventThrottle(ImmutableMap.of(
+                FixedDummyEventClass.class, ImmutableSet.of(EventThrottlePolicy.UNLIMITED.withMaxEventsPerSecond(0.01))));
+        try (TestingEventCollector collector = new TestingEventCollector()) {
+            client = newEventClient(asList(collector.getUri()), new HttpEventClientConfig()
+                    .setBatchingEnabled(true)
+                    .setMaxLinger(new Duration(10, MILLISECONDS)), ImmutableMap.of(), throttle);
+
+            client.post(TestingUtils.getEvents()).get();
+
+            assertEventually(() -> client.getBatching().getSentEvents().getTotalCount() == 1);
+            assertEquals(collector.getEvents(), getExpectedEvents().subList(0, 1));
+            assertEquals(client.getThrottling().getRateLimitedEvents().getTotalCount(), 2);
+        }
+    }
+
     @BeforeMethod
     public void setup()
             throws Exception
@@ -148,21 +436,85 @@ public class TestHttpEventClient
             server.stop();
         }
 
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+
         httpClient.close();
     }
 
     private HttpEventClient newEventClient(List<URI> uris)
+    {
+        return newEventClient(uris, new HttpEventClientConfig());
+    }
+
+    private HttpEventClient newEventClient(List<URI> uris, HttpEventClientConfig config)
+    {
+        return newEventClient(uris, config, ImmutableMap.of());
+    }
+
+    private HttpEventClient newEventClient(List<URI> uris, HttpEventClientConfig config, Map<Class<?>, EventFormat> formats)
+    {
+        return newEventClient(uris, config, formats, new EventThrottle());
+    }
+
+    private HttpEventClient newEventClient(List<URI> uris, HttpEventClientConfig config, Map<Class<?>, EventFormat> formats, EventThrottle throttle)
     {
         HttpServiceSelector selector = new StaticHttpServiceSelector("collector", "general", uris);
 
         Set<EventTypeMetadata<?>> eventTypes = getValidEventTypeMetaDataSet(FixedDummyEventClass.class);
-        JsonEventWriter eventWriter = new JsonEventWriter(eventTypes);
+        JsonEventWriter eventWriter = new JsonEventWriter(eventTypes, formats);
 
         return new HttpEventClient(
                 selector,
                 eventWriter,
                 new NodeInfo("test"),
-                httpClient);
+                httpClient,
+                config,
+                throttle);
+    }
+
+    private static HttpEventClientConfig newSpoolingConfig(Path spoolDirectory)
+    {
+        return new HttpEventClientConfig()
+                .setBatchingEnabled(true)
+                .setMaxLinger(new Duration(10, MILLISECONDS))
+                .setMaxRetries(0)
+                .setSpoolDirectory(spoolDirectory.toString());
+    }
+
+    private static List<String> getUuids(TestingEventCollector collector)
+    {
+        return collector.getEvents().stream()
+                .map(event -> (String) event.get("uuid"))
+                .collect(toImmutableList());
+    }
+
+    private static List<Map<String, Object>> getExpectedEvents()
+            throws IOException
+    {
+        // what an in-memory client captured, in the form a collector receives it
+        InMemoryEventClient inMemoryClient = new InMemoryEventClient();
+        inMemoryClient.post(TestingUtils.getEvents());
+        return new EventDecoder().decode(inMemoryClient.getEvents());
+    }
+
+    private static List<String> getExpectedUuids()
+    {
+        return TestingUtils.getEvents().stream()
+                .map(event -> event.getUuid().toString())
+                .collect(toImmutableList());
+    }
+
+    private static void assertEventually(BooleanSupplier condition)
+            throws InterruptedException
+    {
+        long deadline = System.nanoTime() + SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met");
+            Thread.sleep(10);
+        }
     }
 
     private Server createServer(final DummyServlet servlet)
@@ -198,7 +550,10 @@ public class TestHttpEventClient
     private static class DummyServlet
             extends HttpServlet
     {
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger failuresRemaining = new AtomicInteger();
         private volatile String lastPath;
+        private volatile String lastContentEncoding;
         private volatile String lastBody;
 
         private DummyServlet()
@@ -209,8 +564,19 @@ public class TestHttpEventClient
         protected void doPost(HttpServletRequest request, HttpServletResponse response)
                 throws ServletException, IOException
         {
+            requests.incrementAndGet();
+            if (failuresRemaining.getAndDecrement() > 0) {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+
+            InputStream input = request.getInputStream();
+            if ("gzip".equals(request.getHeader("Content-Encoding"))) {
+                input = new GZIPInputStream(input);
+            }
             lastPath = request.getPathInfo();
-            lastBody = CharStreams.toString(new InputStreamReader(request.getInputStream(), UTF_8));
+            lastContentEncoding = request.getHeader("Content-Encoding");
+            lastBody = CharStreams.toString(new InputStreamReader(input, UTF_8));
         }
     }
 }
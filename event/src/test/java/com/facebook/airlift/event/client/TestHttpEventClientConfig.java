@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.facebook.airlift.event.client.HttpEventClientConfig.QueueFullPolicy;
+import com.google.common.collect.ImmutableMap;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static com.facebook.airlift.configuration.testing.ConfigAssertions.assertFullMapping;
+import static com.facebook.airlift.configuration.testing.ConfigAssertions.assertRecordedDefaults;
+import static com.facebook.airlift.configuration.testing.ConfigAssertions.recordDefaults;
+import static io.airlift.units.DataSize.Unit.GIGABYTE;
+import static io.airlift.units.DataSize.Unit.KILOBYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class TestHttpEventClientConfig
+{
+    @Test
+    public void testDefaults()
+    {
+        assertRecordedDefaults(recordDefaults(HttpEventClientConfig.class)
+                .setBatchingEnabled(false)
+                .setMaxQueuedEvents(10_000)
+                .setQueueFullPolicy(QueueFullPolicy.DROP_NEWEST)
+                .setMaxBatchEvents(1000)
+                .setMaxBatchSize(new DataSize(4, MEGABYTE))
+                .setMaxLinger(new Duration(500, MILLISECONDS))
+                .setMaxInFlightBatches(4)
+                .setCompressionEnabled(true)
+                .setMaxRetries(3)
+                .setMinRetryBackoff(new Duration(100, MILLISECONDS))
+                .setMaxRetryBackoff(new Duration(10, SECONDS))
+                .setSpoolDirectory(null)
+                .setSpoolMaxSize(new DataSize(1, GIGABYTE))
+                .setSpoolSegmentSize(new DataSize(16, MEGABYTE)));
+    }
+
+    @Test
+    public void testExplicitPropertyMappings()
+    {
+        Map<String, String> properties = new ImmutableMap.Builder<String, String>()
+                .put("event-client.batching-enabled", "true")
+                .put("event-client.max-queued-events", "500")
+                .put("event-client.queue-full-policy", "DROP_OLDEST")
+                .put("event-client.max-batch-events", "50")
+                .put("event-client.max-batch-size", "256kB")
+                .put("event-client.max-linger", "2s")
+                .put("event-client.max-in-flight-batches", "2")
+                .put("event-client.compression-enabled", "false")
+                .put("event-client.max-retries", "7")
+                .put("event-client.min-retry-backoff", "1s")
+                .put("event-client.max-retry-backoff", "1m")
+                .put("event-client.spool-directory", "/tmp/spool")
+                .put("event-client.spool-max-size", "100MB")
+                .put("event-client.spool-segment-size", "1MB")
+                .build();
+
+        HttpEventClientConfig expected = new HttpEventClientConfig()
+                .setBatchingEnabled(true)
+                .setMaxQueuedEvents(500)
+                .setQueueFullPolicy(QueueFullPolicy.DROP_OLDEST)
+                .setMaxBatchEvents(50)
+                .setMaxBatchSize(new DataSize(256, KILOBYTE))
+                .setMaxLinger(new Duration(2, SECONDS))
+                .setMaxInFlightBatches(2)
+                .setCompressionEnabled(false)
+                .setMaxRetries(7)
+                .setMinRetryBackoff(new Duration(1, SECONDS))
+                .setMaxRetryBackoff(new Duration(1, MINUTES))
+                .setSpoolDirectory("/tmp/spool")
+                .setSpoolMaxSize(new DataSize(100, MEGABYTE))
+                .setSpoolSegmentSize(new DataSize(1, MEGABYTE));
+
+        assertFullMapping(properties, expected);
+    }
+}
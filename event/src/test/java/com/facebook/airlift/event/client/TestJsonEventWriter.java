@@ -16,13 +16,18 @@
 package com.facebook.airlift.event.client;
 
 import com.facebook.airlift.event.client.NestedDummyEventClass.NestedPart;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import org.joda.time.DateTime;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -31,6 +36,9 @@ import static com.facebook.airlift.event.client.EventTypeMetadata.getValidEventT
 import static com.google.common.io.ByteStreams.nullOutputStream;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 public class TestJsonEventWriter
 {
@@ -129,6 +137,98 @@ public class TestJsonEventWriter
         eventWriter.writeEvents(createEventGenerator(ImmutableList.of(event)), nullOutputStream());
     }
 
+    @Test
+    public void testPrimitiveFields()
+            throws Exception
+    {
+        JsonEventWriter writer = new JsonEventWriter(getValidEventTypeMetaDataSet(PrimitiveEvent.class));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeEvents(createEventGenerator(ImmutableList.of(new PrimitiveEvent())), out);
+
+        JsonNode data = new ObjectMapper().readTree(out.toByteArray()).get(0).get("data");
+        assertEquals(data.get("booleanValue").booleanValue(), true);
+        assertEquals(data.get("byteValue").intValue(), 1);
+        assertEquals(data.get("shortValue").intValue(), 2);
+        assertEquals(data.get("intValue").intValue(), 3);
+        assertEquals(data.get("longValue").longValue(), 4L);
+        assertEquals(data.get("floatValue").asText(), "5.5");
+        assertEquals(data.get("doubleValue").doubleValue(), 6.6);
+    }
+
+    @Test
+    public void testFailingGetter()
+            throws Exception
+    {
+        JsonEventWriter writer = new JsonEventWriter(getValidEventTypeMetaDataSet(FailingEvent.class));
+        try {
+            writer.writeEvents(createEventGenerator(ImmutableList.of(new FailingEvent())), nullOutputStream());
+            fail("expected InvalidEventException");
+        }
+        catch (InvalidEventException e) {
+            assertTrue(e.getMessage().startsWith("Unable to get value of event field value"), e.getMessage());
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals(e.getCause().getMessage(), "getter failed");
+        }
+    }
+
+    @Test
+    public void testSmileEvents()
+            throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        eventWriter.writeEvents(EventFormat.SMILE, createEventGenerator(TestingUtils.getEvents()), out);
+
+        EventDecoder decoder = new EventDecoder();
+        assertEquals(decoder.decode(EventFormat.SMILE, out.toByteArray()), decoder.decode(TestingUtils.getEvents()));
+    }
+
+    @Test
+    public void testEncodedEvents()
+            throws Exception
+    {
+        EventDecoder decoder = new EventDecoder();
+        for (EventFormat format : EventFormat.values()) {
+            List<byte[]> encoded = new ArrayList<>();
+            for (FixedDummyEventClass event : TestingUtils.getEvents()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                eventWriter.writeEvent(format, event, out);
+                encoded.add(out.toByteArray());
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            eventWriter.writeEncodedEvents(format, encoded, out);
+            assertEquals(decoder.decode(format, out.toByteArray()), decoder.decode(TestingUtils.getEvents()), format.toString());
+        }
+    }
+
+    @Test
+    public void testTranscodeEvent()
+            throws Exception
+    {
+        FixedDummyEventClass event = TestingUtils.getEvents().get(0);
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        eventWriter.writeEvent(EventFormat.JSON, event, json);
+        ByteArrayOutputStream smile = new ByteArrayOutputStream();
+        eventWriter.writeEvent(EventFormat.SMILE, event, smile);
+
+        assertEquals(eventWriter.transcodeEvent(smile.toByteArray(), EventFormat.SMILE, EventFormat.JSON), json.toByteArray());
+        assertEquals(eventWriter.transcodeEvent(json.toByteArray(), EventFormat.JSON, EventFormat.SMILE), smile.toByteArray());
+    }
+
+    @Test
+    public void testFormats()
+    {
+        JsonEventWriter writer = new JsonEventWriter(
+                getValidEventTypeMetaDataSet(FixedDummyEventClass.class, NestedDummyEventClass.class),
+                ImmutableMap.<Class<?>, EventFormat>of(NestedDummyEventClass.class, EventFormat.SMILE));
+
+        assertTrue(writer.hasNonJsonFormats());
+        assertEquals(writer.getFormat(FixedDummyEventClass.class), EventFormat.JSON);
+        assertEquals(writer.getFormat(NestedDummyEventClass.class), EventFormat.SMILE);
+        assertFalse(eventWriter.hasNonJsonFormats());
+    }
+
     private void assertEventJson(EventClient.EventGenerator<?> events, String resource)
             throws Exception
     {
@@ -148,4 +248,60 @@ public class TestJsonEventWriter
             }
         };
     }
+
+    @EventType("Primitive")
+    public static class PrimitiveEvent
+    {
+        @EventField
+        public boolean isBooleanValue()
+        {
+            return true;
+        }
+
+        @EventField
+        public byte getByteValue()
+        {
+            return 1;
+        }
+
+        @EventField
+        public short getShortValue()
+        {
+            return 2;
+        }
+
+        @EventField
+        public int getIntValue()
+        {
+            return 3;
+        }
+
+        @EventField
+        public long getLongValue()
+        {
+            return 4;
+        }
+
+        @EventField
+        public float getFloatValue()
+        {
+            return 5.5f;
+        }
+
+        @EventField
+        public double getDoubleValue()
+        {
+            return 6.6;
+        }
+    }
+
+    @EventType("Failing")
+    public static class FailingEvent
+    {
+        @EventField
+        public long getValue()
+        {
+            throw new IllegalStateException("getter failed");
+        }
+    }
 }
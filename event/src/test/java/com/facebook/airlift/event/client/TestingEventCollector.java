@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.event.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stand-in for an event collector. It accepts events posted to /v2/event in
+ * the accepted formats and records them, or rejects every request with 503
+ * while it is unavailable.
+ */
+final class TestingEventCollector
+        implements Closeable
+{
+    private final EventDecoder decoder = new EventDecoder();
+    private final Server server;
+    private final URI uri;
+    private final List<Map<String, Object>> events = new CopyOnWriteArrayList<>();
+    private final List<EventFormat> receivedFormats = new CopyOnWriteArrayList<>();
+    private volatile Set<EventFormat> acceptedFormats = EnumSet.allOf(EventFormat.class);
+    private volatile boolean available = true;
+
+    public TestingEventCollector()
+            throws Exception
+    {
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        server.addConnector(connector);
+
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.addServlet(new ServletHolder(new CollectorServlet()), "/v2/event");
+        server.setHandler(context);
+        server.start();
+
+        uri = URI.create("http://127.0.0.1:" + connector.getLocalPort());
+    }
+
+    public URI getUri()
+    {
+        return uri;
+    }
+
+    public void setAvailable(boolean available)
+    {
+        this.available = available;
+    }
+
+    public void setAcceptedFormats(EventFormat... formats)
+    {
+        this.acceptedFormats = ImmutableSet.copyOf(formats);
+    }
+
+    public List<Map<String, Object>> getEvents()
+    {
+        return ImmutableList.copyOf(events);
+    }
+
+    /**
+     * Returns the format of each accepted request.
+     */
+    public List<EventFormat> getReceivedFormats()
+    {
+        return ImmutableList.copyOf(receivedFormats);
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        try {
+            server.stop();
+        }
+        catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private class CollectorServlet
+            extends HttpServlet
+    {
+        @Override
+        protected void doPost(HttpServletRequest request, HttpServletResponse response)
+                throws IOException
+        {
+            if (!available) {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+
+            EventFormat format = EventFormat.fromContentType(request.getContentType());
+            if (!acceptedFormats.contains(format)) {
+                // read the body, so the client is not still writing it when the connection closes
+                ByteStreams.exhaust(request.getInputStream());
+                response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+                return;
+            }
+
+            InputStream input = request.getInputStream();
+            if ("gzip".equals(request.getHeader("Content-Encoding"))) {
+                input = new GZIPInputStream(input);
+            }
+            events.addAll(decoder.decode(format, ByteStreams.toByteArray(input)));
+            receivedFormats.add(format);
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        }
+    }
+}
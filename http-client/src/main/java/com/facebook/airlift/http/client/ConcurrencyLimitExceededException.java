@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.lang.String.format;
+
+/**
+ * Thrown when a request is rejected without being sent because the
+ * adaptive concurrency limit for its destination has been reached.
+ */
+public class ConcurrencyLimitExceededException
+        extends RejectedExecutionException
+{
+    private final String destination;
+    private final int limit;
+
+    public ConcurrencyLimitExceededException(String destination, int limit)
+    {
+        super(format("Concurrency limit of %s requests exceeded for %s", limit, destination));
+        this.destination = destination;
+        this.limit = limit;
+    }
+
+    public String getDestination()
+    {
+        return destination;
+    }
+
+    public int getLimit()
+    {
+        return limit;
+    }
+}
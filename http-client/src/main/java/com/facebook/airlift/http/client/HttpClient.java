@@ -19,6 +19,9 @@ import com.google.common.annotations.Beta;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import java.io.Closeable;
+import java.net.URI;
+
+import static com.google.common.util.concurrent.Futures.immediateFuture;
 
 @Beta
 public interface HttpClient
@@ -33,6 +36,17 @@ public interface HttpClient
 
     long getMaxContentLength();
 
+    /**
+     * Opens connections to the destination ahead of the first requests. Clients
+     * that do not pool connections complete immediately.
+     *
+     * @return the number of connections open to the destination
+     */
+    default ListenableFuture<Integer> prewarm(URI destination, int connections)
+    {
+        return immediateFuture(0);
+    }
+
     @Override
     void close();
 
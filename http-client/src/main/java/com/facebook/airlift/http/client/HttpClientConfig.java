@@ -89,6 +89,15 @@ public class HttpClientConfig
     private int timeoutThreads = 1;
     private int timeoutConcurrency = 1;
 
+    private boolean adaptiveConcurrencyLimitEnabled;
+    private int adaptiveConcurrencyLimitInitialLimit = 20;
+    private int adaptiveConcurrencyLimitMinLimit = 1;
+    private int adaptiveConcurrencyLimitMaxLimit = 1000;
+
+    private boolean perDestinationStatsEnabled;
+    private boolean perTagStatsEnabled;
+    private int statsMaxKeys = 100;
+
     private boolean http2Enabled;
     private DataSize http2InitialSessionReceiveWindowSize = new DataSize(16, MEGABYTE);
     private DataSize http2InitialStreamReceiveWindowSize = new DataSize(16, MEGABYTE);
@@ -564,6 +573,98 @@ public class HttpClientConfig
         return this;
     }
 
+    public boolean isAdaptiveConcurrencyLimitEnabled()
+    {
+        return adaptiveConcurrencyLimitEnabled;
+    }
+
+    @Config("http-client.adaptive-concurrency-limit.enabled")
+    @ConfigDescription("Limit concurrent requests per destination based on observed latency and reject requests over the limit")
+    public HttpClientConfig setAdaptiveConcurrencyLimitEnabled(boolean adaptiveConcurrencyLimitEnabled)
+    {
+        this.adaptiveConcurrencyLimitEnabled = adaptiveConcurrencyLimitEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getAdaptiveConcurrencyLimitInitialLimit()
+    {
+        return adaptiveConcurrencyLimitInitialLimit;
+    }
+
+    @Config("http-client.adaptive-concurrency-limit.initial-limit")
+    public HttpClientConfig setAdaptiveConcurrencyLimitInitialLimit(int adaptiveConcurrencyLimitInitialLimit)
+    {
+        this.adaptiveConcurrencyLimitInitialLimit = adaptiveConcurrencyLimitInitialLimit;
+        return this;
+    }
+
+    @Min(1)
+    public int getAdaptiveConcurrencyLimitMinLimit()
+    {
+        return adaptiveConcurrencyLimitMinLimit;
+    }
+
+    @Config("http-client.adaptive-concurrency-limit.min-limit")
+    public HttpClientConfig setAdaptiveConcurrencyLimitMinLimit(int adaptiveConcurrencyLimitMinLimit)
+    {
+        this.adaptiveConcurrencyLimitMinLimit = adaptiveConcurrencyLimitMinLimit;
+        return this;
+    }
+
+    @Min(1)
+    public int getAdaptiveConcurrencyLimitMaxLimit()
+    {
+        return adaptiveConcurrencyLimitMaxLimit;
+    }
+
+    @Config("http-client.adaptive-concurrency-limit.max-limit")
+    public HttpClientConfig setAdaptiveConcurrencyLimitMaxLimit(int adaptiveConcurrencyLimitMaxLimit)
+    {
+        this.adaptiveConcurrencyLimitMaxLimit = adaptiveConcurrencyLimitMaxLimit;
+        return this;
+    }
+
+    public boolean isPerDestinationStatsEnabled()
+    {
+        return perDestinationStatsEnabled;
+    }
+
+    @Config("http-client.stats.per-destination-enabled")
+    @ConfigDescription("Record request time, response time and status code statistics for each destination")
+    public HttpClientConfig setPerDestinationStatsEnabled(boolean perDestinationStatsEnabled)
+    {
+        this.perDestinationStatsEnabled = perDestinationStatsEnabled;
+        return this;
+    }
+
+    public boolean isPerTagStatsEnabled()
+    {
+        return perTagStatsEnabled;
+    }
+
+    @Config("http-client.stats.per-tag-enabled")
+    @ConfigDescription("Record request time, response time and status code statistics for each request stats tag")
+    public HttpClientConfig setPerTagStatsEnabled(boolean perTagStatsEnabled)
+    {
+        this.perTagStatsEnabled = perTagStatsEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getStatsMaxKeys()
+    {
+        return statsMaxKeys;
+    }
+
+    @Config("http-client.stats.max-keys")
+    @ConfigDescription("Maximum number of destinations or tags tracked separately; others are recorded together")
+    public HttpClientConfig setStatsMaxKeys(int statsMaxKeys)
+    {
+        this.statsMaxKeys = statsMaxKeys;
+        return this;
+    }
+
     public String getLogPath()
     {
         return logPath;
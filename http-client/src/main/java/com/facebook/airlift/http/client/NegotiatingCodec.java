@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client;
+
+import com.facebook.airlift.json.JsonCodec;
+import com.facebook.airlift.json.smile.SmileCodec;
+import com.google.common.annotations.Beta;
+import com.google.common.net.MediaType;
+
+import static com.facebook.airlift.http.client.JsonBodyGenerator.jsonBodyGenerator;
+import static com.facebook.airlift.http.client.JsonResponseHandler.createJsonResponseHandler;
+import static com.facebook.airlift.http.client.SmileBodyGenerator.smileBodyGenerator;
+import static com.facebook.airlift.http.client.SmileResponseHandler.MEDIA_TYPE_SMILE;
+import static com.facebook.airlift.http.client.SmileResponseHandler.createSmileResponseHandler;
+import static com.google.common.net.HttpHeaders.ACCEPT;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pairs the JSON and Smile codecs for a type, so that a client can switch
+ * between JSON and Smile with a single flag. Requests ask for the preferred
+ * encoding, with the other one as a fallback, and responses are decoded
+ * according to their {@code Content-Type}, so servers that only produce JSON
+ * keep working when Smile is preferred.
+ */
+@Beta
+public final class NegotiatingCodec<T>
+{
+    public static final String APPLICATION_JSON = "application/json";
+
+    private static final String ACCEPT_JSON = APPLICATION_JSON + ", " + MEDIA_TYPE_SMILE + "; q=0.5";
+    private static final String ACCEPT_SMILE = MEDIA_TYPE_SMILE + ", " + APPLICATION_JSON + "; q=0.5";
+
+    private final JsonCodec<T> jsonCodec;
+    private final SmileCodec<T> smileCodec;
+    private final boolean preferSmile;
+    private final ResponseHandler<T, RuntimeException> responseHandler;
+
+    public static <T> NegotiatingCodec<T> negotiatingCodec(JsonCodec<T> jsonCodec, SmileCodec<T> smileCodec, boolean preferSmile)
+    {
+        return new NegotiatingCodec<>(jsonCodec, smileCodec, preferSmile);
+    }
+
+    private NegotiatingCodec(JsonCodec<T> jsonCodec, SmileCodec<T> smileCodec, boolean preferSmile)
+    {
+        this.jsonCodec = requireNonNull(jsonCodec, "jsonCodec is null");
+        this.smileCodec = requireNonNull(smileCodec, "smileCodec is null");
+        this.preferSmile = preferSmile;
+        this.responseHandler = new NegotiatedResponseHandler<>(createJsonResponseHandler(jsonCodec), createSmileResponseHandler(smileCodec));
+    }
+
+    public boolean isPreferSmile()
+    {
+        return preferSmile;
+    }
+
+    /**
+     * Sets the {@code Accept} header of the request to ask for the preferred encoding.
+     */
+    public Request.Builder accept(Request.Builder request)
+    {
+        return request.setHeader(ACCEPT, preferSmile ? ACCEPT_SMILE : ACCEPT_JSON);
+    }
+
+    /**
+     * Sets the body of the request to the instance in the preferred encoding, along with the
+     * matching {@code Content-Type} header.
+     */
+    public Request.Builder setBody(Request.Builder request, T instance)
+    {
+        if (preferSmile) {
+            return request
+                    .setHeader(CONTENT_TYPE, MEDIA_TYPE_SMILE.toString())
+                    .setBodyGenerator(smileBodyGenerator(smileCodec, instance));
+        }
+        return request
+                .setHeader(CONTENT_TYPE, APPLICATION_JSON)
+                .setBodyGenerator(jsonBodyGenerator(jsonCodec, instance));
+    }
+
+    /**
+     * Returns a handler that decodes JSON or Smile responses, depending on the response {@code Content-Type}.
+     */
+    public ResponseHandler<T, RuntimeException> getResponseHandler()
+    {
+        return responseHandler;
+    }
+
+    private static class NegotiatedResponseHandler<T>
+            implements ResponseHandler<T, RuntimeException>
+    {
+        private final ResponseHandler<T, RuntimeException> jsonResponseHandler;
+        private final ResponseHandler<T, RuntimeException> smileResponseHandler;
+
+        public NegotiatedResponseHandler(ResponseHandler<T, RuntimeException> jsonResponseHandler, ResponseHandler<T, RuntimeException> smileResponseHandler)
+        {
+            this.jsonResponseHandler = jsonResponseHandler;
+            this.smileResponseHandler = smileResponseHandler;
+        }
+
+        @Override
+        public T handleException(Request request, Exception exception)
+        {
+            return jsonResponseHandler.handleException(request, exception);
+        }
+
+        @Override
+        public T handle(Request request, Response response)
+        {
+            String contentType = response.getHeader(CONTENT_TYPE);
+            if (contentType != null && MediaType.parse(contentType).is(MEDIA_TYPE_SMILE)) {
+                return smileResponseHandler.handle(request, response);
+            }
+            return jsonResponseHandler.handle(request, response);
+        }
+    }
+}
@@ -21,9 +21,12 @@ import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimap;
 
+import javax.annotation.Nullable;
+
 import java.net.URI;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -32,12 +35,17 @@ import static java.util.Objects.requireNonNull;
 @Beta
 public final class Request
 {
+    private final RequestTemplate template;
     private final URI uri;
     private final String method;
     private final ListMultimap<String, String> headers;
     private final BodyGenerator bodyGenerator;
     private final boolean followRedirects;
     private final boolean preserveAuthorizationOnRedirect;
+    private final Optional<String> statsTag;
+
+    // merged template and request headers, computed lazily (racy single-check is safe for an immutable value)
+    private ListMultimap<String, String> allHeaders;
 
     /**
      * @deprecated Use {@link #builder()} to construct this.
@@ -45,30 +53,30 @@ public final class Request
     @Deprecated
     public Request(URI uri, String method, ListMultimap<String, String> headers, BodyGenerator bodyGenerator)
     {
-        this(uri, method, headers, bodyGenerator, true, false);
+        this(null, validateRequestUri(uri), method, headers, bodyGenerator, true, false, Optional.empty());
     }
 
     private Request(
+            RequestTemplate template,
             URI uri,
             String method,
             ListMultimap<String, String> headers,
             BodyGenerator bodyGenerator,
             boolean followRedirects,
-            boolean preserveAuthorizationOnRedirect)
+            boolean preserveAuthorizationOnRedirect,
+            Optional<String> statsTag)
     {
-        requireNonNull(uri, "uri is null");
-        checkArgument(uri.getHost() != null, "uri does not have a host: %s", uri);
-        checkArgument(uri.getScheme() != null, "uri does not have a scheme: %s", uri);
-        String scheme = uri.getScheme().toLowerCase();
-        checkArgument("http".equals(scheme) || "https".equals(scheme), "uri scheme must be http or https: %s", uri);
         requireNonNull(method, "method is null");
+        requireNonNull(statsTag, "statsTag is null");
 
-        this.uri = validateUri(uri);
+        this.template = template;
+        this.uri = uri;
         this.method = method;
         this.headers = ImmutableListMultimap.copyOf(headers);
         this.bodyGenerator = bodyGenerator;
         this.followRedirects = followRedirects;
         this.preserveAuthorizationOnRedirect = preserveAuthorizationOnRedirect;
+        this.statsTag = statsTag;
     }
 
     public static Request.Builder builder()
@@ -88,6 +96,12 @@ public final class Request
 
     public String getHeader(String name)
     {
+        if (template != null) {
+            List<String> values = template.getHeaders().get(name);
+            if (!values.isEmpty()) {
+                return values.get(0);
+            }
+        }
         List<String> values = headers.get(name);
         if (values != null && !values.isEmpty()) {
             return values.get(0);
@@ -96,6 +110,37 @@ public final class Request
     }
 
     public ListMultimap<String, String> getHeaders()
+    {
+        if (template == null) {
+            return headers;
+        }
+        ListMultimap<String, String> allHeaders = this.allHeaders;
+        if (allHeaders == null) {
+            allHeaders = ImmutableListMultimap.<String, String>builder()
+                    .putAll(template.getHeaders())
+                    .putAll(headers)
+                    .build();
+            this.allHeaders = allHeaders;
+        }
+        return allHeaders;
+    }
+
+    /**
+     * Returns the template this request was created from, or {@code null}
+     * if the request was not created from a template.
+     */
+    @Nullable
+    public RequestTemplate getTemplate()
+    {
+        return template;
+    }
+
+    /**
+     * Returns the headers of this request that are not provided by the
+     * template. When the request has no template, this is the same as
+     * {@link #getHeaders()}.
+     */
+    public ListMultimap<String, String> getAdditionalHeaders()
     {
         return headers;
     }
@@ -115,16 +160,26 @@ public final class Request
         return preserveAuthorizationOnRedirect;
     }
 
+    /**
+     * Tag used to group statistics for this request, when the client records
+     * statistics per request tag.
+     */
+    public Optional<String> getStatsTag()
+    {
+        return statsTag;
+    }
+
     @Override
     public String toString()
     {
         return toStringHelper(this)
                 .add("uri", uri)
                 .add("method", method)
-                .add("headers", headers)
+                .add("headers", getHeaders())
                 .add("bodyGenerator", bodyGenerator)
                 .add("followRedirects", followRedirects)
                 .add("preserveAuthorizationOnRedirect", preserveAuthorizationOnRedirect)
+                .add("statsTag", statsTag.orElse(null))
                 .toString();
     }
 
@@ -137,10 +192,11 @@ public final class Request
         Request r = (Request) o;
         return Objects.equals(uri, r.uri) &&
                 Objects.equals(method, r.method) &&
-                Objects.equals(headers, r.headers) &&
+                Objects.equals(getHeaders(), r.getHeaders()) &&
                 Objects.equals(bodyGenerator, r.bodyGenerator) &&
                 Objects.equals(followRedirects, r.followRedirects) &&
-                Objects.equals(preserveAuthorizationOnRedirect, r.preserveAuthorizationOnRedirect);
+                Objects.equals(preserveAuthorizationOnRedirect, r.preserveAuthorizationOnRedirect) &&
+                Objects.equals(statsTag, r.statsTag);
     }
 
     @Override
@@ -149,10 +205,11 @@ public final class Request
         return Objects.hash(
                 uri,
                 method,
-                headers,
+                getHeaders(),
                 bodyGenerator,
                 followRedirects,
-                preserveAuthorizationOnRedirect);
+                preserveAuthorizationOnRedirect,
+                statsTag);
     }
 
     @Beta
@@ -185,21 +242,37 @@ public final class Request
 
         public static Builder fromRequest(Request request)
         {
-            return new Builder()
+            Builder builder = request.getTemplate() == null ? new Builder() : new Builder(request.getTemplate());
+            return builder
                     .setUri(request.getUri())
                     .setMethod(request.getMethod())
-                    .addHeaders(request.getHeaders())
+                    .addHeaders(request.getAdditionalHeaders())
                     .setBodyGenerator(request.getBodyGenerator())
                     .setFollowRedirects(request.isFollowRedirects())
-                    .setPreserveAuthorizationOnRedirect(request.isPreserveAuthorizationOnRedirect());
+                    .setPreserveAuthorizationOnRedirect(request.isPreserveAuthorizationOnRedirect())
+                    .setStatsTag(request.getStatsTag().orElse(null));
         }
 
+        private RequestTemplate template;
         private URI uri;
         private String method;
         private final ListMultimap<String, String> headers = ArrayListMultimap.create();
         private BodyGenerator bodyGenerator;
         private boolean followRedirects = true;
         private boolean preserveAuthorizationOnRedirect;
+        private String statsTag;
+
+        public Builder() {}
+
+        Builder(RequestTemplate template)
+        {
+            this.template = requireNonNull(template, "template is null");
+            this.uri = template.getUri();
+            this.method = template.getMethod();
+            this.followRedirects = template.isFollowRedirects();
+            this.preserveAuthorizationOnRedirect = template.isPreserveAuthorizationOnRedirect();
+            this.statsTag = template.getStatsTag().orElse(null);
+        }
 
         public Builder setUri(URI uri)
         {
@@ -215,6 +288,9 @@ public final class Request
 
         public Builder setHeader(String name, String value)
         {
+            if (template != null && template.getHeaders().containsKey(name)) {
+                detachTemplate();
+            }
             this.headers.removeAll(name);
             this.headers.put(name, value);
             return this;
@@ -250,16 +326,59 @@ public final class Request
             return this;
         }
 
+        public Builder setStatsTag(String statsTag)
+        {
+            this.statsTag = statsTag;
+            return this;
+        }
+
         public Request build()
         {
+            if (template != null) {
+                // the template uri has already been validated
+                return new Request(
+                        template,
+                        uri == template.getUri() ? uri : validateRequestUri(uri),
+                        method,
+                        headers,
+                        bodyGenerator,
+                        followRedirects,
+                        preserveAuthorizationOnRedirect,
+                        Optional.ofNullable(statsTag));
+            }
             return new Request(
-                    uri,
+                    null,
+                    validateRequestUri(uri),
                     method,
                     headers,
                     bodyGenerator,
                     followRedirects,
-                    preserveAuthorizationOnRedirect);
+                    preserveAuthorizationOnRedirect,
+                    Optional.ofNullable(statsTag));
         }
+
+        /**
+         * Replacing a template header cannot be expressed as a delta, so the
+         * template headers are copied into this builder and the template is dropped.
+         */
+        private void detachTemplate()
+        {
+            ListMultimap<String, String> additionalHeaders = ArrayListMultimap.create(headers);
+            headers.clear();
+            headers.putAll(template.getHeaders());
+            headers.putAll(additionalHeaders);
+            template = null;
+        }
+    }
+
+    static URI validateRequestUri(URI uri)
+    {
+        requireNonNull(uri, "uri is null");
+        checkArgument(uri.getHost() != null, "uri does not have a host: %s", uri);
+        checkArgument(uri.getScheme() != null, "uri does not have a scheme: %s", uri);
+        String scheme = uri.getScheme().toLowerCase();
+        checkArgument("http".equals(scheme) || "https".equals(scheme), "uri scheme must be http or https: %s", uri);
+        return validateUri(uri);
     }
 
     private static URI validateUri(URI uri)
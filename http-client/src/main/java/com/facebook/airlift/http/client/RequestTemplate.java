@@ -0,0 +1,187 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
+
+import java.net.URI;
+import java.util.Optional;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable description of the parts of a request that are the same for
+ * every call to a destination (destination URI, method, static headers such
+ * as authorization, user agent or trace headers). The template is validated
+ * once, and HTTP clients may pre-encode its headers and reuse them for every
+ * request created from it, so that only the per-call deltas are allocated.
+ * <p>
+ * Templates are compared by identity, so they should be created once and
+ * shared rather than rebuilt per request.
+ */
+@Beta
+public final class RequestTemplate
+{
+    private final URI uri;
+    private final String method;
+    private final ListMultimap<String, String> headers;
+    private final boolean followRedirects;
+    private final boolean preserveAuthorizationOnRedirect;
+    private final Optional<String> statsTag;
+
+    private RequestTemplate(
+            URI uri,
+            String method,
+            ListMultimap<String, String> headers,
+            boolean followRedirects,
+            boolean preserveAuthorizationOnRedirect,
+            Optional<String> statsTag)
+    {
+        this.uri = Request.validateRequestUri(uri);
+        this.method = requireNonNull(method, "method is null");
+        this.headers = ImmutableListMultimap.copyOf(headers);
+        this.followRedirects = followRedirects;
+        this.preserveAuthorizationOnRedirect = preserveAuthorizationOnRedirect;
+        this.statsTag = requireNonNull(statsTag, "statsTag is null");
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Creates a request builder initialized from this template. Headers added
+     * to the builder are tracked separately from the template headers.
+     */
+    public Request.Builder newRequest()
+    {
+        return new Request.Builder(this);
+    }
+
+    public URI getUri()
+    {
+        return uri;
+    }
+
+    public String getMethod()
+    {
+        return method;
+    }
+
+    public ListMultimap<String, String> getHeaders()
+    {
+        return headers;
+    }
+
+    public boolean isFollowRedirects()
+    {
+        return followRedirects;
+    }
+
+    public boolean isPreserveAuthorizationOnRedirect()
+    {
+        return preserveAuthorizationOnRedirect;
+    }
+
+    public Optional<String> getStatsTag()
+    {
+        return statsTag;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("uri", uri)
+                .add("method", method)
+                .add("headers", headers)
+                .add("followRedirects", followRedirects)
+                .add("preserveAuthorizationOnRedirect", preserveAuthorizationOnRedirect)
+                .add("statsTag", statsTag.orElse(null))
+                .toString();
+    }
+
+    @Beta
+    public static final class Builder
+    {
+        private URI uri;
+        private String method;
+        private final ListMultimap<String, String> headers = ArrayListMultimap.create();
+        private boolean followRedirects = true;
+        private boolean preserveAuthorizationOnRedirect;
+        private String statsTag;
+
+        private Builder() {}
+
+        public Builder setUri(URI uri)
+        {
+            this.uri = requireNonNull(uri, "uri is null");
+            return this;
+        }
+
+        public Builder setMethod(String method)
+        {
+            this.method = method;
+            return this;
+        }
+
+        public Builder setHeader(String name, String value)
+        {
+            this.headers.removeAll(name);
+            this.headers.put(name, value);
+            return this;
+        }
+
+        public Builder addHeader(String name, String value)
+        {
+            this.headers.put(name, value);
+            return this;
+        }
+
+        public Builder addHeaders(Multimap<String, String> headers)
+        {
+            this.headers.putAll(headers);
+            return this;
+        }
+
+        public Builder setFollowRedirects(boolean followRedirects)
+        {
+            this.followRedirects = followRedirects;
+            return this;
+        }
+
+        public Builder setPreserveAuthorizationOnRedirect(boolean preserveAuthorizationOnRedirect)
+        {
+            this.preserveAuthorizationOnRedirect = preserveAuthorizationOnRedirect;
+            return this;
+        }
+
+        public Builder setStatsTag(String statsTag)
+        {
+            this.statsTag = statsTag;
+            return this;
+        }
+
+        public RequestTemplate build()
+        {
+            return new RequestTemplate(uri, method, headers, followRedirects, preserveAuthorizationOnRedirect, Optional.ofNullable(statsTag));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client;
+
+import com.facebook.airlift.json.smile.SmileCodec;
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.net.MediaType;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.util.Set;
+
+import static com.facebook.airlift.http.client.ResponseHandlerUtils.propagate;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+
+@Beta
+public class SmileResponseHandler<T>
+        implements ResponseHandler<T, RuntimeException>
+{
+    static final MediaType MEDIA_TYPE_SMILE = MediaType.create("application", "x-jackson-smile");
+
+    public static <T> SmileResponseHandler<T> createSmileResponseHandler(SmileCodec<T> smileCodec)
+    {
+        return new SmileResponseHandler<>(smileCodec);
+    }
+
+    public static <T> SmileResponseHandler<T> createSmileResponseHandler(SmileCodec<T> smileCodec, int firstSuccessfulResponseCode, int... otherSuccessfulResponseCodes)
+    {
+        return new SmileResponseHandler<>(smileCodec, firstSuccessfulResponseCode, otherSuccessfulResponseCodes);
+    }
+
+    private final SmileCodec<T> smileCodec;
+    private final Set<Integer> successfulResponseCodes;
+
+    private SmileResponseHandler(SmileCodec<T> smileCodec)
+    {
+        this(smileCodec, 200, 201, 202, 203, 204, 205, 206);
+    }
+
+    private SmileResponseHandler(SmileCodec<T> smileCodec, int firstSuccessfulResponseCode, int... otherSuccessfulResponseCodes)
+    {
+        this.smileCodec = smileCodec;
+        this.successfulResponseCodes = ImmutableSet.<Integer>builder().add(firstSuccessfulResponseCode).addAll(Ints.asList(otherSuccessfulResponseCodes)).build();
+    }
+
+    @Override
+    public T handleException(Request request, Exception exception)
+    {
+        throw propagate(request, exception);
+    }
+
+    @Override
+    public T handle(Request request, Response response)
+    {
+        if (!successfulResponseCodes.contains(response.getStatusCode())) {
+            throw new UnexpectedResponseException(
+                    String.format("Expected response code to be %s, but was %d: %s", successfulResponseCodes, response.getStatusCode(), response.getStatusMessage()),
+                    request,
+                    response);
+        }
+        String contentType = response.getHeader(CONTENT_TYPE);
+        if (contentType == null) {
+            throw new UnexpectedResponseException("Content-Type is not set for response", request, response);
+        }
+        if (!MediaType.parse(contentType).is(MEDIA_TYPE_SMILE)) {
+            throw new UnexpectedResponseException("Expected application/x-jackson-smile response from server but got " + contentType, request, response);
+        }
+        byte[] bytes;
+        try {
+            bytes = ByteStreams.toByteArray(response.getInputStream());
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Error reading response from server");
+        }
+        try {
+            return smileCodec.fromSmile(bytes);
+        }
+        catch (IllegalArgumentException e) {
+            // the response is binary, so unlike JSON it is not included in the message
+            throw new IllegalArgumentException(String.format("Unable to create %s from Smile response (%s bytes)", smileCodec.getType(), bytes.length), e);
+        }
+    }
+}
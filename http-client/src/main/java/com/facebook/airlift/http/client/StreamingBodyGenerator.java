@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client;
+
+import com.facebook.airlift.json.Codec;
+import com.google.common.annotations.Beta;
+
+import java.io.OutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A body generator whose output is streamed to the server while it is being
+ * produced, instead of being materialized up front.
+ * <p>
+ * The Jetty client runs the generator on the thread that executes a synchronous
+ * request, or on a client thread for an asynchronous request, and writes the
+ * output into a small number of pooled buffers that are sent as they fill up.
+ * The generator blocks while all buffers are waiting to be sent, so memory used
+ * per request is bounded by the buffer pool rather than by the size of the body.
+ * Do not execute synchronous requests with this generator from Jetty client
+ * threads.
+ */
+@Beta
+public final class StreamingBodyGenerator
+        implements BodyGenerator
+{
+    private final BodyGenerator delegate;
+
+    public static StreamingBodyGenerator streamingBodyGenerator(BodyGenerator bodyGenerator)
+    {
+        return new StreamingBodyGenerator(bodyGenerator);
+    }
+
+    /**
+     * Creates a generator that serializes the instance incrementally using the codec,
+     * for example a {@code JsonCodec} or {@code SmileCodec}.
+     */
+    public static <T> StreamingBodyGenerator streamingBodyGenerator(Codec<T> codec, T instance)
+    {
+        requireNonNull(codec, "codec is null");
+        requireNonNull(instance, "instance is null");
+        return new StreamingBodyGenerator(out -> codec.writeBytes(out, instance));
+    }
+
+    private StreamingBodyGenerator(BodyGenerator delegate)
+    {
+        this.delegate = requireNonNull(delegate, "delegate is null");
+    }
+
+    @Override
+    public void write(OutputStream out)
+            throws Exception
+    {
+        delegate.write(out);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client.jetty;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Vegas-style concurrency limit for a single destination.
+ * <p>
+ * The limiter keeps track of the minimum observed round trip time, which is
+ * an estimate of the unloaded latency of the destination. For every completed
+ * request, the number of requests queued at the destination is estimated as
+ * {@code limit * (1 - minRtt / rtt)}. The limit grows while the estimated
+ * queue is small and shrinks when it grows, and is cut multiplicatively when
+ * a request times out.
+ */
+@ThreadSafe
+class AdaptiveConcurrencyLimiter
+{
+    // periodically forget the minimum rtt, so the limiter adapts if the unloaded latency of the destination increases
+    private static final int MIN_RTT_RESET_SAMPLES = 1000;
+    private static final double TIMEOUT_BACKOFF_RATIO = 0.9;
+
+    private final String destination;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile int limit;
+    private volatile long lastRttNanos;
+
+    @GuardedBy("this")
+    private long minRttNanos = Long.MAX_VALUE;
+    @GuardedBy("this")
+    private int samples;
+
+    public AdaptiveConcurrencyLimiter(String destination, int initialLimit, int minLimit, int maxLimit)
+    {
+        checkArgument(minLimit >= 1, "minLimit must be at least 1");
+        checkArgument(minLimit <= maxLimit, "minLimit must not be greater than maxLimit");
+        this.destination = destination;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = min(max(initialLimit, minLimit), maxLimit);
+    }
+
+    public String getDestination()
+    {
+        return destination;
+    }
+
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    public int getInFlight()
+    {
+        return inFlight.get();
+    }
+
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+
+    /**
+     * Estimated time requests currently spend queued, which is the difference
+     * between the last observed round trip time and the minimum one.
+     */
+    public synchronized long getQueueTimeNanos()
+    {
+        if (minRttNanos == Long.MAX_VALUE) {
+            return 0;
+        }
+        return max(0, lastRttNanos - minRttNanos);
+    }
+
+    /**
+     * Returns a permit that must be released when the request completes,
+     * or {@code null} if the destination is at its concurrency limit.
+     */
+    public Permit tryAcquire()
+    {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(current + 1);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void release(long rttNanos, int inFlightAtStart, boolean timedOut)
+    {
+        inFlight.decrementAndGet();
+        if (timedOut) {
+            onTimeout();
+        }
+        else if (rttNanos > 0) {
+            onSample(rttNanos, inFlightAtStart);
+        }
+    }
+
+    private synchronized void onTimeout()
+    {
+        limit = max(minLimit, (int) (limit * TIMEOUT_BACKOFF_RATIO));
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightAtStart)
+    {
+        lastRttNanos = rttNanos;
+        samples++;
+        if (samples >= MIN_RTT_RESET_SAMPLES) {
+            samples = 0;
+            minRttNanos = rttNanos;
+        }
+        else if (rttNanos < minRttNanos) {
+            minRttNanos = rttNanos;
+        }
+
+        int currentLimit = limit;
+        double queueSize = currentLimit * (1.0 - ((double) minRttNanos / rttNanos));
+        int threshold = max(1, (int) Math.log10(currentLimit));
+        int alpha = 3 * threshold;
+        int beta = 6 * threshold;
+
+        int newLimit = currentLimit;
+        if (queueSize <= threshold) {
+            // only grow the limit if it is actually being used
+            if (inFlightAtStart * 2 >= currentLimit) {
+                newLimit = currentLimit + beta;
+            }
+        }
+        else if (queueSize < alpha) {
+            if (inFlightAtStart * 2 >= currentLimit) {
+                newLimit = currentLimit + threshold;
+            }
+        }
+        else if (queueSize > beta) {
+            newLimit = currentLimit - threshold;
+        }
+        limit = min(max(newLimit, minLimit), maxLimit);
+    }
+
+    class Permit
+            implements Response.CompleteListener
+    {
+        private final long start = System.nanoTime();
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart)
+        {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * Releases the permit without recording a latency sample.
+         */
+        public void release()
+        {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveConcurrencyLimiter.this.release(0, inFlightAtStart, false);
+            }
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            if (released.compareAndSet(false, true)) {
+                boolean timedOut = result.isFailed() && result.getFailure() instanceof TimeoutException;
+                long rttNanos = result.isSucceeded() ? System.nanoTime() - start : 0;
+                AdaptiveConcurrencyLimiter.this.release(rttNanos, inFlightAtStart, timedOut);
+            }
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package com.facebook.airlift.http.client.jetty;
 
 import com.facebook.airlift.http.client.BodyGenerator;
+import com.facebook.airlift.http.client.ConcurrencyLimitExceededException;
 import com.facebook.airlift.http.client.FileBodyGenerator;
 import com.facebook.airlift.http.client.HttpClientConfig;
 import com.facebook.airlift.http.client.HttpRequestFilter;
 import com.facebook.airlift.http.client.Request;
 import com.facebook.airlift.http.client.RequestStats;
+import com.facebook.airlift.http.client.RequestTemplate;
 import com.facebook.airlift.http.client.ResponseHandler;
 import com.facebook.airlift.http.client.StaticBodyGenerator;
+import com.facebook.airlift.http.client.StreamingBodyGenerator;
 import com.facebook.airlift.http.client.jetty.HttpClientLogger.RequestInfo;
 import com.facebook.airlift.http.client.jetty.HttpClientLogger.ResponseInfo;
 import com.facebook.airlift.http.client.spnego.KerberosConfig;
@@ -15,19 +18,33 @@ import com.facebook.airlift.http.client.spnego.SpnegoAuthentication;
 import com.facebook.airlift.http.client.spnego.SpnegoAuthenticationProtocolHandler;
 import com.facebook.airlift.http.client.spnego.SpnegoAuthenticationStore;
 import com.facebook.airlift.security.pem.PemReader;
+import com.facebook.airlift.stats.CounterStat;
+import com.facebook.airlift.stats.Distribution;
+import com.facebook.airlift.stats.TimeStat;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.net.HostAndPort;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.units.Duration;
+import org.eclipse.jetty.client.AbstractConnectionPool;
 import org.eclipse.jetty.client.DuplexConnectionPool;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
 import org.eclipse.jetty.client.HttpExchange;
 import org.eclipse.jetty.client.HttpRequest;
+import org.eclipse.jetty.client.MultiplexConnectionPool;
+import org.eclipse.jetty.client.Origin;
 import org.eclipse.jetty.client.PoolingHttpDestination;
 import org.eclipse.jetty.client.Socks4Proxy;
 import org.eclipse.jetty.client.WWWAuthenticationProtocolHandler;
 import org.eclipse.jetty.client.api.AuthenticationStore;
+import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.client.api.Response;
@@ -35,6 +52,10 @@ import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
 import org.eclipse.jetty.client.http.HttpConnectionOverHTTP;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.client.util.PathContentProvider;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http2.client.HTTP2Client;
 import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
 import org.eclipse.jetty.io.ByteBufferPool;
@@ -56,32 +77,43 @@ import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.ConnectException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 import static com.facebook.airlift.http.client.jetty.AuthorizationPreservingHttpClient.setPreserveAuthorization;
 import static com.facebook.airlift.http.utils.jetty.ConcurrentScheduler.createConcurrentScheduler;
 import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Throwables.throwIfUnchecked;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.lang.Math.toIntExact;
 import static java.lang.String.format;
+import static java.util.Locale.ENGLISH;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class JettyHttpClient
@@ -93,10 +125,15 @@ public class JettyHttpClient
 
     private static final String STATS_KEY = "airlift_stats";
     private static final long SWEEP_PERIOD_MILLIS = 5000;
+    private static final int MAX_PRE_ENCODED_TEMPLATES = 1000;
+    private static final int STREAMING_BODY_BUFFERS = 4;
+    private static final long PREWARM_POLL_INTERVAL_MILLIS = 10;
+    private static final long CONCURRENCY_LIMITER_EXPIRATION_MINUTES = 10;
 
     private static final AtomicLong NAME_COUNTER = new AtomicLong();
 
     private final HttpClient httpClient;
+    private final QueuedThreadPool bodyWriterExecutor;
     private final long maxContentLength;
     private final long requestTimeoutMillis;
     private final long idleTimeoutMillis;
@@ -109,6 +146,9 @@ public class JettyHttpClient
     private final CachedDistribution queuedRequestsPerDestination;
     private final CachedDistribution activeConnectionsPerDestination;
     private final CachedDistribution idleConnectionsPerDestination;
+    private final CachedDistribution connectionPoolFillPerDestination;
+    private final TimeStat prewarmTime = new TimeStat(MILLISECONDS);
+    private final CounterStat prewarmedConnections = new CounterStat();
 
     private final CachedDistribution currentQueuedTime;
     private final CachedDistribution currentRequestTime;
@@ -116,12 +156,35 @@ public class JettyHttpClient
     private final CachedDistribution currentResponseWaitTime;
     private final CachedDistribution currentResponseProcessTime;
 
+    private final boolean adaptiveConcurrencyLimitEnabled;
+    private final int adaptiveConcurrencyLimitInitialLimit;
+    private final int adaptiveConcurrencyLimitMinLimit;
+    private final int adaptiveConcurrencyLimitMaxLimit;
+    private final LoadingCache<Origin, AdaptiveConcurrencyLimiter> concurrencyLimiters;
+    private final CounterStat concurrencyLimitRejections = new CounterStat();
+    private final CachedDistribution concurrencyLimitPerDestination;
+    private final CachedDistribution concurrencyLimitInFlightPerDestination;
+    private final CachedDistribution concurrencyLimitQueueTimePerDestination;
+    private final CachedDistribution concurrencyLimitRejectionsPerDestination;
+
+    private final boolean perDestinationStatsEnabled;
+    private final boolean perTagStatsEnabled;
+    private final KeyedRequestStatsMap destinationRequestStats;
+    private final KeyedRequestStatsMap taggedRequestStats;
+
     private final List<HttpRequestFilter> requestFilters;
     private final Exception creationLocation = new Exception();
     private final String name;
 
     private final HttpClientLogger requestLogger;
     private final JettyClientDiagnostics clientDiagnostics;
+    private final Runnable timeoutDiagnostics;
+
+    // templates are compared by identity, and are released with the template
+    private final Cache<RequestTemplate, List<HttpField>> preEncodedTemplateHeaders = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(MAX_PRE_ENCODED_TEMPLATES)
+            .build();
 
     public JettyHttpClient()
     {
@@ -154,6 +217,23 @@ public class JettyHttpClient
         idleTimeoutMillis = config.getIdleTimeout().toMillis();
         requestBufferSizeInBytes = toIntExact(config.getRequestBufferSize().toBytes());
         recordRequestComplete = config.getRecordRequestComplete();
+        adaptiveConcurrencyLimitEnabled = config.isAdaptiveConcurrencyLimitEnabled();
+        adaptiveConcurrencyLimitInitialLimit = config.getAdaptiveConcurrencyLimitInitialLimit();
+        adaptiveConcurrencyLimitMinLimit = config.getAdaptiveConcurrencyLimitMinLimit();
+        adaptiveConcurrencyLimitMaxLimit = config.getAdaptiveConcurrencyLimitMaxLimit();
+        checkArgument(adaptiveConcurrencyLimitMinLimit <= adaptiveConcurrencyLimitMaxLimit, "adaptive concurrency min limit must not be greater than max limit");
+        // limiters of destinations that are no longer used expire; permits still in flight are released to the expired limiter
+        concurrencyLimiters = CacheBuilder.newBuilder()
+                .expireAfterAccess(CONCURRENCY_LIMITER_EXPIRATION_MINUTES, MINUTES)
+                .build(CacheLoader.from(origin -> new AdaptiveConcurrencyLimiter(
+                        format("%s://%s:%s", origin.getScheme(), origin.getAddress().getHost(), origin.getAddress().getPort()),
+                        adaptiveConcurrencyLimitInitialLimit,
+                        adaptiveConcurrencyLimitMinLimit,
+                        adaptiveConcurrencyLimitMaxLimit)));
+        perDestinationStatsEnabled = config.isPerDestinationStatsEnabled();
+        perTagStatsEnabled = config.isPerTagStatsEnabled();
+        destinationRequestStats = new KeyedRequestStatsMap(config.getStatsMaxKeys());
+        taggedRequestStats = new KeyedRequestStatsMap(config.getStatsMaxKeys());
 
         creationLocation.fillInStackTrace();
 
@@ -250,6 +330,10 @@ public class JettyHttpClient
         httpClient.addBean(queuedThreadPool, true);
         httpClient.setScheduler(createScheduler(name, config.getTimeoutConcurrency(), config.getTimeoutThreads()));
 
+        // streaming body generators block until Jetty has written their buffers, which needs
+        // the client threads, so they run on a separate pool and can not starve the client
+        bodyWriterExecutor = createExecutor(name + "-body-writer", 0, config.getMaxThreads());
+
         httpClient.setSocketAddressResolver(new JettyAsyncSocketAddressResolver(
                 httpClient.getExecutor(),
                 httpClient.getScheduler(),
@@ -299,6 +383,7 @@ public class JettyHttpClient
         }
 
         this.clientDiagnostics = new JettyClientDiagnostics();
+        this.timeoutDiagnostics = () -> clientDiagnostics.logDiagnosticsInfo(httpClient);
 
         this.requestFilters = ImmutableList.copyOf(requestFilters);
 
@@ -310,6 +395,9 @@ public class JettyHttpClient
         this.idleConnectionsPerDestination = new ConnectionPoolDistribution(httpClient,
                 (distribution, connectionPool) -> distribution.add(connectionPool.getIdleConnections().size()));
 
+        this.connectionPoolFillPerDestination = new ConnectionPoolDistribution(httpClient,
+                (distribution, connectionPool) -> distribution.add(100L * getOpenConnectionCount(connectionPool) / httpClient.getMaxConnectionsPerDestination()));
+
         this.queuedRequestsPerDestination = new DestinationDistribution(httpClient,
                 (distribution, destination) -> distribution.add(destination.getHttpExchanges().size()));
 
@@ -368,6 +456,14 @@ public class JettyHttpClient
             }
             distribution.add(NANOSECONDS.toMillis(finished - responseStarted));
         });
+
+        this.concurrencyLimitPerDestination = new CachedDistribution(() -> getConcurrencyLimiterDistribution(AdaptiveConcurrencyLimiter::getLimit));
+
+        this.concurrencyLimitInFlightPerDestination = new CachedDistribution(() -> getConcurrencyLimiterDistribution(AdaptiveConcurrencyLimiter::getInFlight));
+
+        this.concurrencyLimitQueueTimePerDestination = new CachedDistribution(() -> getConcurrencyLimiterDistribution(limiter -> NANOSECONDS.toMillis(limiter.getQueueTimeNanos())));
+
+        this.concurrencyLimitRejectionsPerDestination = new CachedDistribution(() -> getConcurrencyLimiterDistribution(AdaptiveConcurrencyLimiter::getRejected));
     }
 
     private static Optional<KeyStore> tryLoadPemKeyStore(HttpClientConfig config)
@@ -462,8 +558,7 @@ public class JettyHttpClient
         request = applyRequestFilters(request);
 
         // create jetty request and response listener
-        JettyRequestListener requestListener = new JettyRequestListener(request.getUri());
-        HttpRequest jettyRequest = buildJettyRequest(request, requestListener);
+        HttpRequest jettyRequest = buildJettyRequest(request);
         InputStreamResponseListener listener = new InputStreamResponseListener()
         {
             @Override
@@ -483,8 +578,19 @@ public class JettyHttpClient
             addLoggingListener(jettyRequest, requestTimestamp);
         }
 
+        try {
+            acquireConcurrencyPermit(jettyRequest);
+        }
+        catch (ConcurrencyLimitExceededException e) {
+            stats.recordRequestFailed();
+            requestLogger.log(requestInfo, ResponseInfo.failed(Optional.empty(), Optional.of(e)));
+            return responseHandler.handleException(request, e);
+        }
+
         // fire the request
         jettyRequest.send(listener);
+        // the calling thread waits for the response anyway, so it writes the body
+        writeStreamingBody(jettyRequest, directExecutor());
 
         // wait for response to begin
         Response response;
@@ -544,7 +650,7 @@ public class JettyHttpClient
 
         request = applyRequestFilters(request);
 
-        HttpRequest jettyRequest = buildJettyRequest(request, new JettyRequestListener(request.getUri()));
+        HttpRequest jettyRequest = buildJettyRequest(request);
 
         JettyResponseFuture<T, E> future = new JettyResponseFuture<>(request, jettyRequest, responseHandler, stats, recordRequestComplete);
 
@@ -556,10 +662,24 @@ public class JettyHttpClient
             addLoggingListener(jettyRequest, requestTimestamp);
         }
 
+        AdaptiveConcurrencyLimiter.Permit permit;
+        try {
+            permit = acquireConcurrencyPermit(jettyRequest);
+        }
+        catch (ConcurrencyLimitExceededException e) {
+            future.failed(e);
+            requestLogger.log(RequestInfo.from(jettyRequest, requestTimestamp), ResponseInfo.failed(Optional.empty(), Optional.of(e)));
+            return future;
+        }
+
         try {
             jettyRequest.send(listener);
+            writeStreamingBody(jettyRequest, bodyWriterExecutor);
         }
         catch (RuntimeException e) {
+            if (permit != null) {
+                permit.release();
+            }
             if (!(e instanceof RejectedExecutionException)) {
                 e = new RejectedExecutionException(e);
             }
@@ -578,6 +698,140 @@ public class JettyHttpClient
         jettyRequest.onComplete(loggingListener);
     }
 
+    /**
+     * Acquires a permit from the adaptive concurrency limiter of the request
+     * destination, which is released when the request completes.
+     *
+     * @return the permit, or {@code null} if adaptive concurrency limiting is disabled
+     * @throws ConcurrencyLimitExceededException if the destination is at its concurrency limit
+     */
+    private AdaptiveConcurrencyLimiter.Permit acquireConcurrencyPermit(HttpRequest jettyRequest)
+    {
+        if (!adaptiveConcurrencyLimitEnabled) {
+            return null;
+        }
+
+        String scheme = jettyRequest.getScheme().toLowerCase(ENGLISH);
+        String host = jettyRequest.getHost().toLowerCase(ENGLISH);
+        int port = HttpClient.normalizePort(scheme, jettyRequest.getPort());
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimiters.getUnchecked(new Origin(scheme, host, port));
+
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            concurrencyLimitRejections.update(1);
+            throw new ConcurrencyLimitExceededException(limiter.getDestination(), limiter.getLimit());
+        }
+        jettyRequest.onComplete(permit);
+        return permit;
+    }
+
+    private Distribution getConcurrencyLimiterDistribution(ToLongFunction<AdaptiveConcurrencyLimiter> value)
+    {
+        Distribution distribution = new Distribution();
+        // iterating does not count as an access, so reading the stats does not keep idle limiters from expiring
+        for (AdaptiveConcurrencyLimiter limiter : concurrencyLimiters.asMap().values()) {
+            distribution.add(value.applyAsLong(limiter));
+        }
+        return distribution;
+    }
+
+    /**
+     * Opens connections to the destination ahead of the first requests, so that
+     * they do not pay the TCP and TLS handshake latency. Connections are opened
+     * until the destination has the requested number of connections, up to the
+     * maximum connections per server. For HTTP/2 a single session is opened, as
+     * requests are multiplexed over it. The new connections are added to the pool
+     * idle, and are closed by the idle timeout if they are not used.
+     * <p>
+     * The future fails with a {@link ConnectException} if a connection could not
+     * be opened, and with a {@link TimeoutException} if the connections are not
+     * all open within the connect timeout.
+     *
+     * @return the number of connections open to the destination once they are all
+     * established
+     */
+    @Override
+    public ListenableFuture<Integer> prewarm(URI destination, int connections)
+    {
+        requireNonNull(destination, "destination is null");
+        checkArgument(connections > 0, "connections must be positive");
+        checkState(!isClosed(), "client is closed");
+
+        HttpDestination httpDestination = (HttpDestination) httpClient.getDestination(destination.getScheme(), destination.getHost(), destination.getPort());
+        if (!(httpDestination.getConnectionPool() instanceof AbstractConnectionPool)) {
+            return immediateFuture(0);
+        }
+        AbstractConnectionPool connectionPool = (AbstractConnectionPool) httpDestination.getConnectionPool();
+        int target = (connectionPool instanceof MultiplexConnectionPool) ? 1 : Math.min(connections, connectionPool.getMaxConnectionCount());
+
+        long start = System.nanoTime();
+        int initialConnections = getOpenConnectionCount(connectionPool);
+
+        // Acquiring from the pool opens a new connection only when there are no idle
+        // connections, so hold on to idle connections until the missing ones are requested.
+        // The connection count includes the connections being opened, so a connection
+        // that completes while the loop runs is not opened twice.
+        List<Connection> idleConnections = new ArrayList<>();
+        try {
+            while (connectionPool.getConnectionCount() < target) {
+                int connectionCount = connectionPool.getConnectionCount();
+                Connection connection = connectionPool.acquire();
+                if (connection != null) {
+                    idleConnections.add(connection);
+                }
+                else if (connectionPool.getConnectionCount() <= connectionCount) {
+                    // the pool did not open a connection (it is closed, or the connect failed immediately)
+                    break;
+                }
+            }
+        }
+        finally {
+            idleConnections.forEach(httpDestination::release);
+        }
+
+        SettableFuture<Integer> future = SettableFuture.create();
+        long deadline = start + MILLISECONDS.toNanos(httpClient.getConnectTimeout());
+        awaitPrewarm(future, destination, connectionPool, target, initialConnections, start, deadline);
+        return future;
+    }
+
+    private void awaitPrewarm(SettableFuture<Integer> future, URI destination, AbstractConnectionPool connectionPool, int target, int initialConnections, long start, long deadline)
+    {
+        int openConnections = getOpenConnectionCount(connectionPool);
+        long now = System.nanoTime();
+        if (openConnections >= target) {
+            prewarmTime.add(now - start, NANOSECONDS);
+            prewarmedConnections.update(Math.max(openConnections - initialConnections, 0));
+            future.set(openConnections);
+            return;
+        }
+        if (connectionPool.getPendingCount() == 0) {
+            // the pool drops connections that fail to open
+            future.setException(new ConnectException(format("Opened %s of %s connections to %s", openConnections, target, destination)));
+            return;
+        }
+        if (isClosed()) {
+            future.setException(new IllegalStateException("client is closed"));
+            return;
+        }
+        if (now - deadline >= 0) {
+            future.setException(new TimeoutException(format("Opened %s of %s connections to %s within %sms", openConnections, target, destination, httpClient.getConnectTimeout())));
+            return;
+        }
+        try {
+            httpClient.getScheduler().schedule(() -> awaitPrewarm(future, destination, connectionPool, target, initialConnections, start, deadline), PREWARM_POLL_INTERVAL_MILLIS, MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            future.setException(e);
+        }
+    }
+
+    private static int getOpenConnectionCount(AbstractConnectionPool connectionPool)
+    {
+        // the connection count includes the connections still being opened
+        return connectionPool.getConnectionCount() - connectionPool.getPendingCount();
+    }
+
     private Request applyRequestFilters(Request request)
     {
         for (HttpRequestFilter requestFilter : requestFilters) {
@@ -586,30 +840,40 @@ public class JettyHttpClient
         return request;
     }
 
-    private HttpRequest buildJettyRequest(Request finalRequest, JettyRequestListener listener)
+    private HttpRequest buildJettyRequest(Request finalRequest)
     {
         HttpRequest jettyRequest = (HttpRequest) httpClient.newRequest(finalRequest.getUri());
-        jettyRequest.onRequestBegin(request -> listener.onRequestBegin());
-        jettyRequest.onRequestSuccess(request -> listener.onRequestEnd());
-        jettyRequest.onResponseBegin(response -> listener.onResponseBegin());
-        jettyRequest.onComplete(result -> listener.onFinish());
-        jettyRequest.onComplete(result -> {
-            if (result.isFailed() && result.getFailure() instanceof TimeoutException) {
-                clientDiagnostics.logDiagnosticsInfo(httpClient);
-            }
-        });
 
+        JettyRequestListener listener = new JettyRequestListener(finalRequest.getUri(), timeoutDiagnostics);
+        listener.register(jettyRequest);
         jettyRequest.attribute(STATS_KEY, listener);
+        registerKeyedRequestStats(jettyRequest, finalRequest, listener);
 
         jettyRequest.method(finalRequest.getMethod());
 
-        for (Entry<String, String> entry : finalRequest.getHeaders().entries()) {
+        RequestTemplate template = finalRequest.getTemplate();
+        if (template != null) {
+            HttpFields headers = jettyRequest.getHeaders();
+            for (HttpField field : getPreEncodedHeaders(template)) {
+                headers.add(field);
+            }
+        }
+        for (Entry<String, String> entry : finalRequest.getAdditionalHeaders().entries()) {
             jettyRequest.header(entry.getKey(), entry.getValue());
         }
 
         BodyGenerator bodyGenerator = finalRequest.getBodyGenerator();
         if (bodyGenerator != null) {
-            if (bodyGenerator instanceof StaticBodyGenerator) {
+            if (bodyGenerator instanceof StreamingBodyGenerator) {
+                StreamingBodyContentProvider contentProvider = new StreamingBodyContentProvider(
+                        bodyGenerator,
+                        httpClient.getByteBufferPool(),
+                        requestBufferSizeInBytes,
+                        STREAMING_BODY_BUFFERS);
+                jettyRequest.onComplete(contentProvider);
+                jettyRequest.content(contentProvider);
+            }
+            else if (bodyGenerator instanceof StaticBodyGenerator) {
                 StaticBodyGenerator staticBodyGenerator = (StaticBodyGenerator) bodyGenerator;
                 jettyRequest.content(new ChunkedBytesContentProvider(staticBodyGenerator.getBody(), requestBufferSizeInBytes));
             }
@@ -633,6 +897,62 @@ public class JettyHttpClient
         return jettyRequest;
     }
 
+    private void registerKeyedRequestStats(HttpRequest jettyRequest, Request request, JettyRequestListener requestListener)
+    {
+        if (!perDestinationStatsEnabled && !perTagStatsEnabled) {
+            return;
+        }
+
+        ImmutableList.Builder<KeyedRequestStats> stats = ImmutableList.builder();
+        if (perDestinationStatsEnabled) {
+            String scheme = jettyRequest.getScheme().toLowerCase(ENGLISH);
+            String host = jettyRequest.getHost().toLowerCase(ENGLISH);
+            int port = HttpClient.normalizePort(scheme, jettyRequest.getPort());
+            stats.add(destinationRequestStats.get(format("%s://%s:%s", scheme, host, port)));
+        }
+        if (perTagStatsEnabled && request.getStatsTag().isPresent()) {
+            stats.add(taggedRequestStats.get(request.getStatsTag().get()));
+        }
+
+        // registered after the request listener, so the response timestamps are set on completion
+        KeyedRequestStatsListener statsListener = new KeyedRequestStatsListener(requestListener, stats.build());
+        jettyRequest.onRequestContent(statsListener);
+        jettyRequest.onResponseContent(statsListener);
+        jettyRequest.onComplete(statsListener);
+    }
+
+    private static void writeStreamingBody(HttpRequest jettyRequest, Executor executor)
+    {
+        ContentProvider content = jettyRequest.getContent();
+        if (content instanceof StreamingBodyContentProvider) {
+            ((StreamingBodyContentProvider) content).writeBody(jettyRequest, executor);
+        }
+    }
+
+    private List<HttpField> getPreEncodedHeaders(RequestTemplate template)
+    {
+        List<HttpField> fields = preEncodedTemplateHeaders.getIfPresent(template);
+        if (fields == null) {
+            // racing threads may encode the same template twice, which is harmless
+            fields = template.getHeaders().entries().stream()
+                    .map(entry -> preEncodeHeader(entry.getKey(), entry.getValue()))
+                    .collect(toImmutableList());
+            preEncodedTemplateHeaders.put(template, fields);
+        }
+        return fields;
+    }
+
+    private static HttpField preEncodeHeader(String name, String value)
+    {
+        // the HTTP/1 pre-encoder in Jetty 9.4.14 drops the separator and value of
+        // header names it does not know, so only well known headers are pre-encoded
+        HttpHeader header = HttpHeader.CACHE.get(name);
+        if (header == null) {
+            return new HttpField(name, value);
+        }
+        return new PreEncodedHttpField(header, name, value);
+    }
+
     private static ContentProvider fileContentProvider(Path path)
     {
         try {
@@ -707,6 +1027,27 @@ public class JettyHttpClient
         return idleConnectionsPerDestination;
     }
 
+    @Managed
+    @Nested
+    public CachedDistribution getConnectionPoolFillPerDestination()
+    {
+        return connectionPoolFillPerDestination;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getPrewarmTime()
+    {
+        return prewarmTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getPrewarmedConnections()
+    {
+        return prewarmedConnections;
+    }
+
     @Managed
     @Nested
     public CachedDistribution getQueuedRequestsPerDestination()
@@ -749,6 +1090,83 @@ public class JettyHttpClient
         return currentResponseProcessTime;
     }
 
+    @Managed
+    @Nested
+    public CounterStat getConcurrencyLimitRejections()
+    {
+        return concurrencyLimitRejections;
+    }
+
+    @Managed
+    @Nested
+    public CachedDistribution getConcurrencyLimitPerDestination()
+    {
+        return concurrencyLimitPerDestination;
+    }
+
+    @Managed
+    @Nested
+    public CachedDistribution getConcurrencyLimitInFlightPerDestination()
+    {
+        return concurrencyLimitInFlightPerDestination;
+    }
+
+    @Managed
+    @Nested
+    public CachedDistribution getConcurrencyLimitQueueTimePerDestination()
+    {
+        return concurrencyLimitQueueTimePerDestination;
+    }
+
+    @Managed
+    @Nested
+    public CachedDistribution getConcurrencyLimitRejectionsPerDestination()
+    {
+        return concurrencyLimitRejectionsPerDestination;
+    }
+
+    public Map<String, KeyedRequestStats> getRequestStatsByDestination()
+    {
+        return destinationRequestStats.getAll();
+    }
+
+    public Map<String, KeyedRequestStats> getRequestStatsByTag()
+    {
+        return taggedRequestStats.getAll();
+    }
+
+    /**
+     * Empty unless per-destination stats are enabled.
+     */
+    @Managed
+    @Nested
+    public KeyedRequestStatsMap getRequestStatsPerDestination()
+    {
+        return destinationRequestStats;
+    }
+
+    /**
+     * Empty unless per-tag stats are enabled.
+     */
+    @Managed
+    @Nested
+    public KeyedRequestStatsMap getRequestStatsPerTag()
+    {
+        return taggedRequestStats;
+    }
+
+    @Managed
+    public String dumpRequestStatsByDestination()
+    {
+        return perDestinationStatsEnabled ? destinationRequestStats.dump() : "per-destination stats are disabled";
+    }
+
+    @Managed
+    public String dumpRequestStatsByTag()
+    {
+        return perTagStatsEnabled ? taggedRequestStats.dump() : "per-tag stats are disabled";
+    }
+
     @Managed
     public String dump()
     {
@@ -867,6 +1285,7 @@ public class JettyHttpClient
         // you will create a several second busy wait loop
         closeQuietly(httpClient);
         closeQuietly((LifeCycle) httpClient.getExecutor());
+        closeQuietly(bodyWriterExecutor);
         closeQuietly(httpClient.getScheduler());
         requestLogger.close();
     }
@@ -1,10 +1,22 @@
 package com.facebook.airlift.http.client.jetty;
 
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+
 import java.net.URI;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Tracks the progress of a single request. The listener registers itself
+ * for all the request and response events it needs, so a request costs a
+ * single listener instance rather than one callback per event.
+ */
 class JettyRequestListener
+        extends Request.Listener.Adapter
+        implements Response.BeginListener, Response.CompleteListener
 {
     enum State
     {
@@ -14,15 +26,24 @@ class JettyRequestListener
     private final AtomicReference<State> state = new AtomicReference<>(State.CREATED);
 
     private final URI uri;
+    private final Runnable timeoutListener;
     private final long created = System.nanoTime();
     private final AtomicLong requestStarted = new AtomicLong();
     private final AtomicLong requestFinished = new AtomicLong();
     private final AtomicLong responseStarted = new AtomicLong();
     private final AtomicLong responseFinished = new AtomicLong();
 
-    public JettyRequestListener(URI uri)
+    public JettyRequestListener(URI uri, Runnable timeoutListener)
     {
         this.uri = uri;
+        this.timeoutListener = timeoutListener;
+    }
+
+    public void register(Request request)
+    {
+        request.listener(this);
+        request.onResponseBegin(this);
+        request.onComplete(this);
     }
 
     public URI getUri()
@@ -98,6 +119,33 @@ class JettyRequestListener
         responseFinished.compareAndSet(0, now);
     }
 
+    @Override
+    public void onBegin(Request request)
+    {
+        onRequestBegin();
+    }
+
+    @Override
+    public void onSuccess(Request request)
+    {
+        onRequestEnd();
+    }
+
+    @Override
+    public void onBegin(Response response)
+    {
+        onResponseBegin();
+    }
+
+    @Override
+    public void onComplete(Result result)
+    {
+        onFinish();
+        if (result.isFailed() && result.getFailure() instanceof TimeoutException) {
+            timeoutListener.run();
+        }
+    }
+
     private synchronized void changeState(State newState)
     {
         if (state.get().ordinal() < newState.ordinal()) {
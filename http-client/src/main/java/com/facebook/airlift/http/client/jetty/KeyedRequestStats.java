@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client.jetty;
+
+import com.facebook.airlift.stats.ExponentialDecay;
+import com.facebook.airlift.stats.TimeDistribution;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.facebook.airlift.http.client.HttpStatus.familyForStatusCode;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Request statistics for a single destination or request tag. Counters are
+ * striped, and each time distribution has its own lock, so recording for
+ * different keys never contends.
+ * <p>
+ * The keys are only known at runtime, so the stats are exported over JMX by
+ * {@link KeyedRequestStatsMap} as maps from key to value.
+ */
+@ThreadSafe
+public class KeyedRequestStats
+{
+    private final String key;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder informationalResponse = new LongAdder();
+    private final LongAdder successfulResponse = new LongAdder();
+    private final LongAdder redirectionResponse = new LongAdder();
+    private final LongAdder clientErrorResponse = new LongAdder();
+    private final LongAdder serverErrorResponse = new LongAdder();
+    private final LongAdder readBytes = new LongAdder();
+    private final LongAdder writtenBytes = new LongAdder();
+
+    private final TimeDistribution requestTime = new TimeDistribution(ExponentialDecay.fiveMinutes(), MILLISECONDS);
+    private final TimeDistribution responseTime = new TimeDistribution(ExponentialDecay.fiveMinutes(), MILLISECONDS);
+
+    public KeyedRequestStats(String key)
+    {
+        this.key = requireNonNull(key, "key is null");
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @param requestNanos time from sending the request until the response began
+     * @param responseNanos time from the beginning until the end of the response
+     */
+    public void recordResponse(int statusCode, long requestNanos, long responseNanos, long requestBytes, long responseBytes)
+    {
+        requests.increment();
+        requestTime.add(requestNanos);
+        responseTime.add(responseNanos);
+        writtenBytes.add(requestBytes);
+        readBytes.add(responseBytes);
+
+        switch (familyForStatusCode(statusCode)) {
+            case INFORMATIONAL:
+                informationalResponse.increment();
+                break;
+            case SUCCESSFUL:
+                successfulResponse.increment();
+                break;
+            case REDIRECTION:
+                redirectionResponse.increment();
+                break;
+            case CLIENT_ERROR:
+                clientErrorResponse.increment();
+                break;
+            case SERVER_ERROR:
+                serverErrorResponse.increment();
+                break;
+        }
+    }
+
+    public void recordFailure(long requestBytes)
+    {
+        requests.increment();
+        failed.increment();
+        writtenBytes.add(requestBytes);
+    }
+
+    public long getRequests()
+    {
+        return requests.sum();
+    }
+
+    public long getFailed()
+    {
+        return failed.sum();
+    }
+
+    public long get1xxResponses()
+    {
+        return informationalResponse.sum();
+    }
+
+    public long get2xxResponses()
+    {
+        return successfulResponse.sum();
+    }
+
+    public long get3xxResponses()
+    {
+        return redirectionResponse.sum();
+    }
+
+    public long get4xxResponses()
+    {
+        return clientErrorResponse.sum();
+    }
+
+    public long get5xxResponses()
+    {
+        return serverErrorResponse.sum();
+    }
+
+    public long getReadBytes()
+    {
+        return readBytes.sum();
+    }
+
+    public long getWrittenBytes()
+    {
+        return writtenBytes.sum();
+    }
+
+    public TimeDistribution getRequestTime()
+    {
+        return requestTime;
+    }
+
+    public TimeDistribution getResponseTime()
+    {
+        return responseTime;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client.jetty;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Records the outcome of a request into the per-destination and per-tag statistics.
+ */
+class KeyedRequestStatsListener
+        implements Request.ContentListener, Response.ContentListener, Response.CompleteListener
+{
+    private final JettyRequestListener requestListener;
+    private final List<KeyedRequestStats> stats;
+
+    // content callbacks are never invoked concurrently, and all of them happen before completion
+    private long requestBytes;
+    private long responseBytes;
+
+    public KeyedRequestStatsListener(JettyRequestListener requestListener, List<KeyedRequestStats> stats)
+    {
+        this.requestListener = requireNonNull(requestListener, "requestListener is null");
+        this.stats = requireNonNull(stats, "stats is null");
+    }
+
+    @Override
+    public void onContent(Request request, ByteBuffer content)
+    {
+        requestBytes += content.remaining();
+    }
+
+    @Override
+    public void onContent(Response response, ByteBuffer content)
+    {
+        responseBytes += content.remaining();
+    }
+
+    @Override
+    public void onComplete(Result result)
+    {
+        if (result.isFailed() || result.getResponse() == null) {
+            for (KeyedRequestStats keyStats : stats) {
+                keyStats.recordFailure(requestBytes);
+            }
+            return;
+        }
+
+        long now = System.nanoTime();
+        long requestStarted = nonZero(requestListener.getRequestStarted(), requestListener.getCreated());
+        long responseStarted = nonZero(requestListener.getResponseStarted(), now);
+        long responseFinished = nonZero(requestListener.getResponseFinished(), now);
+        int statusCode = result.getResponse().getStatus();
+        for (KeyedRequestStats keyStats : stats) {
+            keyStats.recordResponse(statusCode, responseStarted - requestStarted, responseFinished - responseStarted, requestBytes, responseBytes);
+        }
+    }
+
+    private static long nonZero(long value, long defaultValue)
+    {
+        return value == 0 ? defaultValue : value;
+    }
+}
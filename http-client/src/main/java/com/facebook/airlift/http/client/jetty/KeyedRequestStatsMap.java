@@ -0,0 +1,182 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+
+/**
+ * Bounded map of {@link KeyedRequestStats}. Once the map holds the maximum
+ * number of keys, requests for new keys are recorded under {@link #OTHER_KEY}.
+ * <p>
+ * Each statistic is exported over JMX as a map from key to value, sorted by key.
+ */
+@ThreadSafe
+public class KeyedRequestStatsMap
+{
+    public static final String OTHER_KEY = "<other>";
+
+    private final int maxKeys;
+    private final Map<String, KeyedRequestStats> stats = new ConcurrentHashMap<>();
+    private final KeyedRequestStats other = new KeyedRequestStats(OTHER_KEY);
+
+    public KeyedRequestStatsMap(int maxKeys)
+    {
+        checkArgument(maxKeys > 0, "maxKeys must be positive");
+        this.maxKeys = maxKeys;
+    }
+
+    public KeyedRequestStats get(String key)
+    {
+        KeyedRequestStats keyStats = stats.get(key);
+        if (keyStats != null) {
+            return keyStats;
+        }
+        // the size check is racy, so the map may slightly exceed the maximum
+        if (stats.size() >= maxKeys) {
+            return other;
+        }
+        return stats.computeIfAbsent(key, KeyedRequestStats::new);
+    }
+
+    public Map<String, KeyedRequestStats> getAll()
+    {
+        ImmutableMap.Builder<String, KeyedRequestStats> builder = ImmutableMap.builder();
+        builder.putAll(stats);
+        if (other.getRequests() > 0) {
+            builder.put(OTHER_KEY, other);
+        }
+        return builder.build();
+    }
+
+    @Managed
+    public Map<String, Long> getRequests()
+    {
+        return byKey(KeyedRequestStats::getRequests);
+    }
+
+    @Managed
+    public Map<String, Long> getFailed()
+    {
+        return byKey(KeyedRequestStats::getFailed);
+    }
+
+    @Managed
+    public Map<String, Long> get1xxResponses()
+    {
+        return byKey(KeyedRequestStats::get1xxResponses);
+    }
+
+    @Managed
+    public Map<String, Long> get2xxResponses()
+    {
+        return byKey(KeyedRequestStats::get2xxResponses);
+    }
+
+    @Managed
+    public Map<String, Long> get3xxResponses()
+    {
+        return byKey(KeyedRequestStats::get3xxResponses);
+    }
+
+    @Managed
+    public Map<String, Long> get4xxResponses()
+    {
+        return byKey(KeyedRequestStats::get4xxResponses);
+    }
+
+    @Managed
+    public Map<String, Long> get5xxResponses()
+    {
+        return byKey(KeyedRequestStats::get5xxResponses);
+    }
+
+    @Managed
+    public Map<String, Long> getReadBytes()
+    {
+        return byKey(KeyedRequestStats::getReadBytes);
+    }
+
+    @Managed
+    public Map<String, Long> getWrittenBytes()
+    {
+        return byKey(KeyedRequestStats::getWrittenBytes);
+    }
+
+    @Managed
+    public Map<String, Double> getRequestTimeP50()
+    {
+        return byKey(stats -> stats.getRequestTime().getP50());
+    }
+
+    @Managed
+    public Map<String, Double> getRequestTimeP99()
+    {
+        return byKey(stats -> stats.getRequestTime().getP99());
+    }
+
+    @Managed
+    public Map<String, Double> getResponseTimeP50()
+    {
+        return byKey(stats -> stats.getResponseTime().getP50());
+    }
+
+    @Managed
+    public Map<String, Double> getResponseTimeP99()
+    {
+        return byKey(stats -> stats.getResponseTime().getP99());
+    }
+
+    private <T> Map<String, T> byKey(Function<KeyedRequestStats, T> value)
+    {
+        ImmutableSortedMap.Builder<String, T> builder = ImmutableSortedMap.naturalOrder();
+        getAll().forEach((key, stats) -> builder.put(key, value.apply(stats)));
+        return builder.build();
+    }
+
+    @Managed
+    public String dump()
+    {
+        return format("%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\n", "key", "requests", "failed", "2xx", "3xx", "4xx", "5xx", "read bytes", "written bytes", "request p50", "request p99", "response p50", "response p99") +
+                getAll().values().stream()
+                        .sorted(Comparator.comparing(KeyedRequestStats::getKey))
+                        .map(stats -> format("%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\t%.1f\t%.1f\t%.1f\t%.1f",
+                                stats.getKey(),
+                                stats.getRequests(),
+                                stats.getFailed(),
+                                stats.get2xxResponses(),
+                                stats.get3xxResponses(),
+                                stats.get4xxResponses(),
+                                stats.get5xxResponses(),
+                                stats.getReadBytes(),
+                                stats.getWrittenBytes(),
+                                stats.getRequestTime().getP50(),
+                                stats.getRequestTime().getP99(),
+                                stats.getResponseTime().getP50(),
+                                stats.getResponseTime().getP99()))
+                        .collect(Collectors.joining("\n"));
+    }
+}
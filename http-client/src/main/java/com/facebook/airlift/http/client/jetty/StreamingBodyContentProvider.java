@@ -0,0 +1,251 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client.jetty;
+
+import com.facebook.airlift.http.client.BodyGenerator;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.Callback;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Content provider that runs a {@link BodyGenerator} on an executor and sends
+ * its output in pooled buffers as they fill up. At most
+ * {@code maxBuffersInFlight} buffers are outstanding at any time; the generator
+ * blocks until Jetty has written a buffer before it can fill another one.
+ */
+class StreamingBodyContentProvider
+        extends DeferredContentProvider
+        implements Response.CompleteListener
+{
+    private final BodyGenerator bodyGenerator;
+    private final ByteBufferPool bufferPool;
+    private final int bufferSize;
+    private final Semaphore buffersAvailable;
+
+    private volatile Throwable failure;
+
+    public StreamingBodyContentProvider(BodyGenerator bodyGenerator, ByteBufferPool bufferPool, int bufferSize, int maxBuffersInFlight)
+    {
+        checkArgument(bufferSize > 0, "bufferSize must be positive");
+        checkArgument(maxBuffersInFlight > 0, "maxBuffersInFlight must be positive");
+        this.bodyGenerator = requireNonNull(bodyGenerator, "bodyGenerator is null");
+        this.bufferPool = requireNonNull(bufferPool, "bufferPool is null");
+        this.bufferSize = bufferSize;
+        this.buffersAvailable = new Semaphore(maxBuffersInFlight);
+    }
+
+    /**
+     * Writes the body on the executor. Must be called after the request has
+     * been sent. If the body generator fails, or the executor rejects the
+     * write, the request is aborted with the failure, and the partially
+     * filled buffer is discarded rather than sent.
+     */
+    public void writeBody(Request request, Executor executor)
+    {
+        try {
+            executor.execute(() -> writeBody(request));
+        }
+        catch (RejectedExecutionException e) {
+            request.abort(e);
+            close();
+        }
+    }
+
+    private void writeBody(Request request)
+    {
+        PooledBufferOutputStream out = new PooledBufferOutputStream();
+        try {
+            bodyGenerator.write(out);
+            out.close();
+        }
+        catch (Throwable e) {
+            // abort before the end of the content is signaled, so a truncated body is never sent as complete
+            if (failure == null) {
+                request.abort(e);
+            }
+            out.discard();
+        }
+        finally {
+            close();
+        }
+    }
+
+    @Override
+    public void onComplete(Result result)
+    {
+        if (result.isFailed()) {
+            failure = result.getFailure();
+            // fail the buffers that were not sent, which releases them and unblocks the writer
+            failed(result.getFailure());
+        }
+    }
+
+    private class PooledBufferOutputStream
+            extends OutputStream
+    {
+        private ByteBuffer buffer;
+        private boolean closed;
+
+        @Override
+        public void write(int b)
+                throws IOException
+        {
+            ensureBuffer();
+            buffer.put((byte) b);
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+                throws IOException
+        {
+            while (length > 0) {
+                ensureBuffer();
+                int chunk = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+                if (!buffer.hasRemaining()) {
+                    flushBuffer();
+                }
+            }
+        }
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            // Jackson closes the target stream when it is done, so this only sends the
+            // last buffer; the end of the content is signaled by the provider
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (buffer != null && buffer.position() > 0) {
+                flushBuffer();
+            }
+            else {
+                discard();
+            }
+        }
+
+        /**
+         * Releases the current buffer without sending it, and closes the stream.
+         */
+        public void discard()
+        {
+            closed = true;
+            if (buffer != null) {
+                bufferPool.release(buffer);
+                buffersAvailable.release();
+                buffer = null;
+            }
+        }
+
+        private void ensureBuffer()
+                throws IOException
+        {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            checkFailure();
+            if (buffer != null) {
+                return;
+            }
+            try {
+                buffersAvailable.acquire();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            try {
+                checkFailure();
+            }
+            catch (IOException e) {
+                buffersAvailable.release();
+                throw e;
+            }
+            buffer = bufferPool.acquire(bufferSize, false);
+            buffer.clear();
+        }
+
+        private void flushBuffer()
+                throws IOException
+        {
+            ByteBuffer content = buffer;
+            buffer = null;
+            content.flip();
+            offer(content, new ReleaseBufferCallback(content));
+            checkFailure();
+        }
+
+        private void checkFailure()
+                throws IOException
+        {
+            Throwable failure = StreamingBodyContentProvider.this.failure;
+            if (failure != null) {
+                throw new IOException("Request failed while writing body", failure);
+            }
+        }
+    }
+
+    private class ReleaseBufferCallback
+            implements Callback
+    {
+        private final ByteBuffer buffer;
+
+        public ReleaseBufferCallback(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void succeeded()
+        {
+            release();
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            if (failure == null) {
+                failure = x;
+            }
+            release();
+        }
+
+        private void release()
+        {
+            bufferPool.release(buffer);
+            buffersAvailable.release();
+        }
+    }
+}
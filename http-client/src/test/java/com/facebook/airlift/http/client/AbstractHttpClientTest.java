@@ -6,6 +6,7 @@ import com.facebook.airlift.http.client.StringResponseHandler.StringResponse;
 import com.facebook.airlift.http.client.jetty.JettyHttpClient;
 import com.facebook.airlift.log.Logging;
 import com.facebook.airlift.testing.Closeables;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import io.airlift.units.Duration;
 import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
@@ -61,6 +62,7 @@ import static com.facebook.airlift.http.client.Request.Builder.prepareGet;
 import static com.facebook.airlift.http.client.Request.Builder.preparePost;
 import static com.facebook.airlift.http.client.Request.Builder.preparePut;
 import static com.facebook.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static com.facebook.airlift.http.client.StreamingBodyGenerator.streamingBodyGenerator;
 import static com.facebook.airlift.http.client.StringResponseHandler.createStringResponseHandler;
 import static com.facebook.airlift.testing.Assertions.assertBetweenInclusive;
 import static com.facebook.airlift.testing.Assertions.assertGreaterThanOrEqual;
@@ -361,6 +363,36 @@ public abstract class AbstractHttpClientTest
         assertEquals(servlet.getRequestHeaders("x-custom-filter"), ImmutableList.of("custom value"));
     }
 
+    @Test
+    public void testTemplateRequest()
+            throws Exception
+    {
+        RequestTemplate template = RequestTemplate.builder()
+                .setUri(baseURI.resolve("/road/to/nowhere"))
+                .setMethod("GET")
+                .addHeader("foo", "bar")
+                .addHeader("dupe", "first")
+                .addHeader("Accept", "application/json")
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            Request request = template.newRequest()
+                    .addHeader("dupe", "second")
+                    .addHeader("call", String.valueOf(i))
+                    .build();
+
+            int statusCode = executeRequest(request, createStatusResponseHandler()).getStatusCode();
+            assertEquals(statusCode, 200);
+            assertEquals(servlet.getRequestMethod(), "GET");
+            assertEquals(servlet.getRequestUri(), template.getUri());
+            assertEquals(servlet.getRequestHeaders("foo"), ImmutableList.of("bar"));
+            assertEquals(servlet.getRequestHeaders("dupe"), ImmutableList.of("first", "second"));
+            assertEquals(servlet.getRequestHeaders("call"), ImmutableList.of(String.valueOf(i)));
+            assertEquals(servlet.getRequestHeaders("Accept"), ImmutableList.of("application/json"));
+            assertEquals(servlet.getRequestHeaders("x-custom-filter"), ImmutableList.of("custom value"));
+        }
+    }
+
     @Test
     public void testResponseHeadersCaseInsensitive()
             throws Exception
@@ -522,6 +554,55 @@ public abstract class AbstractHttpClientTest
         assertEquals(servlet.getRequestBytes(), new byte[] {1, 2, 5});
     }
 
+    @Test
+    public void testPutMethodWithStreamingBodyGenerator()
+            throws Exception
+    {
+        byte[] largeBody = new byte[1024 * 1024];
+        ThreadLocalRandom.current().nextBytes(largeBody);
+
+        URI uri = baseURI.resolve("/road/to/nowhere");
+        Request request = preparePut()
+                .setUri(uri)
+                .addHeader("foo", "bar")
+                .setBodyGenerator(streamingBodyGenerator(out -> {
+                    out.write(largeBody[0]);
+                    for (int position = 1; position < largeBody.length; position += 1000) {
+                        out.write(largeBody, position, Math.min(1000, largeBody.length - position));
+                    }
+                }))
+                .build();
+
+        int statusCode = executeRequest(request, createStatusResponseHandler()).getStatusCode();
+        assertEquals(statusCode, 200);
+        assertEquals(servlet.getRequestMethod(), "PUT");
+        assertEquals(servlet.getRequestUri(), uri);
+        assertEquals(servlet.getRequestHeaders("foo"), ImmutableList.of("bar"));
+        assertEquals(servlet.getRequestBytes(), largeBody);
+    }
+
+    @Test
+    public void testPutMethodWithStreamingBodyGeneratorFailure()
+            throws Exception
+    {
+        RuntimeException expected = new RuntimeException("body generator failed");
+        Request request = preparePut()
+                .setUri(baseURI.resolve("/road/to/nowhere"))
+                .setBodyGenerator(streamingBodyGenerator(out -> {
+                    out.write(new byte[64 * 1024]);
+                    throw expected;
+                }))
+                .build();
+
+        try {
+            executeExceptionRequest(createClientConfig(), request);
+            fail("expected exception");
+        }
+        catch (Exception e) {
+            assertThat(Throwables.getCausalChain(e)).contains(expected);
+        }
+    }
+
     @Test
     public void testPutMethodWithFileBodyGenerator()
             throws Exception
@@ -83,6 +83,13 @@ public class TestHttpClientConfig
                 .setMinThreads(8)
                 .setTimeoutConcurrency(1)
                 .setTimeoutThreads(1)
+                .setAdaptiveConcurrencyLimitEnabled(false)
+                .setAdaptiveConcurrencyLimitInitialLimit(20)
+                .setAdaptiveConcurrencyLimitMinLimit(1)
+                .setAdaptiveConcurrencyLimitMaxLimit(1000)
+                .setPerDestinationStatsEnabled(false)
+                .setPerTagStatsEnabled(false)
+                .setStatsMaxKeys(100)
                 .setLogEnabled(false)
                 .setLogHistory(15)
                 .setLogMaxFileSize(new DataSize(1, GIGABYTE))
@@ -131,6 +138,13 @@ public class TestHttpClientConfig
                 .put("http-client.min-threads", "11")
                 .put("http-client.timeout-concurrency", "33")
                 .put("http-client.timeout-threads", "44")
+                .put("http-client.adaptive-concurrency-limit.enabled", "true")
+                .put("http-client.adaptive-concurrency-limit.initial-limit", "50")
+                .put("http-client.adaptive-concurrency-limit.min-limit", "5")
+                .put("http-client.adaptive-concurrency-limit.max-limit", "500")
+                .put("http-client.stats.per-destination-enabled", "true")
+                .put("http-client.stats.per-tag-enabled", "true")
+                .put("http-client.stats.max-keys", "10")
                 .put("http-client.log.enabled", "true")
                 .put("http-client.log.max-history", "22")
                 .put("http-client.log.max-size", "2GB")
@@ -176,6 +190,13 @@ public class TestHttpClientConfig
                 .setMinThreads(11)
                 .setTimeoutConcurrency(33)
                 .setTimeoutThreads(44)
+                .setAdaptiveConcurrencyLimitEnabled(true)
+                .setAdaptiveConcurrencyLimitInitialLimit(50)
+                .setAdaptiveConcurrencyLimitMinLimit(5)
+                .setAdaptiveConcurrencyLimitMaxLimit(500)
+                .setPerDestinationStatsEnabled(true)
+                .setPerTagStatsEnabled(true)
+                .setStatsMaxKeys(10)
                 .setLogEnabled(true)
                 .setLogHistory(22)
                 .setLogMaxFileSize(new DataSize(2, GIGABYTE))
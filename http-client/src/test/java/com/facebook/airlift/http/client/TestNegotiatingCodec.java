@@ -0,0 +1,85 @@
+package com.facebook.airlift.http.client;
+
+import com.facebook.airlift.http.client.testing.TestingResponse;
+import com.facebook.airlift.json.JsonCodec;
+import com.facebook.airlift.json.smile.SmileCodec;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+
+import static com.facebook.airlift.http.client.HttpStatus.OK;
+import static com.facebook.airlift.http.client.NegotiatingCodec.APPLICATION_JSON;
+import static com.facebook.airlift.http.client.NegotiatingCodec.negotiatingCodec;
+import static com.facebook.airlift.http.client.Request.Builder.preparePost;
+import static com.facebook.airlift.http.client.SmileResponseHandler.MEDIA_TYPE_SMILE;
+import static com.facebook.airlift.http.client.TestFullJsonResponseHandler.User;
+import static com.facebook.airlift.http.client.testing.TestingResponse.contentType;
+import static com.facebook.airlift.http.client.testing.TestingResponse.mockResponse;
+import static com.facebook.airlift.json.JsonCodec.jsonCodec;
+import static com.facebook.airlift.json.smile.SmileCodec.smileCodec;
+import static com.google.common.net.HttpHeaders.ACCEPT;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static com.google.common.net.MediaType.JSON_UTF_8;
+import static org.testng.Assert.assertEquals;
+
+public class TestNegotiatingCodec
+{
+    private static final URI DESTINATION = URI.create("http://example.com/user");
+
+    private final JsonCodec<User> jsonCodec = jsonCodec(User.class);
+    private final SmileCodec<User> smileCodec = smileCodec(User.class);
+
+    @Test
+    public void testPreferJson()
+            throws Exception
+    {
+        NegotiatingCodec<User> codec = negotiatingCodec(jsonCodec, smileCodec, false);
+        User user = new User("Joe", 25);
+        Request request = codec.setBody(codec.accept(preparePost().setUri(DESTINATION)), user).build();
+
+        assertEquals(request.getHeader(ACCEPT), "application/json, application/x-jackson-smile; q=0.5");
+        assertEquals(request.getHeader(CONTENT_TYPE), APPLICATION_JSON);
+        assertUser(jsonCodec.fromJson(writeBody(request)), user);
+    }
+
+    @Test
+    public void testPreferSmile()
+            throws Exception
+    {
+        NegotiatingCodec<User> codec = negotiatingCodec(jsonCodec, smileCodec, true);
+        User user = new User("Joe", 25);
+        Request request = codec.setBody(codec.accept(preparePost().setUri(DESTINATION)), user).build();
+
+        assertEquals(request.getHeader(ACCEPT), "application/x-jackson-smile, application/json; q=0.5");
+        assertEquals(request.getHeader(CONTENT_TYPE), MEDIA_TYPE_SMILE.toString());
+        assertUser(smileCodec.fromSmile(writeBody(request)), user);
+    }
+
+    @Test
+    public void testResponseHandler()
+    {
+        // the response is decoded according to its content type, regardless of the preference
+        for (boolean preferSmile : new boolean[] {false, true}) {
+            ResponseHandler<User, RuntimeException> handler = negotiatingCodec(jsonCodec, smileCodec, preferSmile).getResponseHandler();
+            User user = new User("Joe", 25);
+
+            assertUser(handler.handle(null, mockResponse(OK, JSON_UTF_8, jsonCodec.toJson(user))), user);
+            assertUser(handler.handle(null, new TestingResponse(OK, contentType(MEDIA_TYPE_SMILE), smileCodec.toSmile(user))), user);
+        }
+    }
+
+    private static void assertUser(User actual, User expected)
+    {
+        assertEquals(actual.getName(), expected.getName());
+        assertEquals(actual.getAge(), expected.getAge());
+    }
+
+    private static byte[] writeBody(Request request)
+            throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.getBodyGenerator().write(out);
+        return out.toByteArray();
+    }
+}
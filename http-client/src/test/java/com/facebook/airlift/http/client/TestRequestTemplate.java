@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client;
+
+import com.google.common.collect.ImmutableListMultimap;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.Optional;
+
+import static com.facebook.airlift.http.client.Request.Builder.fromRequest;
+import static com.facebook.airlift.http.client.Request.Builder.prepareGet;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+public class TestRequestTemplate
+{
+    private static final RequestTemplate TEMPLATE = RequestTemplate.builder()
+            .setUri(URI.create("http://example.com/base"))
+            .setMethod("GET")
+            .addHeader("User-Agent", "test")
+            .addHeader("Authorization", "secret")
+            .setFollowRedirects(false)
+            .build();
+
+    @Test
+    public void testNewRequest()
+    {
+        Request request = TEMPLATE.newRequest()
+                .addHeader("X-Call", "1")
+                .build();
+
+        assertSame(request.getTemplate(), TEMPLATE);
+        assertEquals(request.getUri(), URI.create("http://example.com/base"));
+        assertEquals(request.getMethod(), "GET");
+        assertFalse(request.isFollowRedirects());
+        assertEquals(request.getAdditionalHeaders(), ImmutableListMultimap.of("X-Call", "1"));
+        assertEquals(request.getHeaders(), ImmutableListMultimap.of(
+                "User-Agent", "test",
+                "Authorization", "secret",
+                "X-Call", "1"));
+        assertEquals(request.getHeader("Authorization"), "secret");
+        assertEquals(request.getHeader("X-Call"), "1");
+    }
+
+    @Test
+    public void testEqualsRequestWithoutTemplate()
+    {
+        Request request = TEMPLATE.newRequest()
+                .setUri(URI.create("http://example.com/other"))
+                .addHeader("X-Call", "1")
+                .build();
+
+        Request expected = prepareGet()
+                .setUri(URI.create("http://example.com/other"))
+                .addHeader("User-Agent", "test")
+                .addHeader("Authorization", "secret")
+                .addHeader("X-Call", "1")
+                .setFollowRedirects(false)
+                .build();
+
+        assertEquals(request, expected);
+        assertEquals(request.hashCode(), expected.hashCode());
+    }
+
+    @Test
+    public void testFromRequestPreservesTemplate()
+    {
+        Request request = TEMPLATE.newRequest()
+                .addHeader("X-Call", "1")
+                .build();
+
+        Request copy = fromRequest(request)
+                .addHeader("X-Trace", "abc")
+                .build();
+
+        assertSame(copy.getTemplate(), TEMPLATE);
+        assertEquals(copy.getAdditionalHeaders(), ImmutableListMultimap.of("X-Call", "1", "X-Trace", "abc"));
+    }
+
+    @Test
+    public void testSetTemplateHeaderDetachesTemplate()
+    {
+        Request request = TEMPLATE.newRequest()
+                .addHeader("X-Call", "1")
+                .setHeader("Authorization", "other")
+                .build();
+
+        assertNull(request.getTemplate());
+        assertEquals(request.getHeaders(), ImmutableListMultimap.of(
+                "User-Agent", "test",
+                "X-Call", "1",
+                "Authorization", "other"));
+    }
+
+    @Test
+    public void testStatsTag()
+    {
+        RequestTemplate template = RequestTemplate.builder()
+                .setUri(URI.create("http://example.com/base"))
+                .setMethod("GET")
+                .setStatsTag("lookup")
+                .build();
+
+        Request request = template.newRequest().build();
+        assertEquals(request.getStatsTag(), Optional.of("lookup"));
+        assertEquals(fromRequest(request).build().getStatsTag(), Optional.of("lookup"));
+        assertEquals(template.newRequest().setStatsTag("other").build().getStatsTag(), Optional.of("other"));
+        assertEquals(TEMPLATE.newRequest().build().getStatsTag(), Optional.empty());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "uri scheme must be http or https: .*")
+    public void testInvalidUri()
+    {
+        RequestTemplate.builder()
+                .setUri(URI.create("ftp://example.com"))
+                .setMethod("GET")
+                .build();
+    }
+}
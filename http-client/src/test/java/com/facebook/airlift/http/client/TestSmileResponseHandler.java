@@ -0,0 +1,78 @@
+package com.facebook.airlift.http.client;
+
+import com.facebook.airlift.http.client.testing.TestingResponse;
+import com.facebook.airlift.json.smile.SmileCodec;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.net.MediaType;
+import org.testng.annotations.Test;
+
+import static com.facebook.airlift.http.client.HttpStatus.INTERNAL_SERVER_ERROR;
+import static com.facebook.airlift.http.client.HttpStatus.OK;
+import static com.facebook.airlift.http.client.SmileResponseHandler.createSmileResponseHandler;
+import static com.facebook.airlift.http.client.TestFullJsonResponseHandler.User;
+import static com.facebook.airlift.http.client.testing.TestingResponse.contentType;
+import static com.facebook.airlift.http.client.testing.TestingResponse.mockResponse;
+import static com.facebook.airlift.json.smile.SmileCodec.smileCodec;
+import static com.google.common.net.MediaType.JSON_UTF_8;
+import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestSmileResponseHandler
+{
+    private static final MediaType SMILE = MediaType.create("application", "x-jackson-smile");
+
+    private final SmileCodec<User> codec = smileCodec(User.class);
+    private final SmileResponseHandler<User> handler = createSmileResponseHandler(codec);
+
+    @Test
+    public void testValidSmile()
+    {
+        User user = new User("Joe", 25);
+        User response = handler.handle(null, new TestingResponse(OK, contentType(SMILE), codec.toSmile(user)));
+
+        assertEquals(response.getName(), user.getName());
+        assertEquals(response.getAge(), user.getAge());
+    }
+
+    @Test
+    public void testInvalidSmile()
+    {
+        byte[] bytes = "not smile".getBytes(UTF_8);
+        try {
+            handler.handle(null, new TestingResponse(OK, contentType(SMILE), bytes));
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals(e.getMessage(), format("Unable to create %s from Smile response (%s bytes)", User.class, bytes.length));
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class, expectedExceptionsMessageRegExp = "Expected application/x-jackson-smile response from server but got application/json; charset=utf-8")
+    public void testJsonResponse()
+    {
+        handler.handle(null, mockResponse(OK, JSON_UTF_8, "{}"));
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class, expectedExceptionsMessageRegExp = "Expected application/x-jackson-smile response from server but got text/plain; charset=utf-8")
+    public void testNonSmileResponse()
+    {
+        handler.handle(null, mockResponse(OK, PLAIN_TEXT_UTF_8, "hello"));
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class, expectedExceptionsMessageRegExp = "Content-Type is not set for response")
+    public void testMissingContentType()
+    {
+        handler.handle(null, new TestingResponse(OK, ImmutableListMultimap.<String, String>of(), "hello".getBytes(UTF_8)));
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class)
+    public void testSmileErrorResponse()
+    {
+        handler.handle(null, new TestingResponse(INTERNAL_SERVER_ERROR, contentType(SMILE), codec.toSmile(new User("Joe", 25))));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client.jetty;
+
+import org.testng.annotations.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestAdaptiveConcurrencyLimiter
+{
+    @Test
+    public void testRejectsOverLimit()
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("http://example.com:80", 2, 1, 10);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit second = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(limiter.tryAcquire());
+        assertEquals(limiter.getInFlight(), 2);
+        assertEquals(limiter.getRejected(), 1);
+
+        first.release();
+        // release is idempotent
+        first.release();
+        assertEquals(limiter.getInFlight(), 1);
+        assertNotNull(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testTimeoutReducesLimit()
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("http://example.com:80", 100, 1, 1000);
+
+        assertNotNull(limiter.tryAcquire());
+        limiter.release(0, 1, true);
+        assertEquals(limiter.getLimit(), 90);
+        assertEquals(limiter.getInFlight(), 0);
+    }
+
+    @Test
+    public void testLimitTracksLatency()
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("http://example.com:80", 10, 1, 1000);
+
+        // fully used limit with stable latency grows the limit
+        for (int i = 0; i < 10; i++) {
+            sample(limiter, MILLISECONDS.toNanos(10), limiter.getLimit());
+        }
+        int grownLimit = limiter.getLimit();
+        assertTrue(grownLimit > 10, "limit did not grow: " + grownLimit);
+
+        // latency increasing well above the minimum shrinks the limit
+        for (int i = 0; i < 100; i++) {
+            sample(limiter, MILLISECONDS.toNanos(100), limiter.getLimit());
+        }
+        assertTrue(limiter.getLimit() < grownLimit, "limit did not shrink: " + limiter.getLimit());
+        assertEquals(limiter.getQueueTimeNanos(), MILLISECONDS.toNanos(90));
+    }
+
+    @Test
+    public void testUnusedLimitDoesNotGrow()
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("http://example.com:80", 10, 1, 1000);
+
+        for (int i = 0; i < 10; i++) {
+            sample(limiter, MILLISECONDS.toNanos(10), 1);
+        }
+        assertEquals(limiter.getLimit(), 10);
+    }
+
+    @Test
+    public void testLimitBounds()
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("http://example.com:80", 5, 2, 8);
+        for (int i = 0; i < 100; i++) {
+            sample(limiter, MILLISECONDS.toNanos(10), limiter.getLimit());
+        }
+        assertEquals(limiter.getLimit(), 8);
+
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(limiter.tryAcquire());
+            limiter.release(0, 1, true);
+        }
+        assertEquals(limiter.getLimit(), 2);
+    }
+
+    private static void sample(AdaptiveConcurrencyLimiter limiter, long rttNanos, int inFlight)
+    {
+        assertNotNull(limiter.tryAcquire());
+        limiter.release(rttNanos, inFlight, false);
+    }
+}
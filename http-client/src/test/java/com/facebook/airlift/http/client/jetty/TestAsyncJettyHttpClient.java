@@ -1,16 +1,26 @@
 package com.facebook.airlift.http.client.jetty;
 
 import com.facebook.airlift.http.client.AbstractHttpClientTest;
+import com.facebook.airlift.http.client.HttpClient.HttpResponseFuture;
 import com.facebook.airlift.http.client.HttpClientConfig;
 import com.facebook.airlift.http.client.Request;
 import com.facebook.airlift.http.client.ResponseHandler;
+import com.facebook.airlift.http.client.StatusResponseHandler.StatusResponse;
 import com.facebook.airlift.http.client.TestingRequestFilter;
 import com.facebook.airlift.http.client.spnego.KerberosConfig;
 import com.google.common.collect.ImmutableList;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
 
+import java.util.concurrent.CountDownLatch;
+
+import static com.facebook.airlift.http.client.Request.Builder.preparePut;
+import static com.facebook.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static com.facebook.airlift.http.client.StreamingBodyGenerator.streamingBodyGenerator;
 import static com.facebook.airlift.testing.Closeables.closeQuietly;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 
 public class TestAsyncJettyHttpClient
         extends AbstractHttpClientTest
@@ -29,6 +39,28 @@ public class TestAsyncJettyHttpClient
         closeQuietly(httpClient);
     }
 
+    @Test(timeOut = 10000)
+    public void testStreamingBodyIsNotWrittenOnCallingThread()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        Request request = preparePut()
+                .setUri(baseURI.resolve("/road/to/nowhere"))
+                .setBodyGenerator(streamingBodyGenerator(out -> {
+                    release.await();
+                    out.write(new byte[] {1, 2, 3});
+                }))
+                .build();
+
+        // returns while the body generator is still blocked
+        HttpResponseFuture<StatusResponse> future = httpClient.executeAsync(request, createStatusResponseHandler());
+        assertFalse(future.isDone());
+
+        release.countDown();
+        assertEquals(future.get().getStatusCode(), 200);
+        assertEquals(servlet.getRequestBytes(), new byte[] {1, 2, 3});
+    }
+
     @Override
     protected HttpClientConfig createClientConfig()
     {
@@ -1,17 +1,48 @@
 package com.facebook.airlift.http.client.jetty;
 
 import com.facebook.airlift.http.client.AbstractHttpClientTest;
+import com.facebook.airlift.http.client.ConcurrencyLimitExceededException;
+import com.facebook.airlift.http.client.HttpClient.HttpResponseFuture;
 import com.facebook.airlift.http.client.HttpClientConfig;
 import com.facebook.airlift.http.client.HttpRequestFilter;
 import com.facebook.airlift.http.client.Request;
 import com.facebook.airlift.http.client.ResponseHandler;
+import com.facebook.airlift.http.client.StatusResponseHandler.StatusResponse;
 import com.facebook.airlift.http.client.TestingRequestFilter;
 import com.facebook.airlift.http.client.spnego.KerberosConfig;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.units.Duration;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.weakref.jmx.MBeanExporter;
 
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+
+import static com.facebook.airlift.http.client.Request.Builder.prepareGet;
+import static com.facebook.airlift.http.client.Request.Builder.preparePost;
+import static com.facebook.airlift.http.client.StaticBodyGenerator.createStaticBodyGenerator;
+import static com.facebook.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static com.facebook.airlift.http.client.StringResponseHandler.createStringResponseHandler;
+import static com.facebook.airlift.testing.Assertions.assertInstanceOf;
 import static com.facebook.airlift.testing.Closeables.closeQuietly;
+import static io.airlift.units.Duration.nanosSince;
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 public class TestJettyHttpClient
         extends AbstractHttpClientTest
@@ -52,4 +83,128 @@ public class TestJettyHttpClient
             return client.execute(request, responseHandler);
         }
     }
+
+    @Test(timeOut = 10000)
+    public void testConcurrencyLimitExceeded()
+            throws Exception
+    {
+        HttpClientConfig config = createClientConfig()
+                .setAdaptiveConcurrencyLimitEnabled(true)
+                .setAdaptiveConcurrencyLimitInitialLimit(1)
+                .setAdaptiveConcurrencyLimitMinLimit(1)
+                .setAdaptiveConcurrencyLimitMaxLimit(1);
+
+        try (JettyHttpClient client = new JettyHttpClient("test-concurrency-limit", config, new KerberosConfig(), ImmutableList.of())) {
+            // holds the only permit until the server responds
+            HttpResponseFuture<StatusResponse> inFlight = client.executeAsync(
+                    prepareGet().setUri(URI.create(baseURI.toASCIIString() + "/?sleep=1000")).build(),
+                    createStatusResponseHandler());
+
+            try {
+                client.execute(prepareGet().setUri(baseURI).build(), createStatusResponseHandler());
+                fail("expected ConcurrencyLimitExceededException");
+            }
+            catch (ConcurrencyLimitExceededException e) {
+                assertEquals(e.getLimit(), 1);
+            }
+            assertEquals(client.getConcurrencyLimitRejections().getTotalCount(), 1);
+
+            // the permit is released when the request completes
+            assertEquals(inFlight.get().getStatusCode(), 200);
+            assertEquals(client.execute(prepareGet().setUri(baseURI).build(), createStatusResponseHandler()).getStatusCode(), 200);
+        }
+    }
+
+    @Test
+    public void testPrewarm()
+            throws Exception
+    {
+        HttpClientConfig config = createClientConfig().setMaxConnectionsPerServer(4);
+        // HTTP/2 requests are multiplexed over a single session
+        int connections = config.isHttp2Enabled() ? 1 : 3;
+        int maxConnections = config.isHttp2Enabled() ? 1 : 4;
+
+        try (JettyHttpClient client = new JettyHttpClient("test-prewarm", config, new KerberosConfig(), ImmutableList.of())) {
+            assertEquals(client.prewarm(baseURI, 3).get(10, SECONDS).intValue(), connections);
+            assertEquals(client.getPrewarmedConnections().getTotalCount(), connections);
+            assertEquals(client.getPrewarmTime().getAllTime().getCount(), 1.0);
+
+            // already warm
+            assertEquals(client.prewarm(baseURI, 2).get(10, SECONDS).intValue(), connections);
+            assertEquals(client.getPrewarmedConnections().getTotalCount(), connections);
+
+            // capped at the max connections per server
+            assertEquals(client.prewarm(baseURI, 10).get(10, SECONDS).intValue(), maxConnections);
+
+            assertEquals(client.execute(prepareGet().setUri(baseURI).build(), createStatusResponseHandler()).getStatusCode(), 200);
+        }
+    }
+
+    @Test
+    public void testPrewarmUnreachableDestination()
+            throws Exception
+    {
+        URI destination;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            destination = URI.create("http://127.0.0.1:" + socket.getLocalPort());
+        }
+
+        try (JettyHttpClient client = new JettyHttpClient("test-prewarm-unreachable", createClientConfig(), new KerberosConfig(), ImmutableList.of())) {
+            client.prewarm(destination, 2).get(10, SECONDS);
+            fail("expected ConnectException");
+        }
+        catch (ExecutionException e) {
+            assertInstanceOf(e.getCause(), ConnectException.class);
+        }
+    }
+
+    @Test
+    public void testKeyedRequestStats()
+            throws Exception
+    {
+        HttpClientConfig config = createClientConfig()
+                .setPerDestinationStatsEnabled(true)
+                .setPerTagStatsEnabled(true);
+        servlet.setResponseBody("response");
+        String destination = format("%s://%s:%s", baseURI.getScheme(), baseURI.getHost(), baseURI.getPort());
+
+        try (JettyHttpClient client = new JettyHttpClient("test-keyed-stats", config, new KerberosConfig(), ImmutableList.of())) {
+            Request request = preparePost()
+                    .setUri(baseURI)
+                    .setStatsTag("echo")
+                    .setBodyGenerator(createStaticBodyGenerator(new byte[100]))
+                    .build();
+            // the request completes, and its stats are recorded, once the response body has been read
+            assertEquals(client.execute(request, createStringResponseHandler()).getBody(), "response");
+            assertEquals(client.execute(prepareGet().setUri(baseURI).build(), createStringResponseHandler()).getBody(), "response");
+
+            assertEventually(() -> client.getRequestStatsByDestination().get(destination).getRequests() == 2);
+            KeyedRequestStats destinationStats = client.getRequestStatsByDestination().get(destination);
+            assertEquals(destinationStats.get2xxResponses(), 2);
+            assertEquals(destinationStats.getWrittenBytes(), 100);
+            assertEquals(destinationStats.getReadBytes(), 2 * "response".length());
+
+            KeyedRequestStats tagStats = client.getRequestStatsByTag().get("echo");
+            assertEquals(tagStats.getRequests(), 1);
+            assertEquals(tagStats.getWrittenBytes(), 100);
+            assertEquals(client.getRequestStatsByTag().keySet(), ImmutableSet.of("echo"));
+
+            // the per-key stats are exported as maps
+            MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+            ObjectName name = new ObjectName("com.facebook.airlift.http.client:name=TestKeyedRequestStats");
+            new MBeanExporter(mbeanServer).export(name.toString(), client);
+            assertEquals(mbeanServer.getAttribute(name, "RequestStatsPerDestination.Requests"), ImmutableMap.of(destination, 2L));
+            assertEquals(mbeanServer.getAttribute(name, "RequestStatsPerTag.WrittenBytes"), ImmutableMap.of("echo", 100L));
+        }
+    }
+
+    private static void assertEventually(BooleanSupplier condition)
+            throws InterruptedException
+    {
+        long start = System.nanoTime();
+        while (!condition.getAsBoolean()) {
+            assertTrue(nanosSince(start).compareTo(new Duration(10, SECONDS)) < 0, "condition not met");
+            MILLISECONDS.sleep(10);
+        }
+    }
 }
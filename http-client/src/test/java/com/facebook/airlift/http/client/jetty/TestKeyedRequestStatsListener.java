@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableList;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestKeyedRequestStatsListener
+{
+    private static final URI DESTINATION = URI.create("http://example.com:8080/path");
+
+    private final HttpClient httpClient = new HttpClient();
+
+    @Test
+    public void testResponse()
+    {
+        KeyedRequestStats destinationStats = new KeyedRequestStats("destination");
+        KeyedRequestStats tagStats = new KeyedRequestStats("tag");
+        Request request = httpClient.newRequest(DESTINATION);
+        KeyedRequestStatsListener listener = new KeyedRequestStatsListener(new JettyRequestListener(DESTINATION, () -> {}), ImmutableList.of(destinationStats, tagStats));
+        HttpResponse response = new HttpResponse(request, ImmutableList.of()).status(404);
+
+        listener.onContent(request, ByteBuffer.allocate(30));
+        listener.onContent(request, ByteBuffer.allocate(12));
+        listener.onContent(response, ByteBuffer.allocate(100));
+        listener.onComplete(new Result(request, response));
+
+        for (KeyedRequestStats stats : ImmutableList.of(destinationStats, tagStats)) {
+            assertEquals(stats.getRequests(), 1);
+            assertEquals(stats.getFailed(), 0);
+            assertEquals(stats.get4xxResponses(), 1);
+            assertEquals(stats.getWrittenBytes(), 42);
+            assertEquals(stats.getReadBytes(), 100);
+            assertEquals(stats.getRequestTime().getCount(), 1.0);
+            assertEquals(stats.getResponseTime().getCount(), 1.0);
+        }
+    }
+
+    @Test
+    public void testFailure()
+    {
+        KeyedRequestStats stats = new KeyedRequestStats("destination");
+        Request request = httpClient.newRequest(DESTINATION);
+        KeyedRequestStatsListener listener = new KeyedRequestStatsListener(new JettyRequestListener(DESTINATION, () -> {}), ImmutableList.of(stats));
+
+        listener.onContent(request, ByteBuffer.allocate(30));
+        listener.onComplete(new Result(request, new IOException("connection reset"), null));
+
+        assertEquals(stats.getRequests(), 1);
+        assertEquals(stats.getFailed(), 1);
+        assertEquals(stats.getWrittenBytes(), 30);
+        assertEquals(stats.getReadBytes(), 0);
+        assertEquals(stats.getRequestTime().getCount(), 0.0);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.testng.annotations.Test;
+
+import static com.facebook.airlift.http.client.jetty.KeyedRequestStatsMap.OTHER_KEY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestKeyedRequestStatsMap
+{
+    @Test
+    public void testRecord()
+    {
+        KeyedRequestStatsMap statsMap = new KeyedRequestStatsMap(10);
+        KeyedRequestStats stats = statsMap.get("http://example.com:80");
+        assertSame(statsMap.get("http://example.com:80"), stats);
+
+        stats.recordResponse(200, MILLISECONDS.toNanos(10), MILLISECONDS.toNanos(2), 5, 100);
+        stats.recordResponse(204, MILLISECONDS.toNanos(20), MILLISECONDS.toNanos(4), 5, 0);
+        stats.recordResponse(302, MILLISECONDS.toNanos(5), MILLISECONDS.toNanos(1), 0, 10);
+        stats.recordResponse(404, MILLISECONDS.toNanos(5), MILLISECONDS.toNanos(1), 0, 10);
+        stats.recordResponse(503, MILLISECONDS.toNanos(5), MILLISECONDS.toNanos(1), 0, 10);
+        stats.recordFailure(7);
+
+        assertEquals(stats.getRequests(), 6);
+        assertEquals(stats.getFailed(), 1);
+        assertEquals(stats.get1xxResponses(), 0);
+        assertEquals(stats.get2xxResponses(), 2);
+        assertEquals(stats.get3xxResponses(), 1);
+        assertEquals(stats.get4xxResponses(), 1);
+        assertEquals(stats.get5xxResponses(), 1);
+        assertEquals(stats.getReadBytes(), 130);
+        assertEquals(stats.getWrittenBytes(), 17);
+        assertEquals(stats.getRequestTime().getCount(), 5.0);
+        assertEquals(stats.getResponseTime().getCount(), 5.0);
+        assertEquals(stats.getRequestTime().getMax(), 20.0);
+    }
+
+    @Test
+    public void testMaxKeys()
+    {
+        KeyedRequestStatsMap statsMap = new KeyedRequestStatsMap(2);
+        KeyedRequestStats a = statsMap.get("a");
+        KeyedRequestStats b = statsMap.get("b");
+        KeyedRequestStats c = statsMap.get("c");
+        KeyedRequestStats d = statsMap.get("d");
+
+        assertEquals(a.getKey(), "a");
+        assertEquals(b.getKey(), "b");
+        assertEquals(c.getKey(), OTHER_KEY);
+        assertSame(c, d);
+
+        // existing keys are still tracked separately
+        assertSame(statsMap.get("a"), a);
+
+        // the overflow entry is only reported once it has been used
+        assertEquals(statsMap.getAll().keySet().size(), 2);
+        c.recordFailure(0);
+        assertEquals(statsMap.getAll().keySet().size(), 3);
+        assertTrue(statsMap.getAll().containsKey(OTHER_KEY));
+    }
+
+    @Test
+    public void testManagedMaps()
+    {
+        KeyedRequestStatsMap statsMap = new KeyedRequestStatsMap(10);
+        statsMap.get("b").recordResponse(200, MILLISECONDS.toNanos(10), MILLISECONDS.toNanos(2), 20, 100);
+        statsMap.get("b").recordResponse(503, MILLISECONDS.toNanos(10), MILLISECONDS.toNanos(2), 20, 10);
+        statsMap.get("a").recordFailure(5);
+
+        assertEquals(statsMap.getRequests(), ImmutableMap.of("a", 1L, "b", 2L));
+        assertEquals(ImmutableList.copyOf(statsMap.getRequests().keySet()), ImmutableList.of("a", "b"));
+        assertEquals(statsMap.getFailed(), ImmutableMap.of("a", 1L, "b", 0L));
+        assertEquals(statsMap.get2xxResponses(), ImmutableMap.of("a", 0L, "b", 1L));
+        assertEquals(statsMap.get5xxResponses(), ImmutableMap.of("a", 0L, "b", 1L));
+        assertEquals(statsMap.getReadBytes(), ImmutableMap.of("a", 0L, "b", 110L));
+        assertEquals(statsMap.getWrittenBytes(), ImmutableMap.of("a", 5L, "b", 40L));
+        assertEquals(statsMap.getRequestTimeP50().keySet(), ImmutableSet.of("a", "b"));
+    }
+
+    @Test
+    public void testDump()
+    {
+        KeyedRequestStatsMap statsMap = new KeyedRequestStatsMap(10);
+        statsMap.get("b").recordResponse(200, MILLISECONDS.toNanos(10), MILLISECONDS.toNanos(2), 0, 100);
+        statsMap.get("a").recordFailure(0);
+
+        String[] lines = statsMap.dump().split("\n");
+        assertEquals(lines.length, 3);
+        assertTrue(lines[0].startsWith("key\t"));
+        assertTrue(lines[1].startsWith("a\t1\t1\t"));
+        assertTrue(lines[2].startsWith("b\t1\t0\t1\t"));
+        assertFalse(statsMap.dump().contains(OTHER_KEY));
+    }
+}
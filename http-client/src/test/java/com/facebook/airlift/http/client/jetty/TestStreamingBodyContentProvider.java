@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.http.client.jetty;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import static com.facebook.airlift.http.client.StreamingBodyGenerator.streamingBodyGenerator;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestStreamingBodyContentProvider
+{
+    // the pool rounds buffer sizes up to a multiple of this
+    private static final int BUFFER_SIZE = 1024;
+
+    private final HttpClient httpClient = new HttpClient();
+
+    @Test
+    public void testWriteBody()
+    {
+        StreamingBodyContentProvider provider = new StreamingBodyContentProvider(
+                streamingBodyGenerator(out -> out.write(new byte[BUFFER_SIZE + 10])),
+                new MappedByteBufferPool(),
+                BUFFER_SIZE,
+                4);
+        Request request = httpClient.newRequest(URI.create("http://example.com"));
+
+        provider.writeBody(request, directExecutor());
+
+        Iterator<ByteBuffer> content = provider.iterator();
+        assertTrue(content.hasNext());
+        assertEquals(content.next().remaining(), BUFFER_SIZE);
+        assertTrue(content.hasNext());
+        assertEquals(content.next().remaining(), 10);
+        assertFalse(content.hasNext());
+        assertNull(request.getAbortCause());
+    }
+
+    @Test
+    public void testFailedGeneratorDoesNotSendPartialBuffer()
+    {
+        RuntimeException expected = new RuntimeException("body generator failed");
+        StreamingBodyContentProvider provider = new StreamingBodyContentProvider(
+                streamingBodyGenerator(out -> {
+                    out.write(new byte[BUFFER_SIZE + 10]);
+                    throw expected;
+                }),
+                new MappedByteBufferPool(),
+                BUFFER_SIZE,
+                4);
+        Request request = httpClient.newRequest(URI.create("http://example.com"));
+
+        provider.writeBody(request, directExecutor());
+
+        assertSame(request.getAbortCause(), expected);
+        // the full buffer was sent before the failure, the partial one is discarded
+        Iterator<ByteBuffer> content = provider.iterator();
+        assertTrue(content.hasNext());
+        assertEquals(content.next().remaining(), BUFFER_SIZE);
+        assertFalse(content.hasNext());
+    }
+}
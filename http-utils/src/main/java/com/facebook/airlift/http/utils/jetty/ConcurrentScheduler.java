@@ -1,13 +1,16 @@
 package com.facebook.airlift.http.utils.jetty;
 
 import com.facebook.airlift.concurrent.ConcurrentScheduledExecutor;
+import com.facebook.airlift.concurrent.TimingWheelScheduledExecutor;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.eclipse.jetty.util.thread.Scheduler;
 
 import javax.annotation.concurrent.GuardedBy;
 
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.Math.max;
@@ -17,12 +20,10 @@ public class ConcurrentScheduler
         extends AbstractLifeCycle
         implements Scheduler
 {
-    private final int schedulerCount;
-    private final int threadsPerScheduler;
-    private final String threadBaseName;
+    private final Supplier<ScheduledExecutorService> schedulerFactory;
 
     @GuardedBy("this")
-    private volatile ConcurrentScheduledExecutor concurrentScheduler;
+    private volatile ScheduledExecutorService concurrentScheduler;
 
     public ConcurrentScheduler(
             int schedulerCount,
@@ -31,10 +32,14 @@ public class ConcurrentScheduler
     {
         checkArgument(schedulerCount > 0, "schedulerCount must be at least one");
         checkArgument(threadsPerScheduler > 0, "threadsPerScheduler must be at least one");
+        requireNonNull(threadBaseName, "threadBaseName is null");
 
-        this.schedulerCount = schedulerCount;
-        this.threadsPerScheduler = threadsPerScheduler;
-        this.threadBaseName = requireNonNull(threadBaseName, "threadBaseName is null");
+        this.schedulerFactory = () -> new ConcurrentScheduledExecutor(schedulerCount, threadsPerScheduler, threadBaseName, true);
+    }
+
+    private ConcurrentScheduler(Supplier<ScheduledExecutorService> schedulerFactory)
+    {
+        this.schedulerFactory = requireNonNull(schedulerFactory, "schedulerFactory is null");
     }
 
     public static ConcurrentScheduler createConcurrentScheduler(
@@ -47,12 +52,24 @@ public class ConcurrentScheduler
         return new ConcurrentScheduler(concurrency, threadsPerScheduler, threadBaseName);
     }
 
+    /**
+     * Creates a scheduler backed by a {@link TimingWheelScheduledExecutor}, for
+     * servers and clients with many concurrent timeouts.  Timeouts may fire up
+     * to one tick of the wheel late.
+     */
+    public static ConcurrentScheduler createTimingWheelScheduler(String threadBaseName, int totalThreads)
+    {
+        requireNonNull(threadBaseName, "threadBaseName is null");
+        checkArgument(totalThreads >= 1, "totalThreads must be at least one");
+        return new ConcurrentScheduler(() -> new TimingWheelScheduledExecutor(threadBaseName, totalThreads));
+    }
+
     @Override
     protected void doStart()
     {
         synchronized (this) {
             if (concurrentScheduler == null) {
-                concurrentScheduler = new ConcurrentScheduledExecutor(schedulerCount, threadsPerScheduler, threadBaseName, true);
+                concurrentScheduler = schedulerFactory.get();
             }
         }
     }
@@ -71,7 +88,7 @@ public class ConcurrentScheduler
     @Override
     public Task schedule(Runnable task, long delay, TimeUnit unit)
     {
-        ConcurrentScheduledExecutor scheduler = this.concurrentScheduler;
+        ScheduledExecutorService scheduler = this.concurrentScheduler;
         if (scheduler == null) {
             return () -> false;
         }
@@ -27,6 +27,9 @@ import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.util.JSONPObject;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.net.HttpHeaders;
 
 import javax.inject.Inject;
@@ -44,6 +47,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Provider
@@ -54,7 +58,15 @@ public class JsonMapper
 {
     public static final Logger log = Logger.get(JsonMapper.class);
 
+    private static final int MAX_CACHED_WRITERS = 1000;
+
     private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+    private final ObjectWriter objectWriter;
+    private final ObjectWriter prettyObjectWriter;
+    private final LoadingCache<WriterKey, ObjectWriter> writers = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_WRITERS)
+            .build(CacheLoader.from(this::createWriter));
 
     private final AtomicReference<UriInfo> uriInfo = new AtomicReference<>();
 
@@ -62,6 +74,13 @@ public class JsonMapper
     public JsonMapper(ObjectMapper objectMapper)
     {
         this.objectMapper = objectMapper;
+
+        // escape HTML characters using a copy of the factory, as the factory of the mapper is shared
+        this.jsonFactory = objectMapper.getFactory().copy();
+        this.jsonFactory.setCharacterEscapes(HTMLCharacterEscapes.INSTANCE);
+
+        this.objectWriter = objectMapper.writer();
+        this.prettyObjectWriter = objectWriter.withDefaultPrettyPrinter();
     }
 
     @Context
@@ -123,54 +142,22 @@ public class JsonMapper
         // Prevent broken browser from attempting to render the json as html
         httpHeaders.add(HttpHeaders.X_CONTENT_TYPE_OPTIONS, "nosniff");
 
-        JsonFactory jsonFactory = objectMapper.getFactory();
-        jsonFactory.setCharacterEscapes(HTMLCharacterEscapes.INSTANCE);
-
         JsonGenerator jsonGenerator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8);
 
         // Important: we are NOT to close the underlying stream after
         // mapping, so we need to instruct generator:
         jsonGenerator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
 
-        // Pretty print?
-        if (isPrettyPrintRequested()) {
-            jsonGenerator.useDefaultPrettyPrinter();
-        }
-
-        // 04-Mar-2010, tatu: How about type we were given? (if any)
-        JavaType rootType = null;
-        if (genericType != null && value != null) {
-            // 10-Jan-2011, tatu: as per [JACKSON-456], it's not safe to just force root
-            //    type since it prevents polymorphic type serialization. Since we really
-            //    just need this for generics, let's only use generic type if it's truly
-            //    generic.
-            if (genericType.getClass() != Class.class) { // generic types are other implementations of 'java.lang.reflect.Type'
-                // This is still not exactly right; should root type be further
-                // specialized with 'value.getClass()'? Let's see how well this works before
-                // trying to come up with more complete solution.
-                rootType = objectMapper.getTypeFactory().constructType(genericType);
-                // 26-Feb-2011, tatu: To help with [JACKSON-518], we better recognize cases where
-                //    type degenerates back into "Object.class" (as is the case with plain TypeVariable,
-                //    for example), and not use that.
-                //
-                if (rootType.getRawClass() == Object.class) {
-                    rootType = null;
-                }
-            }
-        }
+        boolean pretty = isPrettyPrintRequested();
 
+        ObjectWriter writer;
         String jsonpFunctionName = getJsonpFunctionName();
         if (jsonpFunctionName != null) {
-            value = new JSONPObject(jsonpFunctionName, value, rootType);
-            rootType = null;
-        }
-
-        ObjectWriter writer;
-        if (rootType != null) {
-            writer = objectMapper.writerFor(rootType);
+            value = new JSONPObject(jsonpFunctionName, value, getRootType(genericType));
+            writer = pretty ? prettyObjectWriter : objectWriter;
         }
         else {
-            writer = objectMapper.writer();
+            writer = writers.getUnchecked(new WriterKey(genericType, pretty));
         }
 
         try {
@@ -189,6 +176,43 @@ public class JsonMapper
         }
     }
 
+    private ObjectWriter createWriter(WriterKey key)
+    {
+        JavaType rootType = getRootType(key.getGenericType());
+        ObjectWriter writer = (rootType == null) ? objectWriter : objectMapper.writerFor(rootType);
+        if (key.isPretty()) {
+            writer = writer.withDefaultPrettyPrinter();
+        }
+        return writer;
+    }
+
+    private JavaType getRootType(Type genericType)
+    {
+        // 04-Mar-2010, tatu: How about type we were given? (if any)
+        if (genericType == null) {
+            return null;
+        }
+        // 10-Jan-2011, tatu: as per [JACKSON-456], it's not safe to just force root
+        //    type since it prevents polymorphic type serialization. Since we really
+        //    just need this for generics, let's only use generic type if it's truly
+        //    generic.
+        if (genericType.getClass() == Class.class) { // generic types are other implementations of 'java.lang.reflect.Type'
+            return null;
+        }
+        // This is still not exactly right; should root type be further
+        // specialized with 'value.getClass()'? Let's see how well this works before
+        // trying to come up with more complete solution.
+        JavaType rootType = objectMapper.getTypeFactory().constructType(genericType);
+        // 26-Feb-2011, tatu: To help with [JACKSON-518], we better recognize cases where
+        //    type degenerates back into "Object.class" (as is the case with plain TypeVariable,
+        //    for example), and not use that.
+        //
+        if (rootType.getRawClass() == Object.class) {
+            return null;
+        }
+        return rootType;
+    }
+
     private boolean isPrettyPrintRequested()
     {
         UriInfo uriInfo = getUriInfo();
@@ -214,6 +238,48 @@ public class JsonMapper
         return queryParameters.getFirst("jsonp");
     }
 
+    private static final class WriterKey
+    {
+        private final Type genericType;
+        private final boolean pretty;
+
+        public WriterKey(Type genericType, boolean pretty)
+        {
+            this.genericType = genericType;
+            this.pretty = pretty;
+        }
+
+        public Type getGenericType()
+        {
+            return genericType;
+        }
+
+        public boolean isPretty()
+        {
+            return pretty;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            WriterKey other = (WriterKey) o;
+            return pretty == other.pretty &&
+                    Objects.equals(genericType, other.genericType);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(genericType, pretty);
+        }
+    }
+
     private static class HTMLCharacterEscapes
             extends CharacterEscapes
     {
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.jaxrs;
+
+import com.facebook.airlift.jaxrs.testing.GuavaMultivaluedMap;
+import com.facebook.airlift.json.JsonObjectMapperProvider;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static java.util.function.Function.identity;
+import static java.util.stream.IntStream.range;
+
+/**
+ * Measures writing a response with the mapper, which creates only a generator
+ * per response, against resolving the root type and writer for every response.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkJsonMapper
+{
+    private static final Type GENERIC_TYPE = new TypeToken<Map<String, Long>>() {}.getType();
+
+    @Param({"1", "100"})
+    private int entries;
+
+    private ObjectMapper objectMapper;
+    private JsonMapper jsonMapper;
+    private Map<String, Long> value;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup()
+    {
+        objectMapper = new JsonObjectMapperProvider().get();
+        jsonMapper = new JsonMapper(objectMapper);
+        value = range(0, entries)
+                .mapToObj(i -> "key-" + i)
+                .collect(toImmutableMap(identity(), key -> (long) key.hashCode()));
+    }
+
+    @Benchmark
+    public int writeWithJsonMapper()
+            throws IOException
+    {
+        buffer.reset();
+        jsonMapper.writeTo(value, ImmutableMap.class, GENERIC_TYPE, null, null, new GuavaMultivaluedMap<>(), buffer);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public int writeWithWriterLookup()
+            throws IOException
+    {
+        buffer.reset();
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        objectMapper.writerFor(objectMapper.getTypeFactory().constructType(GENERIC_TYPE)).writeValue(generator, value);
+        buffer.write('\n');
+        return buffer.size();
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkJsonMapper.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
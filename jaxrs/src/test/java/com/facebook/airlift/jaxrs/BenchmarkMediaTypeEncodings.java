@@ -0,0 +1,254 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.jaxrs;
+
+import com.facebook.airlift.http.client.thrift.ThriftProtocolUtils;
+import com.facebook.airlift.json.JsonCodec;
+import com.facebook.airlift.json.smile.SmileCodec;
+import com.facebook.drift.annotations.ThriftConstructor;
+import com.facebook.drift.annotations.ThriftField;
+import com.facebook.drift.annotations.ThriftStruct;
+import com.facebook.drift.codec.ThriftCodec;
+import com.facebook.drift.codec.ThriftCodecManager;
+import com.facebook.drift.codec.internal.compiler.CompilerThriftCodecFactory;
+import com.facebook.drift.transport.netty.codec.Protocol;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.facebook.airlift.json.JsonCodec.jsonCodec;
+import static com.facebook.airlift.json.smile.SmileCodec.smileCodec;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.IntStream.range;
+
+/**
+ * Compares the encode and decode cost of the media types served by the
+ * JAX-RS module for the same payload.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkMediaTypeEncodings
+{
+    @Param({"1", "100"})
+    private int items;
+
+    private JsonCodec<Payload> jsonCodec;
+    private SmileCodec<Payload> smileCodec;
+    private ThriftCodec<Payload> thriftCodec;
+    private Payload payload;
+    private byte[] json;
+    private byte[] smile;
+    private byte[] thriftBinary;
+    private byte[] thriftCompact;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup()
+            throws Exception
+    {
+        jsonCodec = jsonCodec(Payload.class);
+        smileCodec = smileCodec(Payload.class);
+        thriftCodec = new ThriftCodecManager(new CompilerThriftCodecFactory(false)).getCodec(Payload.class);
+
+        payload = createPayload(items);
+        json = jsonCodec.toJsonBytes(payload);
+        smile = smileCodec.toSmile(payload);
+        thriftBinary = writeThrift(Protocol.BINARY);
+        thriftCompact = writeThrift(Protocol.COMPACT);
+    }
+
+    @Benchmark
+    public byte[] encodeJson()
+    {
+        return jsonCodec.toJsonBytes(payload);
+    }
+
+    @Benchmark
+    public byte[] encodeSmile()
+    {
+        return smileCodec.toSmile(payload);
+    }
+
+    @Benchmark
+    public byte[] encodeThriftBinary()
+            throws Exception
+    {
+        return writeThrift(Protocol.BINARY);
+    }
+
+    @Benchmark
+    public byte[] encodeThriftCompact()
+            throws Exception
+    {
+        return writeThrift(Protocol.COMPACT);
+    }
+
+    @Benchmark
+    public Payload decodeJson()
+    {
+        return jsonCodec.fromJson(json);
+    }
+
+    @Benchmark
+    public Payload decodeSmile()
+    {
+        return smileCodec.fromSmile(smile);
+    }
+
+    @Benchmark
+    public Payload decodeThriftBinary()
+            throws Exception
+    {
+        return ThriftProtocolUtils.read(thriftCodec, Protocol.BINARY, new ByteArrayInputStream(thriftBinary));
+    }
+
+    @Benchmark
+    public Payload decodeThriftCompact()
+            throws Exception
+    {
+        return ThriftProtocolUtils.read(thriftCodec, Protocol.COMPACT, new ByteArrayInputStream(thriftCompact));
+    }
+
+    private byte[] writeThrift(Protocol protocol)
+            throws Exception
+    {
+        buffer.reset();
+        ThriftProtocolUtils.write(payload, thriftCodec, protocol, buffer);
+        return buffer.toByteArray();
+    }
+
+    private static Payload createPayload(int items)
+    {
+        return new Payload(
+                "query-20190101-000000-00000",
+                range(0, items)
+                        .mapToObj(i -> new Item(i, "item-" + i, i * 1.5, ImmutableList.of("tag-a", "tag-b")))
+                        .collect(toImmutableList()));
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkMediaTypeEncodings.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @ThriftStruct
+    public static class Payload
+    {
+        private final String id;
+        private final List<Item> items;
+
+        @JsonCreator
+        @ThriftConstructor
+        public Payload(@JsonProperty("id") String id, @JsonProperty("items") List<Item> items)
+        {
+            this.id = requireNonNull(id, "id is null");
+            this.items = ImmutableList.copyOf(requireNonNull(items, "items is null"));
+        }
+
+        @JsonProperty
+        @ThriftField(1)
+        public String getId()
+        {
+            return id;
+        }
+
+        @JsonProperty
+        @ThriftField(2)
+        public List<Item> getItems()
+        {
+            return items;
+        }
+    }
+
+    @ThriftStruct
+    public static class Item
+    {
+        private final long id;
+        private final String name;
+        private final double score;
+        private final List<String> tags;
+
+        @JsonCreator
+        @ThriftConstructor
+        public Item(@JsonProperty("id") long id, @JsonProperty("name") String name, @JsonProperty("score") double score, @JsonProperty("tags") List<String> tags)
+        {
+            this.id = id;
+            this.name = requireNonNull(name, "name is null");
+            this.score = score;
+            this.tags = ImmutableList.copyOf(requireNonNull(tags, "tags is null"));
+        }
+
+        @JsonProperty
+        @ThriftField(1)
+        public long getId()
+        {
+            return id;
+        }
+
+        @JsonProperty
+        @ThriftField(2)
+        public String getName()
+        {
+            return name;
+        }
+
+        @JsonProperty
+        @ThriftField(3)
+        public double getScore()
+        {
+            return score;
+        }
+
+        @JsonProperty
+        @ThriftField(4)
+        public List<String> getTags()
+        {
+            return tags;
+        }
+    }
+}
@@ -19,7 +19,9 @@ import com.facebook.airlift.jaxrs.testing.GuavaMultivaluedMap;
 import com.facebook.airlift.json.JsonCodec;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
 import com.google.common.net.HttpHeaders;
+import com.google.common.reflect.TypeToken;
 import org.testng.annotations.Test;
 
 import javax.ws.rs.WebApplicationException;
@@ -29,10 +31,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.List;
 import java.util.zip.ZipException;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -60,15 +66,46 @@ public class TestJsonMapper
         jsonMapper.writeTo(value, String.class, null, null, null, headers, outputStream);
 
         String json = new String(outputStream.toByteArray(), UTF_8);
-        assertTrue(!json.contains("<"));
-        assertTrue(!json.contains(">"));
-        assertTrue(!json.contains("'"));
-        assertTrue(!json.contains("&"));
+        assertFalse(json.contains("<"));
+        assertFalse(json.contains(">"));
+        assertFalse(json.contains("'"));
+        assertFalse(json.contains("&"));
         assertEquals(jsonCodec.fromJson(json), value);
 
         assertEquals(headers.getFirst(HttpHeaders.X_CONTENT_TYPE_OPTIONS), "nosniff");
     }
 
+    @Test
+    public void testSharedFactoryIsNotModified()
+            throws IOException
+    {
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonMapper jsonMapper = new JsonMapper(objectMapper);
+        jsonMapper.writeTo("<>'&", String.class, null, null, null, new GuavaMultivaluedMap<>(), new ByteArrayOutputStream());
+
+        assertNull(objectMapper.getFactory().getCharacterEscapes());
+        assertEquals(objectMapper.writeValueAsString("<"), "\"<\"");
+    }
+
+    @Test
+    public void testGenericType()
+            throws IOException
+    {
+        JsonCodec<List<String>> jsonCodec = JsonCodec.listJsonCodec(String.class);
+        JsonMapper jsonMapper = new JsonMapper(new ObjectMapper());
+        Type genericType = new TypeToken<List<String>>() {}.getType();
+
+        // write twice to use both a new and a cached writer
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            jsonMapper.writeTo(ImmutableList.of("a", "<b>"), List.class, genericType, null, null, new GuavaMultivaluedMap<>(), outputStream);
+
+            String json = new String(outputStream.toByteArray(), UTF_8);
+            assertFalse(json.contains("<"));
+            assertEquals(jsonCodec.fromJson(json), ImmutableList.of("a", "<b>"));
+        }
+    }
+
     @Test
     public void testEOFExceptionReturnsJsonMapperParsingException()
             throws IOException
@@ -21,16 +21,19 @@ import com.fasterxml.jackson.databind.KeyDeserializer;
 import com.fasterxml.jackson.databind.Module;
 import com.google.common.base.Preconditions;
 import com.google.inject.Binder;
+import com.google.inject.Key;
 import com.google.inject.TypeLiteral;
 import com.google.inject.binder.LinkedBindingBuilder;
 import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.Multibinder;
 
 import static com.google.inject.multibindings.Multibinder.newSetBinder;
+import static com.google.inject.multibindings.OptionalBinder.newOptionalBinder;
 import static java.util.Objects.requireNonNull;
 
 public class JsonBinder
 {
+    private final Binder binder;
     private final MapBinder<Class<?>, JsonSerializer<?>> keySerializerMapBinder;
     private final MapBinder<Class<?>, KeyDeserializer> keyDeserializerMapBinder;
     private final MapBinder<Class<?>, JsonSerializer<?>> serializerMapBinder;
@@ -44,12 +47,12 @@ public class JsonBinder
 
     private JsonBinder(Binder binder)
     {
-        binder = requireNonNull(binder, "binder is null").skipSources(getClass());
-        keySerializerMapBinder = MapBinder.newMapBinder(binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<JsonSerializer<?>>() {}, JsonKeySerde.class);
-        keyDeserializerMapBinder = MapBinder.newMapBinder(binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<KeyDeserializer>() {}, JsonKeySerde.class);
-        serializerMapBinder = MapBinder.newMapBinder(binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<JsonSerializer<?>>() {});
-        deserializerMapBinder = MapBinder.newMapBinder(binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<JsonDeserializer<?>>() {});
-        moduleBinder = newSetBinder(binder, Module.class);
+        this.binder = requireNonNull(binder, "binder is null").skipSources(getClass());
+        keySerializerMapBinder = MapBinder.newMapBinder(this.binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<JsonSerializer<?>>() {}, JsonKeySerde.class);
+        keyDeserializerMapBinder = MapBinder.newMapBinder(this.binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<KeyDeserializer>() {}, JsonKeySerde.class);
+        serializerMapBinder = MapBinder.newMapBinder(this.binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<JsonSerializer<?>>() {});
+        deserializerMapBinder = MapBinder.newMapBinder(this.binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<JsonDeserializer<?>>() {});
+        moduleBinder = newSetBinder(this.binder, Module.class);
     }
 
     public LinkedBindingBuilder<JsonSerializer<?>> addKeySerializerBinding(Class<?> type)
@@ -81,6 +84,16 @@ public class JsonBinder
         return moduleBinder.addBinding();
     }
 
+    /**
+     * Use generated bytecode rather than reflection to access the properties of
+     * mapped types. See {@link ObjectMapperProvider#setBytecodeAccessorsEnabled}.
+     */
+    public void enableBytecodeAccessors()
+    {
+        // an optional binding, so multiple modules can enable the accessors
+        newOptionalBinder(binder, Key.get(Boolean.class, JsonBytecodeAccessors.class)).setBinding().toInstance(true);
+    }
+
     public <T> void bindSerializer(JsonSerializer<T> jsonSerializer)
     {
         requireNonNull(jsonSerializer, "jsonSerializer is null");
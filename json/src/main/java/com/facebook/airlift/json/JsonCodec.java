@@ -16,17 +16,24 @@
 package com.facebook.airlift.json;
 
 import com.facebook.airlift.json.LengthLimitedWriter.LengthLimitExceededException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import com.google.common.base.Suppliers;
 import com.google.common.reflect.TypeParameter;
 import com.google.common.reflect.TypeToken;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -104,15 +111,18 @@ public class JsonCodec<T>
         return new JsonCodec<>(OBJECT_MAPPER_SUPPLIER.get(), mapType);
     }
 
-    private final ObjectMapper mapper;
     private final Type type;
     private final JavaType javaType;
+    // readers and writers are immutable, and resolve the root type only once
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
 
     JsonCodec(ObjectMapper mapper, Type type)
     {
-        this.mapper = mapper;
         this.type = type;
         this.javaType = mapper.getTypeFactory().constructType(type);
+        this.reader = mapper.readerFor(javaType);
+        this.writer = mapper.writerFor(javaType);
     }
 
     /**
@@ -134,7 +144,7 @@ public class JsonCodec<T>
             throws IllegalArgumentException
     {
         try {
-            return mapper.readerFor(javaType).readValue(json);
+            return reader.readValue(json);
         }
         catch (IOException e) {
             throw new IllegalArgumentException(format("Invalid JSON string for %s", javaType), e);
@@ -152,7 +162,7 @@ public class JsonCodec<T>
             throws IllegalArgumentException
     {
         try {
-            return mapper.writerFor(javaType).writeValueAsString(instance);
+            return writer.writeValueAsString(instance);
         }
         catch (IOException e) {
             throw new IllegalArgumentException(format("%s could not be converted to JSON", instance.getClass().getName()), e);
@@ -171,7 +181,7 @@ public class JsonCodec<T>
     {
         try (StringWriter stringWriter = new StringWriter();
                 LengthLimitedWriter lengthLimitedWriter = new LengthLimitedWriter(stringWriter, lengthLimit)) {
-            mapper.writeValue(lengthLimitedWriter, instance);
+            writer.writeValue(lengthLimitedWriter, instance);
             return Optional.of(stringWriter.getBuffer().toString());
         }
         catch (LengthLimitExceededException e) {
@@ -182,6 +192,52 @@ public class JsonCodec<T>
         }
     }
 
+    /**
+     * Converts the specified instance to UTF-8 json bytes, unless the encoded json is
+     * longer than the length limit.
+     *
+     * @param instance the instance to convert to json
+     * @param lengthLimit the maximum length of the encoded json in bytes
+     * @return json bytes (UTF-8), or empty if the json exceeds the length limit
+     * @throws IllegalArgumentException if the specified instance can not be converted to json
+     */
+    public Optional<byte[]> toJsonBytesWithLengthLimit(T instance, int lengthLimit)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!writeJsonBytesWithLengthLimit(output, instance, lengthLimit)) {
+            return Optional.empty();
+        }
+        return Optional.of(output.toByteArray());
+    }
+
+    /**
+     * Writes the specified instance as UTF-8 json to the output, unless the encoded json
+     * is longer than the length limit. Serialization stops shortly after the limit is
+     * exceeded, without encoding the rest of the instance. The output is not closed, and
+     * holds a partial document when the limit is exceeded, so it is typically a buffer
+     * the caller resets and reuses.
+     *
+     * @param output the output to write the json bytes (UTF-8) to
+     * @param instance the instance to convert to json
+     * @param lengthLimit the maximum length of the encoded json in bytes
+     * @return true if the json was written, or false if it exceeds the length limit
+     * @throws IllegalArgumentException if the specified instance can not be converted to json
+     */
+    public boolean writeJsonBytesWithLengthLimit(OutputStream output, T instance, int lengthLimit)
+    {
+        LengthLimitedOutputStream lengthLimitedOutput = new LengthLimitedOutputStream(output, lengthLimit);
+        try {
+            writer.writeValue(lengthLimitedOutput, instance);
+            return true;
+        }
+        catch (IOException e) {
+            if (lengthLimitedOutput.isLengthLimitExceeded()) {
+                return false;
+            }
+            throw new IllegalArgumentException(format("%s could not be converted to JSON", instance.getClass().getName()), e);
+        }
+    }
+
     /**
      * Coverts the specified json bytes (UTF-8) into an instance of type T.
      *
@@ -193,13 +249,92 @@ public class JsonCodec<T>
             throws IllegalArgumentException
     {
         try {
-            return mapper.readerFor(javaType).readValue(json);
+            return reader.readValue(json);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(format("Invalid JSON bytes for %s", javaType), e);
+        }
+    }
+
+    /**
+     * Coverts the specified range of json bytes (UTF-8) into an instance of type T.
+     *
+     * @param json the json bytes (UTF-8) to parse
+     * @param offset the offset of the json in the array
+     * @param length the length of the json in bytes
+     * @return parsed response; never null
+     * @throws IllegalArgumentException if the json bytes can not be converted to the type T
+     */
+    public T fromJson(byte[] json, int offset, int length)
+            throws IllegalArgumentException
+    {
+        try {
+            return reader.readValue(json, offset, length);
         }
         catch (IOException e) {
             throw new IllegalArgumentException(format("Invalid JSON bytes for %s", javaType), e);
         }
     }
 
+    /**
+     * Coverts the remaining json bytes (UTF-8) in the buffer into an instance of type T.
+     * The position of the buffer is not changed.
+     *
+     * @param json the json bytes (UTF-8) to parse
+     * @return parsed response; never null
+     * @throws IllegalArgumentException if the json bytes can not be converted to the type T
+     */
+    public T fromJson(ByteBuffer json)
+            throws IllegalArgumentException
+    {
+        if (json.hasArray()) {
+            return fromJson(json.array(), json.arrayOffset() + json.position(), json.remaining());
+        }
+        try {
+            return reader.readValue(new ByteBufferBackedInputStream(json.duplicate()));
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(format("Invalid JSON bytes for %s", javaType), e);
+        }
+    }
+
+    /**
+     * Reads the next value from the parser, for embedding this codec in a larger document.
+     *
+     * @param parser the parser positioned at, or just before, the value to read
+     * @return parsed value
+     * @throws IllegalArgumentException if the value can not be converted to the type T
+     */
+    public T fromJson(JsonParser parser)
+            throws IllegalArgumentException
+    {
+        try {
+            return reader.readValue(parser);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(format("Invalid JSON for %s", javaType), e);
+        }
+    }
+
+    /**
+     * Writes the specified instance to the generator, for embedding it in a larger document.
+     * The generator is not closed.
+     *
+     * @param generator the generator to write to
+     * @param instance the instance to convert to json
+     * @throws IllegalArgumentException if the specified instance can not be converted to json
+     */
+    public void toJson(JsonGenerator generator, T instance)
+            throws IllegalArgumentException
+    {
+        try {
+            writer.writeValue(generator, instance);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(format("%s could not be converted to JSON", instance.getClass().getName()), e);
+        }
+    }
+
     /**
      * Converts the specified instance to json.
      *
@@ -211,7 +346,7 @@ public class JsonCodec<T>
             throws IllegalArgumentException
     {
         try {
-            return mapper.writerFor(javaType).writeValueAsBytes(instance);
+            return writer.writeValueAsBytes(instance);
         }
         catch (IOException e) {
             throw new IllegalArgumentException(format("%s could not be converted to JSON", instance.getClass().getName()), e);
@@ -234,7 +369,7 @@ public class JsonCodec<T>
     public void writeBytes(OutputStream output, T instance)
     {
         try {
-            mapper.writeValue(output, instance);
+            writer.writeValue(output, instance);
         }
         catch (IOException e) {
             throw new IllegalArgumentException(format("%s could not be converted to JSON", instance.getClass().getName()), e);
@@ -245,7 +380,7 @@ public class JsonCodec<T>
     public T readBytes(InputStream input)
     {
         try {
-            return mapper.readValue(input, javaType);
+            return reader.readValue(input);
         }
         catch (IOException e) {
             throw new IllegalArgumentException(format("Invalid JSON bytes for %s", javaType), e);
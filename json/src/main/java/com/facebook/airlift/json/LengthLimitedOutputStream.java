@@ -0,0 +1,73 @@
+package com.facebook.airlift.json;
+
+import com.facebook.airlift.json.LengthLimitedWriter.LengthLimitExceededException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Output stream that fails once more than {@code maxLength} bytes have been written,
+ * so serialization stops as soon as the encoder flushes past the limit. Closing this
+ * stream does not close the underlying stream.
+ */
+public class LengthLimitedOutputStream
+        extends OutputStream
+{
+    private final OutputStream output;
+    private final long maxLength;
+    private long count;
+    private boolean lengthLimitExceeded;
+
+    public LengthLimitedOutputStream(OutputStream output, long maxLength)
+    {
+        this.output = requireNonNull(output, "output is null");
+        this.maxLength = maxLength;
+    }
+
+    public boolean isLengthLimitExceeded()
+    {
+        return lengthLimitExceeded;
+    }
+
+    @Override
+    public void write(int b)
+            throws IOException
+    {
+        checkLength(1);
+        output.write(b);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length)
+            throws IOException
+    {
+        checkLength(length);
+        output.write(buffer, offset, length);
+    }
+
+    @Override
+    public void flush()
+            throws IOException
+    {
+        output.flush();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        flush();
+    }
+
+    private void checkLength(int length)
+            throws LengthLimitExceededException
+    {
+        count += length;
+        if (count > maxLength) {
+            lengthLimitExceeded = true;
+            throw new LengthLimitExceededException();
+        }
+    }
+}
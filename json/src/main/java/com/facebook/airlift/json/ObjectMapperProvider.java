@@ -31,6 +31,7 @@ import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
@@ -56,6 +57,8 @@ public abstract class ObjectMapperProvider
 
     private final Set<Module> modules = new HashSet<>();
 
+    private boolean bytecodeAccessorsEnabled;
+
     protected ObjectMapperProvider(JsonFactory jsonFactory)
     {
         this.jsonFactory = requireNonNull(jsonFactory, "jsonFactory is null");
@@ -103,6 +106,17 @@ public abstract class ObjectMapperProvider
         this.modules.addAll(modules);
     }
 
+    /**
+     * Generate bytecode to access properties and call creators, instead of using
+     * reflection. The accessors for a type are generated when its serializer or
+     * deserializer is first created, which for codecs is when the codec is created.
+     */
+    @Inject(optional = true)
+    public void setBytecodeAccessorsEnabled(@JsonBytecodeAccessors boolean bytecodeAccessorsEnabled)
+    {
+        this.bytecodeAccessorsEnabled = bytecodeAccessorsEnabled;
+    }
+
     @Override
     public ObjectMapper get()
     {
@@ -161,6 +175,10 @@ public abstract class ObjectMapperProvider
             objectMapper.registerModule(module);
         }
 
+        if (bytecodeAccessorsEnabled) {
+            objectMapper.registerModule(new AfterburnerModule());
+        }
+
         return objectMapper;
     }
 
@@ -14,6 +14,7 @@
 package com.facebook.airlift.json.smile;
 
 import com.facebook.airlift.json.Codec;
+import com.facebook.airlift.json.LengthLimitedOutputStream;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.Beta;
@@ -21,12 +22,14 @@ import com.google.common.base.Suppliers;
 import com.google.common.reflect.TypeParameter;
 import com.google.common.reflect.TypeToken;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 import static java.lang.String.format;
@@ -156,6 +159,52 @@ public class SmileCodec<T>
         }
     }
 
+    /**
+     * Converts the specified instance to SMILE, unless the encoded SMILE is longer than
+     * the length limit.
+     *
+     * @param instance the instance to convert to SMILE
+     * @param lengthLimit the maximum length of the encoded SMILE in bytes
+     * @return SMILE bytes, or empty if the SMILE exceeds the length limit
+     * @throws IllegalArgumentException if the specified instance can not be converted to SMILE
+     */
+    public Optional<byte[]> toSmileWithLengthLimit(T instance, int lengthLimit)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!writeSmileWithLengthLimit(output, instance, lengthLimit)) {
+            return Optional.empty();
+        }
+        return Optional.of(output.toByteArray());
+    }
+
+    /**
+     * Writes the specified instance as SMILE to the output, unless the encoded SMILE is
+     * longer than the length limit. Serialization stops shortly after the limit is
+     * exceeded, without encoding the rest of the instance. The output is not closed, and
+     * holds a partial document when the limit is exceeded, so it is typically a buffer
+     * the caller resets and reuses.
+     *
+     * @param output the output to write the SMILE bytes to
+     * @param instance the instance to convert to SMILE
+     * @param lengthLimit the maximum length of the encoded SMILE in bytes
+     * @return true if the SMILE was written, or false if it exceeds the length limit
+     * @throws IllegalArgumentException if the specified instance can not be converted to SMILE
+     */
+    public boolean writeSmileWithLengthLimit(OutputStream output, T instance, int lengthLimit)
+    {
+        LengthLimitedOutputStream lengthLimitedOutput = new LengthLimitedOutputStream(output, lengthLimit);
+        try {
+            mapper.writeValue(lengthLimitedOutput, instance);
+            return true;
+        }
+        catch (IOException e) {
+            if (lengthLimitedOutput.isLengthLimitExceeded()) {
+                return false;
+            }
+            throw new IllegalArgumentException(format("%s could not be converted to SMILE", instance.getClass().getName()), e);
+        }
+    }
+
     @Override
     public byte[] toBytes(T instance)
     {
@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.json;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkBytecodeAccessors
+{
+    @Param({"false", "true"})
+    private boolean bytecodeAccessors;
+
+    private JsonCodec<List<ImmutablePerson>> immutableCodec;
+    private JsonCodec<List<Person>> mutableCodec;
+    private List<ImmutablePerson> immutablePeople;
+    private List<Person> mutablePeople;
+    private byte[] immutableJson;
+    private byte[] mutableJson;
+
+    @Setup
+    public void setup()
+    {
+        JsonObjectMapperProvider provider = new JsonObjectMapperProvider();
+        provider.setBytecodeAccessorsEnabled(bytecodeAccessors);
+        JsonCodecFactory codecFactory = new JsonCodecFactory(provider);
+        immutableCodec = codecFactory.listJsonCodec(ImmutablePerson.class);
+        mutableCodec = codecFactory.listJsonCodec(Person.class);
+
+        immutablePeople = new ArrayList<>();
+        mutablePeople = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            immutablePeople.add(new ImmutablePerson("person-" + i, i % 2 == 0));
+            Person person = new Person().setName("person-" + i).setRocks(i % 2 == 0);
+            person.setLastName(Optional.of("last-" + i));
+            mutablePeople.add(person);
+        }
+        immutableJson = immutableCodec.toJsonBytes(immutablePeople);
+        mutableJson = mutableCodec.toJsonBytes(mutablePeople);
+    }
+
+    @Benchmark
+    public byte[] serializeGetters()
+    {
+        return immutableCodec.toJsonBytes(immutablePeople);
+    }
+
+    @Benchmark
+    public List<ImmutablePerson> deserializeCreator()
+    {
+        return immutableCodec.fromJson(immutableJson);
+    }
+
+    @Benchmark
+    public List<Person> deserializeSetters()
+    {
+        return mutableCodec.fromJson(mutableJson);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkBytecodeAccessors.class.getSimpleName() + ".*")
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.airlift.json;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the codec, which holds a reader and writer for its type, with
+ * looking up a reader or writer from the mapper on every call.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkJsonCodec
+{
+    @Param({"1", "100"})
+    private int people;
+
+    private ObjectMapper mapper;
+    private JavaType javaType;
+    private JsonCodec<List<ImmutablePerson>> codec;
+    private List<ImmutablePerson> value;
+    private byte[] json;
+    private ByteBuffer directJson;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup()
+    {
+        mapper = new JsonObjectMapperProvider().get();
+        javaType = mapper.getTypeFactory().constructType(new TypeToken<List<ImmutablePerson>>() {}.getType());
+        codec = new JsonCodecFactory(() -> mapper).listJsonCodec(ImmutablePerson.class);
+
+        value = new ArrayList<>();
+        for (int i = 0; i < people; i++) {
+            value.add(new ImmutablePerson("person-" + i, i % 2 == 0));
+        }
+        json = codec.toJsonBytes(value);
+        directJson = ByteBuffer.allocateDirect(json.length);
+        directJson.put(json).flip();
+    }
+
+    @Benchmark
+    public byte[] writeWithMapperLookup()
+            throws IOException
+    {
+        return mapper.writerFor(javaType).writeValueAsBytes(value);
+    }
+
+    @Benchmark
+    public byte[] writeWithCodec()
+    {
+        return codec.toJsonBytes(value);
+    }
+
+    @Benchmark
+    public int writeWithCodecToReusedBuffer()
+    {
+        buffer.reset();
+        codec.writeBytes(buffer, value);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public boolean rejectOversizedAsString()
+    {
+        return codec.toJsonWithLengthLimit(value, json.length / 2).isPresent();
+    }
+
+    @Benchmark
+    public boolean rejectOversizedAsBytes()
+    {
+        buffer.reset();
+        return codec.writeJsonBytesWithLengthLimit(buffer, value, json.length / 2);
+    }
+
+    @Benchmark
+    public List<ImmutablePerson> readWithMapperLookup()
+            throws IOException
+    {
+        return mapper.readerFor(javaType).readValue(json);
+    }
+
+    @Benchmark
+    public List<ImmutablePerson> readWithCodec()
+    {
+        return codec.fromJson(json);
+    }
+
+    @Benchmark
+    public List<ImmutablePerson> readWithCodecFromDirectBuffer()
+    {
+        return codec.fromJson(directJson);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkJsonCodec.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
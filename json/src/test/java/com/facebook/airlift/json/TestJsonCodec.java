@@ -15,10 +15,18 @@
  */
 package com.facebook.airlift.json;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.google.common.base.Strings;
 import com.google.common.reflect.TypeToken;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -258,4 +266,87 @@ public class TestJsonCodec
         assertFalse(jsonCodec.toJsonWithLengthLimit(people, 10381).isPresent());
         assertTrue(jsonCodec.toJsonWithLengthLimit(people, 10382).isPresent());
     }
+
+    @Test
+    public void testToJsonBytesWithLengthLimit()
+    {
+        JsonCodec<ImmutablePerson> jsonCodec = jsonCodec(ImmutablePerson.class);
+        ImmutablePerson person = new ImmutablePerson(Strings.repeat("a", 1000), false);
+
+        assertFalse(jsonCodec.toJsonBytesWithLengthLimit(person, 0).isPresent());
+        assertFalse(jsonCodec.toJsonBytesWithLengthLimit(person, 1035).isPresent());
+        assertEquals(jsonCodec.toJsonBytesWithLengthLimit(person, 1036).get(), jsonCodec.toJsonBytes(person));
+
+        // the limit is in bytes, not characters
+        ImmutablePerson nonAscii = new ImmutablePerson(Strings.repeat("\u0158", 1000), false);
+        assertFalse(jsonCodec.toJsonBytesWithLengthLimit(nonAscii, 1036).isPresent());
+        assertFalse(jsonCodec.toJsonBytesWithLengthLimit(nonAscii, 2035).isPresent());
+        assertEquals(jsonCodec.toJsonBytesWithLengthLimit(nonAscii, 2036).get(), jsonCodec.toJsonBytes(nonAscii));
+    }
+
+    @Test
+    public void testWriteJsonBytesWithLengthLimit()
+    {
+        JsonCodec<List<ImmutablePerson>> jsonCodec = listJsonCodec(jsonCodec(ImmutablePerson.class));
+        List<ImmutablePerson> people = Collections.nCopies(100, new ImmutablePerson(Strings.repeat("a", 1000), false));
+        byte[] json = jsonCodec.toJsonBytes(people);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        assertFalse(jsonCodec.writeJsonBytesWithLengthLimit(buffer, people, 50_000));
+        // serialization stopped well before the whole document was encoded
+        assertTrue(buffer.size() < json.length);
+
+        buffer.reset();
+        assertTrue(jsonCodec.writeJsonBytesWithLengthLimit(buffer, people, json.length));
+        assertEquals(buffer.toByteArray(), json);
+    }
+
+    @Test
+    public void testFromJsonByteRanges()
+    {
+        JsonCodec<ImmutablePerson> jsonCodec = jsonCodec(ImmutablePerson.class);
+        ImmutablePerson person = new ImmutablePerson("dain", true);
+        byte[] json = jsonCodec.toJsonBytes(person);
+
+        byte[] padded = new byte[json.length + 20];
+        System.arraycopy(json, 0, padded, 10, json.length);
+        assertEquals(jsonCodec.fromJson(padded, 10, json.length), person);
+
+        ByteBuffer heapBuffer = ByteBuffer.wrap(padded, 10, json.length).slice();
+        assertEquals(jsonCodec.fromJson(heapBuffer), person);
+        assertEquals(heapBuffer.remaining(), json.length);
+
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(json.length);
+        directBuffer.put(json).flip();
+        assertEquals(jsonCodec.fromJson(directBuffer), person);
+        assertEquals(directBuffer.position(), 0);
+
+        assertEquals(jsonCodec.readBytes(new ByteArrayInputStream(json)), person);
+    }
+
+    @Test
+    public void testEmbeddedJson()
+            throws Exception
+    {
+        JsonCodec<ImmutablePerson> jsonCodec = jsonCodec(ImmutablePerson.class);
+        ImmutablePerson person = new ImmutablePerson("dain", true);
+        JsonFactory jsonFactory = new JsonFactory();
+
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = jsonFactory.createGenerator(json)) {
+            generator.writeStartObject();
+            generator.writeFieldName("person");
+            jsonCodec.toJson(generator, person);
+            generator.writeNumberField("count", 1);
+            generator.writeEndObject();
+        }
+
+        try (JsonParser parser = jsonFactory.createParser(json.toString())) {
+            assertEquals(parser.nextToken(), JsonToken.START_OBJECT);
+            assertEquals(parser.nextFieldName(), "person");
+            parser.nextToken();
+            assertEquals(jsonCodec.fromJson(parser), person);
+            assertEquals(parser.nextFieldName(), "count");
+        }
+    }
 }
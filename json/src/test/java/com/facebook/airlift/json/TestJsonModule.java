@@ -26,6 +26,7 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
 import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
@@ -47,6 +48,8 @@ import static com.google.common.base.MoreObjects.toStringHelper;
 import static java.util.Objects.requireNonNull;
 import static org.joda.time.DateTimeZone.UTC;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestJsonModule
 {
@@ -84,6 +87,36 @@ public class TestJsonModule
         Person.validatePersonMapJsonCodec(codecFactory.mapJsonCodec(String.class, Person.class));
     }
 
+    @Test
+    public void testBytecodeAccessors()
+    {
+        Injector injector = Guice.createInjector(new JsonModule(), binder -> jsonBinder(binder).enableBytecodeAccessors());
+        ObjectMapper objectMapper = injector.getInstance(ObjectMapper.class);
+        assertTrue(objectMapper.getRegisteredModuleIds().contains(new AfterburnerModule().getTypeId()));
+
+        JsonCodecFactory codecFactory = injector.getInstance(JsonCodecFactory.class);
+        Person.validatePersonJsonCodec(codecFactory.jsonCodec(Person.class));
+        ImmutablePerson.validatePersonListJsonCodec(codecFactory.listJsonCodec(ImmutablePerson.class));
+    }
+
+    @Test
+    public void testBytecodeAccessorsEnabledByMultipleModules()
+    {
+        Injector injector = Guice.createInjector(
+                new JsonModule(),
+                binder -> jsonBinder(binder).enableBytecodeAccessors(),
+                binder -> jsonBinder(binder).enableBytecodeAccessors());
+        ObjectMapper objectMapper = injector.getInstance(ObjectMapper.class);
+        assertTrue(objectMapper.getRegisteredModuleIds().contains(new AfterburnerModule().getTypeId()));
+    }
+
+    @Test
+    public void testBytecodeAccessorsDisabledByDefault()
+    {
+        ObjectMapper objectMapper = Guice.createInjector(new JsonModule()).getInstance(ObjectMapper.class);
+        assertFalse(objectMapper.getRegisteredModuleIds().contains(new AfterburnerModule().getTypeId()));
+    }
+
     @Test
     public void testSetup()
             throws Exception
@@ -2,6 +2,7 @@ package com.facebook.airlift.json.smile;
 
 import com.facebook.airlift.json.ImmutablePerson;
 import com.facebook.airlift.json.Person;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.reflect.TypeToken;
@@ -12,11 +13,14 @@ import org.testng.annotations.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestSmileCodecFactory
 {
@@ -43,6 +47,22 @@ public class TestSmileCodecFactory
         assertEquals(smileCodec.fromSmile(smile), expected);
     }
 
+    @Test
+    public void testSmileWithLengthLimit()
+    {
+        SmileCodec<List<ImmutablePerson>> smileCodec = codecFactory.listSmileCodec(ImmutablePerson.class);
+        List<ImmutablePerson> people = Collections.nCopies(100, new ImmutablePerson(Strings.repeat("a", 1000), false));
+        byte[] smile = smileCodec.toSmile(people);
+
+        assertFalse(smileCodec.toSmileWithLengthLimit(people, 0).isPresent());
+        assertFalse(smileCodec.toSmileWithLengthLimit(people, smile.length - 1).isPresent());
+        assertEquals(smileCodec.toSmileWithLengthLimit(people, smile.length).get(), smile);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        assertFalse(smileCodec.writeSmileWithLengthLimit(buffer, people, 50_000));
+        assertTrue(buffer.size() < smile.length);
+    }
+
     @Test
     public void testListSmileCodec()
     {